@@ -0,0 +1,34 @@
+package com.fraktalio.fmodel.application;
+
+/**
+ * Thrown by locking repositories when the expected version of a stream or state does not match the stored one.
+ * <br /><br />
+ * A version mismatch means that someone else has updated the state / appended the event(s) before you did.
+ * The command can usually be retried against the fresh state.
+ */
+public class OptimisticLockingException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Object expectedVersion;
+    private final transient Object actualVersion;
+
+    public OptimisticLockingException(final Object key, final Object expectedVersion, final Object actualVersion) {
+        super("Version mismatch for `" + key + "`: expected " + expectedVersion + ", but was " + actualVersion);
+        this.expectedVersion = expectedVersion;
+        this.actualVersion = actualVersion;
+    }
+
+    /**
+     * @return the version the caller has observed and expected to still be current
+     */
+    public Object expectedVersion() {
+        return expectedVersion;
+    }
+
+    /**
+     * @return the version that was actually stored at the moment of the conflict
+     */
+    public Object actualVersion() {
+        return actualVersion;
+    }
+}
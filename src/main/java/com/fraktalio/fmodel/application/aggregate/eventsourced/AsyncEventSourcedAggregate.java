@@ -0,0 +1,100 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
+import com.fraktalio.fmodel.domain.decider.IDecider;
+import com.fraktalio.fmodel.domain.decider.IMonoidalDecider;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * {@code AsyncEventSourcedAggregate} implements {@link IDecider} and {@link IAsyncEventRepository} interfaces,
+ * clearly communicating that it is composed out of these two behaviours.
+ * <br /><br />
+ * It is the non-blocking variant of the {@link EventSourcedAggregate}: the command is handled by composing the stages of the repository.
+ * The aggregate never schedules a task itself, so the state is computed by the thread that completes the fetch, and no thread is blocked in the chain.
+ *
+ * @param <C> command type(s) that this aggregate can handle
+ * @param <S> aggregate state type
+ * @param <E> event type(s) that this aggregate can publish/store
+ */
+public final class AsyncEventSourcedAggregate<C, S, E> implements IDecider<C, S, E>, IAsyncEventRepository<C, E> {
+    public AsyncEventSourcedAggregate(final IDecider<C, S, E> decider, final IAsyncEventRepository<C, E> repository) {
+        this(decider, repository, IProbe.NOOP);
+    }
+
+    public AsyncEventSourcedAggregate(final IDecider<C, S, E> decider, final IAsyncEventRepository<C, E> repository, final IProbe probe) {
+        this.decider = decider;
+        this.repository = repository;
+        this.probe = probe;
+    }
+
+    private final IDecider<C, S, E> decider;
+    private final IAsyncEventRepository<C, E> repository;
+    private final IProbe probe;
+
+    @Override
+    public BiFunction<C, S, List<E>> decide() {
+        return decider.decide();
+    }
+
+    @Override
+    public BiFunction<S, E, S> evolve() {
+        return decider.evolve();
+    }
+
+    @Override
+    public Supplier<S> initialState() {
+        return decider.initialState();
+    }
+
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
+    @Override
+    public CompletionStage<List<E>> fetchEventsAsync(C command) {
+        return repository.fetchEventsAsync(command);
+    }
+
+    @Override
+    public CompletionStage<List<E>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEventsAsync(command, eventTypes);
+    }
+
+    @Override
+    public CompletionStage<List<E>> saveAsync(List<E> events) {
+        return repository.saveAsync(events);
+    }
+
+    /**
+     * Handle the command and store/produce new events
+     *
+     * @param command command to be handled
+     * @return new events being stored
+     */
+    public CompletionStage<List<E>> handleAsync(C command) {
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchEventsAsync(command, eventTypes()))
+                .thenApply(events -> computeNewEvents(events, command))
+                .thenCompose(newEvents -> probe.stop(Phase.SAVE, probe.start(), saveAsync(newEvents))));
+    }
+
+    private List<E> computeNewEvents(List<E> oldEvents, C command) {
+        var foldStart = probe.start();
+        // a monoidal decider folds long histories in parallel
+        var currentState = decider instanceof IMonoidalDecider<C, S, E> monoidal
+                ? monoidal.fold(oldEvents.stream(), oldEvents.size())
+                : oldEvents.stream().reduce(initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stopFold(oldEvents.size(), foldStart);
+        var decideStart = probe.start();
+        var newEvents = decide().apply(command, currentState);
+        probe.stop(Phase.DECIDE, decideStart);
+        return newEvents;
+    }
+}
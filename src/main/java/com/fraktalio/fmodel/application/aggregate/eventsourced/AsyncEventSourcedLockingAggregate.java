@@ -0,0 +1,101 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
+import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.decider.IDecider;
+import com.fraktalio.fmodel.domain.decider.IMonoidalDecider;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * {@code AsyncEventSourcedLockingAggregate} implements {@link IDecider} and {@link IAsyncEventLockingRepository} interfaces,
+ * clearly communicating that it is composed out of these two behaviours.
+ * <br /><br />
+ * It is the non-blocking variant of the {@link EventSourcedLockingAggregate}: the command is handled by composing the stages of the repository.
+ * The aggregate never schedules a task itself, so the state is computed by the thread that completes the fetch, and no thread is blocked in the chain.
+ * New events are saved with the version of the last fetched event, or with a {@code null} version for a new stream.
+ *
+ * @param <C> command type(s) that this aggregate can handle
+ * @param <S> aggregate state type
+ * @param <E> event type(s) that this aggregate can publish/store
+ * @param <V> version type
+ */
+public final class AsyncEventSourcedLockingAggregate<C, S, E, V> implements IDecider<C, S, E>, IAsyncEventLockingRepository<C, E, V> {
+    public AsyncEventSourcedLockingAggregate(final IDecider<C, S, E> decider, final IAsyncEventLockingRepository<C, E, V> repository) {
+        this(decider, repository, IProbe.NOOP);
+    }
+
+    public AsyncEventSourcedLockingAggregate(final IDecider<C, S, E> decider, final IAsyncEventLockingRepository<C, E, V> repository, final IProbe probe) {
+        this.decider = decider;
+        this.repository = repository;
+        this.probe = probe;
+    }
+
+    private final IDecider<C, S, E> decider;
+    private final IAsyncEventLockingRepository<C, E, V> repository;
+    private final IProbe probe;
+
+    @Override
+    public BiFunction<C, S, List<E>> decide() {
+        return decider.decide();
+    }
+
+    @Override
+    public BiFunction<S, E, S> evolve() {
+        return decider.evolve();
+    }
+
+    @Override
+    public Supplier<S> initialState() {
+        return decider.initialState();
+    }
+
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
+    @Override
+    public CompletionStage<List<Pair<E, V>>> fetchEventsAsync(C command) {
+        return repository.fetchEventsAsync(command);
+    }
+
+    @Override
+    public CompletionStage<List<Pair<E, V>>> saveAsync(List<E> events, V version) {
+        return repository.saveAsync(events, version);
+    }
+
+    /**
+     * Handle the command and store/produce new events
+     *
+     * @param command command to be handled
+     * @return new events being stored
+     */
+    public CompletionStage<List<Pair<E, V>>> handleAsync(C command) {
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchEventsAsync(command))
+                .thenCompose(events -> {
+                    var newEvents = computeNewEvents(events, command);
+                    var lastVersion = events.isEmpty() ? null : events.get(events.size() - 1).second();
+                    return probe.stop(Phase.SAVE, probe.start(), saveAsync(newEvents, lastVersion));
+                }));
+    }
+
+    private List<E> computeNewEvents(List<Pair<E, V>> oldEvents, C command) {
+        var foldStart = probe.start();
+        // a monoidal decider folds long histories in parallel
+        var currentState = decider instanceof IMonoidalDecider<C, S, E> monoidal
+                ? monoidal.fold(oldEvents.stream().map(Pair::first), oldEvents.size())
+                : oldEvents.stream().map(Pair::first).reduce(initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stopFold(oldEvents.size(), foldStart);
+        var decideStart = probe.start();
+        var newEvents = decide().apply(command, currentState);
+        probe.stop(Phase.DECIDE, decideStart);
+        return newEvents;
+    }
+}
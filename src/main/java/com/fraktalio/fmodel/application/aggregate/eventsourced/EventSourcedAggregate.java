@@ -1,8 +1,12 @@
 package com.fraktalio.fmodel.application.aggregate.eventsourced;
 
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
 import com.fraktalio.fmodel.domain.decider.IDecider;
+import com.fraktalio.fmodel.domain.decider.IMonoidalDecider;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
@@ -14,6 +18,7 @@ import java.util.stream.Stream;
  * <br /><br />
  * Event sourcing aggregate is using/delegating a `decider` to handle commands and produce events.
  * In order to handle the command, aggregate needs to fetch the current state (represented as a list of events) via `IEventRepository.fetchEvents` function, and then delegate the command to the `decider` which can produce new event(s) as a result.
+ * If the `decider` declares the event types it consumes ({@link IDecider#eventTypes()}), only the events of these types are fetched.
  * Produced events are then stored via `IEventRepository.save` method.
  *
  * @param <C> command type(s) that this aggregate can handle
@@ -23,12 +28,18 @@ import java.util.stream.Stream;
  */
 public final class EventSourcedAggregate<C, S, E> implements IDecider<C, S, E>, IEventRepository<C, E> {
     public EventSourcedAggregate(final IDecider<C, S, E> decider, final IEventRepository<C, E> repository) {
+        this(decider, repository, IProbe.NOOP);
+    }
+
+    public EventSourcedAggregate(final IDecider<C, S, E> decider, final IEventRepository<C, E> repository, final IProbe probe) {
         this.decider = decider;
         this.repository = repository;
+        this.probe = probe;
     }
 
     private final IDecider<C, S, E> decider;
     private final IEventRepository<C, E> repository;
+    private final IProbe probe;
 
 
     @Override
@@ -46,12 +57,27 @@ public final class EventSourcedAggregate<C, S, E> implements IDecider<C, S, E>,
         return decider.initialState();
     }
 
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
 
     @Override
     public List<E> fetchEvents(C command) {
         return repository.fetchEvents(command);
     }
 
+    @Override
+    public List<E> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEvents(command, eventTypes);
+    }
+
+    @Override
+    public CompletableFuture<List<E>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEventsAsync(command, eventTypes);
+    }
+
     @Override
     public List<E> save(List<E> events) {
         return repository.save(events);
@@ -64,7 +90,16 @@ public final class EventSourcedAggregate<C, S, E> implements IDecider<C, S, E>,
      * @return new events being stored
      */
     public List<E> handle(C command) {
-        return save(computeNewEvents(fetchEvents(command).stream(), command));
+        var handleStart = probe.start();
+        var fetchStart = probe.start();
+        var events = fetchEvents(command, eventTypes());
+        probe.stop(Phase.FETCH, fetchStart);
+        var newEvents = computeNewEvents(events.stream(), events.size(), command);
+        var saveStart = probe.start();
+        var savedEvents = save(newEvents);
+        probe.stop(Phase.SAVE, saveStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedEvents;
     }
 
     /**
@@ -74,14 +109,23 @@ public final class EventSourcedAggregate<C, S, E> implements IDecider<C, S, E>,
      * @return new events being stored
      */
     public CompletableFuture<List<E>> handleAsync(C command) {
-        return fetchEventsAsync(command)
-                .thenApply(events -> computeNewEvents(events.stream(), command))
-                .thenCompose(this::saveAsync);
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchEventsAsync(command, eventTypes()))
+                .thenApply(events -> computeNewEvents(events.stream(), events.size(), command))
+                .thenCompose(newEvents -> probe.stop(Phase.SAVE, probe.start(), saveAsync(newEvents))));
     }
 
-    private List<E> computeNewEvents(Stream<E> oldEvents, C command) {
-        var currentState = oldEvents.sequential().reduce(initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
-        return decide().apply(command, currentState);
+    private List<E> computeNewEvents(Stream<E> oldEvents, int oldEventsCount, C command) {
+        var foldStart = probe.start();
+        // a monoidal decider folds long histories in parallel
+        var currentState = decider instanceof IMonoidalDecider<C, S, E> monoidal
+                ? monoidal.fold(oldEvents, oldEventsCount)
+                : oldEvents.sequential().reduce(initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stopFold(oldEventsCount, foldStart);
+        var decideStart = probe.start();
+        var newEvents = decide().apply(command, currentState);
+        probe.stop(Phase.DECIDE, decideStart);
+        return newEvents;
     }
 
 }
@@ -1,9 +1,15 @@
 package com.fraktalio.fmodel.application.aggregate.eventsourced;
 
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
 import com.fraktalio.fmodel.domain.Pair;
 import com.fraktalio.fmodel.domain.decider.IDecider;
+import com.fraktalio.fmodel.domain.decider.IMonoidalDecider;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -17,6 +23,8 @@ import java.util.stream.Stream;
  * Locking Event sourcing aggregate is using/delegating a `decider` to handle commands and store/produce events.
  * In order to handle the command, aggregate needs to fetch the current state (represented as a list of events) via `IEventLockingRepository.fetchEvents` function, and then delegate the command to the `decider` which can produce new event(s) as a result.
  * Produced events are then stored via `IEventLockingRepository.save` method.
+ * A new stream (as told by `IEventLockingRepository.fetchStreamMetadata`) is not read at all: the command is decided on the initial state.
+ * Any other stream is read fully, as this aggregate keeps no snapshots; {@link SnapshottingEventSourcedAggregate} reads the tail of a stream on top of its snapshot.
  * <br /><br />
  * Locking Event sourcing aggregate enables `optimistic locking` mechanism more explicitly.
  * If you fetch events from a storage, the application records the `version` number of that event stream.
@@ -31,12 +39,18 @@ import java.util.stream.Stream;
  */
 public final class EventSourcedLockingAggregate<C, S, E, V> implements IDecider<C, S, E>, IEventLockingRepository<C, E, V> {
     public EventSourcedLockingAggregate(final IDecider<C, S, E> decider, final IEventLockingRepository<C, E, V> repository) {
+        this(decider, repository, IProbe.NOOP);
+    }
+
+    public EventSourcedLockingAggregate(final IDecider<C, S, E> decider, final IEventLockingRepository<C, E, V> repository, final IProbe probe) {
         this.decider = decider;
         this.repository = repository;
+        this.probe = probe;
     }
 
     private final IDecider<C, S, E> decider;
     private final IEventLockingRepository<C, E, V> repository;
+    private final IProbe probe;
 
 
     @Override
@@ -54,11 +68,41 @@ public final class EventSourcedLockingAggregate<C, S, E, V> implements IDecider<
         return decider.initialState();
     }
 
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
     @Override
     public List<Pair<E, V>> fetchEvents(C command) {
         return repository.fetchEvents(command);
     }
 
+    @Override
+    public List<Pair<E, V>> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEvents(command, eventTypes);
+    }
+
+    @Override
+    public List<Pair<E, V>> fetchEventsAfter(C command, V version) {
+        return repository.fetchEventsAfter(command, version);
+    }
+
+    @Override
+    public Optional<StreamMetadata<V>> fetchStreamMetadata(C command) {
+        return repository.fetchStreamMetadata(command);
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEventsAsync(command, eventTypes);
+    }
+
+    @Override
+    public CompletableFuture<Optional<StreamMetadata<V>>> fetchStreamMetadataAsync(C command) {
+        return repository.fetchStreamMetadataAsync(command);
+    }
+
     @Override
     public List<Pair<E, V>> save(List<E> events, Function<E, V> versionProvider) {
         return repository.save(events, versionProvider);
@@ -81,8 +125,22 @@ public final class EventSourcedLockingAggregate<C, S, E, V> implements IDecider<
      * @return new events being stored
      */
     public List<Pair<E, V>> handle(C command) {
-        var events = fetchEvents(command);
-        return save(computeNewEvents(events.stream().map(Pair::first), command), events.stream().map(Pair::second).toList().get(events.size() - 1));
+        var handleStart = probe.start();
+        var fetchStart = probe.start();
+        var events = isNew(fetchStreamMetadata(command)) ? List.<Pair<E, V>>of() : fetchEvents(command);
+        probe.stop(Phase.FETCH, fetchStart);
+        var newEvents = computeNewEvents(events.stream().map(Pair::first), events.size(), command);
+        var saveStart = probe.start();
+        List<Pair<E, V>> savedEvents;
+        try {
+            savedEvents = save(newEvents, lastVersion(events));
+        } catch (OptimisticLockingException e) {
+            probe.conflict();
+            throw e;
+        }
+        probe.stop(Phase.SAVE, saveStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedEvents;
     }
 
 
@@ -93,23 +151,40 @@ public final class EventSourcedLockingAggregate<C, S, E, V> implements IDecider<
      * @return new events being stored
      */
     public CompletableFuture<List<Pair<E, V>>> handleAsync(C command) {
-        return fetchEventsAsync(command)
+        var handleStart = probe.start();
+        var fetch = fetchStreamMetadataAsync(command)
+                .thenCompose(metadata -> isNew(metadata) ? CompletableFuture.completedFuture(List.<Pair<E, V>>of()) : fetchEventsAsync(command));
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetch)
                 .thenCompose(events -> {
                     // Compute new events
-                    List<E> newEvents = computeNewEvents(events.stream().map(Pair::first), command);
-                    // Get last version
-                    V lastVersion = events.stream()
-                            .map(Pair::second)
-                            .toList()
-                            .get(events.size() - 1);
-                    // Call saveAsync with both arguments
-                    return saveAsync(newEvents, lastVersion);
-                });
-    }
-
-    private List<E> computeNewEvents(Stream<E> oldEvents, C command) {
-        var currentState = oldEvents.sequential().reduce(initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
-        return decide().apply(command, currentState);
+                    List<E> newEvents = computeNewEvents(events.stream().map(Pair::first), events.size(), command);
+                    // Call saveAsync with the last version
+                    return probe.stop(Phase.SAVE, probe.start(), saveAsync(newEvents, lastVersion(events)));
+                }));
+    }
+
+    private static boolean isNew(Optional<? extends StreamMetadata<?>> metadata) {
+        return metadata.map(StreamMetadata::isNew).orElse(false);
+    }
+
+    /**
+     * The version to save against: the version of the last fetched event, or {@code null} for a new stream
+     */
+    private static <V> V lastVersion(List<? extends Pair<?, V>> events) {
+        return events.isEmpty() ? null : events.getLast().second();
+    }
+
+    private List<E> computeNewEvents(Stream<E> oldEvents, int oldEventsCount, C command) {
+        var foldStart = probe.start();
+        // a monoidal decider folds long histories in parallel
+        var currentState = decider instanceof IMonoidalDecider<C, S, E> monoidal
+                ? monoidal.fold(oldEvents, oldEventsCount)
+                : oldEvents.sequential().reduce(initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stopFold(oldEventsCount, foldStart);
+        var decideStart = probe.start();
+        var newEvents = decide().apply(command, currentState);
+        probe.stop(Phase.DECIDE, decideStart);
+        return newEvents;
     }
 
 }
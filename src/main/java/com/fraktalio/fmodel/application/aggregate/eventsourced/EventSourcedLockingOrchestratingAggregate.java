@@ -1,10 +1,16 @@
 package com.fraktalio.fmodel.application.aggregate.eventsourced;
 
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
 import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.collections.Rope;
 import com.fraktalio.fmodel.domain.decider.IDecider;
+import com.fraktalio.fmodel.domain.decider.IMonoidalDecider;
 import com.fraktalio.fmodel.domain.saga.ISaga;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
@@ -34,14 +40,20 @@ import java.util.stream.Stream;
  */
 public final class EventSourcedLockingOrchestratingAggregate<C, S, E, V> implements IDecider<C, S, E>, ISaga<E, C>, IEventLockingRepository<C, E, V> {
     public EventSourcedLockingOrchestratingAggregate(final IDecider<C, S, E> decider, final ISaga<E, C> saga, final IEventLockingRepository<C, E, V> repository) {
+        this(decider, saga, repository, IProbe.NOOP);
+    }
+
+    public EventSourcedLockingOrchestratingAggregate(final IDecider<C, S, E> decider, final ISaga<E, C> saga, final IEventLockingRepository<C, E, V> repository, final IProbe probe) {
         this.decider = decider;
         this.saga = saga;
         this.repository = repository;
+        this.probe = probe;
     }
 
     private final IDecider<C, S, E> decider;
     private final ISaga<E, C> saga;
     private final IEventLockingRepository<C, E, V> repository;
+    private final IProbe probe;
 
     @Override
     public BiFunction<C, S, List<E>> decide() {
@@ -58,6 +70,11 @@ public final class EventSourcedLockingOrchestratingAggregate<C, S, E, V> impleme
         return decider.initialState();
     }
 
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
     @Override
     public Function<E, List<C>> react() {
         return saga.react();
@@ -68,6 +85,16 @@ public final class EventSourcedLockingOrchestratingAggregate<C, S, E, V> impleme
         return repository.fetchEvents(command);
     }
 
+    @Override
+    public List<Pair<E, V>> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEvents(command, eventTypes);
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEventsAsync(command, eventTypes);
+    }
+
     @Override
     public List<Pair<E, V>> save(List<E> events, Function<E, V> versionProvider) {
         return repository.save(events, versionProvider);
@@ -90,7 +117,22 @@ public final class EventSourcedLockingOrchestratingAggregate<C, S, E, V> impleme
      * @return new events being stored
      */
     public List<Pair<E, V>> handle(C command) {
-        return save(computeNewEvents(fetchEvents(command).stream().map(Pair::first), command), versionProvider());
+        var handleStart = probe.start();
+        var fetchStart = probe.start();
+        var events = fetchEvents(command);
+        probe.stop(Phase.FETCH, fetchStart);
+        var newEvents = computeNewEvents(events.stream().map(Pair::first), events.size(), command);
+        var saveStart = probe.start();
+        List<Pair<E, V>> savedEvents;
+        try {
+            savedEvents = save(newEvents, versionProvider());
+        } catch (OptimisticLockingException e) {
+            probe.conflict();
+            throw e;
+        }
+        probe.stop(Phase.SAVE, saveStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedEvents;
     }
 
     /**
@@ -100,30 +142,48 @@ public final class EventSourcedLockingOrchestratingAggregate<C, S, E, V> impleme
      * @return new events being stored
      */
     public CompletableFuture<List<Pair<E, V>>> handleAsync(C command) {
-        return fetchEventsAsync(command)
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchEventsAsync(command))
                 .thenCompose(events ->
                         versionProviderAsync()
                                 .thenCompose(versionProvider -> {
                                     // Compute new events
-                                    List<E> newEvents = computeNewEvents(events.stream().map(Pair::first), command);
+                                    List<E> newEvents = computeNewEvents(events.stream().map(Pair::first), events.size(), command);
                                     // Call async save with the version provider function
-                                    return saveAsync(newEvents, versionProvider);
+                                    return probe.stop(Phase.SAVE, probe.start(), saveAsync(newEvents, versionProvider));
                                 })
-                );
+                ));
     }
 
 
-    private List<E> computeNewEvents(Stream<E> oldEvents, C command) {
-        var currentState = oldEvents.sequential().reduce(initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+    private List<E> computeNewEvents(Stream<E> oldEvents, int oldEventsCount, C command) {
+        var foldStart = probe.start();
+        // a monoidal decider folds long histories in parallel
+        var currentState = decider instanceof IMonoidalDecider<C, S, E> monoidal
+                ? monoidal.fold(oldEvents, oldEventsCount)
+                : oldEvents.sequential().reduce(initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stopFold(oldEventsCount, foldStart);
+        var decideStart = probe.start();
         AtomicReference<List<E>> resultingEvents = new AtomicReference<>(decide().apply(command, currentState));
+        probe.stop(Phase.DECIDE, decideStart);
         resultingEvents.get().stream()
-                .flatMap(it -> react().apply(it).stream())
+                .flatMap(it -> reactOn(it).stream())
                 .forEach(c -> {
-                    var newEvents = computeNewEvents(Stream.concat(fetchEvents(c).stream().map(Pair::first), resultingEvents.get().stream()), c);
-                    resultingEvents.set(Stream.concat(resultingEvents.get().stream(), newEvents.stream()).toList());
+                    var fetchStart = probe.start();
+                    var events = fetchEvents(c);
+                    probe.stop(Phase.FETCH, fetchStart);
+                    var newEvents = computeNewEvents(Stream.concat(events.stream().map(Pair::first), resultingEvents.get().stream()), events.size() + resultingEvents.get().size(), c);
+                    resultingEvents.set(Rope.concat(resultingEvents.get(), newEvents));
                 });
         return resultingEvents.get();
     }
 
+    private List<C> reactOn(E event) {
+        var reactStart = probe.start();
+        var commands = react().apply(event);
+        probe.stop(Phase.REACT, reactStart);
+        return commands;
+    }
+
 
 }
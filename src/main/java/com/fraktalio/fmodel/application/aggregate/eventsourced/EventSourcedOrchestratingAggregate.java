@@ -1,9 +1,14 @@
 package com.fraktalio.fmodel.application.aggregate.eventsourced;
 
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
+import com.fraktalio.fmodel.domain.collections.Rope;
 import com.fraktalio.fmodel.domain.decider.IDecider;
+import com.fraktalio.fmodel.domain.decider.IMonoidalDecider;
 import com.fraktalio.fmodel.domain.saga.ISaga;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
@@ -17,6 +22,7 @@ import java.util.stream.Stream;
  * <br /><br />
  * Event sourcing orchestrating aggregate is using/delegating a `decider` to handle commands and produce events.
  * In order to handle the command, aggregate needs to fetch the current state (represented as a list of events) via `IEventRepository.fetchEvents` function, and then delegate the command to the `decider` which can produce new event(s) as a result.
+ * If the `decider` declares the event types it consumes ({@link IDecider#eventTypes()}), only the events of these types are fetched.
  * If the `decider` is combined out of many deciders via `combine` function, an optional `saga` of type {@code ISaga} could be used to react on new events and send new commands to the 'decider` recursively, in single transaction.
  * Produced events are then stored via `IEventRepository.save` method.
  *
@@ -27,14 +33,20 @@ import java.util.stream.Stream;
  */
 public final class EventSourcedOrchestratingAggregate<C, S, E> implements IDecider<C, S, E>, ISaga<E, C>, IEventRepository<C, E> {
     public EventSourcedOrchestratingAggregate(final IDecider<C, S, E> decider, final ISaga<E, C> saga, final IEventRepository<C, E> repository) {
+        this(decider, saga, repository, IProbe.NOOP);
+    }
+
+    public EventSourcedOrchestratingAggregate(final IDecider<C, S, E> decider, final ISaga<E, C> saga, final IEventRepository<C, E> repository, final IProbe probe) {
         this.decider = decider;
         this.saga = saga;
         this.repository = repository;
+        this.probe = probe;
     }
 
     private final IDecider<C, S, E> decider;
     private final ISaga<E, C> saga;
     private final IEventRepository<C, E> repository;
+    private final IProbe probe;
 
     @Override
     public BiFunction<C, S, List<E>> decide() {
@@ -51,6 +63,11 @@ public final class EventSourcedOrchestratingAggregate<C, S, E> implements IDecid
         return decider.initialState();
     }
 
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
     @Override
     public Function<E, List<C>> react() {
         return saga.react();
@@ -62,6 +79,16 @@ public final class EventSourcedOrchestratingAggregate<C, S, E> implements IDecid
         return repository.fetchEvents(command);
     }
 
+    @Override
+    public List<E> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEvents(command, eventTypes);
+    }
+
+    @Override
+    public CompletableFuture<List<E>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEventsAsync(command, eventTypes);
+    }
+
     @Override
     public List<E> save(List<E> events) {
         return repository.save(events);
@@ -74,7 +101,16 @@ public final class EventSourcedOrchestratingAggregate<C, S, E> implements IDecid
      * @return new events being stored
      */
     public List<E> handle(C command) {
-        return save(computeNewEvents(fetchEvents(command).stream(), command));
+        var handleStart = probe.start();
+        var fetchStart = probe.start();
+        var events = fetchEvents(command, eventTypes());
+        probe.stop(Phase.FETCH, fetchStart);
+        var newEvents = computeNewEvents(events.stream(), events.size(), command);
+        var saveStart = probe.start();
+        var savedEvents = save(newEvents);
+        probe.stop(Phase.SAVE, saveStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedEvents;
     }
 
     /**
@@ -84,21 +120,39 @@ public final class EventSourcedOrchestratingAggregate<C, S, E> implements IDecid
      * @return new events being stored
      */
     public CompletableFuture<List<E>> handleAsync(C command) {
-        return fetchEventsAsync(command)
-                .thenApply(events -> computeNewEvents(events.stream(), command))
-                .thenCompose(this::saveAsync);
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchEventsAsync(command, eventTypes()))
+                .thenApply(events -> computeNewEvents(events.stream(), events.size(), command))
+                .thenCompose(newEvents -> probe.stop(Phase.SAVE, probe.start(), saveAsync(newEvents))));
     }
 
-    private List<E> computeNewEvents(Stream<E> oldEvents, C command) {
-        var currentState = oldEvents.sequential().reduce(initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+    private List<E> computeNewEvents(Stream<E> oldEvents, int oldEventsCount, C command) {
+        var foldStart = probe.start();
+        // a monoidal decider folds long histories in parallel
+        var currentState = decider instanceof IMonoidalDecider<C, S, E> monoidal
+                ? monoidal.fold(oldEvents, oldEventsCount)
+                : oldEvents.sequential().reduce(initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stopFold(oldEventsCount, foldStart);
+        var decideStart = probe.start();
         AtomicReference<List<E>> resultingEvents = new AtomicReference<>(decide().apply(command, currentState));
+        probe.stop(Phase.DECIDE, decideStart);
         resultingEvents.get().stream()
-                .flatMap(it -> react().apply(it).stream())
+                .flatMap(it -> reactOn(it).stream())
                 .forEach(c -> {
-                    var newEvents = computeNewEvents(Stream.concat(fetchEvents(c).stream(), resultingEvents.get().stream()), c);
-                    resultingEvents.set(Stream.concat(resultingEvents.get().stream(), newEvents.stream()).toList());
+                    var fetchStart = probe.start();
+                    var events = fetchEvents(c, eventTypes());
+                    probe.stop(Phase.FETCH, fetchStart);
+                    var newEvents = computeNewEvents(Stream.concat(events.stream(), resultingEvents.get().stream()), events.size() + resultingEvents.get().size(), c);
+                    resultingEvents.set(Rope.concat(resultingEvents.get(), newEvents));
                 });
         return resultingEvents.get();
     }
 
+    private List<C> reactOn(E event) {
+        var reactStart = probe.start();
+        var commands = react().apply(event);
+        probe.stop(Phase.REACT, reactStart);
+        return commands;
+    }
+
 }
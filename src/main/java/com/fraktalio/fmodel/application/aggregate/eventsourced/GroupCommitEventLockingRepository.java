@@ -0,0 +1,100 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.groupcommit.GroupCommitter;
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Group commit decorator of the {@link IEventLockingBatchRepository}.
+ * <br /><br />
+ * Concurrent saves with an explicit expected version are gathered into batches by a {@link GroupCommitter},
+ * and every batch is written by a single {@link IEventLockingBatchRepository#saveAll} call.
+ * A version conflict fails only the save it belongs to.
+ * Saves with a version provider, and fetches, are delegated as they are.
+ *
+ * @param <C> command
+ * @param <E> event
+ * @param <V> version / sequence number
+ */
+public final class GroupCommitEventLockingRepository<C, E, V> implements IEventLockingRepository<C, E, V>, AutoCloseable {
+    public GroupCommitEventLockingRepository(final IEventLockingBatchRepository<C, E, V> repository) {
+        this(repository, GroupCommitter.DEFAULT_MAX_BATCH_SIZE, GroupCommitter.DEFAULT_MAX_DELAY);
+    }
+
+    public GroupCommitEventLockingRepository(final IEventLockingBatchRepository<C, E, V> repository, final int maxBatchSize, final Duration maxDelay) {
+        this.repository = repository;
+        this.committer = new GroupCommitter<>(repository::saveAll, maxBatchSize, maxDelay, Thread.ofPlatform().daemon().name("fmodel-group-commit-", 0).factory());
+    }
+
+    private final IEventLockingBatchRepository<C, E, V> repository;
+    private final GroupCommitter<Pair<List<E>, V>, List<Pair<E, V>>> committer;
+
+    @Override
+    public List<Pair<E, V>> fetchEvents(C command) {
+        return repository.fetchEvents(command);
+    }
+
+    @Override
+    public List<Pair<E, V>> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEvents(command, eventTypes);
+    }
+
+    @Override
+    public List<Pair<E, V>> fetchEventsAfter(C command, V version) {
+        return repository.fetchEventsAfter(command, version);
+    }
+
+    @Override
+    public Optional<StreamMetadata<V>> fetchStreamMetadata(C command) {
+        return repository.fetchStreamMetadata(command);
+    }
+
+    @Override
+    public List<Pair<E, V>> save(List<E> events, Function<E, V> versionProvider) {
+        return repository.save(events, versionProvider);
+    }
+
+    @Override
+    public List<Pair<E, V>> save(List<E> events, V version) {
+        return GroupCommitter.await(saveAsync(events, version));
+    }
+
+    @Override
+    public Function<E, V> versionProvider() {
+        return repository.versionProvider();
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAsync(C command) {
+        return repository.fetchEventsAsync(command);
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEventsAsync(command, eventTypes);
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAfterAsync(C command, V version) {
+        return repository.fetchEventsAfterAsync(command, version);
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> saveAsync(List<E> events, V version) {
+        return committer.submit(new Pair<>(events, version));
+    }
+
+    /**
+     * Writes all the pending saves, and stops the group commit thread
+     */
+    @Override
+    public void close() {
+        committer.close();
+    }
+}
@@ -0,0 +1,69 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.groupcommit.GroupCommitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Group commit decorator of the {@link IEventBatchRepository}.
+ * <br /><br />
+ * Concurrent saves are gathered into batches by a {@link GroupCommitter}, and every batch is written by a single {@link IEventBatchRepository#saveAll} call.
+ * Fetches are delegated as they are.
+ *
+ * @param <C> command
+ * @param <E> event
+ */
+public final class GroupCommitEventRepository<C, E> implements IEventRepository<C, E>, AutoCloseable {
+    public GroupCommitEventRepository(final IEventBatchRepository<C, E> repository) {
+        this(repository, GroupCommitter.DEFAULT_MAX_BATCH_SIZE, GroupCommitter.DEFAULT_MAX_DELAY);
+    }
+
+    public GroupCommitEventRepository(final IEventBatchRepository<C, E> repository, final int maxBatchSize, final Duration maxDelay) {
+        this.repository = repository;
+        this.committer = new GroupCommitter<>(repository::saveAll, maxBatchSize, maxDelay, Thread.ofPlatform().daemon().name("fmodel-group-commit-", 0).factory());
+    }
+
+    private final IEventBatchRepository<C, E> repository;
+    private final GroupCommitter<List<E>, List<E>> committer;
+
+    @Override
+    public List<E> fetchEvents(C command) {
+        return repository.fetchEvents(command);
+    }
+
+    @Override
+    public List<E> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEvents(command, eventTypes);
+    }
+
+    @Override
+    public List<E> save(List<E> events) {
+        return GroupCommitter.await(saveAsync(events));
+    }
+
+    @Override
+    public CompletableFuture<List<E>> fetchEventsAsync(C command) {
+        return repository.fetchEventsAsync(command);
+    }
+
+    @Override
+    public CompletableFuture<List<E>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEventsAsync(command, eventTypes);
+    }
+
+    @Override
+    public CompletableFuture<List<E>> saveAsync(List<E> events) {
+        return committer.submit(events);
+    }
+
+    /**
+     * Writes all the pending saves, and stops the group commit thread
+     */
+    @Override
+    public void close() {
+        committer.close();
+    }
+}
@@ -0,0 +1,36 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Async-first event locking repository interface, for the non-blocking drivers.
+ * <br /><br />
+ * Unlike the async variants of the {@link IEventLockingRepository}, there is no blocking method to wrap: an implementation returns its stages directly,
+ * and no thread is blocked while waiting for the storage.
+ * A class can implement both interfaces by returning {@link java.util.concurrent.CompletableFuture}s.
+ *
+ * @param <C> command
+ * @param <E> event
+ * @param <V> version
+ */
+public interface IAsyncEventLockingRepository<C, E, V> {
+    /**
+     * Fetch Events by command
+     *
+     * @param command command
+     * @return list of Events with Version
+     */
+    CompletionStage<List<Pair<E, V>>> fetchEventsAsync(C command);
+
+    /**
+     * Save Events, if the stream is still at the given version
+     *
+     * @param events  events
+     * @param version the latest version of the stream, {@code null} for a new stream
+     * @return list of already saved events with Version, or a stage failed with the {@link com.fraktalio.fmodel.application.OptimisticLockingException}
+     */
+    CompletionStage<List<Pair<E, V>>> saveAsync(List<E> events, V version);
+}
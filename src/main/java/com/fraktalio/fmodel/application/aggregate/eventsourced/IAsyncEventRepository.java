@@ -0,0 +1,48 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Async-first event repository interface, for the non-blocking drivers.
+ * <br /><br />
+ * Unlike the async variants of the {@link IEventRepository}, there is no blocking method to wrap: an implementation returns its stages directly,
+ * and no thread is blocked while waiting for the storage.
+ * A class can implement both interfaces by returning {@link java.util.concurrent.CompletableFuture}s.
+ *
+ * @param <C> command
+ * @param <E> event
+ */
+public interface IAsyncEventRepository<C, E> {
+    /**
+     * Fetch Events by command
+     *
+     * @param command command
+     * @return list of Events
+     */
+    CompletionStage<List<E>> fetchEventsAsync(C command);
+
+    /**
+     * Fetch Events of the given types only, by command
+     * <br /><br />
+     * The default implementation filters the fetched events. Override it to push the filter down to the storage.
+     *
+     * @param command    command
+     * @param eventTypes types of the events to fetch, an empty set meaning all the events
+     * @return list of Events, of the given types only
+     */
+    default CompletionStage<List<E>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return fetchEventsAsync(command).thenApply(events -> eventTypes.isEmpty()
+                ? events
+                : events.stream().filter(event -> eventTypes.stream().anyMatch(type -> type.isInstance(event))).toList());
+    }
+
+    /**
+     * Save Events
+     *
+     * @param events events
+     * @return list of already saved events
+     */
+    CompletionStage<List<E>> saveAsync(List<E> events);
+}
@@ -0,0 +1,31 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.groupcommit.PendingWrite;
+
+import java.util.List;
+
+/**
+ * Event repository that can save many, independent lists of events in a single (batched) call of the backend.
+ * <br /><br />
+ * The default implementation saves the writes one by one. Override it to issue one batched backend call.
+ * Every write must be completed individually, with its saved events or with its own failure.
+ *
+ * @param <C> command
+ * @param <E> event
+ */
+public interface IEventBatchRepository<C, E> extends IEventRepository<C, E> {
+    /**
+     * Save the events of all the writes
+     *
+     * @param writes writes, each with the events to save
+     */
+    default void saveAll(List<? extends PendingWrite<List<E>, List<E>>> writes) {
+        for (var write : writes) {
+            try {
+                write.complete(save(write.input()));
+            } catch (RuntimeException e) {
+                write.fail(e);
+            }
+        }
+    }
+}
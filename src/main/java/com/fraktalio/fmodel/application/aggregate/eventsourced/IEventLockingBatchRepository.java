@@ -0,0 +1,34 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.groupcommit.PendingWrite;
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.List;
+
+/**
+ * Event locking repository that can save many, independent lists of events in a single (batched) call of the backend.
+ * <br /><br />
+ * The input of a write is the pair of events and the expected version of their stream.
+ * The default implementation saves the writes one by one. Override it to issue one batched backend call.
+ * Every write must be completed individually, with its saved events or with its own failure (for example, a version conflict).
+ *
+ * @param <C> command
+ * @param <E> event
+ * @param <V> version / sequence number
+ */
+public interface IEventLockingBatchRepository<C, E, V> extends IEventLockingRepository<C, E, V> {
+    /**
+     * Save the events of all the writes
+     *
+     * @param writes writes, each with the events to save and the expected version
+     */
+    default void saveAll(List<? extends PendingWrite<Pair<List<E>, V>, List<Pair<E, V>>>> writes) {
+        for (var write : writes) {
+            try {
+                write.complete(save(write.input().first(), write.input().second()));
+            } catch (RuntimeException e) {
+                write.fail(e);
+            }
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.fraktalio.fmodel.application.aggregate.eventsourced;
 import com.fraktalio.fmodel.domain.Pair;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
@@ -28,6 +30,56 @@ public interface IEventLockingRepository<C, E, V> {
      */
     List<Pair<E, V>> fetchEvents(C command);
 
+    /**
+     * Fetch Events of the given types only, by Command
+     * <br /><br />
+     * The default implementation filters the fetched events. Override it to push the filter down to the storage,
+     * so the events of the other types are neither fetched nor decoded.
+     * Mind that the last fetched version is not the version of the stream any more, if the last event of the stream is filtered out.
+     *
+     * @param command    command
+     * @param eventTypes types of the events to fetch, an empty set meaning all the events
+     * @return list of Event and Sequence/Version, of the given types only
+     */
+    default List<Pair<E, V>> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        var events = fetchEvents(command);
+        return eventTypes.isEmpty() ? events : events.stream().filter(event -> eventTypes.stream().anyMatch(type -> type.isInstance(event.first()))).toList();
+    }
+
+    /**
+     * Fetch the Events after the given version, by Command - the events to fold on top of a snapshot
+     * <br /><br />
+     * The default implementation fetches all the events, and drops the ones up to (and including) the version.
+     * Override it to read the tail of the stream only.
+     *
+     * @param command command
+     * @param version the version of the last event that is not fetched
+     * @return list of Event and Sequence/Version after the given version, or {@code null} if the stream has no event of the given version
+     */
+    default List<Pair<E, V>> fetchEventsAfter(C command, V version) {
+        var events = fetchEvents(command);
+        for (var i = events.size() - 1; i >= 0; i--) {
+            if (events.get(i).second().equals(version)) {
+                return events.subList(i + 1, events.size());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fetch the metadata of the stream by Command: its last version, the number of its events and its latest snapshot, without loading the events
+     * <br /><br />
+     * Aggregates use it to tell a new stream (which needs no read at all) from a stream to read fully, or on top of a snapshot.
+     * The default implementation returns an empty {@code Optional}, meaning the metadata is not known without reading the events,
+     * so the aggregates fall back to a full read. Override it if the storage keeps the metadata of the streams.
+     *
+     * @param command command
+     * @return the metadata of the stream, or an empty {@code Optional} if it can not be read without loading the events
+     */
+    default Optional<StreamMetadata<V>> fetchStreamMetadata(C command) {
+        return Optional.empty();
+    }
+
     /**
      * Save Events
      *
@@ -59,6 +111,18 @@ public interface IEventLockingRepository<C, E, V> {
         return CompletableFuture.supplyAsync(() -> fetchEvents(command));
     }
 
+    default CompletableFuture<List<Pair<E, V>>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return CompletableFuture.supplyAsync(() -> fetchEvents(command, eventTypes));
+    }
+
+    default CompletableFuture<List<Pair<E, V>>> fetchEventsAfterAsync(C command, V version) {
+        return CompletableFuture.supplyAsync(() -> fetchEventsAfter(command, version));
+    }
+
+    default CompletableFuture<Optional<StreamMetadata<V>>> fetchStreamMetadataAsync(C command) {
+        return CompletableFuture.supplyAsync(() -> fetchStreamMetadata(command));
+    }
+
     default CompletableFuture<List<Pair<E, V>>> saveAsync(List<E> events, Function<E, V> versionProvider) {
         return CompletableFuture.supplyAsync(() -> save(events, versionProvider));
     }
@@ -1,6 +1,7 @@
 package com.fraktalio.fmodel.application.aggregate.eventsourced;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -19,6 +20,21 @@ public interface IEventRepository<C, E> {
      */
     List<E> fetchEvents(C command);
 
+    /**
+     * Fetch Events of the given types only, by command
+     * <br /><br />
+     * The default implementation filters the fetched events. Override it to push the filter down to the storage,
+     * so the events of the other types are neither fetched nor decoded.
+     *
+     * @param command    command
+     * @param eventTypes types of the events to fetch, an empty set meaning all the events
+     * @return list of Events, of the given types only
+     */
+    default List<E> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        var events = fetchEvents(command);
+        return eventTypes.isEmpty() ? events : events.stream().filter(event -> eventTypes.stream().anyMatch(type -> type.isInstance(event))).toList();
+    }
+
     /**
      * Save Events
      *
@@ -34,6 +50,10 @@ public interface IEventRepository<C, E> {
         return CompletableFuture.supplyAsync(() -> fetchEvents(command));
     }
 
+    default CompletableFuture<List<E>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return CompletableFuture.supplyAsync(() -> fetchEvents(command, eventTypes));
+    }
+
     default CompletableFuture<List<E>> saveAsync(List<E> events) {
         return CompletableFuture.supplyAsync(() -> save(events));
     }
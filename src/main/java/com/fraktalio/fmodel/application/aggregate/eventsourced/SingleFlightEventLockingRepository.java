@@ -0,0 +1,126 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.singleflight.SingleFlight;
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Single flight decorator of the {@link IEventLockingRepository}.
+ * <br /><br />
+ * Concurrent fetches of the same stream (key) and of the same event types share a single backend call and its result, see {@link SingleFlight}.
+ * A save invalidates the fetches in flight of all the streams it writes to, so a fetch arriving after the save reads the saved events (and the new version).
+ * Callers sharing a fetch also share the version they save against, so at most one of their concurrent saves succeeds - as without the decorator.
+ * The fetched list is shared by all the callers, and must not be modified.
+ *
+ * @param <C> command
+ * @param <E> event
+ * @param <V> version / sequence number
+ * @param <K> key / identifier of the stream
+ */
+public final class SingleFlightEventLockingRepository<C, E, V, K> implements IEventLockingRepository<C, E, V> {
+    public SingleFlightEventLockingRepository(final IEventLockingRepository<C, E, V> repository,
+                                              final Function<? super C, ? extends K> commandKey,
+                                              final Function<? super E, ? extends K> eventKey) {
+        this.repository = Objects.requireNonNull(repository);
+        this.commandKey = Objects.requireNonNull(commandKey);
+        this.eventKey = Objects.requireNonNull(eventKey);
+    }
+
+    private final IEventLockingRepository<C, E, V> repository;
+    private final Function<? super C, ? extends K> commandKey;
+    private final Function<? super E, ? extends K> eventKey;
+    private final SingleFlight<K, List<Pair<E, V>>> fetches = new SingleFlight<>();
+
+    @Override
+    public List<Pair<E, V>> fetchEvents(C command) {
+        return fetches.execute(commandKey.apply(command), Set.of(), () -> repository.fetchEvents(command));
+    }
+
+    @Override
+    public List<Pair<E, V>> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        return fetches.execute(commandKey.apply(command), eventTypes, () -> repository.fetchEvents(command, eventTypes));
+    }
+
+    @Override
+    public List<Pair<E, V>> fetchEventsAfter(C command, V version) {
+        return repository.fetchEventsAfter(command, version);
+    }
+
+    @Override
+    public Optional<StreamMetadata<V>> fetchStreamMetadata(C command) {
+        return repository.fetchStreamMetadata(command);
+    }
+
+    @Override
+    public List<Pair<E, V>> save(List<E> events, Function<E, V> versionProvider) {
+        try {
+            return repository.save(events, versionProvider);
+        } finally {
+            invalidate(events);
+        }
+    }
+
+    @Override
+    public List<Pair<E, V>> save(List<E> events, V version) {
+        try {
+            return repository.save(events, version);
+        } finally {
+            invalidate(events);
+        }
+    }
+
+    @Override
+    public Function<E, V> versionProvider() {
+        return repository.versionProvider();
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAsync(C command) {
+        return fetches.executeAsync(commandKey.apply(command), Set.of(), () -> repository.fetchEventsAsync(command));
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return fetches.executeAsync(commandKey.apply(command), eventTypes, () -> repository.fetchEventsAsync(command, eventTypes));
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAfterAsync(C command, V version) {
+        return repository.fetchEventsAfterAsync(command, version);
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> saveAsync(List<E> events, Function<E, V> versionProvider) {
+        return repository.saveAsync(events, versionProvider).whenComplete((saved, failure) -> invalidate(events));
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> saveAsync(List<E> events, V version) {
+        return repository.saveAsync(events, version).whenComplete((saved, failure) -> invalidate(events));
+    }
+
+    @Override
+    public CompletableFuture<Function<E, V>> versionProviderAsync() {
+        return repository.versionProviderAsync();
+    }
+
+    /**
+     * @return the number of fetches that shared the backend call of another fetch
+     */
+    public long sharedFetches() {
+        return fetches.shared();
+    }
+
+    private void invalidate(List<E> events) {
+        for (var event : events) {
+            // the fetches of all the event types of the stream
+            fetches.invalidate(eventKey.apply(event));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.singleflight.SingleFlight;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Single flight decorator of the {@link IEventRepository}.
+ * <br /><br />
+ * Concurrent fetches of the same stream (key) and of the same event types share a single backend call and its result, see {@link SingleFlight}.
+ * A save invalidates the fetches in flight of all the streams it writes to, so a fetch arriving after the save reads the saved events.
+ * The fetched list is shared by all the callers, and must not be modified.
+ *
+ * @param <C> command
+ * @param <E> event
+ * @param <K> key / identifier of the stream
+ */
+public final class SingleFlightEventRepository<C, E, K> implements IEventRepository<C, E> {
+    public SingleFlightEventRepository(final IEventRepository<C, E> repository,
+                                       final Function<? super C, ? extends K> commandKey,
+                                       final Function<? super E, ? extends K> eventKey) {
+        this.repository = Objects.requireNonNull(repository);
+        this.commandKey = Objects.requireNonNull(commandKey);
+        this.eventKey = Objects.requireNonNull(eventKey);
+    }
+
+    private final IEventRepository<C, E> repository;
+    private final Function<? super C, ? extends K> commandKey;
+    private final Function<? super E, ? extends K> eventKey;
+    private final SingleFlight<K, List<E>> fetches = new SingleFlight<>();
+
+    @Override
+    public List<E> fetchEvents(C command) {
+        return fetches.execute(commandKey.apply(command), Set.of(), () -> repository.fetchEvents(command));
+    }
+
+    @Override
+    public List<E> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        return fetches.execute(commandKey.apply(command), eventTypes, () -> repository.fetchEvents(command, eventTypes));
+    }
+
+    @Override
+    public List<E> save(List<E> events) {
+        try {
+            return repository.save(events);
+        } finally {
+            invalidate(events);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<E>> fetchEventsAsync(C command) {
+        return fetches.executeAsync(commandKey.apply(command), Set.of(), () -> repository.fetchEventsAsync(command));
+    }
+
+    @Override
+    public CompletableFuture<List<E>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return fetches.executeAsync(commandKey.apply(command), eventTypes, () -> repository.fetchEventsAsync(command, eventTypes));
+    }
+
+    @Override
+    public CompletableFuture<List<E>> saveAsync(List<E> events) {
+        return repository.saveAsync(events).whenComplete((saved, failure) -> invalidate(events));
+    }
+
+    /**
+     * @return the number of fetches that shared the backend call of another fetch
+     */
+    public long sharedFetches() {
+        return fetches.shared();
+    }
+
+    private void invalidate(List<E> events) {
+        for (var event : events) {
+            // the fetches of all the event types of the stream
+            fetches.invalidate(eventKey.apply(event));
+        }
+    }
+}
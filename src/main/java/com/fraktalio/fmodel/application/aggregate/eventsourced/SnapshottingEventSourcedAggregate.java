@@ -0,0 +1,428 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.ISnapshotPolicy;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.ISnapshotRepository;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.Snapshot;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.SnapshotCandidate;
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.LatencyHistogram;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
+import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.decider.IDecider;
+import com.fraktalio.fmodel.domain.decider.IMonoidalDecider;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Snapshotting Event sourcing aggregate - a locking event sourcing aggregate, that folds the events on top of the latest snapshot of the stream.
+ * <br /><br />
+ * {@code SnapshottingEventSourcedAggregate} implements {@link IDecider} and {@link IEventLockingRepository} interfaces,
+ * clearly communicating that it is composed out of these two behaviours.
+ * <br /><br />
+ * To handle the command, the aggregate fetches the snapshot of the stream from the {@link ISnapshotRepository}, and only the events after it ({@link IEventLockingRepository#fetchEventsAfter}).
+ * A stream without a usable snapshot is folded from the start. After the new events are saved, the {@link ISnapshotPolicy} decides whether a new snapshot is taken.
+ * The metadata of the stream ({@link IEventLockingRepository#fetchStreamMetadata}), if the repository keeps it, saves the reads that are not needed:
+ * a new stream is neither read nor looked up in the snapshots, a stream with no events after its snapshot is not read,
+ * and the snapshot of a stream is not read if the snapshot pointer of the metadata says there is none.
+ * The aggregate fills the pointer from the snapshots ({@link ISnapshotRepository#fetchSnapshotVersion}), unless the repository keeps it.
+ * Snapshots are an optimization only: a snapshot that can not be fetched or saved never fails the command.
+ * Use a {@link com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.BackgroundSnapshotRepository} to write the snapshots off the command path.
+ * <br /><br />
+ * The hit ratio of the snapshots (the commands on the new streams count as neither hits nor misses), and their staleness (the number of the events folded on top of a snapshot, and its age) are exposed.
+ *
+ * @param <C> command type(s) that this aggregate can handle
+ * @param <S> aggregate state type
+ * @param <E> event type(s) that this aggregate can publish/store
+ * @param <V> version type
+ * @param <K> key / identifier of the event stream
+ */
+public final class SnapshottingEventSourcedAggregate<C, S, E, V, K> implements IDecider<C, S, E>, IEventLockingRepository<C, E, V> {
+    /**
+     * The streams tracked since their last snapshot (for the reads and the time since the snapshot) at most; all of them are forgotten over the limit
+     */
+    public static final int MAX_TRACKED_STREAMS = 100_000;
+
+    public SnapshottingEventSourcedAggregate(final IDecider<C, S, E> decider,
+                                             final IEventLockingRepository<C, E, V> repository,
+                                             final ISnapshotRepository<K, S, V> snapshots,
+                                             final Function<? super C, ? extends K> streamKey,
+                                             final ISnapshotPolicy<S> policy) {
+        this(decider, repository, snapshots, streamKey, policy, IProbe.NOOP, Clock.systemUTC());
+    }
+
+    public SnapshottingEventSourcedAggregate(final IDecider<C, S, E> decider,
+                                             final IEventLockingRepository<C, E, V> repository,
+                                             final ISnapshotRepository<K, S, V> snapshots,
+                                             final Function<? super C, ? extends K> streamKey,
+                                             final ISnapshotPolicy<S> policy,
+                                             final IProbe probe,
+                                             final Clock clock) {
+        this.decider = decider;
+        this.repository = repository;
+        this.snapshots = Objects.requireNonNull(snapshots);
+        this.streamKey = Objects.requireNonNull(streamKey);
+        this.policy = Objects.requireNonNull(policy);
+        this.probe = probe;
+        this.clock = Objects.requireNonNull(clock);
+    }
+
+    private final IDecider<C, S, E> decider;
+    private final IEventLockingRepository<C, E, V> repository;
+    private final ISnapshotRepository<K, S, V> snapshots;
+    private final Function<? super C, ? extends K> streamKey;
+    private final ISnapshotPolicy<S> policy;
+    private final IProbe probe;
+    private final Clock clock;
+    private final ConcurrentHashMap<K, Tracker> trackers = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder taken = new LongAdder();
+    private final LatencyHistogram staleness = new LatencyHistogram();
+    private final LatencyHistogram age = new LatencyHistogram();
+
+    /**
+     * The reads of a stream since its last snapshot, and the (epoch millis) time of the first one
+     */
+    private record Tracker(AtomicLong reads, long since) {
+    }
+
+    @Override
+    public BiFunction<C, S, List<E>> decide() {
+        return decider.decide();
+    }
+
+    @Override
+    public BiFunction<S, E, S> evolve() {
+        return decider.evolve();
+    }
+
+    @Override
+    public Supplier<S> initialState() {
+        return decider.initialState();
+    }
+
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
+    @Override
+    public List<Pair<E, V>> fetchEvents(C command) {
+        return repository.fetchEvents(command);
+    }
+
+    @Override
+    public List<Pair<E, V>> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEvents(command, eventTypes);
+    }
+
+    @Override
+    public List<Pair<E, V>> fetchEventsAfter(C command, V version) {
+        return repository.fetchEventsAfter(command, version);
+    }
+
+    /**
+     * The metadata of the repository, pointing to the latest snapshot of the stream
+     */
+    @Override
+    public Optional<StreamMetadata<V>> fetchStreamMetadata(C command) {
+        return repository.fetchStreamMetadata(command).map(metadata -> withSnapshotVersion(metadata, command));
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAsync(C command) {
+        return repository.fetchEventsAsync(command);
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAsync(C command, Set<Class<? extends E>> eventTypes) {
+        return repository.fetchEventsAsync(command, eventTypes);
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> fetchEventsAfterAsync(C command, V version) {
+        return repository.fetchEventsAfterAsync(command, version);
+    }
+
+    @Override
+    public CompletableFuture<Optional<StreamMetadata<V>>> fetchStreamMetadataAsync(C command) {
+        return repository.fetchStreamMetadataAsync(command).thenApply(metadata -> metadata.map(it -> withSnapshotVersion(it, command)));
+    }
+
+    @Override
+    public List<Pair<E, V>> save(List<E> events, Function<E, V> versionProvider) {
+        return repository.save(events, versionProvider);
+    }
+
+    @Override
+    public List<Pair<E, V>> save(List<E> events, V version) {
+        return repository.save(events, version);
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> saveAsync(List<E> events, Function<E, V> versionProvider) {
+        return repository.saveAsync(events, versionProvider);
+    }
+
+    @Override
+    public CompletableFuture<List<Pair<E, V>>> saveAsync(List<E> events, V version) {
+        return repository.saveAsync(events, version);
+    }
+
+    @Override
+    public Function<E, V> versionProvider() {
+        return repository.versionProvider();
+    }
+
+    /**
+     * Handle the command and store/produce new events
+     *
+     * @param command command to be handled
+     * @return new events being stored
+     */
+    public List<Pair<E, V>> handle(C command) {
+        var handleStart = probe.start();
+        K key = streamKey.apply(command);
+        var fetchStart = probe.start();
+        var metadata = fetchStreamMetadata(command);
+        Read<S, E, V> read;
+        if (isNew(metadata)) {
+            // a new stream has nothing to read, nor a snapshot
+            read = new Read<>(null, List.of());
+        } else {
+            var snapshot = fetchSnapshot(key, metadata);
+            read = read(snapshot, isCurrent(snapshot, metadata) ? List.of() : snapshot != null ? fetchEventsAfter(command, snapshot.version()) : null,
+                    () -> fetchEvents(command));
+        }
+        probe.stop(Phase.FETCH, fetchStart);
+
+        var decided = decide(command, read);
+        var saveStart = probe.start();
+        List<Pair<E, V>> savedEvents;
+        try {
+            savedEvents = save(decided.newEvents(), read.version());
+        } catch (OptimisticLockingException e) {
+            probe.conflict();
+            throw e;
+        }
+        probe.stop(Phase.SAVE, saveStart);
+        snapshotAfterSave(key, read, decided, savedEvents);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedEvents;
+    }
+
+    /**
+     * Handle the command and store/produce new events, asynchronously
+     * <br /><br />
+     * The metadata, the snapshot and the events after it are fetched in turn, the same way as {@link #handle(Object)} does.
+     *
+     * @param command command to be handled
+     * @return new events being stored
+     */
+    public CompletableFuture<List<Pair<E, V>>> handleAsync(C command) {
+        var handleStart = probe.start();
+        K key = streamKey.apply(command);
+        var fetch = fetchStreamMetadataAsync(command).thenCompose(metadata -> {
+            if (isNew(metadata)) {
+                return CompletableFuture.completedFuture(new Read<S, E, V>(null, List.of()));
+            }
+            var snapshot = fetchSnapshot(key, metadata);
+            var tail = isCurrent(snapshot, metadata) ? CompletableFuture.completedFuture(List.<Pair<E, V>>of())
+                    : snapshot != null ? fetchEventsAfterAsync(command, snapshot.version())
+                    : CompletableFuture.<List<Pair<E, V>>>completedFuture(null);
+            return tail.thenCompose(events -> events != null ? CompletableFuture.completedFuture(read(snapshot, events, null))
+                    : fetchEventsAsync(command).thenApply(all -> read(null, null, () -> all)));
+        });
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetch)
+                .thenCompose(read -> {
+                    var decided = decide(command, read);
+                    return probe.stop(Phase.SAVE, probe.start(), saveAsync(decided.newEvents(), read.version()))
+                            .thenApply(savedEvents -> {
+                                snapshotAfterSave(key, read, decided, savedEvents);
+                                return savedEvents;
+                            });
+                }));
+    }
+
+    /**
+     * @return the number of the commands handled on top of a snapshot
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of the commands handled without a snapshot, folding the whole stream
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the ratio of the commands handled on top of a snapshot, or zero if no command is handled
+     */
+    public double hitRatio() {
+        var hits = hits();
+        var total = hits + misses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the number of the snapshots taken (and saved)
+     */
+    public long taken() {
+        return taken.sum();
+    }
+
+    /**
+     * @return the distribution of the number of the events folded on top of a snapshot
+     */
+    public LatencyHistogram.Snapshot staleness() {
+        return staleness.snapshot();
+    }
+
+    /**
+     * @return the distribution of the age of the used snapshots, in nanoseconds
+     */
+    public LatencyHistogram.Snapshot age() {
+        return age.snapshot();
+    }
+
+    /**
+     * The snapshot a command is handled on top of ({@code null} if none), and the events after it
+     */
+    private record Read<S, E, V>(Snapshot<S, V> snapshot, List<Pair<E, V>> events) {
+        /**
+         * @return the version to save against: of the last event, of the snapshot, or {@code null} for a new stream
+         */
+        V version() {
+            return !events.isEmpty() ? events.getLast().second() : snapshot != null ? snapshot.version() : null;
+        }
+    }
+
+    /**
+     * The state decided on, the new events, and the time the fold took
+     */
+    private record Decided<S, E>(S state, List<E> newEvents, Duration foldTime) {
+    }
+
+    private static boolean isNew(Optional<? extends StreamMetadata<?>> metadata) {
+        return metadata.map(StreamMetadata::isNew).orElse(false);
+    }
+
+    /**
+     * @return whether the stream has no events after the snapshot, as far as the metadata knows
+     */
+    private static boolean isCurrent(Snapshot<?, ?> snapshot, Optional<? extends StreamMetadata<?>> metadata) {
+        return snapshot != null && metadata.isPresent() && Objects.equals(metadata.get().lastVersion(), snapshot.version());
+    }
+
+    /**
+     * Counts the read as a hit, or as a miss if there are no events after the snapshot ({@code null}), reading the whole stream
+     *
+     * @param snapshot the snapshot, or {@code null} if none
+     * @param events   the events after the snapshot, or {@code null} if they can not be read on top of it
+     * @param all      the whole stream, read on a miss
+     */
+    private Read<S, E, V> read(Snapshot<S, V> snapshot, List<Pair<E, V>> events, Supplier<List<Pair<E, V>>> all) {
+        if (events == null) {
+            // no snapshot, or a snapshot of a version the stream does not have
+            misses.increment();
+            return new Read<>(null, all.get());
+        }
+        hits.increment();
+        staleness.record(events.size());
+        age.record(Duration.between(snapshot.takenAt(), clock.instant()).toNanos());
+        return new Read<>(snapshot, events);
+    }
+
+    private Decided<S, E> decide(C command, Read<S, E, V> read) {
+        var events = read.events();
+        var foldStart = probe.start();
+        var foldNanos = System.nanoTime();
+        var start = read.snapshot() != null ? read.snapshot().state() : null;
+        // a monoidal decider folds long tails in parallel
+        var currentState = decider instanceof IMonoidalDecider<C, S, E> monoidal
+                ? monoidal.fold(start, events.stream().map(Pair::first), events.size())
+                : events.stream().map(Pair::first).reduce(start != null ? start : initialState().get(), (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        var foldTime = Duration.ofNanos(System.nanoTime() - foldNanos);
+        probe.stopFold(events.size(), foldStart);
+        var decideStart = probe.start();
+        var newEvents = decide().apply(command, currentState);
+        probe.stop(Phase.DECIDE, decideStart);
+        return new Decided<>(currentState, newEvents, foldTime);
+    }
+
+    private void snapshotAfterSave(K key, Read<S, E, V> read, Decided<S, E> decided, List<Pair<E, V>> savedEvents) {
+        var events = read.events();
+        var lastVersion = !savedEvents.isEmpty() ? savedEvents.getLast().second() : !events.isEmpty() ? events.getLast().second() : null;
+        if (lastVersion != null && events.size() + savedEvents.size() > 0) {
+            var newState = decided.state();
+            for (var event : decided.newEvents()) {
+                newState = evolve().apply(newState, event);
+            }
+            snapshotIfDue(key, read.snapshot(), newState, lastVersion, events.size() + savedEvents.size(), decided.foldTime());
+        }
+    }
+
+    /**
+     * @return the metadata pointing to the latest snapshot: the pointer of the repository, if it keeps one, or the version of the snapshots
+     */
+    private StreamMetadata<V> withSnapshotVersion(StreamMetadata<V> metadata, C command) {
+        if (metadata.isNew() || metadata.snapshotVersion() != null) {
+            return metadata;
+        }
+        try {
+            return metadata.withSnapshotVersion(snapshots.fetchSnapshotVersion(streamKey.apply(command)));
+        } catch (RuntimeException e) {
+            // as if there was no snapshot: the stream is read fully
+            return metadata;
+        }
+    }
+
+    /**
+     * @return the snapshot of the stream, or {@code null} if none; a stream the metadata knows no snapshot of is not looked up
+     */
+    private Snapshot<S, V> fetchSnapshot(K key, Optional<StreamMetadata<V>> metadata) {
+        if (metadata.isPresent() && metadata.get().snapshotVersion() == null) {
+            return null;
+        }
+        try {
+            return snapshots.fetchSnapshot(key);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void snapshotIfDue(K key, Snapshot<S, V> snapshot, S newState, V version, long eventsSinceSnapshot, Duration foldTime) {
+        var now = clock.millis();
+        if (trackers.size() > MAX_TRACKED_STREAMS) {
+            trackers.clear();
+        }
+        var tracker = trackers.computeIfAbsent(key, k -> new Tracker(new AtomicLong(), snapshot != null ? snapshot.takenAt().toEpochMilli() : now));
+        var candidate = new SnapshotCandidate<>(newState, eventsSinceSnapshot, tracker.reads().incrementAndGet(), Duration.ofMillis(now - tracker.since()), foldTime);
+        if (!policy.shouldSnapshot(candidate)) {
+            return;
+        }
+        try {
+            snapshots.saveSnapshot(key, new Snapshot<>(newState, version, clock.instant()));
+            taken.increment();
+            trackers.remove(key, tracker);
+        } catch (RuntimeException e) {
+            // the next command on the stream tries again
+        }
+    }
+}
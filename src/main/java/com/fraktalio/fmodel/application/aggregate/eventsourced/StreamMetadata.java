@@ -0,0 +1,34 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+/**
+ * Metadata of an event stream, read without loading its events
+ *
+ * @param lastVersion     the version of the last event of the stream, or {@code null} if the stream is new (has no events)
+ * @param eventCount      the number of the events of the stream
+ * @param snapshotVersion the version of the latest snapshot of the stream known to the storage, or {@code null} if there is none
+ * @param <V>             version / sequence number
+ */
+public record StreamMetadata<V>(V lastVersion, long eventCount, V snapshotVersion) {
+
+    /**
+     * @return the metadata of a new stream, without events
+     */
+    public static <V> StreamMetadata<V> empty() {
+        return new StreamMetadata<>(null, 0, null);
+    }
+
+    /**
+     * @param snapshotVersion the version of the latest snapshot of the stream
+     * @return the same metadata, pointing to the given snapshot
+     */
+    public StreamMetadata<V> withSnapshotVersion(V snapshotVersion) {
+        return new StreamMetadata<>(lastVersion, eventCount, snapshotVersion);
+    }
+
+    /**
+     * @return {@code true} if the stream has no events yet
+     */
+    public boolean isNew() {
+        return eventCount == 0;
+    }
+}
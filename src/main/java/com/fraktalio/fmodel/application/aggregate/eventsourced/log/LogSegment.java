@@ -0,0 +1,166 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced.log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * A single, fixed size, memory-mapped file of the event log.
+ * <br /><br />
+ * Record layout (big endian):
+ * <pre>
+ * int   length      - number of bytes that follow the length field
+ * int   crc         - CRC32C of all bytes that follow the crc field
+ * long  version     - version / sequence number of the event within its stream
+ * long  type        - type tag of the event, so events can be filtered by type without being decoded
+ * byte  flags       - {@link #END_OF_BATCH} marks the last record of an atomically appended batch
+ * short streamLength
+ * byte[streamLength] stream identifier, UTF-8
+ * byte[] payload    - the encoded event
+ * </pre>
+ * A zero length marks the end of the written region, as mapped files are zero-filled.
+ */
+final class LogSegment {
+    static final int LENGTH_SIZE = Integer.BYTES;
+    static final int HEADER_SIZE = LENGTH_SIZE + Integer.BYTES + Long.BYTES + Long.BYTES + Byte.BYTES + Short.BYTES;
+    static final byte END_OF_BATCH = 1;
+
+    private static final int CRC_OFFSET = LENGTH_SIZE;
+    private static final int VERSION_OFFSET = CRC_OFFSET + Integer.BYTES;
+    private static final int TYPE_OFFSET = VERSION_OFFSET + Long.BYTES;
+    private static final int FLAGS_OFFSET = TYPE_OFFSET + Long.BYTES;
+    private static final int STREAM_LENGTH_OFFSET = FLAGS_OFFSET + Byte.BYTES;
+
+    private final int number;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+
+    private LogSegment(int number, Path path, MappedByteBuffer buffer) {
+        this.number = number;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    static LogSegment open(Path directory, int number, int size) {
+        var path = directory.resolve(fileName(number));
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var mappedSize = Math.max(size, (int) Math.min(Integer.MAX_VALUE, channel.size()));
+            return new LogSegment(number, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String fileName(int number) {
+        return "%020d.log".formatted(number);
+    }
+
+    static int recordSize(int streamLength, int payloadLength) {
+        return HEADER_SIZE + streamLength + payloadLength;
+    }
+
+    int number() {
+        return number;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Writes one record at the given offset. The caller guarantees that the record fits and that writes are not concurrent.
+     *
+     * @return the offset right after the written record
+     */
+    int write(int offset, long version, long type, byte flags, byte[] stream, ByteBuffer payload) {
+        var length = recordSize(stream.length, payload.remaining()) - LENGTH_SIZE;
+        buffer.putLong(offset + VERSION_OFFSET, version);
+        buffer.putLong(offset + TYPE_OFFSET, type);
+        buffer.put(offset + FLAGS_OFFSET, flags);
+        buffer.putShort(offset + STREAM_LENGTH_OFFSET, (short) stream.length);
+        buffer.put(offset + HEADER_SIZE, stream);
+        buffer.put(offset + HEADER_SIZE + stream.length, payload, payload.position(), payload.remaining());
+        buffer.putInt(offset + CRC_OFFSET, crc(offset, length));
+        // the length is written last, so a torn record is never mistaken for a complete one
+        buffer.putInt(offset, length);
+        return offset + LENGTH_SIZE + length;
+    }
+
+    /**
+     * @return the length of a valid record at the offset, or {@code -1} if there is no (intact) record there
+     */
+    int validRecordLength(int offset) {
+        if (offset + HEADER_SIZE > buffer.capacity()) {
+            return -1;
+        }
+        var length = buffer.getInt(offset);
+        if (length < HEADER_SIZE - LENGTH_SIZE || offset + LENGTH_SIZE + length > buffer.capacity()) {
+            return -1;
+        }
+        return crc(offset, length) == buffer.getInt(offset + CRC_OFFSET) ? length : -1;
+    }
+
+    /**
+     * @return the raw length field at the offset, {@code 0} meaning that nothing was ever written there
+     */
+    int rawLength(int offset) {
+        return offset + LENGTH_SIZE <= buffer.capacity() ? buffer.getInt(offset) : 0;
+    }
+
+    long version(int offset) {
+        return buffer.getLong(offset + VERSION_OFFSET);
+    }
+
+    long type(int offset) {
+        return buffer.getLong(offset + TYPE_OFFSET);
+    }
+
+    byte flags(int offset) {
+        return buffer.get(offset + FLAGS_OFFSET);
+    }
+
+    String stream(int offset) {
+        var streamLength = buffer.getShort(offset + STREAM_LENGTH_OFFSET);
+        var bytes = new byte[streamLength];
+        buffer.get(offset + HEADER_SIZE, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a read-only view of the record payload, sharing the mapped memory (no copy)
+     */
+    ByteBuffer payload(int offset) {
+        var length = buffer.getInt(offset);
+        var start = offset + HEADER_SIZE + buffer.getShort(offset + STREAM_LENGTH_OFFSET);
+        return buffer.slice(start, offset + LENGTH_SIZE + length - start).asReadOnlyBuffer();
+    }
+
+    void zero(int from) {
+        var zeros = new byte[4096];
+        for (var i = from; i < buffer.capacity(); i += zeros.length) {
+            buffer.put(i, zeros, 0, Math.min(zeros.length, buffer.capacity() - i));
+        }
+    }
+
+    void force(int from, int to) {
+        if (to > from) {
+            buffer.force(from, to - from);
+        }
+    }
+
+    private int crc(int offset, int length) {
+        var crc = new CRC32C();
+        crc.update(buffer.slice(offset + VERSION_OFFSET, length - Integer.BYTES));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,553 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced.log;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.IEventLockingBatchRepository;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.IEventLockingRepository;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.StreamMetadata;
+import com.fraktalio.fmodel.application.codec.BinaryWriter;
+import com.fraktalio.fmodel.application.codec.ICodec;
+import com.fraktalio.fmodel.application.groupcommit.PendingWrite;
+import com.fraktalio.fmodel.application.materializedview.replay.IEventSource;
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Embedded, file-backed implementation of the {@link IEventLockingRepository}, built on memory-mapped log segments.
+ * <br /><br />
+ * Events of all streams are appended to a single log, split into fixed size segments (files) which are rolled once full.
+ * Every stream keeps an in-memory offset index of its events, so reading a stream is a zero-copy walk over the mapped segments.
+ * Events are serialized by an {@link ICodec}. Fetched events are decoded lazily, at the moment the list element is accessed.
+ * Every record carries a type tag of its event (a hash of the class name), which is indexed as well:
+ * a fetch filtered by event types ({@link #fetchEvents(Object, Set)}) skips the events of other types without reading or decoding them.
+ * <br /><br />
+ * Appends are serialized by a single writer lock, and checked against the expected version of the stream (`optimistic locking`).
+ * Versions are per stream, starting with {@code 1}. An empty stream has a {@code null} version.
+ * Events of one save are appended atomically: on restart, the tail of the last segment is scanned and a torn or partially written batch is dropped.
+ * <br /><br />
+ * With `fsync` enabled, a save returns once its events are forced to the storage device.
+ * Concurrent saves are group committed: a single `force` makes all writes that happened up to that moment durable.
+ * With `fsync` disabled, a save returns as soon as the events are written to the page cache, and {@link #flush()} can be used to force them.
+ * A batch of saves ({@link #saveAll}) is appended under a single acquisition of the writer lock, and made durable with a single `force`.
+ * <br /><br />
+ * The whole log can be read in pages, in the append order of all the streams ({@link IEventSource}), for example to replay a view.
+ *
+ * @param <C> command
+ * @param <E> event
+ */
+public final class MappedEventLockingRepository<C, E> implements IEventLockingBatchRepository<C, E, Long>, IEventSource<E>, AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    public MappedEventLockingRepository(final Path directory,
+                                        final Function<? super C, String> commandStream,
+                                        final Function<? super E, String> eventStream,
+                                        final ICodec<E> codec) {
+        this(directory, commandStream, eventStream, codec, DEFAULT_SEGMENT_SIZE, true);
+    }
+
+    public MappedEventLockingRepository(final Path directory,
+                                        final Function<? super C, String> commandStream,
+                                        final Function<? super E, String> eventStream,
+                                        final Function<? super E, byte[]> encoder,
+                                        final Function<ByteBuffer, ? extends E> decoder) {
+        this(directory, commandStream, eventStream, ICodec.of(encoder, decoder), DEFAULT_SEGMENT_SIZE, true);
+    }
+
+    public MappedEventLockingRepository(final Path directory,
+                                        final Function<? super C, String> commandStream,
+                                        final Function<? super E, String> eventStream,
+                                        final ICodec<E> codec,
+                                        final int segmentSize,
+                                        final boolean fsync) {
+        if (segmentSize <= LogSegment.HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+        }
+        this.directory = Objects.requireNonNull(directory);
+        this.commandStream = Objects.requireNonNull(commandStream);
+        this.eventStream = Objects.requireNonNull(eventStream);
+        this.codec = Objects.requireNonNull(codec);
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        recover();
+    }
+
+    private final Path directory;
+    private final Function<? super C, String> commandStream;
+    private final Function<? super E, String> eventStream;
+    private final ICodec<E> codec;
+    private final int segmentSize;
+    private final boolean fsync;
+
+    private final ConcurrentHashMap<String, StreamIndex> streams = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Class<?>> typeByTag = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final BinaryWriter writer = new BinaryWriter(4096);
+    private volatile LogSegment[] segments;
+    private volatile long writtenPosition;
+    private volatile boolean closed;
+    private int writeOffset;
+
+    private final Object syncMonitor = new Object();
+    private long syncedPosition;
+    private boolean syncing;
+
+    private record Encoded(String stream, byte[] streamBytes, int from, int to, long version, long type, byte flags) {
+    }
+
+    private record Recovered(String stream, long position, long type, long version) {
+    }
+
+    private static final ClassValue<Long> TYPE_TAGS = new ClassValue<>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            // 64-bit FNV-1a, stable across runs (unlike the identity hash of the class)
+            var hash = 0xcbf29ce484222325L;
+            for (var b : type.getName().getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            return hash;
+        }
+    };
+
+    @Override
+    public List<Pair<E, Long>> fetchEvents(C command) {
+        var index = streams.get(commandStream.apply(command));
+        if (index == null) {
+            return List.of();
+        }
+        var snapshot = index.snapshot();
+        return new EventList(snapshot.positions(), snapshot.count(), segments);
+    }
+
+    /**
+     * Fetches the events of the given types only.
+     * The events are filtered by their indexed type tags, so the events of other types are never read nor decoded.
+     */
+    @Override
+    public List<Pair<E, Long>> fetchEvents(C command, Set<Class<? extends E>> eventTypes) {
+        var index = streams.get(commandStream.apply(command));
+        if (index == null || eventTypes.isEmpty()) {
+            return fetchEvents(command);
+        }
+        var snapshot = index.snapshot();
+        var segments = this.segments;
+        var matches = new HashMap<Long, Boolean>();
+        var positions = new long[snapshot.count()];
+        var count = 0;
+        for (var i = 0; i < snapshot.count(); i++) {
+            var position = snapshot.positions()[i];
+            var match = matches.computeIfAbsent(snapshot.types()[i], tag -> {
+                var type = typeOf(tag, position, segments);
+                return eventTypes.stream().anyMatch(t -> t.isAssignableFrom(type));
+            });
+            if (match) {
+                positions[count++] = position;
+            }
+        }
+        return new EventList(positions, count, segments);
+    }
+
+    /**
+     * Reads the tail of the stream only: the versions of a stream are contiguous, so the events after a version are found in the index directly.
+     */
+    @Override
+    public List<Pair<E, Long>> fetchEventsAfter(C command, Long version) {
+        var index = streams.get(commandStream.apply(command));
+        var snapshot = index != null ? index.snapshot() : StreamIndex.Snapshot.EMPTY;
+        if (version == null || version < 1 || version > snapshot.count()) {
+            return null;
+        }
+        // the event of the version is at the index (version - 1)
+        var from = version.intValue();
+        return new EventList(Arrays.copyOfRange(snapshot.positions(), from, snapshot.count()), snapshot.count() - from, segments);
+    }
+
+    /**
+     * The metadata is read from the in-memory index of the stream, in constant time. The log keeps no snapshots.
+     */
+    @Override
+    public Optional<StreamMetadata<Long>> fetchStreamMetadata(C command) {
+        var index = streams.get(commandStream.apply(command));
+        var snapshot = index != null ? index.snapshot() : StreamIndex.Snapshot.EMPTY;
+        return Optional.of(snapshot.count() > 0 ? new StreamMetadata<>(snapshot.lastVersion(), snapshot.count(), null) : StreamMetadata.empty());
+    }
+
+    /**
+     * Read on the calling thread: the metadata is in memory, a hop to another thread would cost more than the read
+     */
+    @Override
+    public CompletableFuture<Optional<StreamMetadata<Long>>> fetchStreamMetadataAsync(C command) {
+        return CompletableFuture.completedFuture(fetchStreamMetadata(command));
+    }
+
+    @Override
+    public List<Pair<E, Long>> save(List<E> events, Function<E, Long> versionProvider) {
+        var expected = new HashMap<String, Long>();
+        for (var event : events) {
+            // a null expectation (a new stream) is recorded, and checked, as well
+            var stream = eventStream.apply(event);
+            if (!expected.containsKey(stream)) {
+                expected.put(stream, versionProvider.apply(event));
+            }
+        }
+        return append(events, expected);
+    }
+
+    @Override
+    public List<Pair<E, Long>> save(List<E> events, Long version) {
+        return append(events, expectedVersions(events, version));
+    }
+
+    @Override
+    public void saveAll(List<? extends PendingWrite<Pair<List<E>, Long>, List<Pair<E, Long>>>> writes) {
+        var results = new ArrayList<List<Pair<E, Long>>>(writes.size());
+        long end;
+        writeLock.lock();
+        try {
+            for (var write : writes) {
+                try {
+                    var events = write.input().first();
+                    results.add(events.isEmpty() ? List.of() : appendLocked(events, expectedVersions(events, write.input().second())));
+                } catch (RuntimeException e) {
+                    results.add(null);
+                    write.fail(e);
+                }
+            }
+            end = writtenPosition;
+        } finally {
+            writeLock.unlock();
+        }
+        if (fsync) {
+            awaitDurable(end);
+        }
+        for (var i = 0; i < writes.size(); i++) {
+            if (results.get(i) != null) {
+                writes.get(i).complete(results.get(i));
+            }
+        }
+    }
+
+    /**
+     * Reads the events of all the streams, in the order they were appended. A position is the position of a record in the log.
+     */
+    @Override
+    public Page<E> fetchPage(long position, int limit) {
+        // the end is read before the segments, so the segment of the end is always mapped
+        var end = writtenPosition;
+        var segments = this.segments;
+        var events = new ArrayList<E>(Math.min(limit, 1024));
+        var segment = StreamIndex.segment(position);
+        var offset = StreamIndex.offset(position);
+        while (events.size() < limit && StreamIndex.position(segment, offset) < end) {
+            var length = segments[segment].rawLength(offset);
+            if (length == 0) {
+                // the unused tail of a rolled segment
+                segment++;
+                offset = 0;
+                continue;
+            }
+            events.add(codec.fromBytes(segments[segment].payload(offset)));
+            offset += LogSegment.LENGTH_SIZE + length;
+        }
+        return new Page<>(events, StreamIndex.position(segment, offset));
+    }
+
+    @Override
+    public Function<E, Long> versionProvider() {
+        return event -> lastVersion(eventStream.apply(event));
+    }
+
+    /**
+     * Forces all the events written so far to the storage device
+     */
+    public void flush() {
+        awaitDurable(writtenPosition);
+    }
+
+    /**
+     * Flushes the log and rejects all further saves.
+     * The memory mappings are released by the garbage collector.
+     */
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            closed = true;
+        } finally {
+            writeLock.unlock();
+        }
+        flush();
+    }
+
+    /**
+     * Resolves the class of a type tag. Tags written before a restart are resolved by decoding a single event of that type.
+     */
+    private Class<?> typeOf(long tag, long position, LogSegment[] segments) {
+        var type = typeByTag.get(tag);
+        if (type == null) {
+            var segment = segments[StreamIndex.segment(position)];
+            type = codec.fromBytes(segment.payload(StreamIndex.offset(position))).getClass();
+            typeByTag.putIfAbsent(tag, type);
+        }
+        return type;
+    }
+
+    private Long lastVersion(String stream) {
+        var index = streams.get(stream);
+        var snapshot = index != null ? index.snapshot() : StreamIndex.Snapshot.EMPTY;
+        return snapshot.count() > 0 ? snapshot.lastVersion() : null;
+    }
+
+    private HashMap<String, Long> expectedVersions(List<E> events, Long version) {
+        var expected = new HashMap<String, Long>();
+        for (var event : events) {
+            expected.put(eventStream.apply(event), version);
+        }
+        if (expected.size() > 1) {
+            throw new IllegalArgumentException("Events with a single expected version must belong to a single stream, but belong to " + expected.keySet());
+        }
+        return expected;
+    }
+
+    private List<Pair<E, Long>> append(List<E> events, HashMap<String, Long> expected) {
+        if (events.isEmpty()) {
+            return List.of();
+        }
+        List<Pair<E, Long>> result;
+        long end;
+        writeLock.lock();
+        try {
+            result = appendLocked(events, expected);
+            end = writtenPosition;
+        } finally {
+            writeLock.unlock();
+        }
+        if (fsync) {
+            awaitDurable(end);
+        }
+        return result;
+    }
+
+    /**
+     * Appends one batch of events, while holding the writer lock
+     */
+    private List<Pair<E, Long>> appendLocked(List<E> events, HashMap<String, Long> expected) {
+        var encoded = new ArrayList<Encoded>(events.size());
+        var result = new ArrayList<Pair<E, Long>>(events.size());
+        if (closed) {
+            throw new IllegalStateException("Event log is closed: " + directory);
+        }
+        var next = new HashMap<String, Long>();
+        expected.forEach((stream, version) -> {
+            var actual = lastVersion(stream);
+            if (!Objects.equals(version, actual)) {
+                throw new OptimisticLockingException(stream, version, actual);
+            }
+            next.put(stream, actual != null ? actual + 1 : 1L);
+        });
+        // all payloads of the batch are encoded one after another into the single, reused writer
+        writer.reset();
+        var batchSize = 0L;
+        for (var i = 0; i < events.size(); i++) {
+            var event = events.get(i);
+            var stream = eventStream.apply(event);
+            var version = next.merge(stream, 1L, Long::sum) - 1;
+            var streamBytes = stream.getBytes(StandardCharsets.UTF_8);
+            var type = TYPE_TAGS.get(event.getClass());
+            typeByTag.putIfAbsent(type, event.getClass());
+            var from = writer.position();
+            codec.encode(event, writer);
+            encoded.add(new Encoded(stream, streamBytes, from, writer.position(), version, type, i == events.size() - 1 ? LogSegment.END_OF_BATCH : 0));
+            result.add(new Pair<>(event, version));
+            batchSize += LogSegment.recordSize(streamBytes.length, writer.position() - from);
+        }
+        // a batch never spans two segments, so a torn batch can only be found at the tail of the last one
+        if (batchSize > segmentSize) {
+            throw new IllegalArgumentException("Batch of " + batchSize + " bytes does not fit into a segment of " + segmentSize + " bytes");
+        }
+        var segment = activeSegment();
+        if (writeOffset + batchSize > segment.capacity()) {
+            segment = roll(segment);
+        }
+        for (var record : encoded) {
+            var position = StreamIndex.position(segment.number(), writeOffset);
+            writeOffset = segment.write(writeOffset, record.version(), record.type(), record.flags(), record.streamBytes(), writer.buffer(record.from(), record.to()));
+            streams.computeIfAbsent(record.stream(), s -> new StreamIndex()).append(position, record.type(), record.version());
+        }
+        writtenPosition = StreamIndex.position(segment.number(), writeOffset);
+        return result;
+    }
+
+    private LogSegment activeSegment() {
+        var current = segments;
+        return current[current.length - 1];
+    }
+
+    private LogSegment roll(LogSegment full) {
+        full.force(0, writeOffset);
+        var next = LogSegment.open(directory, full.number() + 1, segmentSize);
+        var current = segments;
+        var rolled = Arrays.copyOf(current, current.length + 1);
+        rolled[current.length] = next;
+        segments = rolled;
+        writeOffset = 0;
+        return next;
+    }
+
+    /**
+     * Group commit: the first caller forces everything written so far, while the callers arriving in the meantime wait for it
+     */
+    private void awaitDurable(long position) {
+        var interrupted = false;
+        while (true) {
+            synchronized (syncMonitor) {
+                while (syncing && syncedPosition < position) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (syncedPosition >= position) {
+                    break;
+                }
+                syncing = true;
+            }
+            var target = writtenPosition;
+            var synced = target;
+            try {
+                var segment = activeSegment();
+                var from = 0;
+                synchronized (syncMonitor) {
+                    if (StreamIndex.segment(syncedPosition) == segment.number()) {
+                        from = StreamIndex.offset(syncedPosition);
+                    }
+                }
+                if (StreamIndex.segment(target) == segment.number()) {
+                    segment.force(from, StreamIndex.offset(target));
+                }
+            } catch (RuntimeException e) {
+                synced = -1;
+                throw e;
+            } finally {
+                synchronized (syncMonitor) {
+                    syncedPosition = Math.max(syncedPosition, synced);
+                    syncing = false;
+                    syncMonitor.notifyAll();
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recover() {
+        try {
+            Files.createDirectories(directory);
+            int[] numbers;
+            try (var files = Files.list(directory)) {
+                numbers = files.map(path -> path.getFileName().toString())
+                        .filter(name -> name.matches("\\d{20}\\.log"))
+                        .mapToInt(name -> Integer.parseInt(name.substring(0, 20)))
+                        .sorted()
+                        .toArray();
+            }
+            if (numbers.length == 0) {
+                numbers = new int[]{0};
+            }
+            var recovered = new LogSegment[numbers.length];
+            for (var i = 0; i < numbers.length; i++) {
+                if (numbers[i] != i) {
+                    throw new IllegalStateException("Missing log segment " + LogSegment.fileName(i) + " in " + directory);
+                }
+                recovered[i] = LogSegment.open(directory, i, segmentSize);
+                writeOffset = scan(recovered[i], i == numbers.length - 1);
+            }
+            segments = recovered;
+            writtenPosition = StreamIndex.position(numbers.length - 1, writeOffset);
+            syncedPosition = writtenPosition;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Indexes all the complete batches of the segment
+     *
+     * @return the offset right after the last complete batch
+     */
+    private int scan(LogSegment segment, boolean last) {
+        var pending = new ArrayList<Recovered>();
+        var offset = 0;
+        var committed = 0;
+        int length;
+        while ((length = segment.validRecordLength(offset)) >= 0) {
+            pending.add(new Recovered(segment.stream(offset), StreamIndex.position(segment.number(), offset), segment.type(offset), segment.version(offset)));
+            var flags = segment.flags(offset);
+            offset += LogSegment.LENGTH_SIZE + length;
+            if ((flags & LogSegment.END_OF_BATCH) != 0) {
+                pending.forEach(r -> streams.computeIfAbsent(r.stream(), s -> new StreamIndex()).append(r.position(), r.type(), r.version()));
+                pending.clear();
+                committed = offset;
+            }
+        }
+        var torn = !pending.isEmpty() || segment.rawLength(offset) != 0;
+        if (torn && !last) {
+            throw new IllegalStateException("Corrupted log segment " + segment.path() + " at offset " + offset);
+        }
+        if (torn) {
+            segment.zero(committed);
+            segment.force(committed, segment.capacity());
+        }
+        return committed;
+    }
+
+    /**
+     * A lazy, immutable view over the indexed (and possibly filtered) events of a stream.
+     * The payload of an event is decoded straight from the mapped segment, every time the element is accessed.
+     */
+    private final class EventList extends AbstractList<Pair<E, Long>> implements RandomAccess {
+        private final long[] positions;
+        private final int count;
+        private final LogSegment[] segments;
+
+        EventList(long[] positions, int count, LogSegment[] segments) {
+            this.positions = positions;
+            this.count = count;
+            this.segments = segments;
+        }
+
+        @Override
+        public Pair<E, Long> get(int index) {
+            Objects.checkIndex(index, count);
+            var position = positions[index];
+            var segment = segments[StreamIndex.segment(position)];
+            var offset = StreamIndex.offset(position);
+            return new Pair<>(codec.fromBytes(segment.payload(offset)), segment.version(offset));
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced.log;
+
+import java.util.Arrays;
+
+/**
+ * In-memory offset index of a single stream.
+ * <br /><br />
+ * Positions (and type tags) of events are appended by the (single) writer, while readers work on an immutable {@link Snapshot}.
+ * The arrays only grow by copying, so a snapshot stays valid for its whole lifetime.
+ */
+final class StreamIndex {
+    record Snapshot(long[] positions, long[] types, int count, long lastVersion) {
+        static final Snapshot EMPTY = new Snapshot(new long[0], new long[0], 0, 0L);
+    }
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Called by the writer only
+     */
+    void append(long position, long type, long version) {
+        var current = snapshot;
+        var positions = current.positions();
+        var types = current.types();
+        if (current.count() == positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(8, positions.length * 2));
+            types = Arrays.copyOf(types, positions.length);
+        }
+        positions[current.count()] = position;
+        types[current.count()] = type;
+        snapshot = new Snapshot(positions, types, current.count() + 1, version);
+    }
+
+    static long position(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    static int segment(long position) {
+        return (int) (position >>> 32);
+    }
+
+    static int offset(long position) {
+        return (int) position;
+    }
+}
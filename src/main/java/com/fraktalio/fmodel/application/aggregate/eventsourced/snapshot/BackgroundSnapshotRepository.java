@@ -0,0 +1,164 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous decorator of the {@link ISnapshotRepository}: the snapshots are written by a background thread, off the command path.
+ * <br /><br />
+ * A save only puts the snapshot into the pending set, and its stream into a bounded queue.
+ * Pending snapshots of the same stream are coalesced, and only the newest one is written.
+ * If the queue is full, the snapshot is dropped: a snapshot is an optimization, and dropping it only makes the next reads fold more events.
+ * A snapshot that failed to be written is dropped as well.
+ * <br /><br />
+ * A fetch returns the pending snapshot of the stream, if any, so a snapshot is used before it is written.
+ * {@link #close()} writes all the pending snapshots.
+ *
+ * @param <K> key / identifier of the event stream
+ * @param <S> state
+ * @param <V> version / sequence number
+ */
+public final class BackgroundSnapshotRepository<K, S, V> implements ISnapshotRepository<K, S, V>, AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 10_000;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    public BackgroundSnapshotRepository(final ISnapshotRepository<K, S, V> repository) {
+        this(repository, DEFAULT_CAPACITY, Thread.ofPlatform().daemon().name("fmodel-snapshot-writer-", 0).factory());
+    }
+
+    public BackgroundSnapshotRepository(final ISnapshotRepository<K, S, V> repository, final int capacity, final ThreadFactory threadFactory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.repository = Objects.requireNonNull(repository);
+        this.keys = new ArrayBlockingQueue<>(capacity);
+        this.writer = threadFactory.newThread(this::run);
+        this.writer.start();
+    }
+
+    private final ISnapshotRepository<K, S, V> repository;
+    private final ArrayBlockingQueue<K> keys;
+    private final ConcurrentHashMap<K, Snapshot<S, V>> pending = new ConcurrentHashMap<>();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    @Override
+    public Snapshot<S, V> fetchSnapshot(K key) {
+        var current = pending.get(key);
+        return current != null ? current : repository.fetchSnapshot(key);
+    }
+
+    @Override
+    public V fetchSnapshotVersion(K key) {
+        var current = pending.get(key);
+        return current != null ? current.version() : repository.fetchSnapshotVersion(key);
+    }
+
+    @Override
+    public void saveSnapshot(K key, Snapshot<S, V> snapshot) {
+        if (closed) {
+            dropped.increment();
+            return;
+        }
+        if (pending.put(key, snapshot) != null) {
+            // the stream is queued already
+            coalesced.increment();
+            return;
+        }
+        if (!keys.offer(key)) {
+            // the newer snapshots saved concurrently are dropped with it: a pending snapshot always has its stream queued
+            pending.remove(key);
+            dropped.increment();
+        }
+    }
+
+    /**
+     * @return the number of the streams with a snapshot not written yet
+     */
+    public int pending() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of the snapshots written to the underlying repository
+     */
+    public long written() {
+        return written.sum();
+    }
+
+    /**
+     * @return the number of the snapshots replaced by a newer snapshot of the same stream, before they were written
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of the snapshots dropped, as the queue was full (or the repository closed)
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of the snapshots that failed to be written
+     */
+    public long failures() {
+        return failures.sum();
+    }
+
+    /**
+     * Writes all the pending snapshots, and stops the background thread
+     */
+    @Override
+    public void close() {
+        closed = true;
+        var interrupted = false;
+        while (true) {
+            try {
+                writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            K key;
+            try {
+                key = keys.poll(POLL_NANOS, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (key == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            var snapshot = pending.remove(key);
+            if (snapshot == null) {
+                continue;
+            }
+            try {
+                repository.saveSnapshot(key, snapshot);
+                written.increment();
+            } catch (RuntimeException e) {
+                failures.increment();
+            }
+        }
+    }
+}
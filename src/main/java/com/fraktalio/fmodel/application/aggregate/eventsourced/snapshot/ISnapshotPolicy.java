@@ -0,0 +1,81 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot;
+
+import java.time.Duration;
+import java.util.function.ToLongFunction;
+
+/**
+ * Snapshot policy - decides, after a command is handled, whether a new snapshot of the stream is taken.
+ * <br /><br />
+ * Every snapshot is a write: a policy trades the writes of the snapshots for the events folded on the reads.
+ * The policies are combined with {@link #or} and {@link #and}, for example {@code everyEvents(100).or(foldTimeAbove(Duration.ofMillis(5)))}.
+ *
+ * @param <S> state
+ */
+@FunctionalInterface
+public interface ISnapshotPolicy<S> {
+
+    /**
+     * @param candidate the stream after the handled command
+     * @return true, if a new snapshot of the stream is taken
+     */
+    boolean shouldSnapshot(SnapshotCandidate<? extends S> candidate);
+
+    default ISnapshotPolicy<S> or(ISnapshotPolicy<S> other) {
+        return candidate -> shouldSnapshot(candidate) || other.shouldSnapshot(candidate);
+    }
+
+    default ISnapshotPolicy<S> and(ISnapshotPolicy<S> other) {
+        return candidate -> shouldSnapshot(candidate) && other.shouldSnapshot(candidate);
+    }
+
+    /**
+     * @return the policy never taking a snapshot
+     */
+    static <S> ISnapshotPolicy<S> never() {
+        return candidate -> false;
+    }
+
+    /**
+     * @param events the number of the events
+     * @return the policy taking a snapshot once the stream has {@code events} events after its last snapshot
+     */
+    static <S> ISnapshotPolicy<S> everyEvents(long events) {
+        return candidate -> candidate.eventsSinceSnapshot() >= events;
+    }
+
+    /**
+     * @param interval the time between the snapshots of a stream
+     * @return the policy taking a snapshot of a stream at most once per {@code interval}
+     */
+    static <S> ISnapshotPolicy<S> every(Duration interval) {
+        return candidate -> candidate.sinceSnapshot().compareTo(interval) >= 0;
+    }
+
+    /**
+     * @param foldTime the fold time
+     * @return the policy taking a snapshot once folding the events of a stream takes longer than {@code foldTime}
+     */
+    static <S> ISnapshotPolicy<S> foldTimeAbove(Duration foldTime) {
+        return candidate -> candidate.foldTime().compareTo(foldTime) > 0;
+    }
+
+    /**
+     * @param bytes  the size of the state
+     * @param sizeOf the (estimated) size of a state, in bytes, for example the length of its encoded form
+     * @return the policy taking a snapshot of the states larger than {@code bytes}, the ones that are the most expensive to fold
+     */
+    static <S> ISnapshotPolicy<S> stateSizeAbove(long bytes, ToLongFunction<? super S> sizeOf) {
+        return candidate -> sizeOf.applyAsLong(candidate.state()) > bytes;
+    }
+
+    /**
+     * Adapts to the read frequency of a stream: every command handled since the last snapshot folded (at most) {@code eventsSinceSnapshot} events that a snapshot would have saved.
+     * A stream is snapshotted once these folds add up to {@code foldedEvents}, so the hot streams are snapshotted often, and the cold ones rarely (or never).
+     *
+     * @param foldedEvents the number of the events folded in vain, per snapshot
+     * @return the adaptive policy
+     */
+    static <S> ISnapshotPolicy<S> adaptive(long foldedEvents) {
+        return candidate -> candidate.readsSinceSnapshot() * candidate.eventsSinceSnapshot() >= foldedEvents;
+    }
+}
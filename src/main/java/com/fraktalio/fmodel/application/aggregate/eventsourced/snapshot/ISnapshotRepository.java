@@ -0,0 +1,42 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot;
+
+/**
+ * Snapshot repository interface.
+ * <br /><br />
+ * The snapshots are an optimization only: a missing (or an older) snapshot makes the aggregate fold more events, never a different state.
+ *
+ * @param <K> key / identifier of the event stream
+ * @param <S> state
+ * @param <V> version / sequence number
+ */
+public interface ISnapshotRepository<K, S, V> {
+    /**
+     * Fetch the latest snapshot of the stream
+     *
+     * @param key the stream
+     * @return the snapshot, or {@code null} if the stream has no snapshot
+     */
+    Snapshot<S, V> fetchSnapshot(K key);
+
+    /**
+     * Fetch the version of the latest snapshot of the stream, without its state - the snapshot pointer of the {@link com.fraktalio.fmodel.application.aggregate.eventsourced.StreamMetadata}
+     * <br /><br />
+     * The aggregates read the state of a snapshot only if the stream has one. The default implementation fetches the snapshot.
+     * Override it if the versions are cheaper to read than the states (for example, an index of the versions).
+     *
+     * @param key the stream
+     * @return the version of the snapshot, or {@code null} if the stream has no snapshot
+     */
+    default V fetchSnapshotVersion(K key) {
+        var snapshot = fetchSnapshot(key);
+        return snapshot != null ? snapshot.version() : null;
+    }
+
+    /**
+     * Save the snapshot of the stream, replacing the previous one
+     *
+     * @param key      the stream
+     * @param snapshot the snapshot
+     */
+    void saveSnapshot(K key, Snapshot<S, V> snapshot);
+}
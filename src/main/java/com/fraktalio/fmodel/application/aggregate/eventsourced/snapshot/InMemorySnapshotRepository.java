@@ -0,0 +1,31 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory {@link ISnapshotRepository}, for the tests and the caches of the snapshots
+ *
+ * @param <K> key / identifier of the event stream
+ * @param <S> state
+ * @param <V> version / sequence number
+ */
+public final class InMemorySnapshotRepository<K, S, V> implements ISnapshotRepository<K, S, V> {
+    private final ConcurrentHashMap<K, Snapshot<S, V>> snapshots = new ConcurrentHashMap<>();
+
+    @Override
+    public Snapshot<S, V> fetchSnapshot(K key) {
+        return snapshots.get(key);
+    }
+
+    @Override
+    public void saveSnapshot(K key, Snapshot<S, V> snapshot) {
+        snapshots.put(key, snapshot);
+    }
+
+    /**
+     * @return the number of the streams with a snapshot
+     */
+    public int size() {
+        return snapshots.size();
+    }
+}
@@ -0,0 +1,15 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot;
+
+import java.time.Instant;
+
+/**
+ * Snapshot of the state of an event stream: the state folded from the events up to (and including) the `version`
+ *
+ * @param state   the state
+ * @param version the version of the last event folded into the state
+ * @param takenAt the time the snapshot was taken
+ * @param <S>     state
+ * @param <V>     version / sequence number
+ */
+public record Snapshot<S, V>(S state, V version, Instant takenAt) {
+}
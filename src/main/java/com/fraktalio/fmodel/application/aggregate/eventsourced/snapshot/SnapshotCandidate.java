@@ -0,0 +1,16 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot;
+
+import java.time.Duration;
+
+/**
+ * The state of an event stream after a handled command, as seen by an {@link ISnapshotPolicy}
+ *
+ * @param state               the new state of the stream
+ * @param eventsSinceSnapshot the number of the events of the stream after its last snapshot (or all the events, if it has no snapshot), including the new ones
+ * @param readsSinceSnapshot  the number of the commands handled on the stream since its last snapshot, including this one
+ * @param sinceSnapshot       the time since the last snapshot of the stream (or since the first command observed, if it has no snapshot)
+ * @param foldTime            the time to fold the events of this command
+ * @param <S>                 state
+ */
+public record SnapshotCandidate<S>(S state, long eventsSinceSnapshot, long readsSinceSnapshot, Duration sinceSnapshot, Duration foldTime) {
+}
@@ -0,0 +1,92 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
+import com.fraktalio.fmodel.domain.decider.IDecider;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * {@code AsyncStateStoredAggregate} implements {@link IDecider} and {@link IAsyncStateRepository} interfaces,
+ * clearly communicating that it is composed out of these two behaviours.
+ * <br /><br />
+ * It is the non-blocking variant of the {@link StateStoredAggregate}: the command is handled by composing the stages of the repository.
+ * The aggregate never schedules a task itself, so the new state is computed by the thread that completes the fetch, and no thread is blocked in the chain.
+ *
+ * @param <C> command type(s) that this aggregate can handle
+ * @param <S> aggregate state type
+ * @param <E> event type(s) that this aggregate can use internally
+ */
+public final class AsyncStateStoredAggregate<C, S, E> implements IDecider<C, S, E>, IAsyncStateRepository<C, S> {
+    public AsyncStateStoredAggregate(final IDecider<C, S, E> decider, final IAsyncStateRepository<C, S> repository) {
+        this(decider, repository, IProbe.NOOP);
+    }
+
+    public AsyncStateStoredAggregate(final IDecider<C, S, E> decider, final IAsyncStateRepository<C, S> repository, final IProbe probe) {
+        this.decider = decider;
+        this.repository = repository;
+        this.probe = probe;
+    }
+
+    private final IDecider<C, S, E> decider;
+    private final IAsyncStateRepository<C, S> repository;
+    private final IProbe probe;
+
+    @Override
+    public CompletionStage<S> fetchStateAsync(C command) {
+        return repository.fetchStateAsync(command);
+    }
+
+    @Override
+    public CompletionStage<S> saveAsync(S newState) {
+        return repository.saveAsync(newState);
+    }
+
+    @Override
+    public BiFunction<C, S, List<E>> decide() {
+        return decider.decide();
+    }
+
+    @Override
+    public BiFunction<S, E, S> evolve() {
+        return decider.evolve();
+    }
+
+    @Override
+    public Supplier<S> initialState() {
+        return decider.initialState();
+    }
+
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
+    /**
+     * Handle the command and store/produce new state
+     *
+     * @param command the command to handle
+     * @return the newly stored state
+     */
+    public CompletionStage<S> handleAsync(C command) {
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchStateAsync(command))
+                .thenApply(state -> computeNewState(state, command))
+                .thenCompose(newState -> probe.stop(Phase.SAVE, probe.start(), saveAsync(newState))));
+    }
+
+    private S computeNewState(S state, C command) {
+        var currentState = state != null ? state : initialState().get();
+        var decideStart = probe.start();
+        var events = decide().apply(command, currentState);
+        probe.stop(Phase.DECIDE, decideStart);
+        var evolveStart = probe.start();
+        var newState = events.stream().reduce(currentState, (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stop(Phase.EVOLVE, evolveStart);
+        return newState;
+    }
+}
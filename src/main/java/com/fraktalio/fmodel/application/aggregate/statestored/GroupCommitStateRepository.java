@@ -0,0 +1,57 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import com.fraktalio.fmodel.application.groupcommit.GroupCommitter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Group commit decorator of the {@link IStateBatchRepository}.
+ * <br /><br />
+ * Concurrent saves are gathered into batches by a {@link GroupCommitter}, and every batch is written by a single {@link IStateBatchRepository#saveAll} call.
+ * Fetches are delegated as they are.
+ *
+ * @param <C> command
+ * @param <S> state
+ */
+public final class GroupCommitStateRepository<C, S> implements IStateRepository<C, S>, AutoCloseable {
+    public GroupCommitStateRepository(final IStateBatchRepository<C, S> repository) {
+        this(repository, GroupCommitter.DEFAULT_MAX_BATCH_SIZE, GroupCommitter.DEFAULT_MAX_DELAY);
+    }
+
+    public GroupCommitStateRepository(final IStateBatchRepository<C, S> repository, final int maxBatchSize, final Duration maxDelay) {
+        this.repository = repository;
+        this.committer = new GroupCommitter<>(repository::saveAll, maxBatchSize, maxDelay, Thread.ofPlatform().daemon().name("fmodel-group-commit-", 0).factory());
+    }
+
+    private final IStateBatchRepository<C, S> repository;
+    private final GroupCommitter<S, S> committer;
+
+    @Override
+    public S fetchState(C command) {
+        return repository.fetchState(command);
+    }
+
+    @Override
+    public S save(S newState) {
+        return GroupCommitter.await(saveAsync(newState));
+    }
+
+    @Override
+    public CompletableFuture<S> fetchStateAsync(C command) {
+        return repository.fetchStateAsync(command);
+    }
+
+    @Override
+    public CompletableFuture<S> saveAsync(S newState) {
+        return committer.submit(newState);
+    }
+
+    /**
+     * Writes all the pending saves, and stops the group commit thread
+     */
+    @Override
+    public void close() {
+        committer.close();
+    }
+}
@@ -0,0 +1,31 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Async-first state locking repository interface, for the non-blocking drivers.
+ * <br /><br />
+ * Unlike the async variants of the {@link IStateLockingRepository}, there is no blocking method to wrap: an implementation returns its stages directly,
+ * and no thread is blocked while waiting for the storage.
+ * A class can implement both interfaces by returning {@link java.util.concurrent.CompletableFuture}s.
+ *
+ * @param <C> command
+ * @param <S> state
+ * @param <V> version
+ */
+public interface IAsyncStateLockingRepository<C, S, V> {
+    /**
+     * @param command command
+     * @return the State with Version
+     */
+    CompletionStage<Pair<S, V>> fetchStateAsync(C command);
+
+    /**
+     * @param currentStateVersion the version of the state the new state is computed from
+     * @param newState            new state
+     * @return newly stored State with Version, or a stage failed with the {@link com.fraktalio.fmodel.application.OptimisticLockingException}
+     */
+    CompletionStage<Pair<S, V>> saveAsync(V currentStateVersion, S newState);
+}
@@ -0,0 +1,27 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Async-first state repository interface, for the non-blocking drivers.
+ * <br /><br />
+ * Unlike the async variants of the {@link IStateRepository}, there is no blocking method to wrap: an implementation returns its stages directly,
+ * and no thread is blocked while waiting for the storage.
+ * A class can implement both interfaces by returning {@link java.util.concurrent.CompletableFuture}s.
+ *
+ * @param <C> command
+ * @param <S> state
+ */
+public interface IAsyncStateRepository<C, S> {
+    /**
+     * @param command command
+     * @return the State, {@code null} if there is none yet
+     */
+    CompletionStage<S> fetchStateAsync(C command);
+
+    /**
+     * @param newState new state
+     * @return newly stored State
+     */
+    CompletionStage<S> saveAsync(S newState);
+}
@@ -0,0 +1,31 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import com.fraktalio.fmodel.application.groupcommit.PendingWrite;
+
+import java.util.List;
+
+/**
+ * State repository that can save many states in a single (batched) call of the backend.
+ * <br /><br />
+ * The default implementation saves the states one by one. Override it to issue one batched backend call.
+ * Every write must be completed individually, with its stored state or with its own failure.
+ *
+ * @param <C> command
+ * @param <S> state
+ */
+public interface IStateBatchRepository<C, S> extends IStateRepository<C, S> {
+    /**
+     * Save the states of all the writes
+     *
+     * @param writes writes, each with the state to save
+     */
+    default void saveAll(List<? extends PendingWrite<S, S>> writes) {
+        for (var write : writes) {
+            try {
+                write.complete(save(write.input()));
+            } catch (RuntimeException e) {
+                write.fail(e);
+            }
+        }
+    }
+}
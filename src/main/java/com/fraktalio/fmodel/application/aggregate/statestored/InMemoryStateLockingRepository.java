@@ -0,0 +1,70 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * In-memory, thread-safe implementation of the {@link IStateLockingRepository} and of the {@link IAsyncStateLockingRepository}.
+ * <br /><br />
+ * Every key owns a single {@link AtomicReference} to an immutable {@code (state, version)} pair.
+ * A save is a lock-free compare-and-set of that pair: it succeeds only if the stored version is still the one the caller has fetched,
+ * otherwise {@link OptimisticLockingException} is thrown.
+ * Versions start with {@code 1} for the first stored state. A state that was never stored is fetched as {@code (null, null)}.
+ *
+ * @param <C> command
+ * @param <S> state
+ * @param <K> key / identifier of the state
+ */
+public final class InMemoryStateLockingRepository<C, S, K> implements IStateLockingRepository<C, S, Long>, IAsyncStateLockingRepository<C, S, Long> {
+    public InMemoryStateLockingRepository(final Function<? super C, ? extends K> commandKey, final Function<? super S, ? extends K> stateKey) {
+        this.commandKey = Objects.requireNonNull(commandKey);
+        this.stateKey = Objects.requireNonNull(stateKey);
+    }
+
+    private final Function<? super C, ? extends K> commandKey;
+    private final Function<? super S, ? extends K> stateKey;
+    private final ConcurrentHashMap<K, AtomicReference<Pair<S, Long>>> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public Pair<S, Long> fetchState(C command) {
+        var entry = entries.get(commandKey.apply(command));
+        var current = entry != null ? entry.get() : null;
+        return current != null ? current : new Pair<>(null, null);
+    }
+
+    @Override
+    public Pair<S, Long> save(Long currentStateVersion, S newState) {
+        var key = stateKey.apply(newState);
+        var entry = entries.computeIfAbsent(key, k -> new AtomicReference<>());
+        var current = entry.get();
+        var actualVersion = current != null ? current.second() : null;
+        if (!Objects.equals(actualVersion, currentStateVersion)) {
+            throw new OptimisticLockingException(key, currentStateVersion, actualVersion);
+        }
+        var next = new Pair<>(newState, actualVersion != null ? actualVersion + 1 : 1L);
+        if (!entry.compareAndSet(current, next)) {
+            throw new OptimisticLockingException(key, currentStateVersion, entry.get().second());
+        }
+        return next;
+    }
+
+    @Override
+    public CompletableFuture<Pair<S, Long>> fetchStateAsync(C command) {
+        return CompletableFuture.completedFuture(fetchState(command));
+    }
+
+    @Override
+    public CompletableFuture<Pair<S, Long>> saveAsync(Long currentStateVersion, S newState) {
+        try {
+            return CompletableFuture.completedFuture(save(currentStateVersion, newState));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * In-memory, thread-safe implementation of the {@link IStateRepository} and of the {@link IAsyncStateRepository}.
+ * <br /><br />
+ * States are kept in a {@link ConcurrentHashMap}, keyed by the value that `commandKey` extracts from the command and `stateKey` extracts from the state.
+ * Both extractors must agree: the key of a command has to be equal to the key of the state that this command targets.
+ * Useful as a per-node cache of hot state and in tests.
+ *
+ * @param <C> command
+ * @param <S> state
+ * @param <K> key / identifier of the state
+ */
+public final class InMemoryStateRepository<C, S, K> implements IStateRepository<C, S>, IAsyncStateRepository<C, S> {
+    public InMemoryStateRepository(final Function<? super C, ? extends K> commandKey, final Function<? super S, ? extends K> stateKey) {
+        this.commandKey = Objects.requireNonNull(commandKey);
+        this.stateKey = Objects.requireNonNull(stateKey);
+    }
+
+    private final Function<? super C, ? extends K> commandKey;
+    private final Function<? super S, ? extends K> stateKey;
+    private final ConcurrentHashMap<K, S> states = new ConcurrentHashMap<>();
+
+    @Override
+    public S fetchState(C command) {
+        return states.get(commandKey.apply(command));
+    }
+
+    @Override
+    public S save(S newState) {
+        states.put(stateKey.apply(newState), newState);
+        return newState;
+    }
+
+    @Override
+    public CompletableFuture<S> fetchStateAsync(C command) {
+        return CompletableFuture.completedFuture(fetchState(command));
+    }
+
+    @Override
+    public CompletableFuture<S> saveAsync(S newState) {
+        return CompletableFuture.completedFuture(save(newState));
+    }
+}
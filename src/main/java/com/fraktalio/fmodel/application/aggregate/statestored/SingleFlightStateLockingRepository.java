@@ -0,0 +1,66 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import com.fraktalio.fmodel.application.singleflight.SingleFlight;
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Single flight decorator of the {@link IStateLockingRepository}.
+ * <br /><br />
+ * Concurrent fetches of the same state (key) share a single backend call and its result, see {@link SingleFlight}.
+ * A save invalidates the fetch in flight of its key, so a fetch arriving after the save reads the saved state (and the new version).
+ * Callers sharing a fetch also share the version they save against, so at most one of their concurrent saves succeeds - as without the decorator.
+ *
+ * @param <C> command
+ * @param <S> state
+ * @param <V> version
+ * @param <K> key / identifier of the state
+ */
+public final class SingleFlightStateLockingRepository<C, S, V, K> implements IStateLockingRepository<C, S, V> {
+    public SingleFlightStateLockingRepository(final IStateLockingRepository<C, S, V> repository,
+                                              final Function<? super C, ? extends K> commandKey,
+                                              final Function<? super S, ? extends K> stateKey) {
+        this.repository = Objects.requireNonNull(repository);
+        this.commandKey = Objects.requireNonNull(commandKey);
+        this.stateKey = Objects.requireNonNull(stateKey);
+    }
+
+    private final IStateLockingRepository<C, S, V> repository;
+    private final Function<? super C, ? extends K> commandKey;
+    private final Function<? super S, ? extends K> stateKey;
+    private final SingleFlight<K, Pair<S, V>> fetches = new SingleFlight<>();
+
+    @Override
+    public Pair<S, V> fetchState(C command) {
+        return fetches.execute(commandKey.apply(command), () -> repository.fetchState(command));
+    }
+
+    @Override
+    public Pair<S, V> save(V currentStateVersion, S newState) {
+        try {
+            return repository.save(currentStateVersion, newState);
+        } finally {
+            fetches.invalidate(stateKey.apply(newState));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Pair<S, V>> fetchStateAsync(C command) {
+        return fetches.executeAsync(commandKey.apply(command), () -> repository.fetchStateAsync(command));
+    }
+
+    @Override
+    public CompletableFuture<Pair<S, V>> saveAsync(V currentStateVersion, S newState) {
+        return repository.saveAsync(currentStateVersion, newState).whenComplete((saved, failure) -> fetches.invalidate(stateKey.apply(newState)));
+    }
+
+    /**
+     * @return the number of fetches that shared the backend call of another fetch
+     */
+    public long sharedFetches() {
+        return fetches.shared();
+    }
+}
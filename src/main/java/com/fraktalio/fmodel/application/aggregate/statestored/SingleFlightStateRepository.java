@@ -0,0 +1,63 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import com.fraktalio.fmodel.application.singleflight.SingleFlight;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Single flight decorator of the {@link IStateRepository}.
+ * <br /><br />
+ * Concurrent fetches of the same state (key) share a single backend call and its result, see {@link SingleFlight}.
+ * A save invalidates the fetch in flight of its key, so a fetch arriving after the save reads the saved state.
+ *
+ * @param <C> command
+ * @param <S> state
+ * @param <K> key / identifier of the state
+ */
+public final class SingleFlightStateRepository<C, S, K> implements IStateRepository<C, S> {
+    public SingleFlightStateRepository(final IStateRepository<C, S> repository,
+                                       final Function<? super C, ? extends K> commandKey,
+                                       final Function<? super S, ? extends K> stateKey) {
+        this.repository = Objects.requireNonNull(repository);
+        this.commandKey = Objects.requireNonNull(commandKey);
+        this.stateKey = Objects.requireNonNull(stateKey);
+    }
+
+    private final IStateRepository<C, S> repository;
+    private final Function<? super C, ? extends K> commandKey;
+    private final Function<? super S, ? extends K> stateKey;
+    private final SingleFlight<K, S> fetches = new SingleFlight<>();
+
+    @Override
+    public S fetchState(C command) {
+        return fetches.execute(commandKey.apply(command), () -> repository.fetchState(command));
+    }
+
+    @Override
+    public S save(S newState) {
+        try {
+            return repository.save(newState);
+        } finally {
+            fetches.invalidate(stateKey.apply(newState));
+        }
+    }
+
+    @Override
+    public CompletableFuture<S> fetchStateAsync(C command) {
+        return fetches.executeAsync(commandKey.apply(command), () -> repository.fetchStateAsync(command));
+    }
+
+    @Override
+    public CompletableFuture<S> saveAsync(S newState) {
+        return repository.saveAsync(newState).whenComplete((saved, failure) -> fetches.invalidate(stateKey.apply(newState)));
+    }
+
+    /**
+     * @return the number of fetches that shared the backend call of another fetch
+     */
+    public long sharedFetches() {
+        return fetches.shared();
+    }
+}
@@ -1,8 +1,11 @@
 package com.fraktalio.fmodel.application.aggregate.statestored;
 
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
 import com.fraktalio.fmodel.domain.decider.IDecider;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
@@ -22,12 +25,18 @@ import java.util.function.Supplier;
  */
 public final class StateStoredAggregate<C, S, E> implements IDecider<C, S, E>, IStateRepository<C, S> {
     public StateStoredAggregate(final IDecider<C, S, E> decider, final IStateRepository<C, S> repository) {
+        this(decider, repository, IProbe.NOOP);
+    }
+
+    public StateStoredAggregate(final IDecider<C, S, E> decider, final IStateRepository<C, S> repository, final IProbe probe) {
         this.decider = decider;
         this.repository = repository;
+        this.probe = probe;
     }
 
     private final IDecider<C, S, E> decider;
     private final IStateRepository<C, S> repository;
+    private final IProbe probe;
 
     @Override
     public S fetchState(C command) {
@@ -54,6 +63,11 @@ public final class StateStoredAggregate<C, S, E> implements IDecider<C, S, E>, I
         return decider.initialState();
     }
 
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
     /**
      * Handle the command and store/produce new state
      *
@@ -61,7 +75,16 @@ public final class StateStoredAggregate<C, S, E> implements IDecider<C, S, E>, I
      * @return the newly stored state
      */
     public S handle(C command) {
-        return save(computeNewState(fetchState(command), command));
+        var handleStart = probe.start();
+        var fetchStart = probe.start();
+        var state = fetchState(command);
+        probe.stop(Phase.FETCH, fetchStart);
+        var newState = computeNewState(state, command);
+        var saveStart = probe.start();
+        var savedState = save(newState);
+        probe.stop(Phase.SAVE, saveStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedState;
     }
 
     /**
@@ -71,14 +94,20 @@ public final class StateStoredAggregate<C, S, E> implements IDecider<C, S, E>, I
      * @return the newly stored state
      */
     public CompletableFuture<S> handleAsync(C command) {
-        return fetchStateAsync(command)
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchStateAsync(command))
                 .thenApply(state -> computeNewState(state, command))
-                .thenCompose(this::saveAsync);
+                .thenCompose(newState -> probe.stop(Phase.SAVE, probe.start(), saveAsync(newState))));
     }
 
     private S computeNewState(S state, C command) {
         var currentState = state != null ? state : initialState().get();
+        var decideStart = probe.start();
         var events = decide().apply(command, currentState);
-        return events.stream().reduce(currentState, (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stop(Phase.DECIDE, decideStart);
+        var evolveStart = probe.start();
+        var newState = events.stream().reduce(currentState, (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stop(Phase.EVOLVE, evolveStart);
+        return newState;
     }
 }
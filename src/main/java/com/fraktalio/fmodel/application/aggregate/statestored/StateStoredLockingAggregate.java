@@ -1,9 +1,13 @@
 package com.fraktalio.fmodel.application.aggregate.statestored;
 
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
 import com.fraktalio.fmodel.domain.Pair;
 import com.fraktalio.fmodel.domain.decider.IDecider;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
@@ -30,12 +34,18 @@ import java.util.function.Supplier;
 public final class StateStoredLockingAggregate<C, S, E, V> implements IDecider<C, S, E>, IStateLockingRepository<C, S, V> {
 
     public StateStoredLockingAggregate(final IDecider<C, S, E> decider, final IStateLockingRepository<C, S, V> repository) {
+        this(decider, repository, IProbe.NOOP);
+    }
+
+    public StateStoredLockingAggregate(final IDecider<C, S, E> decider, final IStateLockingRepository<C, S, V> repository, final IProbe probe) {
         this.decider = decider;
         this.repository = repository;
+        this.probe = probe;
     }
 
     private final IDecider<C, S, E> decider;
     private final IStateLockingRepository<C, S, V> repository;
+    private final IProbe probe;
 
     @Override
     public Pair<S, V> fetchState(C command) {
@@ -62,6 +72,11 @@ public final class StateStoredLockingAggregate<C, S, E, V> implements IDecider<C
         return decider.initialState();
     }
 
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
     /**
      * Handle the command and store/produce new state
      *
@@ -69,8 +84,22 @@ public final class StateStoredLockingAggregate<C, S, E, V> implements IDecider<C
      * @return the newly stored state (with version)
      */
     public Pair<S, V> handle(C command) {
+        var handleStart = probe.start();
+        var fetchStart = probe.start();
         var pairStateVersion = fetchState(command);
-        return save(pairStateVersion.second(), computeNewState(pairStateVersion.first(), command));
+        probe.stop(Phase.FETCH, fetchStart);
+        var newState = computeNewState(pairStateVersion.first(), command);
+        var saveStart = probe.start();
+        Pair<S, V> savedState;
+        try {
+            savedState = save(pairStateVersion.second(), newState);
+        } catch (OptimisticLockingException e) {
+            probe.conflict();
+            throw e;
+        }
+        probe.stop(Phase.SAVE, saveStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedState;
     }
 
     /**
@@ -80,7 +109,8 @@ public final class StateStoredLockingAggregate<C, S, E, V> implements IDecider<C
      * @return the newly stored state (with version)
      */
     public CompletableFuture<Pair<S, V>> handleAsync(C command) {
-        return fetchStateAsync(command)
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchStateAsync(command))
                 .thenCompose(stateWithVersion -> {
                     S currentState = stateWithVersion.first();
                     V currentVersion = stateWithVersion.second();
@@ -89,13 +119,18 @@ public final class StateStoredLockingAggregate<C, S, E, V> implements IDecider<C
                     S newState = computeNewState(currentState, command);
 
                     // Save with optimistic locking
-                    return saveAsync(currentVersion, newState);
-                });
+                    return probe.stop(Phase.SAVE, probe.start(), saveAsync(currentVersion, newState));
+                }));
     }
 
     private S computeNewState(S state, C command) {
         var currentState = state != null ? state : initialState().get();
+        var decideStart = probe.start();
         var events = decide().apply(command, currentState);
-        return events.stream().reduce(currentState, (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stop(Phase.DECIDE, decideStart);
+        var evolveStart = probe.start();
+        var newState = events.stream().reduce(currentState, (s, e) -> evolve().apply(s, e), (s, s2) -> s);
+        probe.stop(Phase.EVOLVE, evolveStart);
+        return newState;
     }
 }
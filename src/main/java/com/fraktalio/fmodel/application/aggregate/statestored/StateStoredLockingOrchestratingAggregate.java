@@ -1,10 +1,14 @@
 package com.fraktalio.fmodel.application.aggregate.statestored;
 
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
 import com.fraktalio.fmodel.domain.Pair;
 import com.fraktalio.fmodel.domain.decider.IDecider;
 import com.fraktalio.fmodel.domain.saga.ISaga;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -33,14 +37,20 @@ import java.util.function.Supplier;
 public final class StateStoredLockingOrchestratingAggregate<C, S, E, V> implements IDecider<C, S, E>, ISaga<E, C>, IStateLockingRepository<C, S, V> {
 
     public StateStoredLockingOrchestratingAggregate(final IDecider<C, S, E> decider, final ISaga<E, C> saga, final IStateLockingRepository<C, S, V> repository) {
+        this(decider, saga, repository, IProbe.NOOP);
+    }
+
+    public StateStoredLockingOrchestratingAggregate(final IDecider<C, S, E> decider, final ISaga<E, C> saga, final IStateLockingRepository<C, S, V> repository, final IProbe probe) {
         this.decider = decider;
         this.saga = saga;
         this.repository = repository;
+        this.probe = probe;
     }
 
     private final IDecider<C, S, E> decider;
     private final ISaga<E, C> saga;
     private final IStateLockingRepository<C, S, V> repository;
+    private final IProbe probe;
 
     @Override
     public Pair<S, V> fetchState(C command) {
@@ -67,6 +77,11 @@ public final class StateStoredLockingOrchestratingAggregate<C, S, E, V> implemen
         return decider.initialState();
     }
 
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
     @Override
     public Function<E, List<C>> react() {
         return saga.react();
@@ -79,8 +94,22 @@ public final class StateStoredLockingOrchestratingAggregate<C, S, E, V> implemen
      * @return the newly stored state (with version)
      */
     public Pair<S, V> handle(C command) {
+        var handleStart = probe.start();
+        var fetchStart = probe.start();
         var pairStateVersion = fetchState(command);
-        return save(pairStateVersion.second(), computeNewState(pairStateVersion.first(), command));
+        probe.stop(Phase.FETCH, fetchStart);
+        var newState = computeNewState(pairStateVersion.first(), command);
+        var saveStart = probe.start();
+        Pair<S, V> savedState;
+        try {
+            savedState = save(pairStateVersion.second(), newState);
+        } catch (OptimisticLockingException e) {
+            probe.conflict();
+            throw e;
+        }
+        probe.stop(Phase.SAVE, saveStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedState;
     }
 
     /**
@@ -90,7 +119,8 @@ public final class StateStoredLockingOrchestratingAggregate<C, S, E, V> implemen
      * @return the newly stored state (with version)
      */
     public CompletableFuture<Pair<S, V>> handleAsync(C command) {
-        return fetchStateAsync(command)
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchStateAsync(command))
                 .thenCompose(stateWithVersion -> {
                     S currentState = stateWithVersion.first();
                     V currentVersion = stateWithVersion.second();
@@ -99,20 +129,36 @@ public final class StateStoredLockingOrchestratingAggregate<C, S, E, V> implemen
                     S newState = computeNewState(currentState, command);
 
                     // Save with optimistic locking
-                    return saveAsync(currentVersion, newState);
-                });
+                    return probe.stop(Phase.SAVE, probe.start(), saveAsync(currentVersion, newState));
+                }));
     }
 
     private S computeNewState(S state, C command) {
         var currentState = state != null ? state : initialState().get();
+        var decideStart = probe.start();
         var events = decide().apply(command, currentState);
+        probe.stop(Phase.DECIDE, decideStart);
 
         return events.stream()
                 .reduce(currentState, (s, e) -> {
-                    var evolved = evolve().apply(s, e);
-                    return react().apply(e).stream()
+                    var evolved = evolveWith(s, e);
+                    return reactOn(e).stream()
                             .reduce(evolved, this::computeNewState, (s1, s2) -> s1);
                 }, (s1, s2) -> s1);
     }
 
+    private S evolveWith(S state, E event) {
+        var evolveStart = probe.start();
+        var evolved = evolve().apply(state, event);
+        probe.stop(Phase.EVOLVE, evolveStart);
+        return evolved;
+    }
+
+    private List<C> reactOn(E event) {
+        var reactStart = probe.start();
+        var commands = react().apply(event);
+        probe.stop(Phase.REACT, reactStart);
+        return commands;
+    }
+
 }
@@ -1,9 +1,12 @@
 package com.fraktalio.fmodel.application.aggregate.statestored;
 
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
 import com.fraktalio.fmodel.domain.decider.IDecider;
 import com.fraktalio.fmodel.domain.saga.ISaga;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -25,14 +28,20 @@ import java.util.function.Supplier;
  */
 public final class StateStoredOrchestratingAggregate<C, S, E> implements IDecider<C, S, E>, ISaga<E, C>, IStateRepository<C, S> {
     public StateStoredOrchestratingAggregate(final IDecider<C, S, E> decider, final ISaga<E, C> saga, final IStateRepository<C, S> repository) {
+        this(decider, saga, repository, IProbe.NOOP);
+    }
+
+    public StateStoredOrchestratingAggregate(final IDecider<C, S, E> decider, final ISaga<E, C> saga, final IStateRepository<C, S> repository, final IProbe probe) {
         this.decider = decider;
         this.saga = saga;
         this.repository = repository;
+        this.probe = probe;
     }
 
     private final IDecider<C, S, E> decider;
     private final ISaga<E, C> saga;
     private final IStateRepository<C, S> repository;
+    private final IProbe probe;
 
     @Override
     public S fetchState(C command) {
@@ -59,6 +68,11 @@ public final class StateStoredOrchestratingAggregate<C, S, E> implements IDecide
         return decider.initialState();
     }
 
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
     @Override
     public Function<E, List<C>> react() {
         return saga.react();
@@ -71,7 +85,16 @@ public final class StateStoredOrchestratingAggregate<C, S, E> implements IDecide
      * @return the newly stored state
      */
     public S handle(C command) {
-        return save(computeNewState(fetchState(command), command));
+        var handleStart = probe.start();
+        var fetchStart = probe.start();
+        var state = fetchState(command);
+        probe.stop(Phase.FETCH, fetchStart);
+        var newState = computeNewState(state, command);
+        var saveStart = probe.start();
+        var savedState = save(newState);
+        probe.stop(Phase.SAVE, saveStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedState;
     }
 
     /**
@@ -81,21 +104,38 @@ public final class StateStoredOrchestratingAggregate<C, S, E> implements IDecide
      * @return the newly stored state
      */
     public CompletableFuture<S> handleAsync(C command) {
-        return fetchStateAsync(command)
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchStateAsync(command))
                 .thenApply(state -> computeNewState(state, command))
-                .thenCompose(this::saveAsync);
+                .thenCompose(newState -> probe.stop(Phase.SAVE, probe.start(), saveAsync(newState))));
     }
 
     private S computeNewState(S state, C command) {
         var currentState = state != null ? state : initialState().get();
+        var decideStart = probe.start();
         var events = decide().apply(command, currentState);
+        probe.stop(Phase.DECIDE, decideStart);
 
         return events.stream()
                 .reduce(currentState, (s, e) -> {
-                    var evolved = evolve().apply(s, e);
-                    return react().apply(e).stream()
+                    var evolved = evolveWith(s, e);
+                    return reactOn(e).stream()
                             .reduce(evolved, this::computeNewState, (s1, s2) -> s1);
                 }, (s1, s2) -> s1);
     }
 
+    private S evolveWith(S state, E event) {
+        var evolveStart = probe.start();
+        var evolved = evolve().apply(state, event);
+        probe.stop(Phase.EVOLVE, evolveStart);
+        return evolved;
+    }
+
+    private List<C> reactOn(E event) {
+        var reactStart = probe.start();
+        var commands = react().apply(event);
+        probe.stop(Phase.REACT, reactStart);
+        return commands;
+    }
+
 }
@@ -0,0 +1,315 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import com.fraktalio.fmodel.application.groupcommit.PendingWrite;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Write-behind decorator of the {@link IStateRepository}, for the high-frequency state (counters, gauges) where only the latest state matters.
+ * <br /><br />
+ * A save only replaces the state in the in-memory dirty set, which is the authoritative state of its key until it is written.
+ * The dirty set is flushed to the underlying repository every `flushInterval`: many saves of the same key are coalesced, and only the newest state is written.
+ * The underlying {@link IStateBatchRepository} gets the whole flush in a single {@link IStateBatchRepository#saveAll} call.
+ * <br /><br />
+ * The dirty set holds at most `maxDirty` keys. A save of a new key over the limit flushes the dirty set in the calling thread (backpressure).
+ * A state that failed to be written stays dirty, and is written with the next flush.
+ * While the underlying repository keeps failing, the dirty set stays full: a save of a new key waits for a free slot at most `saveTimeout`,
+ * and then fails with the {@link IllegalStateException} (the saves of the dirty keys still succeed).
+ * {@link #close()} flushes all the dirty states.
+ * <br /><br />
+ * A saved state is not durable until it is flushed: {@link #lag()} reports the age of the oldest unwritten state.
+ *
+ * @param <C> command
+ * @param <S> state
+ * @param <K> key / identifier of the state
+ */
+public final class WriteBehindStateRepository<C, S, K> implements IStateRepository<C, S>, AutoCloseable {
+    public static final int DEFAULT_MAX_DIRTY = 10_000;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(100);
+    public static final Duration DEFAULT_SAVE_TIMEOUT = Duration.ofSeconds(5);
+
+    public WriteBehindStateRepository(final IStateRepository<C, S> repository,
+                                      final Function<? super C, ? extends K> commandKey,
+                                      final Function<? super S, ? extends K> stateKey) {
+        this(repository, commandKey, stateKey, DEFAULT_MAX_DIRTY, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public WriteBehindStateRepository(final IStateRepository<C, S> repository,
+                                      final Function<? super C, ? extends K> commandKey,
+                                      final Function<? super S, ? extends K> stateKey,
+                                      final int maxDirty,
+                                      final Duration flushInterval) {
+        this(repository, commandKey, stateKey, maxDirty, flushInterval, DEFAULT_SAVE_TIMEOUT);
+    }
+
+    public WriteBehindStateRepository(final IStateRepository<C, S> repository,
+                                      final Function<? super C, ? extends K> commandKey,
+                                      final Function<? super S, ? extends K> stateKey,
+                                      final int maxDirty,
+                                      final Duration flushInterval,
+                                      final Duration saveTimeout) {
+        if (maxDirty < 1) {
+            throw new IllegalArgumentException("Max dirty must be positive: " + maxDirty);
+        }
+        this.repository = Objects.requireNonNull(repository);
+        this.commandKey = Objects.requireNonNull(commandKey);
+        this.stateKey = Objects.requireNonNull(stateKey);
+        this.permits = new Semaphore(maxDirty);
+        this.saveTimeout = Objects.requireNonNull(saveTimeout);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("fmodel-write-behind").factory());
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toNanos(), flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private final IStateRepository<C, S> repository;
+    private final Function<? super C, ? extends K> commandKey;
+    private final Function<? super S, ? extends K> stateKey;
+    private final Semaphore permits;
+    private final Duration saveTimeout;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<K, Dirty<S>> dirty = new ConcurrentHashMap<>();
+    private final Object flushMonitor = new Object();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Dirty state, with the (nano) time of its oldest unwritten change
+     */
+    private record Dirty<S>(S state, long since) {
+    }
+
+    @Override
+    public S fetchState(C command) {
+        var current = dirty.get(commandKey.apply(command));
+        return current != null ? current.state() : repository.fetchState(command);
+    }
+
+    /**
+     * Replaces the state in the dirty set
+     *
+     * @param newState the new state
+     * @return the new state
+     * @throws IllegalStateException if the dirty set is full, and no slot is freed (written) within the save timeout
+     */
+    @Override
+    public S save(S newState) {
+        if (closed) {
+            throw new IllegalStateException("Write-behind repository is closed");
+        }
+        K key = stateKey.apply(newState);
+        while (true) {
+            var current = dirty.get(key);
+            if (current != null) {
+                if (dirty.replace(key, current, new Dirty<>(newState, current.since()))) {
+                    coalesced.increment();
+                    return newState;
+                }
+                continue;
+            }
+            if (!permits.tryAcquire()) {
+                flush();
+                acquire();
+            }
+            if (dirty.putIfAbsent(key, new Dirty<>(newState, System.nanoTime())) == null) {
+                return newState;
+            }
+            permits.release();
+        }
+    }
+
+    @Override
+    public CompletableFuture<S> fetchStateAsync(C command) {
+        var current = dirty.get(commandKey.apply(command));
+        return current != null ? CompletableFuture.completedFuture(current.state()) : repository.fetchStateAsync(command);
+    }
+
+    @Override
+    public CompletableFuture<S> saveAsync(S newState) {
+        try {
+            return CompletableFuture.completedFuture(save(newState));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Writes the newest state of every dirty key to the underlying repository.
+     * A key saved again during the flush stays dirty.
+     */
+    public void flush() {
+        synchronized (flushMonitor) {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            var start = System.nanoTime();
+            var writes = new ArrayList<FlushWrite<K, S>>(dirty.size());
+            for (Map.Entry<K, Dirty<S>> entry : dirty.entrySet()) {
+                writes.add(new FlushWrite<>(entry.getKey(), entry.getValue()));
+            }
+            if (repository instanceof IStateBatchRepository<C, S> batchRepository) {
+                try {
+                    batchRepository.saveAll(writes);
+                } catch (RuntimeException e) {
+                    writes.forEach(write -> write.fail(e));
+                }
+            } else {
+                for (var write : writes) {
+                    try {
+                        write.complete(repository.save(write.input()));
+                    } catch (RuntimeException e) {
+                        write.fail(e);
+                    }
+                }
+            }
+            for (var write : writes) {
+                if (write.completed) {
+                    written.increment();
+                    markWritten(write.key, write.dirty, start);
+                } else {
+                    flushFailures.increment();
+                }
+            }
+            flushes.increment();
+        }
+    }
+
+    private void acquire() {
+        try {
+            if (!permits.tryAcquire(saveTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("The dirty set is full, and no state could be written within " + saveTimeout + " (" + flushFailures() + " failed writes so far)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a slot in the dirty set", e);
+        }
+    }
+
+    private void markWritten(K key, Dirty<S> writtenDirty, long flushStart) {
+        var removed = new boolean[1];
+        dirty.computeIfPresent(key, (k, current) -> {
+            if (current == writtenDirty) {
+                removed[0] = true;
+                return null;
+            }
+            // saved again during the flush: the oldest unwritten change is not older than the start of this flush
+            return new Dirty<>(current.state(), Math.max(current.since(), flushStart));
+        });
+        if (removed[0]) {
+            permits.release();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+        }
+    }
+
+    /**
+     * @return the number of keys with a state not written yet
+     */
+    public int dirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * @return the durability lag - the age of the oldest state not written yet, or zero if all the states are written
+     */
+    public Duration lag() {
+        var oldest = Long.MAX_VALUE;
+        for (var current : dirty.values()) {
+            oldest = Math.min(oldest, current.since());
+        }
+        return oldest == Long.MAX_VALUE ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - oldest);
+    }
+
+    /**
+     * @return the number of states written to the underlying repository
+     */
+    public long written() {
+        return written.sum();
+    }
+
+    /**
+     * @return the number of saves coalesced into a newer save of the same key (saves that were never written)
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of flushes
+     */
+    public long flushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * @return the number of states that failed to be written (and were retried by the next flush)
+     */
+    public long flushFailures() {
+        return flushFailures.sum();
+    }
+
+    /**
+     * Stops the periodic flush, and flushes all the dirty states
+     *
+     * @throws IllegalStateException if some states could not be written
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (!dirty.isEmpty()) {
+            throw new IllegalStateException(dirty.size() + " dirty states could not be written on close");
+        }
+    }
+
+    private static final class FlushWrite<K, S> implements PendingWrite<S, S> {
+        private final K key;
+        private final Dirty<S> dirty;
+        private boolean completed;
+
+        FlushWrite(K key, Dirty<S> dirty) {
+            this.key = key;
+            this.dirty = dirty;
+        }
+
+        @Override
+        public S input() {
+            return dirty.state();
+        }
+
+        @Override
+        public void complete(S result) {
+            completed = true;
+        }
+
+        @Override
+        public void fail(Throwable failure) {
+            completed = false;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.fraktalio.fmodel.application.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads values written by the {@link BinaryWriter} from a {@link ByteBuffer}.
+ * <br /><br />
+ * The reader uses its own, little endian view of the buffer, so the position of the buffer passed in is never changed.
+ * A reader is not thread-safe, but it can be reused for another buffer via {@link #reset(ByteBuffer)}.
+ */
+public final class BinaryReader {
+    private ByteBuffer buffer;
+
+    public BinaryReader(ByteBuffer buffer) {
+        reset(buffer);
+    }
+
+    public BinaryReader reset(ByteBuffer buffer) {
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        return this;
+    }
+
+    /**
+     * @return the number of bytes that are left
+     */
+    public int remaining() {
+        return buffer.remaining();
+    }
+
+    public byte readByte() {
+        return buffer.get();
+    }
+
+    public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+
+    public int readVarInt() {
+        var result = 0;
+        for (var shift = 0; shift < 35; shift += 7) {
+            var b = buffer.get();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    public long readVarLong() {
+        var result = 0L;
+        for (var shift = 0; shift < 70; shift += 7) {
+            var b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    public int readZigZagInt() {
+        var value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readZigZagLong() {
+        var value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readFixedLong() {
+        return buffer.getLong();
+    }
+
+    public float readFloat() {
+        return buffer.getFloat();
+    }
+
+    public double readDouble() {
+        return buffer.getDouble();
+    }
+
+    public String readString() {
+        var length = readVarInt();
+        var start = buffer.position();
+        var ascii = true;
+        for (var i = start; i < start + length && ascii; i++) {
+            ascii = buffer.get(i) >= 0;
+        }
+        String value;
+        if (ascii && buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.ISO_8859_1);
+        } else {
+            value = StandardCharsets.UTF_8.decode(buffer.slice(start, length)).toString();
+        }
+        buffer.position(start + length);
+        return value;
+    }
+
+    public byte[] readBytes() {
+        var value = new byte[readVarInt()];
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * @return all the remaining bytes, as a buffer sharing the memory of the underlying buffer (no copy)
+     */
+    public ByteBuffer readRemaining() {
+        var remaining = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        buffer.position(buffer.limit());
+        return remaining;
+    }
+}
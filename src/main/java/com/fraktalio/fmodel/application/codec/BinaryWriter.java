@@ -0,0 +1,214 @@
+package com.fraktalio.fmodel.application.codec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A growable, reusable byte buffer that values are encoded into.
+ * <br /><br />
+ * Integers are written as (zig-zag) varints, floating point numbers as little endian, and strings as a varint length followed by UTF-8 bytes.
+ * A writer is not thread-safe. Use {@link #reset()} to reuse it for the next value, or {@link #local()} to get a thread-local one.
+ */
+public final class BinaryWriter {
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final ThreadLocal<BinaryWriter> LOCAL = ThreadLocal.withInitial(BinaryWriter::new);
+
+    private byte[] bytes;
+    private int position;
+
+    public BinaryWriter() {
+        this(256);
+    }
+
+    public BinaryWriter(int initialCapacity) {
+        this.bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * @return the (reset) writer of the current thread
+     */
+    public static BinaryWriter local() {
+        var writer = LOCAL.get();
+        writer.reset();
+        return writer;
+    }
+
+    public BinaryWriter reset() {
+        position = 0;
+        return this;
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * @return the written bytes, as a buffer sharing this writer's memory (no copy). It is valid until the writer is reset.
+     */
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(bytes, 0, position);
+    }
+
+    /**
+     * @return the written bytes between the offsets, as a buffer sharing this writer's memory (no copy). It is valid until the writer is reset.
+     */
+    public ByteBuffer buffer(int from, int to) {
+        return ByteBuffer.wrap(bytes, from, to - from);
+    }
+
+    /**
+     * @return a copy of the written bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, position);
+    }
+
+    public void writeByte(int value) {
+        ensure(1);
+        bytes[position++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes the value as an unsigned varint, 1 to 5 bytes
+     */
+    public void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    /**
+     * Writes the value as an unsigned varint, 1 to 10 bytes
+     */
+    public void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    /**
+     * Writes the value as a zig-zag varint, so small negative values stay small
+     */
+    public void writeZigZagInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Writes the value as a zig-zag varint, so small negative values stay small
+     */
+    public void writeZigZagLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes the value as 8 little endian bytes
+     */
+    public void writeFixedLong(long value) {
+        ensure(8);
+        LONG.set(bytes, position, value);
+        position += 8;
+    }
+
+    public void writeFloat(float value) {
+        ensure(4);
+        INT.set(bytes, position, Float.floatToRawIntBits(value));
+        position += 4;
+    }
+
+    public void writeDouble(double value) {
+        writeFixedLong(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Writes the string as a varint length followed by its UTF-8 bytes, without an intermediate byte array
+     */
+    public void writeString(String value) {
+        var length = value.length();
+        var utf8Length = 0;
+        for (var i = 0; i < length; i++) {
+            var c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        writeVarInt(utf8Length);
+        ensure(utf8Length);
+        for (var i = 0; i < length; i++) {
+            var c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                var codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                // unpaired surrogates are written as they are (CESU-8 style), and decoded as replacement characters
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Writes the bytes prefixed with their varint length
+     */
+    public void writeBytes(byte[] value) {
+        writeVarInt(value.length);
+        writeRaw(value);
+    }
+
+    /**
+     * Writes the bytes as they are, without a length prefix
+     */
+    public void writeRaw(byte[] value) {
+        ensure(value.length);
+        System.arraycopy(value, 0, bytes, position, value.length);
+        position += value.length;
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer as they are, without a length prefix. The position of the buffer is not changed.
+     */
+    public void writeRaw(ByteBuffer value) {
+        var length = value.remaining();
+        ensure(length);
+        value.get(value.position(), bytes, position, length);
+        position += length;
+    }
+
+    private void ensure(int count) {
+        if (position + count > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(position + count, bytes.length * 2));
+        }
+    }
+}
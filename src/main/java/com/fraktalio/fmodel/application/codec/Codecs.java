@@ -0,0 +1,544 @@
+package com.fraktalio.fmodel.application.codec;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Built-in codecs, and a generator of codecs for records and sealed interfaces.
+ * <br /><br />
+ * A record is encoded as the sequence of its components, in declaration order, without any field names or type information.
+ * A sealed interface is encoded as the varint tag of the concrete type, followed by the encoded value.
+ * Tags are assigned depth-first, in the order of the {@code permits} clause, so new subtypes should be appended to the end of the clause.
+ * Use {@link #versioned(int, ICodec)} to tag the encoded values with a schema version.
+ * <br /><br />
+ * Record components are read via {@link MethodHandle}s that are resolved once, when the codec is generated.
+ * The decoder of a record is a single method handle, reading the components straight into the canonical constructor:
+ * the int, long, double and boolean components are written and read without boxing, and reference components that are {@code null} are encoded as a single byte.
+ * Supported component types are the primitives and their wrappers, {@link String}, enums, {@link UUID}, {@link Instant}, {@link Duration}, {@link LocalDate},
+ * {@link BigDecimal}, {@link BigInteger}, {@code byte[]}, {@link List}, {@link Set}, {@link Map}, {@link Optional}, records and sealed interfaces.
+ */
+public final class Codecs {
+    private Codecs() {
+    }
+
+    public static final ICodec<Boolean> BOOLEAN = codec((v, w) -> w.writeBoolean(v), BinaryReader::readBoolean);
+    public static final ICodec<Byte> BYTE = codec((v, w) -> w.writeByte(v), BinaryReader::readByte);
+    public static final ICodec<Short> SHORT = codec((v, w) -> w.writeZigZagInt(v), r -> (short) r.readZigZagInt());
+    public static final ICodec<Character> CHAR = codec((v, w) -> w.writeVarInt(v), r -> (char) r.readVarInt());
+    public static final ICodec<Integer> INT = codec((v, w) -> w.writeZigZagInt(v), BinaryReader::readZigZagInt);
+    public static final ICodec<Long> LONG = codec((v, w) -> w.writeZigZagLong(v), BinaryReader::readZigZagLong);
+    public static final ICodec<Float> FLOAT = codec((v, w) -> w.writeFloat(v), BinaryReader::readFloat);
+    public static final ICodec<Double> DOUBLE = codec((v, w) -> w.writeDouble(v), BinaryReader::readDouble);
+    public static final ICodec<String> STRING = codec((v, w) -> w.writeString(v), BinaryReader::readString);
+    public static final ICodec<byte[]> BYTES = codec((v, w) -> w.writeBytes(v), BinaryReader::readBytes);
+    public static final ICodec<UUID> UUID_CODEC = codec((v, w) -> {
+        w.writeFixedLong(v.getMostSignificantBits());
+        w.writeFixedLong(v.getLeastSignificantBits());
+    }, r -> new UUID(r.readFixedLong(), r.readFixedLong()));
+    public static final ICodec<Instant> INSTANT = codec((v, w) -> {
+        w.writeZigZagLong(v.getEpochSecond());
+        w.writeVarInt(v.getNano());
+    }, r -> Instant.ofEpochSecond(r.readZigZagLong(), r.readVarInt()));
+    public static final ICodec<Duration> DURATION = codec((v, w) -> {
+        w.writeZigZagLong(v.getSeconds());
+        w.writeVarInt(v.getNano());
+    }, r -> Duration.ofSeconds(r.readZigZagLong(), r.readVarInt()));
+    public static final ICodec<LocalDate> LOCAL_DATE = codec((v, w) -> w.writeZigZagLong(v.toEpochDay()), r -> LocalDate.ofEpochDay(r.readZigZagLong()));
+    public static final ICodec<BigInteger> BIG_INTEGER = codec((v, w) -> w.writeBytes(v.toByteArray()), r -> new BigInteger(r.readBytes()));
+    public static final ICodec<BigDecimal> BIG_DECIMAL = codec((v, w) -> {
+        w.writeZigZagInt(v.scale());
+        w.writeBytes(v.unscaledValue().toByteArray());
+    }, r -> {
+        var scale = r.readZigZagInt();
+        return new BigDecimal(new BigInteger(r.readBytes()), scale);
+    });
+
+    private static final Map<Class<?>, ICodec<?>> BUILT_IN = Map.ofEntries(
+            Map.entry(Boolean.class, BOOLEAN), Map.entry(Byte.class, BYTE), Map.entry(Short.class, SHORT),
+            Map.entry(Character.class, CHAR), Map.entry(Integer.class, INT), Map.entry(Long.class, LONG),
+            Map.entry(Float.class, FLOAT), Map.entry(Double.class, DOUBLE), Map.entry(String.class, STRING),
+            Map.entry(byte[].class, BYTES), Map.entry(UUID.class, UUID_CODEC), Map.entry(Instant.class, INSTANT),
+            Map.entry(Duration.class, DURATION), Map.entry(LocalDate.class, LOCAL_DATE),
+            Map.entry(BigInteger.class, BIG_INTEGER), Map.entry(BigDecimal.class, BIG_DECIMAL)
+    );
+
+    private static final Map<Class<?>, ICodec<?>> GENERATED = new ConcurrentHashMap<>();
+
+    /**
+     * Generates (or returns the cached) codec of the record, sealed interface, enum or built-in type
+     *
+     * @param type the type of the values
+     * @param <T>  the type of the values
+     * @return the codec
+     * @throws IllegalArgumentException if the type (or one of its components) is not supported
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ICodec<T> forClass(Class<T> type) {
+        var cached = (ICodec<T>) GENERATED.get(type);
+        if (cached != null) {
+            return cached;
+        }
+        synchronized (GENERATED) {
+            var building = new HashMap<Class<?>, DeferredCodec<?>>();
+            var codec = (ICodec<T>) generate(type, building);
+            building.keySet().forEach(built -> GENERATED.putIfAbsent(built, building.get(built).target));
+            return codec;
+        }
+    }
+
+    /**
+     * Tags every encoded value with the schema version. Values tagged with an unknown version fail to decode.
+     *
+     * @param version the current schema version
+     * @param codec   the codec of the current schema version
+     * @param <T>     the type of the values
+     * @return new versioned codec
+     */
+    public static <T> VersionedCodec<T> versioned(int version, ICodec<T> codec) {
+        return new VersionedCodec<>(version, codec, Map.of());
+    }
+
+    /**
+     * @return the codec that encodes {@code null} as a single byte, and delegates all other values
+     */
+    public static <T> ICodec<T> nullable(ICodec<T> codec) {
+        return codec((value, writer) -> {
+            writer.writeBoolean(value != null);
+            if (value != null) {
+                codec.encode(value, writer);
+            }
+        }, reader -> reader.readBoolean() ? codec.decode(reader) : null);
+    }
+
+    public static <T> ICodec<List<T>> list(ICodec<T> element) {
+        var nullable = nullable(element);
+        return codec((value, writer) -> {
+            writer.writeVarInt(value.size());
+            for (var item : value) {
+                nullable.encode(item, writer);
+            }
+        }, reader -> {
+            var items = new Object[reader.readVarInt()];
+            for (var i = 0; i < items.length; i++) {
+                items[i] = nullable.decode(reader);
+            }
+            @SuppressWarnings("unchecked")
+            var list = (List<T>) Collections.unmodifiableList(Arrays.asList(items));
+            return list;
+        });
+    }
+
+    public static <T> ICodec<Set<T>> set(ICodec<T> element) {
+        var nullable = nullable(element);
+        return codec((value, writer) -> {
+            writer.writeVarInt(value.size());
+            for (var item : value) {
+                nullable.encode(item, writer);
+            }
+        }, reader -> {
+            var size = reader.readVarInt();
+            var items = new LinkedHashSet<T>(size * 2);
+            for (var i = 0; i < size; i++) {
+                items.add(nullable.decode(reader));
+            }
+            return Collections.unmodifiableSet(items);
+        });
+    }
+
+    public static <K, V> ICodec<Map<K, V>> map(ICodec<K> key, ICodec<V> value) {
+        var nullableKey = nullable(key);
+        var nullableValue = nullable(value);
+        return codec((map, writer) -> {
+            writer.writeVarInt(map.size());
+            for (var entry : map.entrySet()) {
+                nullableKey.encode(entry.getKey(), writer);
+                nullableValue.encode(entry.getValue(), writer);
+            }
+        }, reader -> {
+            var size = reader.readVarInt();
+            var entries = new LinkedHashMap<K, V>(size * 2);
+            for (var i = 0; i < size; i++) {
+                entries.put(nullableKey.decode(reader), nullableValue.decode(reader));
+            }
+            return Collections.unmodifiableMap(entries);
+        });
+    }
+
+    public static <T> ICodec<Optional<T>> optional(ICodec<T> element) {
+        return codec((value, writer) -> {
+            writer.writeBoolean(value.isPresent());
+            value.ifPresent(it -> element.encode(it, writer));
+        }, reader -> reader.readBoolean() ? Optional.of(element.decode(reader)) : Optional.empty());
+    }
+
+    public static <T extends Enum<T>> ICodec<T> enumeration(Class<T> type) {
+        var constants = type.getEnumConstants();
+        return codec((value, writer) -> writer.writeVarInt(value.ordinal()), reader -> constants[reader.readVarInt()]);
+    }
+
+    // --------------------------------------------------------------------
+    // Generator
+    // --------------------------------------------------------------------
+
+    @FunctionalInterface
+    private interface Encoder<T> {
+        void encode(T value, BinaryWriter writer);
+    }
+
+    @FunctionalInterface
+    private interface Decoder<T> {
+        T decode(BinaryReader reader);
+    }
+
+    private static <T> ICodec<T> codec(Encoder<T> encoder, Decoder<T> decoder) {
+        return new ICodec<>() {
+            @Override
+            public void encode(T value, BinaryWriter writer) {
+                encoder.encode(value, writer);
+            }
+
+            @Override
+            public T decode(BinaryReader reader) {
+                return decoder.decode(reader);
+            }
+        };
+    }
+
+    /**
+     * Placeholder for a codec that is being generated, so recursive types can refer to themselves
+     */
+    private static final class DeferredCodec<T> implements ICodec<T> {
+        private ICodec<T> target;
+
+        @Override
+        public void encode(T value, BinaryWriter writer) {
+            target.encode(value, writer);
+        }
+
+        @Override
+        public T decode(BinaryReader reader) {
+            return target.decode(reader);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ICodec<?> generate(Type type, Map<Class<?>, DeferredCodec<?>> building) {
+        if (type instanceof ParameterizedType parameterized) {
+            var raw = (Class<?>) parameterized.getRawType();
+            var arguments = parameterized.getActualTypeArguments();
+            if (raw == List.class) {
+                return list(generate(arguments[0], building));
+            } else if (raw == Set.class) {
+                return set(generate(arguments[0], building));
+            } else if (raw == Map.class) {
+                return map(generate(arguments[0], building), generate(arguments[1], building));
+            } else if (raw == Optional.class) {
+                return optional(generate(arguments[0], building));
+            }
+            return generate(raw, building);
+        }
+        if (!(type instanceof Class<?> clazz)) {
+            throw new IllegalArgumentException("Unsupported type: " + type);
+        }
+        var builtIn = BUILT_IN.get(clazz);
+        if (builtIn != null) {
+            return builtIn;
+        }
+        var generated = GENERATED.get(clazz);
+        if (generated != null) {
+            return generated;
+        }
+        var inProgress = building.get(clazz);
+        if (inProgress != null) {
+            return inProgress;
+        }
+        if (clazz.isEnum()) {
+            return enumeration((Class) clazz);
+        }
+        if (!clazz.isRecord() && !clazz.isSealed()) {
+            throw new IllegalArgumentException("Unsupported type, neither a record nor a sealed interface: " + clazz.getName());
+        }
+        var deferred = new DeferredCodec();
+        building.put(clazz, deferred);
+        deferred.target = clazz.isRecord() ? recordCodec(clazz, building) : sealedCodec(clazz, building);
+        return deferred.target;
+    }
+
+    private static ICodec<?> sealedCodec(Class<?> sealed, Map<Class<?>, DeferredCodec<?>> building) {
+        var subtypes = new ArrayList<Class<?>>();
+        collectSubtypes(sealed, subtypes);
+        var tags = new SubtypeTags(subtypes);
+        var codecs = new ICodec<?>[subtypes.size()];
+        for (var i = 0; i < codecs.length; i++) {
+            codecs[i] = generate(subtypes.get(i), building);
+        }
+        return codec((value, writer) -> {
+            var tag = tags.tagOf(value.getClass());
+            writer.writeVarInt(tag);
+            encodeWith(codecs[tag], value, writer);
+        }, reader -> {
+            var tag = reader.readVarInt();
+            if (tag >= codecs.length) {
+                throw new IllegalStateException("Unknown subtype tag " + tag + " of " + sealed.getName());
+            }
+            return codecs[tag].decode(reader);
+        });
+    }
+
+    private static void collectSubtypes(Class<?> type, List<Class<?>> subtypes) {
+        if (type.isSealed()) {
+            for (var permitted : type.getPermittedSubclasses()) {
+                collectSubtypes(permitted, subtypes);
+            }
+        } else {
+            subtypes.add(type);
+        }
+    }
+
+    /**
+     * Tag lookup by the exact class of the value
+     */
+    private static final class SubtypeTags {
+        private final Map<Class<?>, Integer> tags;
+
+        SubtypeTags(List<Class<?>> subtypes) {
+            var map = new HashMap<Class<?>, Integer>();
+            for (var i = 0; i < subtypes.size(); i++) {
+                map.put(subtypes.get(i), i);
+            }
+            this.tags = Map.copyOf(map);
+        }
+
+        int tagOf(Class<?> type) {
+            var tag = tags.get(type);
+            if (tag == null) {
+                throw new IllegalArgumentException("Not a permitted subtype: " + type.getName());
+            }
+            return tag;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void encodeWith(ICodec<T> codec, Object value, BinaryWriter writer) {
+        codec.encode((T) value, writer);
+    }
+
+    private static ICodec<?> recordCodec(Class<?> record, Map<Class<?>, DeferredCodec<?>> building) {
+        var components = record.getRecordComponents();
+        var lookup = lookup(record);
+        var fields = new ComponentCodec[components.length];
+        var parameterTypes = new Class<?>[components.length];
+        for (var i = 0; i < components.length; i++) {
+            parameterTypes[i] = components[i].getType();
+            fields[i] = componentCodec(components[i], accessor(lookup, components[i]), building);
+        }
+        MethodHandle constructor;
+        try {
+            constructor = lookup.findConstructor(record, MethodType.methodType(void.class, parameterTypes));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("No accessible canonical constructor of " + record.getName(), e);
+        }
+        // (BinaryReader)Object: the components are read in declaration order, straight into the constructor arguments
+        var decoder = MethodHandles.dropArguments(constructor, components.length, BinaryReader.class);
+        for (var i = components.length - 1; i >= 0; i--) {
+            decoder = MethodHandles.foldArguments(decoder, i, fields[i].reader().asType(MethodType.methodType(parameterTypes[i], BinaryReader.class)));
+        }
+        var decode = decoder.asType(MethodType.methodType(Object.class, BinaryReader.class));
+        return codec((value, writer) -> {
+            for (var field : fields) {
+                field.encode(value, writer);
+            }
+        }, reader -> {
+            try {
+                return (Object) decode.invokeExact(reader);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Failed to construct " + record.getName(), e);
+            }
+        });
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> record) {
+        try {
+            return MethodHandles.privateLookupIn(record, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("The record is not accessible: " + record.getName(), e);
+        }
+    }
+
+    private static MethodHandle accessor(MethodHandles.Lookup lookup, RecordComponent component) {
+        try {
+            var accessor = lookup.unreflect(component.getAccessor());
+            var type = component.getType();
+            return accessor.asType(MethodType.methodType(type.isPrimitive() ? type : Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("The record component is not accessible: " + component, e);
+        }
+    }
+
+    private static final MethodHandle READ_INT = readerMethod("readZigZagInt", int.class);
+    private static final MethodHandle READ_LONG = readerMethod("readZigZagLong", long.class);
+    private static final MethodHandle READ_DOUBLE = readerMethod("readDouble", double.class);
+    private static final MethodHandle READ_BOOLEAN = readerMethod("readBoolean", boolean.class);
+    private static final MethodHandle DECODE;
+
+    static {
+        try {
+            DECODE = MethodHandles.publicLookup().findVirtual(ICodec.class, "decode", MethodType.methodType(Object.class, BinaryReader.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle readerMethod(String name, Class<?> type) {
+        try {
+            return MethodHandles.publicLookup().findVirtual(BinaryReader.class, name, MethodType.methodType(type));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Encodes/decodes a single record component. The int, long, double and boolean components are written and read with exactly typed handles, so they are not boxed.
+     */
+    private sealed interface ComponentCodec {
+        void encode(Object record, BinaryWriter writer);
+
+        /**
+         * @return the handle reading the component, {@code (BinaryReader)} returning the component type (or {@code Object})
+         */
+        MethodHandle reader();
+    }
+
+    private record IntComponent(MethodHandle accessor) implements ComponentCodec {
+        @Override
+        public void encode(Object record, BinaryWriter writer) {
+            try {
+                writer.writeZigZagInt((int) accessor.invokeExact(record));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public MethodHandle reader() {
+            return READ_INT;
+        }
+    }
+
+    private record LongComponent(MethodHandle accessor) implements ComponentCodec {
+        @Override
+        public void encode(Object record, BinaryWriter writer) {
+            try {
+                writer.writeZigZagLong((long) accessor.invokeExact(record));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public MethodHandle reader() {
+            return READ_LONG;
+        }
+    }
+
+    private record DoubleComponent(MethodHandle accessor) implements ComponentCodec {
+        @Override
+        public void encode(Object record, BinaryWriter writer) {
+            try {
+                writer.writeDouble((double) accessor.invokeExact(record));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public MethodHandle reader() {
+            return READ_DOUBLE;
+        }
+    }
+
+    private record BooleanComponent(MethodHandle accessor) implements ComponentCodec {
+        @Override
+        public void encode(Object record, BinaryWriter writer) {
+            try {
+                writer.writeBoolean((boolean) accessor.invokeExact(record));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public MethodHandle reader() {
+            return READ_BOOLEAN;
+        }
+    }
+
+    /**
+     * Reference components, and the primitives that are rare in events and states (byte, short, char, float), which are boxed
+     */
+    private record ReferenceComponent(MethodHandle accessor, ICodec<Object> codec) implements ComponentCodec {
+        @Override
+        public void encode(Object record, BinaryWriter writer) {
+            try {
+                codec.encode((Object) accessor.invokeExact(record), writer);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public MethodHandle reader() {
+            return DECODE.bindTo(codec);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ComponentCodec componentCodec(RecordComponent component, MethodHandle accessor, Map<Class<?>, DeferredCodec<?>> building) {
+        var type = component.getType();
+        if (type == int.class) {
+            return new IntComponent(accessor);
+        } else if (type == long.class) {
+            return new LongComponent(accessor);
+        } else if (type == double.class) {
+            return new DoubleComponent(accessor);
+        } else if (type == boolean.class) {
+            return new BooleanComponent(accessor);
+        } else if (type.isPrimitive()) {
+            var boxed = accessor.asType(MethodType.methodType(Object.class, Object.class));
+            return new ReferenceComponent(boxed, (ICodec<Object>) BUILT_IN.get(MethodType.methodType(type).wrap().returnType()));
+        }
+        return new ReferenceComponent(accessor, nullable((ICodec<Object>) generate(component.getGenericType(), building)));
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException runtime) {
+            return runtime;
+        } else if (e instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(e);
+    }
+}
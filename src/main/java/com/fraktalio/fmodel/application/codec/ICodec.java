@@ -0,0 +1,74 @@
+package com.fraktalio.fmodel.application.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Codec SPI - encodes values of type {@code T} into a compact binary form, and decodes them back.
+ * <br /><br />
+ * Codecs write into a reusable {@link BinaryWriter} and read from a {@link BinaryReader}, so encoding does not allocate per field.
+ * Durable and off-heap repositories use codecs to serialize events and states.
+ * Codecs for records and sealed interfaces can be generated by {@link Codecs#forClass(Class)}.
+ *
+ * @param <T> the type of the values
+ */
+public interface ICodec<T> {
+    /**
+     * @param value  the value to encode
+     * @param writer the writer to append the encoded value to
+     */
+    void encode(T value, BinaryWriter writer);
+
+    /**
+     * @param reader the reader positioned at the start of an encoded value
+     * @return the decoded value
+     */
+    T decode(BinaryReader reader);
+
+    /**
+     * Encodes the value with a thread-local writer, and copies the result into a new array
+     *
+     * @param value the value to encode
+     * @return the encoded value
+     */
+    default byte[] toBytes(T value) {
+        var writer = BinaryWriter.local();
+        encode(value, writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes the value from the remaining bytes of the buffer
+     *
+     * @param buffer the encoded value
+     * @return the decoded value
+     */
+    default T fromBytes(ByteBuffer buffer) {
+        return decode(new BinaryReader(buffer));
+    }
+
+    /**
+     * Adapts a pair of functions to a codec. The encoded bytes are written as they are, without a length prefix.
+     *
+     * @param encoder function that encodes the value into bytes
+     * @param decoder function that decodes the value from all the remaining bytes of the buffer
+     * @param <T>     the type of the values
+     * @return new codec
+     */
+    static <T> ICodec<T> of(Function<? super T, byte[]> encoder, Function<ByteBuffer, ? extends T> decoder) {
+        Objects.requireNonNull(encoder);
+        Objects.requireNonNull(decoder);
+        return new ICodec<>() {
+            @Override
+            public void encode(T value, BinaryWriter writer) {
+                writer.writeRaw(encoder.apply(value));
+            }
+
+            @Override
+            public T decode(BinaryReader reader) {
+                return decoder.apply(reader.readRemaining());
+            }
+        };
+    }
+}
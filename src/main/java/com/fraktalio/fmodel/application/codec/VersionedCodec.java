@@ -0,0 +1,70 @@
+package com.fraktalio.fmodel.application.codec;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Codec that tags every encoded value with a varint schema version.
+ * <br /><br />
+ * Values are always encoded with the current version. Values tagged with an older version are decoded by the codec registered for that version,
+ * which makes it possible to evolve the schema of events and states without rewriting the stored data.
+ *
+ * @param <T> the type of the values
+ */
+public final class VersionedCodec<T> implements ICodec<T> {
+    VersionedCodec(final int version, final ICodec<T> current, final Map<Integer, ICodec<? extends T>> legacy) {
+        if (version < 0) {
+            throw new IllegalArgumentException("Schema version must not be negative: " + version);
+        }
+        this.version = version;
+        this.current = Objects.requireNonNull(current);
+        this.legacy = Map.copyOf(legacy);
+    }
+
+    private final int version;
+    private final ICodec<T> current;
+    private final Map<Integer, ICodec<? extends T>> legacy;
+
+    /**
+     * @return the current schema version
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Registers the codec of an older schema version
+     *
+     * @param legacyVersion the older schema version
+     * @param codec         the codec that decodes values of the older version into the current type (upcasting them)
+     * @return new versioned codec
+     */
+    public VersionedCodec<T> orDecode(int legacyVersion, ICodec<? extends T> codec) {
+        if (legacyVersion == version) {
+            throw new IllegalArgumentException("Version " + version + " is the current one");
+        }
+        var codecs = new HashMap<>(legacy);
+        codecs.put(legacyVersion, codec);
+        return new VersionedCodec<>(version, current, codecs);
+    }
+
+    @Override
+    public void encode(T value, BinaryWriter writer) {
+        writer.writeVarInt(version);
+        current.encode(value, writer);
+    }
+
+    @Override
+    public T decode(BinaryReader reader) {
+        var tag = reader.readVarInt();
+        if (tag == version) {
+            return current.decode(reader);
+        }
+        var codec = legacy.get(tag);
+        if (codec == null) {
+            throw new IllegalStateException("Unknown schema version " + tag + ", the current one is " + version);
+        }
+        return codec.decode(reader);
+    }
+}
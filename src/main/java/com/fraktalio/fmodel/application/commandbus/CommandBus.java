@@ -0,0 +1,282 @@
+package com.fraktalio.fmodel.application.commandbus;
+
+import com.fraktalio.fmodel.application.instrumentation.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * In-process command bus: the entry point that routes the commands to their handlers (aggregates), with sharding and flow control.
+ * <br /><br />
+ * A command is routed by its type to the handler registered for that type (or for its most specific registered super type, a class or an interface),
+ * and to one of the shards by the hash of its key. Every shard has a bounded queue and a single worker thread,
+ * so the commands of one key are handled one at a time, in the order they were dispatched, and never conflict with each other.
+ * Handlers are plain blocking calls, for example {@code aggregate::handle}: with a virtual thread factory, a blocked handler does not hold a platform thread.
+ * <br /><br />
+ * When the queue of a shard is full, the {@link OverflowPolicy} decides between rejecting the command and waiting for a free slot (backpressure).
+ * The queue depth, the time spent in the queue and the service time of the handlers are exposed as metrics.
+ *
+ * @param <C> command
+ * @param <R> result of handling a command
+ */
+public final class CommandBus<C, R> implements AutoCloseable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    public CommandBus() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK, Thread.ofPlatform().daemon().name("fmodel-command-bus-", 0).factory());
+    }
+
+    public CommandBus(final int shards, final int queueCapacity, final OverflowPolicy overflowPolicy, final ThreadFactory threadFactory) {
+        if (shards < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Shards and queue capacity must be positive: " + shards + ", " + queueCapacity);
+        }
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+        this.queues = new ArrayList<>(shards);
+        this.workers = new ArrayList<>(shards);
+        for (var i = 0; i < shards; i++) {
+            var queue = new ArrayBlockingQueue<Task<R>>(queueCapacity);
+            var worker = threadFactory.newThread(() -> run(queue));
+            queues.add(queue);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    private final OverflowPolicy overflowPolicy;
+    private final List<ArrayBlockingQueue<Task<R>>> queues;
+    private final List<Thread> workers;
+    private final ConcurrentHashMap<Class<?>, Route<R>> routes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, Route<R>> resolvedRoutes = new ConcurrentHashMap<>();
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean closed;
+
+    private record Route<R>(Function<Object, ?> key, Function<Object, ? extends R> handler) {
+    }
+
+    private record Task<R>(Object command, Route<R> route, CompletableFuture<R> result, long enqueued) {
+    }
+
+    private final Task<R> stop = new Task<>(null, null, null, 0L);
+
+    /**
+     * Registers the handler of the commands of the given type
+     *
+     * @param type    the type of the commands
+     * @param key     extracts the key from a command: the commands of the same key are handled one at a time, in order
+     * @param handler handles a command, for example {@code aggregate::handle}
+     * @param <T>     the type of the commands
+     * @return this command bus
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends C> CommandBus<C, R> register(Class<T> type, Function<? super T, ?> key, Function<? super T, ? extends R> handler) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(handler);
+        if (routes.putIfAbsent(type, new Route<>(command -> key.apply((T) command), command -> handler.apply((T) command))) != null) {
+            throw new IllegalArgumentException("A handler is already registered for " + type.getName());
+        }
+        resolvedRoutes.clear();
+        return this;
+    }
+
+    /**
+     * Dispatches the command to the shard of its key
+     *
+     * @param command the command to handle
+     * @return the result of the handler, or a failure: {@link IllegalArgumentException} if there is no handler of the command (or several equally specific ones),
+     * {@link RejectedExecutionException} if the queue is full (with the {@link OverflowPolicy#REJECT}) or the bus is closed
+     */
+    public CompletableFuture<R> dispatch(C command) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Command bus is closed"));
+        }
+        Route<R> route;
+        try {
+            route = resolve(command.getClass());
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (route == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("No handler is registered for " + command.getClass().getName()));
+        }
+        var queue = queues.get(Math.floorMod(Objects.hashCode(route.key().apply(command)), queues.size()));
+        var task = new Task<R>(command, route, new CompletableFuture<>(), System.nanoTime());
+        switch (overflowPolicy) {
+            case REJECT -> {
+                if (!queue.offer(task)) {
+                    rejected.increment();
+                    return CompletableFuture.failedFuture(new RejectedExecutionException("Command queue is full"));
+                }
+            }
+            case BLOCK -> {
+                try {
+                    queue.put(task);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return CompletableFuture.failedFuture(e);
+                }
+            }
+        }
+        // the bus was closed while the command was enqueued, possibly after the final drain of the queues: the command is not handled
+        if (closed && queue.remove(task)) {
+            task.result().completeExceptionally(new RejectedExecutionException("Command bus is closed"));
+            return task.result();
+        }
+        dispatched.increment();
+        return task.result();
+    }
+
+    /**
+     * @return the number of the commands waiting in all the queues
+     */
+    public int queueDepth() {
+        return queues.stream().mapToInt(ArrayBlockingQueue::size).sum();
+    }
+
+    /**
+     * @param shard the shard, from {@code 0} to {@link #shards()} (exclusive)
+     * @return the number of the commands waiting in the queue of the shard
+     */
+    public int queueDepth(int shard) {
+        return queues.get(shard).size();
+    }
+
+    /**
+     * @return the number of the shards
+     */
+    public int shards() {
+        return queues.size();
+    }
+
+    /**
+     * @return the time the commands have spent in the queues, in nanoseconds
+     */
+    public LatencyHistogram queueTime() {
+        return queueTime;
+    }
+
+    /**
+     * @return the time the handlers have spent handling the commands, in nanoseconds
+     */
+    public LatencyHistogram serviceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * @return the number of the commands dispatched (queued) so far
+     */
+    public long dispatched() {
+        return dispatched.sum();
+    }
+
+    /**
+     * @return the number of the commands rejected because of a full queue
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Rejects all further commands, handles the queued ones, and stops the workers
+     */
+    @Override
+    public void close() {
+        closed = true;
+        var interrupted = false;
+        for (var queue : queues) {
+            while (true) {
+                try {
+                    queue.put(stop);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        for (var worker : workers) {
+            while (true) {
+                try {
+                    worker.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        // commands that raced with the close
+        for (var queue : queues) {
+            Task<R> task;
+            while ((task = queue.poll()) != null) {
+                if (task != stop) {
+                    task.result().completeExceptionally(new RejectedExecutionException("Command bus is closed"));
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the route of the most specific registered super type (class or interface) of the type, or {@code null} if there is none
+     * @throws IllegalArgumentException if there are several most specific registered super types, none of them being a subtype of the others
+     */
+    private Route<R> resolve(Class<?> type) {
+        var route = resolvedRoutes.get(type);
+        if (route == null) {
+            var candidates = routes.keySet().stream().filter(registered -> registered.isAssignableFrom(type)).toList();
+            var mostSpecific = candidates.stream()
+                    .filter(candidate -> candidates.stream().noneMatch(other -> other != candidate && candidate.isAssignableFrom(other)))
+                    .toList();
+            if (mostSpecific.size() > 1) {
+                throw new IllegalArgumentException("Ambiguous handlers of " + type.getName() + ": " + mostSpecific.stream().map(Class::getName).sorted().toList());
+            }
+            if (mostSpecific.isEmpty()) {
+                return null;
+            }
+            route = routes.get(mostSpecific.getFirst());
+            resolvedRoutes.put(type, route);
+        }
+        return route;
+    }
+
+    private void run(ArrayBlockingQueue<Task<R>> queue) {
+        while (true) {
+            Task<R> task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            if (task == stop) {
+                return;
+            }
+            var start = System.nanoTime();
+            queueTime.record(start - task.enqueued());
+            R result;
+            try {
+                result = task.route().handler().apply(task.command());
+            } catch (Throwable failure) {
+                serviceTime.record(System.nanoTime() - start);
+                task.result().completeExceptionally(failure);
+                continue;
+            }
+            // recorded before the completion, so that the callers observe the metrics of their commands
+            serviceTime.record(System.nanoTime() - start);
+            task.result().complete(result);
+        }
+    }
+}
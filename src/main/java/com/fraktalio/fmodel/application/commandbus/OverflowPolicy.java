@@ -0,0 +1,15 @@
+package com.fraktalio.fmodel.application.commandbus;
+
+/**
+ * What the {@link CommandBus} does with a command whose shard queue is full
+ */
+public enum OverflowPolicy {
+    /**
+     * The command is rejected right away: its future fails with the {@link java.util.concurrent.RejectedExecutionException}
+     */
+    REJECT,
+    /**
+     * The dispatching thread waits until there is a free slot in the queue
+     */
+    BLOCK
+}
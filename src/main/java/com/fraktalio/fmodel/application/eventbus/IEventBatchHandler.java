@@ -0,0 +1,46 @@
+package com.fraktalio.fmodel.application.eventbus;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Consumer of the event batches published to the {@link RingBufferEventBus}
+ *
+ * @param <E> event
+ */
+@FunctionalInterface
+public interface IEventBatchHandler<E> {
+
+    /**
+     * Handles one published batch of events (for example, the events of one aggregate `save`)
+     * <br /><br />
+     * A consumer reads all the batches that are available at once: {@code endOfBatch} marks the last one of them,
+     * a good moment to flush the work buffered so far.
+     *
+     * @param events     the published events, shared (not copied) between all the consumers
+     * @param sequence   the sequence of the batch in the ring
+     * @param endOfBatch whether this is the last of the batches available to the consumer
+     */
+    void handle(List<? extends E> events, long sequence, boolean endOfBatch);
+
+    /**
+     * Called when {@link #handle(List, long, boolean)} fails. The consumer carries on with the next batch.
+     *
+     * @param failure  the failure
+     * @param events   the events of the failed batch
+     * @param sequence the sequence of the failed batch
+     */
+    default void onFailure(Throwable failure, List<? extends E> events, long sequence) {
+    }
+
+    /**
+     * Handles the events one by one, for example with {@code materializedView::handle} or {@code sagaManager::handle}
+     *
+     * @param handler handles a single event
+     * @param <E>     event
+     * @return the batch handler
+     */
+    static <E> IEventBatchHandler<E> forEach(Consumer<? super E> handler) {
+        return (events, sequence, endOfBatch) -> events.forEach(handler);
+    }
+}
@@ -0,0 +1,286 @@
+package com.fraktalio.fmodel.application.eventbus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process event bus from the aggregates to the materialized views and the saga managers, built on a preallocated ring buffer.
+ * <br /><br />
+ * Publishers claim the next sequence of the ring, store the (immutable) batch of events in its slot and mark the slot as available;
+ * no lock is taken and nothing is allocated per publish. The batch is shared, not copied: every consumer reads the same list.
+ * Every consumer runs in its own thread, tracks its own sequence, and reads all the available batches at once.
+ * A consumer can depend on other consumers (for example, the sagas on the views): it only reads the batches that its dependencies have already handled.
+ * Publishers never overwrite a slot that a consumer has not read yet, so a slow consumer applies backpressure to the publishers.
+ * <br /><br />
+ * Typical wiring:
+ * <pre>{@code
+ * var bus = new RingBufferEventBus<Event>();
+ * var views = bus.subscribe(IEventBatchHandler.forEach(materializedView::handle));
+ * bus.subscribe(IEventBatchHandler.forEach(sagaManager::handle), views);
+ * bus.start();
+ * bus.publish(aggregate.handle(command));
+ * }</pre>
+ *
+ * @param <E> event
+ */
+public final class RingBufferEventBus<E> implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public RingBufferEventBus() {
+        this(DEFAULT_CAPACITY, WaitStrategy.PARK, Thread.ofPlatform().daemon().name("fmodel-event-bus-", 0).factory());
+    }
+
+    /**
+     * @param capacity      the number of the slots (event batches) of the ring, a power of two
+     * @param waitStrategy  how the publishers and the consumers wait
+     * @param threadFactory creates the threads of the consumers
+     */
+    public RingBufferEventBus(final int capacity, final WaitStrategy waitStrategy, final ThreadFactory threadFactory) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+        this.threadFactory = Objects.requireNonNull(threadFactory);
+        this.entries = new Object[capacity];
+        this.available = new AtomicIntegerArray(capacity);
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfTrailingZeros(capacity);
+        for (var i = 0; i < capacity; i++) {
+            available.set(i, -1);
+        }
+    }
+
+    private final WaitStrategy waitStrategy;
+    private final ThreadFactory threadFactory;
+    private final Object[] entries;
+    // the round (sequence / capacity) of the batch last published to the slot
+    private final AtomicIntegerArray available;
+    private final int mask;
+    private final int shift;
+    // published in the slots claimed by the publishers that gave up because the bus was closed, and skipped by the consumers
+    private static final List<?> TOMBSTONE = List.of();
+    private final AtomicLong claimed = new AtomicLong(-1L);
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private List<Subscription> gating = List.of();
+    private long cachedGatingSequence = -1L;
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    /**
+     * Subscribes a consumer. All consumers subscribe before the bus is {@link #start() started}.
+     *
+     * @param handler   handles the published batches
+     * @param dependsOn the consumers that have to handle a batch before this one does
+     * @return the subscription, to depend on and to monitor
+     */
+    @SafeVarargs
+    public final synchronized Subscription subscribe(IEventBatchHandler<? super E> handler, Subscription... dependsOn) {
+        Objects.requireNonNull(handler);
+        if (started) {
+            throw new IllegalStateException("Consumers subscribe before the event bus is started");
+        }
+        var dependencies = new ArrayList<Subscription>(dependsOn.length);
+        for (var dependency : dependsOn) {
+            if (!subscriptions.contains(dependency)) {
+                throw new IllegalArgumentException("Not a subscription of this event bus: " + dependency);
+            }
+            dependencies.add(dependency);
+        }
+        var subscription = new Subscription(handler, List.copyOf(dependencies));
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Starts the threads of the consumers
+     */
+    public synchronized void start() {
+        if (started) {
+            throw new IllegalStateException("Event bus is already started");
+        }
+        gating = List.copyOf(subscriptions);
+        for (var subscription : gating) {
+            subscription.thread = threadFactory.newThread(subscription::run);
+        }
+        started = true;
+        for (var subscription : gating) {
+            subscription.thread.start();
+        }
+    }
+
+    /**
+     * Publishes a batch of events to all the consumers. Waits (with the {@link WaitStrategy}) while the ring is full.
+     * A publisher that finds the bus closed once its slot is free does not publish its batch, and fails.
+     *
+     * @param events the events, for example the result of the aggregate `handle`; must not be modified afterwards
+     * @return the sequence of the batch in the ring
+     */
+    public long publish(List<? extends E> events) {
+        Objects.requireNonNull(events);
+        if (!started || closed) {
+            throw new IllegalStateException(closed ? "Event bus is closed" : "Event bus is not started");
+        }
+        var sequence = claimed.incrementAndGet();
+        var wrapPoint = sequence - entries.length;
+        var attempt = 0;
+        while (wrapPoint > cachedGatingSequence) {
+            var gatingSequence = minimumSequence(gating, Long.MAX_VALUE);
+            if (wrapPoint <= gatingSequence) {
+                cachedGatingSequence = gatingSequence;
+                break;
+            }
+            waitStrategy.idle(attempt++);
+        }
+        // the claimed sequence is published in any case, the consumers wait for it before they stop
+        var discarded = closed;
+        var index = (int) sequence & mask;
+        entries[index] = discarded ? TOMBSTONE : events;
+        // the volatile write publishes the entry to the consumers
+        available.set(index, (int) (sequence >>> shift));
+        if (discarded) {
+            throw new IllegalStateException("Event bus is closed");
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the sequence of the last batch claimed by a publisher
+     */
+    public long cursor() {
+        return claimed.get();
+    }
+
+    /**
+     * @return the number of the slots that publishers can claim without waiting
+     */
+    public long remainingCapacity() {
+        return entries.length - (claimed.get() - minimumSequence(gating, claimed.get()));
+    }
+
+    /**
+     * Stops the consumers once they have handled all the published batches.
+     * Publishers stop before the bus is closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        List<Subscription> subscriptions;
+        synchronized (this) {
+            subscriptions = gating;
+        }
+        var interrupted = false;
+        for (var subscription : subscriptions) {
+            while (true) {
+                try {
+                    subscription.thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long minimumSequence(List<Subscription> subscriptions, long minimum) {
+        for (var subscription : subscriptions) {
+            minimum = Math.min(minimum, subscription.sequence.get());
+        }
+        return minimum;
+    }
+
+    private long highestPublished(long from, long to) {
+        for (var sequence = from; sequence <= to; sequence++) {
+            if (available.get((int) sequence & mask) != (int) (sequence >>> shift)) {
+                return sequence - 1;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * A consumer of the event bus
+     */
+    public final class Subscription {
+        private Subscription(final IEventBatchHandler<? super E> handler, final List<Subscription> dependencies) {
+            this.handler = handler;
+            this.dependencies = dependencies;
+        }
+
+        private final IEventBatchHandler<? super E> handler;
+        private final List<Subscription> dependencies;
+        private final AtomicLong sequence = new AtomicLong(-1L);
+        private final LongAdder failures = new LongAdder();
+        private Thread thread;
+
+        /**
+         * @return the sequence of the last batch handled by the consumer
+         */
+        public long sequence() {
+            return sequence.get();
+        }
+
+        /**
+         * @return the number of the batches claimed by the publishers and not yet handled by the consumer
+         */
+        public long lag() {
+            return claimed.get() - sequence.get();
+        }
+
+        /**
+         * @return the number of the batches the handler failed on
+         */
+        public long failures() {
+            return failures.sum();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void run() {
+            var next = sequence.get() + 1;
+            var attempt = 0;
+            while (true) {
+                var last = dependencies.isEmpty()
+                        ? highestPublished(next, claimed.get())
+                        : minimumSequence(dependencies, Long.MAX_VALUE);
+                if (last < next) {
+                    if (closed && next > claimed.get()) {
+                        return;
+                    }
+                    waitStrategy.idle(attempt++);
+                    continue;
+                }
+                var lastBatch = last;
+                while (lastBatch >= next && entries[(int) lastBatch & mask] == TOMBSTONE) {
+                    lastBatch--;
+                }
+                for (var current = next; current <= lastBatch; current++) {
+                    var events = (List<? extends E>) entries[(int) current & mask];
+                    if (events == TOMBSTONE) {
+                        continue;
+                    }
+                    try {
+                        handler.handle(events, current, current == lastBatch);
+                    } catch (Throwable failure) {
+                        failures.increment();
+                        try {
+                            handler.onFailure(failure, events, current);
+                        } catch (Throwable ignored) {
+                            // a consumer must not stop: the publishers would wait for it forever
+                        }
+                    }
+                }
+                // releases the slots to the publishers and the batches to the dependent consumers
+                sequence.set(last);
+                next = last + 1;
+                attempt = 0;
+            }
+        }
+    }
+}
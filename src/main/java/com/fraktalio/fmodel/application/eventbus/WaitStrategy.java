@@ -0,0 +1,59 @@
+package com.fraktalio.fmodel.application.eventbus;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How the publishers and the consumers of the {@link RingBufferEventBus} wait for a slot or for an event.
+ * <br /><br />
+ * The strategies trade CPU for latency: {@link #BUSY_SPIN} keeps the core busy and reacts the fastest,
+ * {@link #PARK} spins shortly and then releases the core.
+ */
+public enum WaitStrategy {
+    /**
+     * Spins on the CPU, with the {@link Thread#onSpinWait()} hint. One core per waiting thread.
+     */
+    BUSY_SPIN {
+        @Override
+        void idle(int attempt) {
+            Thread.onSpinWait();
+        }
+    },
+    /**
+     * Spins shortly, then gives up the CPU to other threads with {@link Thread#yield()}.
+     */
+    YIELD {
+        @Override
+        void idle(int attempt) {
+            if (attempt < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    },
+    /**
+     * Spins shortly, yields, and then parks the thread for a few microseconds at a time.
+     */
+    PARK {
+        @Override
+        void idle(int attempt) {
+            if (attempt < SPINS) {
+                Thread.onSpinWait();
+            } else if (attempt < 2 * SPINS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    };
+
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 10_000L;
+
+    /**
+     * Waits once
+     *
+     * @param attempt the number of the previous waits for the same condition
+     */
+    abstract void idle(int attempt);
+}
@@ -0,0 +1,192 @@
+package com.fraktalio.fmodel.application.groupcommit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Gathers concurrent writes into batches, and hands every batch to a single call of the batch writer.
+ * <br /><br />
+ * A dedicated thread takes the writes from a queue. The adaptive window works as follows:
+ * <ul>
+ *     <li>when idle (the previous batch had a single write), a write is flushed immediately, without any waiting</li>
+ *     <li>under load, the batch is flushed once it reaches `maxBatchSize` writes, or once `maxDelay` has elapsed since its first write</li>
+ * </ul>
+ * While a batch is being written, new writes queue up and form the next batch.
+ * Every caller gets its own future, completed individually by the batch writer.
+ *
+ * @param <I> input of a write
+ * @param <R> result of a write
+ */
+public final class GroupCommitter<I, R> implements AutoCloseable {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofNanos(200_000);
+
+    public GroupCommitter(final Consumer<List<PendingWrite<I, R>>> batchWriter) {
+        this(batchWriter, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY, Thread.ofPlatform().daemon().name("fmodel-group-commit-", 0).factory());
+    }
+
+    public GroupCommitter(final Consumer<List<PendingWrite<I, R>>> batchWriter, final int maxBatchSize, final Duration maxDelay, final ThreadFactory threadFactory) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Max batch size must be positive: " + maxBatchSize);
+        }
+        this.batchWriter = Objects.requireNonNull(batchWriter);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.flusher = threadFactory.newThread(this::run);
+        this.flusher.start();
+    }
+
+    private final Consumer<List<PendingWrite<I, R>>> batchWriter;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Thread flusher;
+    private final LinkedBlockingQueue<Write<I, R>> queue = new LinkedBlockingQueue<>();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private volatile boolean closed;
+
+    private static final class Write<I, R> implements PendingWrite<I, R> {
+        private final I input;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        Write(I input) {
+            this.input = input;
+        }
+
+        @Override
+        public I input() {
+            return input;
+        }
+
+        @Override
+        public void complete(R result) {
+            future.complete(result);
+        }
+
+        @Override
+        public void fail(Throwable failure) {
+            future.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * @param input the input of the write
+     * @return the result of the write, completed once the batch containing this write is written
+     */
+    public CompletableFuture<R> submit(I input) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Group committer is closed"));
+        }
+        var write = new Write<I, R>(input);
+        queue.add(write);
+        return write.future;
+    }
+
+    /**
+     * Waits for the result of a write, rethrowing its failure as it is (unwrapped)
+     */
+    public static <R> R await(CompletableFuture<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            } else if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of writes submitted so far
+     */
+    public long writes() {
+        return writes.sum();
+    }
+
+    /**
+     * @return the number of batches written so far
+     */
+    public long batches() {
+        return batches.sum();
+    }
+
+    /**
+     * Writes all the queued writes, and stops the flusher thread
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Write<I, R> write;
+        while ((write = queue.poll()) != null) {
+            write.fail(new IllegalStateException("Group committer is closed"));
+        }
+    }
+
+    private void run() {
+        var batch = new ArrayList<Write<I, R>>(maxBatchSize);
+        var previousBatchSize = 1;
+        try {
+            while (!closed || !queue.isEmpty()) {
+                var first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                if (previousBatchSize > 1) {
+                    var deadline = System.nanoTime() + maxDelayNanos;
+                    while (batch.size() < maxBatchSize) {
+                        var next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                    }
+                }
+                previousBatchSize = batch.size();
+                flush(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            batch.forEach(write -> write.fail(e));
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(List<Write<I, R>> batch) {
+        writes.add(batch.size());
+        batches.increment();
+        try {
+            batchWriter.accept(Collections.unmodifiableList(batch));
+        } catch (Throwable failure) {
+            batch.forEach(write -> write.fail(failure));
+        }
+        for (var write : batch) {
+            if (!write.future.isDone()) {
+                write.fail(new IllegalStateException("The write was not completed by the batch writer"));
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.fraktalio.fmodel.application.groupcommit;
+
+/**
+ * A single write of a group commit batch, waiting to be completed by the batch writer.
+ * <br /><br />
+ * The batch writer completes every write individually, either with its result or with its own failure (for example, a version conflict),
+ * so one failing write does not fail the whole batch.
+ *
+ * @param <I> input of the write
+ * @param <R> result of the write
+ */
+public interface PendingWrite<I, R> {
+    /**
+     * @return the input of the write
+     */
+    I input();
+
+    /**
+     * @param result the result of the successful write
+     */
+    void complete(R result);
+
+    /**
+     * @param failure the reason why this write has failed
+     */
+    void fail(Throwable failure);
+}
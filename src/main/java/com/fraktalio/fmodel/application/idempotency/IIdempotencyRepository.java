@@ -0,0 +1,55 @@
+package com.fraktalio.fmodel.application.idempotency;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Idempotency repository interface - persists the results of the handled commands, by command identifier.
+ * <br /><br />
+ * Used by the {@link IdempotentCommandHandler} to recognize duplicates beyond its in-memory window (for example, after a restart, or on another node).
+ *
+ * @param <ID> command identifier
+ * @param <R>  result of the command
+ */
+public interface IIdempotencyRepository<ID, R> {
+    /**
+     * Fetch the result of the already handled command
+     *
+     * @param commandId command identifier
+     * @return the result, or null if the command was not handled yet
+     */
+    R fetchResult(ID commandId);
+
+    /**
+     * Save the result of the handled command
+     *
+     * @param commandId command identifier
+     * @param result    the result of the command
+     * @return the saved result
+     */
+    R save(ID commandId, R result);
+
+    // --------------------------------------------------------------------
+    // Default async variants
+    // --------------------------------------------------------------------
+
+    /**
+     * Fetch the result of the already handled command - async
+     *
+     * @param commandId command identifier
+     * @return the result, or null if the command was not handled yet
+     */
+    default CompletableFuture<R> fetchResultAsync(ID commandId) {
+        return CompletableFuture.supplyAsync(() -> fetchResult(commandId));
+    }
+
+    /**
+     * Save the result of the handled command - async
+     *
+     * @param commandId command identifier
+     * @param result    the result of the command
+     * @return the saved result
+     */
+    default CompletableFuture<R> saveAsync(ID commandId, R result) {
+        return CompletableFuture.supplyAsync(() -> save(commandId, result));
+    }
+}
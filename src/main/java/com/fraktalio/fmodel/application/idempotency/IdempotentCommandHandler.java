@@ -0,0 +1,220 @@
+package com.fraktalio.fmodel.application.idempotency;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Idempotency decorator of a command handler (for example, of {@code aggregate::handle} and {@code aggregate::handleAsync}).
+ * <br /><br />
+ * Commands are recognized by the identifier that `commandId` extracts from them. Commands without an identifier (null) are always handled.
+ * The results of the recently handled commands are kept in a bounded cache, for the duration of the `window`:
+ * <ul>
+ *     <li>a duplicate of a handled command gets the cached result, without touching the repository</li>
+ *     <li>concurrent duplicates of a command in flight share its future, so the command is handled only once</li>
+ *     <li>a failed command is not cached, so its retry is handled again</li>
+ * </ul>
+ * With an {@link IIdempotencyRepository}, a command missing from the cache is looked up in the repository before it is handled,
+ * and the results are saved to the repository once the command is handled.
+ *
+ * @param <C>  command
+ * @param <R>  result of the command
+ * @param <ID> command identifier
+ */
+public final class IdempotentCommandHandler<C, R, ID> {
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+    public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(10);
+
+    public IdempotentCommandHandler(final Function<? super C, ? extends ID> commandId,
+                                    final Function<C, R> handler,
+                                    final Function<C, CompletableFuture<R>> asyncHandler) {
+        this(commandId, handler, asyncHandler, null, DEFAULT_MAX_ENTRIES, DEFAULT_WINDOW);
+    }
+
+    public IdempotentCommandHandler(final Function<? super C, ? extends ID> commandId,
+                                    final Function<C, R> handler,
+                                    final Function<C, CompletableFuture<R>> asyncHandler,
+                                    final IIdempotencyRepository<ID, R> repository,
+                                    final int maxEntries,
+                                    final Duration window) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        this.commandId = Objects.requireNonNull(commandId);
+        this.handler = Objects.requireNonNull(handler);
+        this.asyncHandler = Objects.requireNonNull(asyncHandler);
+        this.repository = repository;
+        this.maxEntries = maxEntries;
+        this.windowNanos = window.toNanos();
+    }
+
+    private final Function<? super C, ? extends ID> commandId;
+    private final Function<C, R> handler;
+    private final Function<C, CompletableFuture<R>> asyncHandler;
+    private final IIdempotencyRepository<ID, R> repository;
+    private final int maxEntries;
+    private final long windowNanos;
+    private final ConcurrentHashMap<ID, Entry<R>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Map.Entry<ID, Entry<R>>> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final LongAdder duplicates = new LongAdder();
+
+    private static final class Entry<R> {
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private volatile long completedAt;
+    }
+
+    /**
+     * Handle the command, unless it is a duplicate
+     *
+     * @param command command to be handled
+     * @return the result of the command, or of its original
+     */
+    public R handle(C command) {
+        ID id = commandId.apply(command);
+        if (id == null) {
+            return handler.apply(command);
+        }
+        var entry = new Entry<R>();
+        var existing = register(id, entry);
+        if (existing != null) {
+            return await(existing.result);
+        }
+        try {
+            var result = repository != null ? repository.fetchResult(id) : null;
+            if (result == null) {
+                result = handler.apply(command);
+                if (repository != null) {
+                    repository.save(id, result);
+                }
+            }
+            complete(entry, result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            fail(id, entry, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Handle the command, unless it is a duplicate - async variant
+     *
+     * @param command command to be handled
+     * @return the result of the command, or of its original
+     */
+    public CompletableFuture<R> handleAsync(C command) {
+        ID id = commandId.apply(command);
+        if (id == null) {
+            return asyncHandler.apply(command);
+        }
+        var entry = new Entry<R>();
+        var existing = register(id, entry);
+        if (existing != null) {
+            return existing.result.copy();
+        }
+        CompletableFuture<R> result;
+        try {
+            result = repository == null
+                    ? asyncHandler.apply(command)
+                    : repository.fetchResultAsync(id)
+                    .thenCompose(stored -> stored != null
+                            ? CompletableFuture.completedFuture(stored)
+                            : asyncHandler.apply(command).thenCompose(handled -> repository.saveAsync(id, handled).thenApply(saved -> handled)));
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((handled, failure) -> {
+            if (failure == null) {
+                complete(entry, handled);
+            } else {
+                fail(id, entry, failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+            }
+        });
+        return entry.result.copy();
+    }
+
+    /**
+     * @return the number of duplicates served from the cache, or coalesced onto a command in flight
+     */
+    public long duplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * @return the number of the cached (and in flight) commands
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Registers the entry of a new command
+     *
+     * @return the entry of the original command if this one is a duplicate, or null
+     */
+    private Entry<R> register(ID id, Entry<R> entry) {
+        while (true) {
+            var existing = entries.putIfAbsent(id, entry);
+            if (existing == null) {
+                insertionOrder.add(Map.entry(id, entry));
+                evict();
+                return null;
+            }
+            if (!expired(existing)) {
+                duplicates.increment();
+                return existing;
+            }
+            entries.remove(id, existing);
+        }
+    }
+
+    private boolean expired(Entry<R> entry) {
+        var completedAt = entry.completedAt;
+        return completedAt != 0 && System.nanoTime() - completedAt > windowNanos;
+    }
+
+    /**
+     * Evicts the oldest entries over the limit, and the expired entries at the head of the insertion order
+     */
+    private void evict() {
+        Map.Entry<ID, Entry<R>> oldest;
+        while ((oldest = insertionOrder.peek()) != null
+                && (entries.size() > maxEntries || expired(oldest.getValue()) || entries.get(oldest.getKey()) != oldest.getValue())) {
+            if (insertionOrder.remove(oldest)) {
+                entries.remove(oldest.getKey(), oldest.getValue());
+            }
+        }
+    }
+
+    private void complete(Entry<R> entry, R result) {
+        entry.completedAt = System.nanoTime();
+        entry.result.complete(result);
+    }
+
+    private void fail(ID id, Entry<R> entry, Throwable failure) {
+        entries.remove(id, entry);
+        entry.result.completeExceptionally(failure);
+    }
+
+    private static <R> R await(CompletableFuture<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            } else if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.fraktalio.fmodel.application.instrumentation;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Probe that forwards everything it records to all of its probes (for example, to the histograms and to JFR).
+ * <br /><br />
+ * Every probe measures the phases itself, with its own {@link IProbe#start()} and stop (a JFR event is begun at the start of its phase).
+ * The starts of a phase are kept in a small ring per thread, so an async phase must be stopped (its future passed to {@code stop}) on the thread that started it, as all the components do.
+ */
+public final class CompositeProbe implements IProbe {
+    public CompositeProbe(final IProbe... probes) {
+        this.probes = List.of(probes);
+        this.starts = ThreadLocal.withInitial(() -> new Starts(probes.length));
+    }
+
+    private final List<IProbe> probes;
+    private final ThreadLocal<Starts> starts;
+
+    /**
+     * The phases in flight on a thread at most (the components nest up to three)
+     */
+    private static final int SLOTS = 16;
+
+    /**
+     * The ring of the starts of all the probes, per phase in flight, and the last issued token
+     */
+    private static final class Starts {
+        final long[] tokens = new long[SLOTS];
+        final long[][] starts;
+        long last;
+
+        Starts(int probes) {
+            starts = new long[SLOTS][probes];
+        }
+    }
+
+    @Override
+    public void record(Phase phase, long nanos) {
+        for (var probe : probes) {
+            probe.record(phase, nanos);
+        }
+    }
+
+    @Override
+    public void recordFold(int events, long nanos) {
+        for (var probe : probes) {
+            probe.recordFold(events, nanos);
+        }
+    }
+
+    @Override
+    public void conflict() {
+        for (var probe : probes) {
+            probe.conflict();
+        }
+    }
+
+    @Override
+    public long start() {
+        var local = starts.get();
+        var token = ++local.last;
+        var slot = (int) (token & (SLOTS - 1));
+        local.tokens[slot] = token;
+        for (var i = 0; i < probes.size(); i++) {
+            local.starts[slot][i] = probes.get(i).start();
+        }
+        return token;
+    }
+
+    @Override
+    public void stop(Phase phase, long start) {
+        var starts = take(start);
+        if (starts != null) {
+            for (var i = 0; i < probes.size(); i++) {
+                probes.get(i).stop(phase, starts[i]);
+            }
+        }
+    }
+
+    @Override
+    public void stopFold(int events, long start) {
+        var starts = take(start);
+        if (starts != null) {
+            for (var i = 0; i < probes.size(); i++) {
+                probes.get(i).stopFold(events, starts[i]);
+            }
+        }
+    }
+
+    @Override
+    public <T> CompletionStage<T> stop(Phase phase, long start, CompletionStage<T> stage) {
+        var starts = take(start);
+        if (starts == null) {
+            return stage;
+        }
+        // every probe stops the phase (and records a conflict) on its own
+        var result = stage;
+        for (var i = 0; i < probes.size(); i++) {
+            result = probes.get(i).stop(phase, starts[i], result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the starts of the token, or {@code null} if they are stopped already (or were overwritten)
+     */
+    private long[] take(long token) {
+        var local = starts.get();
+        var slot = (int) (token & (SLOTS - 1));
+        if (token == 0 || local.tokens[slot] != token) {
+            return null;
+        }
+        local.tokens[slot] = 0;
+        return local.starts[slot];
+    }
+}
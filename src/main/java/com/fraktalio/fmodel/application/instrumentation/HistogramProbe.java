@@ -0,0 +1,66 @@
+package com.fraktalio.fmodel.application.instrumentation;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Probe that records a {@link LatencyHistogram} for every {@link Phase}, and counts the folded events and the optimistic locking conflicts
+ */
+public final class HistogramProbe implements IProbe {
+    public HistogramProbe(final String name) {
+        this.name = name;
+        this.histograms = new LatencyHistogram[Phase.values().length];
+        for (var i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    private final String name;
+    private final LatencyHistogram[] histograms;
+    private final LongAdder eventsFolded = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    @Override
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void recordFold(int events, long nanos) {
+        record(Phase.FOLD, nanos);
+        eventsFolded.add(events);
+    }
+
+    @Override
+    public void conflict() {
+        conflicts.increment();
+    }
+
+    /**
+     * @return the name of the instrumented component (aggregate / view / saga type)
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @param phase measured phase
+     * @return the latencies of the phase, in nanoseconds
+     */
+    public LatencyHistogram histogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * @return the total number of events folded into the state
+     */
+    public long eventsFolded() {
+        return eventsFolded.sum();
+    }
+
+    /**
+     * @return the total number of optimistic locking conflicts
+     */
+    public long conflicts() {
+        return conflicts.sum();
+    }
+}
@@ -0,0 +1,14 @@
+package com.fraktalio.fmodel.application.instrumentation;
+
+/**
+ * Exports the recorded metrics to a monitoring system (logs, Micrometer, Prometheus, ...)
+ */
+@FunctionalInterface
+public interface IMetricsExporter {
+    /**
+     * Export the metrics of a single instrumented component
+     *
+     * @param probe the probe of the component
+     */
+    void export(HistogramProbe probe);
+}
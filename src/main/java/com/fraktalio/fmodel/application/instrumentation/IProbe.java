@@ -0,0 +1,131 @@
+package com.fraktalio.fmodel.application.instrumentation;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Instrumentation probe of the application components (aggregates, views, saga managers).
+ * <br /><br />
+ * A component measures every {@link Phase} with a pair of {@link #start()} and {@link #stop(Phase, long)} calls.
+ * The {@link #NOOP} probe, the default of all the components, does not read the clock and does not record anything,
+ * so a component without instrumentation pays only for an (inlined) empty call.
+ */
+public interface IProbe {
+    /**
+     * Disabled instrumentation
+     */
+    IProbe NOOP = new IProbe() {
+        @Override
+        public void record(Phase phase, long nanos) {
+        }
+
+        @Override
+        public long start() {
+            return 0;
+        }
+
+        @Override
+        public void stop(Phase phase, long start) {
+        }
+
+        @Override
+        public void stopFold(int events, long start) {
+        }
+
+        @Override
+        public <T> CompletableFuture<T> stop(Phase phase, long start, CompletableFuture<T> future) {
+            return future;
+        }
+
+        @Override
+        public <T> CompletionStage<T> stop(Phase phase, long start, CompletionStage<T> stage) {
+            return stage;
+        }
+    };
+
+    /**
+     * Record the duration of a phase
+     *
+     * @param phase measured phase
+     * @param nanos duration in nanoseconds
+     */
+    void record(Phase phase, long nanos);
+
+    /**
+     * Record the duration of the {@link Phase#FOLD}, together with the number of events folded into the state
+     *
+     * @param events number of folded events
+     * @param nanos  duration in nanoseconds
+     */
+    default void recordFold(int events, long nanos) {
+        record(Phase.FOLD, nanos);
+    }
+
+    /**
+     * Record an optimistic locking conflict
+     */
+    default void conflict() {
+    }
+
+    /**
+     * @return the start time of a phase
+     */
+    default long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the duration of a phase, from its start until now
+     *
+     * @param phase measured phase
+     * @param start start time of the phase, as returned by {@link #start()}
+     */
+    default void stop(Phase phase, long start) {
+        record(phase, System.nanoTime() - start);
+    }
+
+    /**
+     * Record the duration of the {@link Phase#FOLD}, from its start until now
+     *
+     * @param events number of folded events
+     * @param start  start time of the fold, as returned by {@link #start()}
+     */
+    default void stopFold(int events, long start) {
+        recordFold(events, System.nanoTime() - start);
+    }
+
+    /**
+     * Record the duration of an async phase, from its start until the completion of its future.
+     * A failure of the {@link Phase#SAVE} with the {@link OptimisticLockingException} is recorded as a conflict.
+     *
+     * @param phase  measured phase
+     * @param start  start time of the phase, as returned by {@link #start()}
+     * @param future the result of the phase
+     * @return the future that completes after the duration is recorded
+     */
+    default <T> CompletableFuture<T> stop(Phase phase, long start, CompletableFuture<T> future) {
+        return stop(phase, start, (CompletionStage<T>) future).toCompletableFuture();
+    }
+
+    /**
+     * Record the duration of an async phase, from its start until the completion of its stage.
+     * A failure of the {@link Phase#SAVE} with the {@link OptimisticLockingException} is recorded as a conflict.
+     *
+     * @param phase measured phase
+     * @param start start time of the phase, as returned by {@link #start()}
+     * @param stage the result of the phase
+     * @return the stage that completes after the duration is recorded
+     */
+    default <T> CompletionStage<T> stop(Phase phase, long start, CompletionStage<T> stage) {
+        return stage.whenComplete((result, failure) -> {
+            stop(phase, start);
+            var cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (phase == Phase.SAVE && cause instanceof OptimisticLockingException) {
+                conflict();
+            }
+        });
+    }
+}
@@ -0,0 +1,38 @@
+package com.fraktalio.fmodel.application.instrumentation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the {@link HistogramProbe}s, one per instrumented component type (for example, per aggregate type).
+ * <br /><br />
+ * Components sharing the name share the probe, so the latencies of all the instances of an aggregate type end up in the same histograms.
+ */
+public final class Instrumentation {
+    private final ConcurrentHashMap<String, HistogramProbe> probes = new ConcurrentHashMap<>();
+
+    /**
+     * @param name name of the component type
+     * @return the probe of the component type, created on the first call
+     */
+    public HistogramProbe probe(String name) {
+        return probes.computeIfAbsent(name, HistogramProbe::new);
+    }
+
+    /**
+     * @return all the registered probes
+     */
+    public Collection<HistogramProbe> probes() {
+        return Collections.unmodifiableCollection(probes.values());
+    }
+
+    /**
+     * Export the metrics of all the registered probes
+     *
+     * @param exporter exporter to use
+     */
+    public void export(IMetricsExporter exporter) {
+        probes.values().forEach(exporter::export);
+    }
+}
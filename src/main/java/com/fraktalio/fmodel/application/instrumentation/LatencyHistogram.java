@@ -0,0 +1,124 @@
+package com.fraktalio.fmodel.application.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free, fixed-size latency histogram with log-linear buckets (in the style of the HDR histogram).
+ * <br /><br />
+ * Every power of two is split into {@value #SUB_BUCKETS} linear sub-buckets, so a recorded value is reported with a relative error of at most ~3%.
+ * Values from zero up to 2^41 - 1 nanoseconds (~36.6 minutes) are tracked. Larger values are clamped to the largest bucket, while {@link #max()} stays exact.
+ * Recording is a single atomic increment, and never allocates.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_TRACKED = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Summary of the histogram
+     *
+     * @param count number of recorded values
+     * @param mean  mean of the recorded values
+     * @param p50   median
+     * @param p90   90th percentile
+     * @param p99   99th percentile
+     * @param p999  99.9th percentile
+     * @param max   the largest recorded value
+     */
+    public record Snapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+    }
+
+    /**
+     * @param value the value to record, negative values are recorded as zero
+     */
+    public void record(long value) {
+        var v = Math.max(0, value);
+        counts.incrementAndGet(index(Math.min(v, MAX_TRACKED)));
+        count.increment();
+        sum.add(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        var n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @param percentile percentile, from 0 to 100
+     * @return the value below which the given percentage of the recorded values falls, or zero if nothing is recorded
+     */
+    public long valueAtPercentile(double percentile) {
+        var total = 0L;
+        var snapshot = new long[BUCKETS];
+        for (var i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        var rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        var seen = 0L;
+        for (var i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max());
+            }
+        }
+        return max();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(count(), mean(), valueAtPercentile(50), valueAtPercentile(90), valueAtPercentile(99), valueAtPercentile(99.9), max());
+    }
+
+    /**
+     * Clears the histogram. Values recorded concurrently with the reset may be partially lost.
+     */
+    public void reset() {
+        for (var i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        var shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        var subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,43 @@
+package com.fraktalio.fmodel.application.instrumentation;
+
+/**
+ * Measured phases of handling a command, an event or an action result
+ */
+public enum Phase {
+    /**
+     * Fetching the events / the state from the repository
+     */
+    FETCH,
+    /**
+     * Folding (rehydrating) the fetched events into the current state
+     */
+    FOLD,
+    /**
+     * Deciding on the new events
+     */
+    DECIDE,
+    /**
+     * Evolving the state with the new events
+     */
+    EVOLVE,
+    /**
+     * Reacting on an event / action result with new actions
+     */
+    REACT,
+    /**
+     * Publishing the actions
+     */
+    PUBLISH,
+    /**
+     * Saving the events / the state to the repository
+     */
+    SAVE,
+    /**
+     * Handling as a whole - from the start of the fetch to the end of the save / publish
+     */
+    HANDLE,
+    /**
+     * Waiting in a queue, before the work is picked by a thread
+     */
+    QUEUE
+}
@@ -0,0 +1,18 @@
+package com.fraktalio.fmodel.application.instrumentation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("fmodel.CommandHandled")
+@Label("Command Handled")
+@Description("A command handled by an aggregate, from the fetch until the save")
+@Category("fmodel")
+@StackTrace(false)
+final class CommandHandled extends Event {
+    @Label("Component")
+    String component;
+}
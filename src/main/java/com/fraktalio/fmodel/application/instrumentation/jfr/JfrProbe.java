@@ -0,0 +1,234 @@
+package com.fraktalio.fmodel.application.instrumentation.jfr;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Probe that emits JDK Flight Recorder events, so the hot aggregates and the slow projections show up in the recordings (and JMC).
+ * <br /><br />
+ * Emitted events, all in the `fmodel` category, without stack traces:
+ * <ul>
+ *     <li>`fmodel.CommandHandled` - a command handled by an aggregate</li>
+ *     <li>`fmodel.StreamRehydrated` - events folded into the state of an aggregate, with the event count</li>
+ *     <li>`fmodel.StateSaved` - events / state saved by an aggregate or a view</li>
+ *     <li>`fmodel.ViewEventApplied` - an event handled by a materialized view</li>
+ *     <li>`fmodel.SagaReacted` - an action result handled by a saga manager</li>
+ *     <li>`fmodel.OptimisticConflict` - a save rejected by optimistic locking</li>
+ * </ul>
+ * The timed events are begun by {@link #start()} and ended by the matching stop, so they carry the duration of their phase,
+ * and can be enabled and thresholded through the JFR settings (for example, `jfr configure fmodel.StateSaved#threshold=1ms`).
+ * The begun events are kept in a small ring per thread, so an async phase must be stopped (its future passed to {@code stop}) on the thread that started it, as all the components do.
+ * Only the event types enabled in a running recording are allocated and begun; without a recording, a phase allocates nothing.
+ * Durations measured elsewhere, and passed to {@link #record(Phase, long)}, are not emitted.
+ * Combine with other probes through the {@link com.fraktalio.fmodel.application.instrumentation.CompositeProbe}.
+ */
+public final class JfrProbe implements IProbe {
+    private enum Kind {AGGREGATE, VIEW, SAGA}
+
+    private JfrProbe(final String component, final Kind kind) {
+        this.component = component;
+        this.kind = kind;
+        this.handledType = switch (kind) {
+            case AGGREGATE -> COMMAND_HANDLED;
+            case VIEW -> VIEW_EVENT_APPLIED;
+            case SAGA -> SAGA_REACTED;
+        };
+    }
+
+    private static final EventType COMMAND_HANDLED = EventType.getEventType(CommandHandled.class);
+    private static final EventType VIEW_EVENT_APPLIED = EventType.getEventType(ViewEventApplied.class);
+    private static final EventType SAGA_REACTED = EventType.getEventType(SagaReacted.class);
+    private static final EventType STATE_SAVED = EventType.getEventType(StateSaved.class);
+    private static final EventType STREAM_REHYDRATED = EventType.getEventType(StreamRehydrated.class);
+
+    private final String component;
+    private final Kind kind;
+    private final EventType handledType;
+    private final ThreadLocal<Spans> spans = ThreadLocal.withInitial(Spans::new);
+
+    /**
+     * The phases in flight on a thread at most (the components nest up to three)
+     */
+    private static final int SPANS = 16;
+
+    /**
+     * The events begun at the start of a phase ({@code null} if their type is not enabled). Only the one of the stopped phase is committed.
+     */
+    private static final class Span {
+        long token;
+        Event handled;
+        StateSaved saved;
+        StreamRehydrated rehydrated;
+    }
+
+    /**
+     * The ring of the spans of a thread, and the last issued token
+     */
+    private static final class Spans {
+        final Span[] ring = new Span[SPANS];
+        long last;
+
+        Spans() {
+            for (var i = 0; i < SPANS; i++) {
+                ring[i] = new Span();
+            }
+        }
+    }
+
+    /**
+     * @param component name of the aggregate type
+     * @return probe for the aggregates
+     */
+    public static JfrProbe aggregate(String component) {
+        return new JfrProbe(component, Kind.AGGREGATE);
+    }
+
+    /**
+     * @param component name of the view type
+     * @return probe for the materialized views
+     */
+    public static JfrProbe view(String component) {
+        return new JfrProbe(component, Kind.VIEW);
+    }
+
+    /**
+     * @param component name of the saga type
+     * @return probe for the saga managers
+     */
+    public static JfrProbe saga(String component) {
+        return new JfrProbe(component, Kind.SAGA);
+    }
+
+    /**
+     * Begins the enabled timed events of the phase. The phase is known only when it is stopped, so every enabled type is begun.
+     *
+     * @return the token of the begun events
+     */
+    @Override
+    public long start() {
+        var local = spans.get();
+        var token = ++local.last;
+        var span = local.ring[(int) (token & (SPANS - 1))];
+        span.token = token;
+        span.handled = handledType.isEnabled() ? handled() : null;
+        span.saved = null;
+        if (STATE_SAVED.isEnabled()) {
+            span.saved = new StateSaved();
+            span.saved.component = component;
+            span.saved.begin();
+        }
+        span.rehydrated = null;
+        if (STREAM_REHYDRATED.isEnabled()) {
+            span.rehydrated = new StreamRehydrated();
+            span.rehydrated.component = component;
+            span.rehydrated.begin();
+        }
+        return token;
+    }
+
+    @Override
+    public void stop(Phase phase, long start) {
+        var span = take(start);
+        if (span != null) {
+            commit(phase, span.handled, span.saved);
+        }
+    }
+
+    @Override
+    public void stopFold(int events, long start) {
+        var span = take(start);
+        if (span != null && span.rehydrated != null) {
+            var event = span.rehydrated;
+            event.end();
+            if (event.shouldCommit()) {
+                event.eventCount = events;
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public <T> CompletionStage<T> stop(Phase phase, long start, CompletionStage<T> stage) {
+        // the events are taken on the starting thread, and committed on the completing one
+        var span = take(start);
+        var handled = span != null ? span.handled : null;
+        var saved = span != null ? span.saved : null;
+        return stage.whenComplete((result, failure) -> {
+            commit(phase, handled, saved);
+            var cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (phase == Phase.SAVE && cause instanceof OptimisticLockingException) {
+                conflict();
+            }
+        });
+    }
+
+    /**
+     * Not emitted: the events are timed by the recorder, from {@link #start()} until the stop
+     */
+    @Override
+    public void record(Phase phase, long nanos) {
+    }
+
+    @Override
+    public void conflict() {
+        var event = new OptimisticConflict();
+        if (event.shouldCommit()) {
+            event.component = component;
+            event.commit();
+        }
+    }
+
+    private Event handled() {
+        Event event = switch (kind) {
+            case AGGREGATE -> {
+                var handled = new CommandHandled();
+                handled.component = component;
+                yield handled;
+            }
+            case VIEW -> {
+                var applied = new ViewEventApplied();
+                applied.component = component;
+                yield applied;
+            }
+            case SAGA -> {
+                var reacted = new SagaReacted();
+                reacted.component = component;
+                yield reacted;
+            }
+        };
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return the events begun by the start of the token, or {@code null} if they are stopped already (or were overwritten)
+     */
+    private Span take(long token) {
+        var span = spans.get().ring[(int) (token & (SPANS - 1))];
+        if (token == 0 || span.token != token) {
+            return null;
+        }
+        span.token = 0;
+        return span;
+    }
+
+    private static void commit(Phase phase, Event handled, StateSaved saved) {
+        var event = switch (phase) {
+            case HANDLE -> handled;
+            case SAVE -> saved;
+            default -> null;
+        };
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.fraktalio.fmodel.application.instrumentation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("fmodel.OptimisticConflict")
+@Label("Optimistic Conflict")
+@Description("A save rejected because of a concurrent modification (optimistic locking)")
+@Category("fmodel")
+@StackTrace(false)
+final class OptimisticConflict extends Event {
+    @Label("Component")
+    String component;
+}
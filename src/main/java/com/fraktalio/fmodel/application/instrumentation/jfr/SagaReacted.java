@@ -0,0 +1,18 @@
+package com.fraktalio.fmodel.application.instrumentation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("fmodel.SagaReacted")
+@Label("Saga Reacted")
+@Description("An action result handled by a saga manager, from the reaction until the publish")
+@Category("fmodel")
+@StackTrace(false)
+final class SagaReacted extends Event {
+    @Label("Component")
+    String component;
+}
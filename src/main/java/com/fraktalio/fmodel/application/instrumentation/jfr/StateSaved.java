@@ -0,0 +1,18 @@
+package com.fraktalio.fmodel.application.instrumentation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("fmodel.StateSaved")
+@Label("State Saved")
+@Description("New events / a new state saved by an aggregate or a view")
+@Category("fmodel")
+@StackTrace(false)
+final class StateSaved extends Event {
+    @Label("Component")
+    String component;
+}
@@ -0,0 +1,21 @@
+package com.fraktalio.fmodel.application.instrumentation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("fmodel.StreamRehydrated")
+@Label("Stream Rehydrated")
+@Description("Events of a stream folded into the current state of an aggregate")
+@Category("fmodel")
+@StackTrace(false)
+final class StreamRehydrated extends Event {
+    @Label("Component")
+    String component;
+
+    @Label("Event Count")
+    int eventCount;
+}
@@ -0,0 +1,18 @@
+package com.fraktalio.fmodel.application.instrumentation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("fmodel.ViewEventApplied")
+@Label("View Event Applied")
+@Description("An event applied by a materialized view, from the fetch until the save")
+@Category("fmodel")
+@StackTrace(false)
+final class ViewEventApplied extends Event {
+    @Label("Component")
+    String component;
+}
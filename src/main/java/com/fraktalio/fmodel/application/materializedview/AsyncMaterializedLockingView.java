@@ -0,0 +1,89 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
+import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.view.IView;
+
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * {@code AsyncMaterializedLockingView} implements {@link IView} and {@link IAsyncViewStateLockingRepository} interfaces,
+ * clearly communicating that it is composed out of these two behaviours.
+ * <br /><br />
+ * It is the non-blocking variant of the {@link MaterializedLockingView}: the event is handled by composing the stages of the repository.
+ * The view never schedules a task itself, so the new state is computed by the thread that completes the fetch, and no thread is blocked in the chain.
+ *
+ * @param <S>  materialized view state type
+ * @param <E>  event type(s) that are handled by this materialized view
+ * @param <SV> materialized view state version type
+ * @param <EI> event identifier type
+ */
+public final class AsyncMaterializedLockingView<S, E, SV, EI> implements IView<S, E>, IAsyncViewStateLockingRepository<S, E, SV, EI> {
+    public AsyncMaterializedLockingView(final IView<S, E> view, final IAsyncViewStateLockingRepository<S, E, SV, EI> repository) {
+        this(view, repository, IProbe.NOOP);
+    }
+
+    public AsyncMaterializedLockingView(final IView<S, E> view, final IAsyncViewStateLockingRepository<S, E, SV, EI> repository, final IProbe probe) {
+        this.view = view;
+        this.repository = repository;
+        this.probe = probe;
+    }
+
+    private final IView<S, E> view;
+    private final IAsyncViewStateLockingRepository<S, E, SV, EI> repository;
+    private final IProbe probe;
+
+    private S computeNewState(S state, E event) {
+        var currentState = state != null ? state : initialViewState().get();
+        var evolveStart = probe.start();
+        var newState = evolveView().apply(currentState, event);
+        probe.stop(Phase.EVOLVE, evolveStart);
+        return newState;
+    }
+
+    /**
+     * Handle the event and store/produce new state
+     *
+     * @param eventAndIdentifier event to handle
+     * @return newly stored state
+     */
+    public CompletionStage<S> handleAsync(Pair<E, EI> eventAndIdentifier) {
+        var event = eventAndIdentifier.first();
+        var eventIdentifier = eventAndIdentifier.second();
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchStateAsync(event))
+                .thenCompose(stateAndVersion -> {
+                    var newState = computeNewState(stateAndVersion.first(), event);
+                    return probe.stop(Phase.SAVE, probe.start(), saveAsync(newState, eventIdentifier, stateAndVersion.second()));
+                }));
+    }
+
+    @Override
+    public BiFunction<S, E, S> evolveView() {
+        return view.evolveView();
+    }
+
+    @Override
+    public Supplier<S> initialViewState() {
+        return view.initialViewState();
+    }
+
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return view.eventTypes();
+    }
+
+    @Override
+    public CompletionStage<Pair<S, SV>> fetchStateAsync(E event) {
+        return repository.fetchStateAsync(event);
+    }
+
+    @Override
+    public CompletionStage<S> saveAsync(S state, EI eventIdentifier, SV currentStateVersion) {
+        return repository.saveAsync(state, eventIdentifier, currentStateVersion);
+    }
+}
@@ -0,0 +1,33 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Async-first view state locking repository interface, for the non-blocking drivers.
+ * <br /><br />
+ * Unlike the async variants of the {@link IViewStateLockingRepository}, there is no blocking method to wrap: an implementation returns its stages directly,
+ * and no thread is blocked while waiting for the storage.
+ * A class can implement both interfaces by returning {@link java.util.concurrent.CompletableFuture}s.
+ *
+ * @param <S>  state
+ * @param <E>  event
+ * @param <SV> state version
+ * @param <EI> event identifier
+ */
+public interface IAsyncViewStateLockingRepository<S, E, SV, EI> {
+    /**
+     * @param event event
+     * @return the State with Version
+     */
+    CompletionStage<Pair<S, SV>> fetchStateAsync(E event);
+
+    /**
+     * @param state               state
+     * @param eventIdentifier     identifier of the event the state is computed from
+     * @param currentStateVersion the version of the state the new state is computed from
+     * @return newly stored State, or a stage failed with the {@link com.fraktalio.fmodel.application.OptimisticLockingException}
+     */
+    CompletionStage<S> saveAsync(S state, EI eventIdentifier, SV currentStateVersion);
+}
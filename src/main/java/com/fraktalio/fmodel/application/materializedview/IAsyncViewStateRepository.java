@@ -0,0 +1,27 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Async-first view state repository interface, for the non-blocking drivers.
+ * <br /><br />
+ * Unlike the async variants of the {@link IViewStateRepository}, there is no blocking method to wrap: an implementation returns its stages directly,
+ * and no thread is blocked while waiting for the storage.
+ * A class can implement both interfaces by returning {@link java.util.concurrent.CompletableFuture}s.
+ *
+ * @param <S> state
+ * @param <E> event
+ */
+public interface IAsyncViewStateRepository<S, E> {
+    /**
+     * @param event event
+     * @return the State, {@code null} if there is none yet
+     */
+    CompletionStage<S> fetchStateAsync(E event);
+
+    /**
+     * @param state state
+     * @return newly stored State
+     */
+    CompletionStage<S> saveAsync(S state);
+}
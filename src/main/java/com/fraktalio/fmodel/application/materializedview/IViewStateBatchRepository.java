@@ -0,0 +1,24 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import java.util.List;
+
+/**
+ * View state repository that can save many states in a single (batched) call of the backend.
+ * <br /><br />
+ * The default implementation saves the states one by one. Override it to issue one batched backend call.
+ *
+ * @param <S> state
+ * @param <E> event
+ */
+public interface IViewStateBatchRepository<S, E> extends IViewStateRepository<S, E> {
+    /**
+     * Save all the states
+     *
+     * @param states states to save
+     */
+    default void saveAll(List<S> states) {
+        for (var state : states) {
+            save(state);
+        }
+    }
+}
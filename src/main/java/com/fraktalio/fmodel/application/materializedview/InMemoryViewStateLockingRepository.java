@@ -0,0 +1,109 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * In-memory, thread-safe implementation of the {@link IViewStateLockingRepository} and of the {@link IAsyncViewStateLockingRepository}.
+ * <br /><br />
+ * Every key owns a single {@link AtomicReference} to an immutable {@code (state, version, event identifier)} entry.
+ * A save is a lock-free compare-and-set of that entry: it succeeds only if the stored version is still the one the caller has fetched,
+ * otherwise {@link OptimisticLockingException} is thrown.
+ * <br /><br />
+ * The identifier of the last applied event is kept as a high-water mark.
+ * If an `eventOrder` comparator is configured, saving a state for an event that is not newer than the high-water mark is a no-op
+ * which returns the stored state, so redelivered events are not applied twice.
+ *
+ * @param <S>  state
+ * @param <E>  event
+ * @param <K>  key / identifier of the view state
+ * @param <EI> event identifier
+ */
+public final class InMemoryViewStateLockingRepository<S, E, K, EI> implements IViewStateLockingRepository<S, E, Long, EI>, IAsyncViewStateLockingRepository<S, E, Long, EI> {
+    public InMemoryViewStateLockingRepository(final Function<? super E, ? extends K> eventKey, final Function<? super S, ? extends K> stateKey) {
+        this(eventKey, stateKey, null);
+    }
+
+    public InMemoryViewStateLockingRepository(final Function<? super E, ? extends K> eventKey, final Function<? super S, ? extends K> stateKey, final Comparator<? super EI> eventOrder) {
+        this.eventKey = Objects.requireNonNull(eventKey);
+        this.stateKey = Objects.requireNonNull(stateKey);
+        this.eventOrder = eventOrder;
+    }
+
+    private final Function<? super E, ? extends K> eventKey;
+    private final Function<? super S, ? extends K> stateKey;
+    private final Comparator<? super EI> eventOrder;
+    private final ConcurrentHashMap<K, AtomicReference<Entry<S, EI>>> entries = new ConcurrentHashMap<>();
+
+    private record Entry<S, EI>(S state, long version, EI eventIdentifier) {
+    }
+
+    @Override
+    public Pair<S, Long> fetchState(E event) {
+        var current = current(eventKey.apply(event));
+        return current != null ? new Pair<>(current.state(), current.version()) : new Pair<>(null, null);
+    }
+
+    @Override
+    public S save(S state, EI eventIdentifier, Long currentStateVersion) {
+        var key = stateKey.apply(state);
+        var entry = entries.computeIfAbsent(key, k -> new AtomicReference<>());
+        var current = entry.get();
+        var actualVersion = current != null ? current.version() : null;
+        if (!Objects.equals(actualVersion, currentStateVersion)) {
+            throw new OptimisticLockingException(key, currentStateVersion, actualVersion);
+        }
+        if (current != null && isApplied(current, eventIdentifier)) {
+            return current.state();
+        }
+        var next = new Entry<>(state, actualVersion != null ? actualVersion + 1 : 1L, eventIdentifier);
+        if (!entry.compareAndSet(current, next)) {
+            throw new OptimisticLockingException(key, currentStateVersion, entry.get().version());
+        }
+        return state;
+    }
+
+    /**
+     * The high-water mark of the view state that the event belongs to
+     *
+     * @param event event
+     * @return the identifier of the last event applied to the view state, or {@code null} if the state was never stored
+     */
+    public EI lastEventIdentifier(E event) {
+        var current = current(eventKey.apply(event));
+        return current != null ? current.eventIdentifier() : null;
+    }
+
+    @Override
+    public CompletableFuture<Pair<S, Long>> fetchStateAsync(E event) {
+        return CompletableFuture.completedFuture(fetchState(event));
+    }
+
+    @Override
+    public CompletableFuture<S> saveAsync(S state, EI eventIdentifier, Long currentStateVersion) {
+        try {
+            return CompletableFuture.completedFuture(save(state, eventIdentifier, currentStateVersion));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private Entry<S, EI> current(K key) {
+        var entry = entries.get(key);
+        return entry != null ? entry.get() : null;
+    }
+
+    private boolean isApplied(Entry<S, EI> current, EI eventIdentifier) {
+        return eventOrder != null
+                && current.eventIdentifier() != null
+                && eventIdentifier != null
+                && eventOrder.compare(eventIdentifier, current.eventIdentifier()) <= 0;
+    }
+}
@@ -0,0 +1,48 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * In-memory, thread-safe implementation of the {@link IViewStateRepository} and of the {@link IAsyncViewStateRepository}.
+ * <br /><br />
+ * States are kept in a {@link ConcurrentHashMap}, keyed by the value that `eventKey` extracts from the event and `stateKey` extracts from the state.
+ * Both extractors must agree: the key of an event has to be equal to the key of the view state that this event updates.
+ *
+ * @param <S> state
+ * @param <E> event
+ * @param <K> key / identifier of the view state
+ */
+public final class InMemoryViewStateRepository<S, E, K> implements IViewStateRepository<S, E>, IAsyncViewStateRepository<S, E> {
+    public InMemoryViewStateRepository(final Function<? super E, ? extends K> eventKey, final Function<? super S, ? extends K> stateKey) {
+        this.eventKey = Objects.requireNonNull(eventKey);
+        this.stateKey = Objects.requireNonNull(stateKey);
+    }
+
+    private final Function<? super E, ? extends K> eventKey;
+    private final Function<? super S, ? extends K> stateKey;
+    private final ConcurrentHashMap<K, S> states = new ConcurrentHashMap<>();
+
+    @Override
+    public S fetchState(E event) {
+        return states.get(eventKey.apply(event));
+    }
+
+    @Override
+    public S save(S state) {
+        states.put(stateKey.apply(state), state);
+        return state;
+    }
+
+    @Override
+    public CompletableFuture<S> fetchStateAsync(E event) {
+        return CompletableFuture.completedFuture(fetchState(event));
+    }
+
+    @Override
+    public CompletableFuture<S> saveAsync(S state) {
+        return CompletableFuture.completedFuture(save(state));
+    }
+}
@@ -1,8 +1,12 @@
 package com.fraktalio.fmodel.application.materializedview;
 
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
 import com.fraktalio.fmodel.domain.Pair;
 import com.fraktalio.fmodel.domain.view.IView;
 
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
@@ -28,16 +32,25 @@ import java.util.function.Supplier;
  */
 public final class MaterializedLockingView<S, E, SV, EI> implements IView<S, E>, IViewStateLockingRepository<S, E, SV, EI> {
     public MaterializedLockingView(final IView<S, E> view, final IViewStateLockingRepository<S, E, SV, EI> repository) {
+        this(view, repository, IProbe.NOOP);
+    }
+
+    public MaterializedLockingView(final IView<S, E> view, final IViewStateLockingRepository<S, E, SV, EI> repository, final IProbe probe) {
         this.view = view;
         this.repository = repository;
+        this.probe = probe;
     }
 
     private final IView<S, E> view;
     private final IViewStateLockingRepository<S, E, SV, EI> repository;
+    private final IProbe probe;
 
     private S computeNewState(S state, E event) {
         var currentState = state != null ? state : initialViewState().get();
-        return evolveView().apply(currentState, event);
+        var evolveStart = probe.start();
+        var newState = evolveView().apply(currentState, event);
+        probe.stop(Phase.EVOLVE, evolveStart);
+        return newState;
     }
 
     /**
@@ -49,10 +62,24 @@ public final class MaterializedLockingView<S, E, SV, EI> implements IView<S, E>,
     public S handle(Pair<E, EI> eventAndIdentifier) {
         var event = eventAndIdentifier.first();
         var eventIdentifier = eventAndIdentifier.second();
+        var handleStart = probe.start();
+        var fetchStart = probe.start();
         var stateAndVersion = fetchState(event);
+        probe.stop(Phase.FETCH, fetchStart);
         var currentState = stateAndVersion.first();
         var currentStateVersion = stateAndVersion.second();
-        return save(computeNewState(currentState, event), eventIdentifier, currentStateVersion);
+        var newState = computeNewState(currentState, event);
+        var saveStart = probe.start();
+        S savedState;
+        try {
+            savedState = save(newState, eventIdentifier, currentStateVersion);
+        } catch (OptimisticLockingException e) {
+            probe.conflict();
+            throw e;
+        }
+        probe.stop(Phase.SAVE, saveStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedState;
     }
 
     /**
@@ -65,7 +92,8 @@ public final class MaterializedLockingView<S, E, SV, EI> implements IView<S, E>,
         var event = eventAndIdentifier.first();
         var eventIdentifier = eventAndIdentifier.second();
 
-        return fetchStateAsync(event)
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchStateAsync(event))
                 .thenCompose(stateAndVersion -> {
                     S currentState = stateAndVersion.first();
                     SV currentStateVersion = stateAndVersion.second();
@@ -74,8 +102,8 @@ public final class MaterializedLockingView<S, E, SV, EI> implements IView<S, E>,
                     S newState = computeNewState(currentState, event);
 
                     // save async with optimistic locking
-                    return saveAsync(newState, eventIdentifier, currentStateVersion);
-                });
+                    return probe.stop(Phase.SAVE, probe.start(), saveAsync(newState, eventIdentifier, currentStateVersion));
+                }));
     }
 
     @Override
@@ -88,6 +116,11 @@ public final class MaterializedLockingView<S, E, SV, EI> implements IView<S, E>,
         return view.initialViewState();
     }
 
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return view.eventTypes();
+    }
+
     @Override
     public Pair<S, SV> fetchState(E event) {
         return repository.fetchState(event);
@@ -1,7 +1,10 @@
 package com.fraktalio.fmodel.application.materializedview;
 
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
 import com.fraktalio.fmodel.domain.view.IView;
 
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
@@ -20,16 +23,25 @@ import java.util.function.Supplier;
  */
 public final class MaterializedView<S, E> implements IView<S, E>, IViewStateRepository<S, E> {
     public MaterializedView(final IView<S, E> view, final IViewStateRepository<S, E> repository) {
+        this(view, repository, IProbe.NOOP);
+    }
+
+    public MaterializedView(final IView<S, E> view, final IViewStateRepository<S, E> repository, final IProbe probe) {
         this.view = view;
         this.repository = repository;
+        this.probe = probe;
     }
 
     private final IView<S, E> view;
     private final IViewStateRepository<S, E> repository;
+    private final IProbe probe;
 
     private S computeNewState(S state, E event) {
         var currentState = state != null ? state : initialViewState().get();
-        return evolveView().apply(currentState, event);
+        var evolveStart = probe.start();
+        var newState = evolveView().apply(currentState, event);
+        probe.stop(Phase.EVOLVE, evolveStart);
+        return newState;
     }
 
     /**
@@ -39,7 +51,16 @@ public final class MaterializedView<S, E> implements IView<S, E>, IViewStateRepo
      * @return newly stored state
      */
     public S handle(E event) {
-        return save(computeNewState(fetchState(event), event));
+        var handleStart = probe.start();
+        var fetchStart = probe.start();
+        var state = fetchState(event);
+        probe.stop(Phase.FETCH, fetchStart);
+        var newState = computeNewState(state, event);
+        var saveStart = probe.start();
+        var savedState = save(newState);
+        probe.stop(Phase.SAVE, saveStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return savedState;
     }
 
     /**
@@ -49,9 +70,10 @@ public final class MaterializedView<S, E> implements IView<S, E>, IViewStateRepo
      * @return newly stored state
      */
     public CompletableFuture<S> handleAsync(E event) {
-        return fetchStateAsync(event)
+        var handleStart = probe.start();
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.FETCH, probe.start(), fetchStateAsync(event))
                 .thenApply(state -> computeNewState(state, event))
-                .thenCompose(this::saveAsync);
+                .thenCompose(newState -> probe.stop(Phase.SAVE, probe.start(), saveAsync(newState))));
     }
 
     @Override
@@ -73,4 +95,9 @@ public final class MaterializedView<S, E> implements IView<S, E>, IViewStateRepo
     public Supplier<S> initialViewState() {
         return view.initialViewState();
     }
+
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return view.eventTypes();
+    }
 }
@@ -0,0 +1,356 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Off-heap hash table of encoded states, backing the off-heap view state repositories.
+ * <br /><br />
+ * The index is an open-addressing (linear probing) table of {@code (hash, address)} slots.
+ * Records live in large chunks allocated from a shared {@link Arena}, and have the layout:
+ * <pre>
+ * int  capacity      - bytes available for key and value
+ * int  keyLength
+ * int  valueLength
+ * int  unused
+ * long version
+ * long eventIdentifier
+ * byte[keyLength]    key
+ * byte[valueLength]  value
+ * </pre>
+ * An update overwrites the record in place if the new value fits. Otherwise, the record is moved and the old one is put on an
+ * intrusive (off-heap) free list of its size class, to be reused by the next allocation of that class.
+ * A removed record is put on the free list as well, and its slot is emptied by backward shift deletion, so the index needs no tombstones.
+ * Apart from the small array of chunks, no heap memory is used per entry.
+ * <br /><br />
+ * Reads share a read lock, writes (and index resizes) take the write lock.
+ */
+final class OffHeapStateTable implements AutoCloseable {
+    static final long NO_VERSION = 0L;
+
+    private static final int SLOT_SIZE = 16;
+    private static final int HEADER_SIZE = 32;
+    private static final int ALIGNMENT = 16;
+    private static final int SMALL_LIMIT = 1024;
+    private static final int SMALL_CLASSES = SMALL_LIMIT / ALIGNMENT + 1;
+    private static final long NO_ADDRESS = -1L;
+
+    private final int chunkSize;
+    private final Arena dataArena = Arena.ofShared();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final long[] freeLists = new long[SMALL_CLASSES + Integer.SIZE];
+
+    private Arena indexArena;
+    private MemorySegment index;
+    private long slots;
+    private long size;
+    private MemorySegment[] chunks = new MemorySegment[0];
+    private int chunkOffset;
+    private boolean closed;
+
+    @FunctionalInterface
+    interface RecordReader<T> {
+        T read(ByteBuffer value, long version, long eventIdentifier);
+    }
+
+    OffHeapStateTable(int initialCapacity, int chunkSize) {
+        this.chunkSize = chunkSize;
+        Arrays.fill(freeLists, NO_ADDRESS);
+        this.slots = Long.highestOneBit(Math.max(16, initialCapacity * 2L - 1));
+        this.indexArena = Arena.ofShared();
+        this.index = indexArena.allocate(slots * SLOT_SIZE, ALIGNMENT);
+        this.index.fill((byte) 0);
+    }
+
+    /**
+     * @return the value of the record, read while holding the read lock, or {@code null} if there is no record for the key
+     */
+    <T> T read(byte[] key, RecordReader<T> reader) {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            var address = find(key, hash(key));
+            if (address == NO_ADDRESS) {
+                return null;
+            }
+            var record = record(address);
+            var offset = offset(address);
+            var keyLength = record.get(ValueLayout.JAVA_INT, offset + 4);
+            var valueLength = record.get(ValueLayout.JAVA_INT, offset + 8);
+            var value = record.asSlice(offset + HEADER_SIZE + keyLength, valueLength).asByteBuffer().asReadOnlyBuffer();
+            return reader.read(value, record.get(ValueLayout.JAVA_LONG, offset + 16), record.get(ValueLayout.JAVA_LONG, offset + 24));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts or updates the record of the key
+     *
+     * @param expectedVersion the version that must be stored for the write to succeed, {@link #NO_VERSION} for a new key, or {@code null} to skip the check
+     * @return the new version, or the actual (conflicting) version negated
+     */
+    long write(byte[] key, ByteBuffer value, Long expectedVersion, long eventIdentifier) {
+        var needed = key.length + value.remaining();
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            var hash = hash(key);
+            var slot = findSlot(key, hash);
+            var address = index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE + 8);
+            var existing = index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE) != 0;
+            var actualVersion = existing ? record(address).get(ValueLayout.JAVA_LONG, offset(address) + 16) : NO_VERSION;
+            if (expectedVersion != null && expectedVersion != actualVersion) {
+                return -actualVersion - 1;
+            }
+            if (existing && record(address).get(ValueLayout.JAVA_INT, offset(address)) < needed) {
+                free(address);
+                existing = false;
+            }
+            if (!existing) {
+                if (index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE) == 0 && (size + 1) * 4 > slots * 3) {
+                    resize();
+                    slot = findSlot(key, hash);
+                }
+                address = allocate(needed);
+                if (index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE) == 0) {
+                    size++;
+                }
+                index.set(ValueLayout.JAVA_LONG, slot * SLOT_SIZE, hash);
+                index.set(ValueLayout.JAVA_LONG, slot * SLOT_SIZE + 8, address);
+            }
+            var record = record(address);
+            var offset = offset(address);
+            var version = actualVersion + 1;
+            record.set(ValueLayout.JAVA_INT, offset + 4, key.length);
+            record.set(ValueLayout.JAVA_INT, offset + 8, value.remaining());
+            record.set(ValueLayout.JAVA_LONG, offset + 16, version);
+            record.set(ValueLayout.JAVA_LONG, offset + 24, eventIdentifier);
+            MemorySegment.copy(key, 0, record, ValueLayout.JAVA_BYTE, offset + HEADER_SIZE, key.length);
+            MemorySegment.copy(MemorySegment.ofBuffer(value), 0, record, offset + HEADER_SIZE + key.length, value.remaining());
+            return version;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the record of the key
+     *
+     * @return {@code true} if there was a record for the key
+     */
+    boolean remove(byte[] key) {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            var empty = findSlot(key, hash(key));
+            if (index.get(ValueLayout.JAVA_LONG, empty * SLOT_SIZE) == 0) {
+                return false;
+            }
+            free(index.get(ValueLayout.JAVA_LONG, empty * SLOT_SIZE + 8));
+            // the following slots of the probe sequence are shifted back into the emptied one, unless they already sit between their home slot and it
+            var mask = slots - 1;
+            var next = empty;
+            while (true) {
+                next = (next + 1) & mask;
+                var hash = index.get(ValueLayout.JAVA_LONG, next * SLOT_SIZE);
+                if (hash == 0) {
+                    break;
+                }
+                var home = hash & mask;
+                var stays = empty <= next ? empty < home && home <= next : empty < home || home <= next;
+                if (!stays) {
+                    index.set(ValueLayout.JAVA_LONG, empty * SLOT_SIZE, hash);
+                    index.set(ValueLayout.JAVA_LONG, empty * SLOT_SIZE + 8, index.get(ValueLayout.JAVA_LONG, next * SLOT_SIZE + 8));
+                    empty = next;
+                }
+            }
+            index.set(ValueLayout.JAVA_LONG, empty * SLOT_SIZE, 0L);
+            index.set(ValueLayout.JAVA_LONG, empty * SLOT_SIZE + 8, 0L);
+            size--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Visits every record, while holding the read lock
+     */
+    void forEach(RecordReader<?> visitor) {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            for (long slot = 0; slot < slots; slot++) {
+                if (index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE) != 0) {
+                    var address = index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE + 8);
+                    var record = record(address);
+                    var offset = offset(address);
+                    var keyLength = record.get(ValueLayout.JAVA_INT, offset + 4);
+                    var valueLength = record.get(ValueLayout.JAVA_INT, offset + 8);
+                    var value = record.asSlice(offset + HEADER_SIZE + keyLength, valueLength).asByteBuffer().asReadOnlyBuffer();
+                    visitor.read(value, record.get(ValueLayout.JAVA_LONG, offset + 16), record.get(ValueLayout.JAVA_LONG, offset + 24));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of off-heap bytes reserved by the index and the data chunks
+     */
+    long reservedBytes() {
+        lock.readLock().lock();
+        try {
+            return slots * SLOT_SIZE + Arrays.stream(chunks).mapToLong(MemorySegment::byteSize).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                indexArena.close();
+                dataArena.close();
+                chunks = new MemorySegment[0];
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Off-heap state table is closed");
+        }
+    }
+
+    private long find(byte[] key, long hash) {
+        var slot = findSlot(key, hash);
+        return index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE) != 0 ? index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE + 8) : NO_ADDRESS;
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where the key belongs
+     */
+    private long findSlot(byte[] key, long hash) {
+        var mask = slots - 1;
+        var slot = hash & mask;
+        while (true) {
+            var slotHash = index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE);
+            if (slotHash == 0 || (slotHash == hash && keyEquals(index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE + 8), key))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(long address, byte[] key) {
+        var record = record(address);
+        var offset = offset(address);
+        return record.get(ValueLayout.JAVA_INT, offset + 4) == key.length
+                && MemorySegment.mismatch(record, offset + HEADER_SIZE, offset + HEADER_SIZE + key.length, MemorySegment.ofArray(key), 0, key.length) == -1;
+    }
+
+    private void resize() {
+        var newSlots = slots * 2;
+        var newArena = Arena.ofShared();
+        var newIndex = newArena.allocate(newSlots * SLOT_SIZE, ALIGNMENT);
+        newIndex.fill((byte) 0);
+        var mask = newSlots - 1;
+        for (long slot = 0; slot < slots; slot++) {
+            var hash = index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE);
+            if (hash != 0) {
+                var target = hash & mask;
+                while (newIndex.get(ValueLayout.JAVA_LONG, target * SLOT_SIZE) != 0) {
+                    target = (target + 1) & mask;
+                }
+                newIndex.set(ValueLayout.JAVA_LONG, target * SLOT_SIZE, hash);
+                newIndex.set(ValueLayout.JAVA_LONG, target * SLOT_SIZE + 8, index.get(ValueLayout.JAVA_LONG, slot * SLOT_SIZE + 8));
+            }
+        }
+        indexArena.close();
+        indexArena = newArena;
+        index = newIndex;
+        slots = newSlots;
+    }
+
+    private long allocate(int needed) {
+        var capacity = capacity(needed);
+        var sizeClass = sizeClass(capacity);
+        var head = freeLists[sizeClass];
+        if (head != NO_ADDRESS) {
+            // the next free record is linked through the (unused) version field
+            freeLists[sizeClass] = record(head).get(ValueLayout.JAVA_LONG, offset(head) + 16);
+            return head;
+        }
+        var recordSize = HEADER_SIZE + capacity;
+        if (chunks.length == 0 || chunkOffset + recordSize > chunks[chunks.length - 1].byteSize()) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = dataArena.allocate(Math.max(chunkSize, recordSize), ALIGNMENT);
+            chunkOffset = 0;
+        }
+        var address = ((long) (chunks.length - 1) << 32) | chunkOffset;
+        chunks[chunks.length - 1].set(ValueLayout.JAVA_INT, chunkOffset, capacity);
+        chunkOffset += recordSize;
+        return address;
+    }
+
+    private void free(long address) {
+        var sizeClass = sizeClass(record(address).get(ValueLayout.JAVA_INT, offset(address)));
+        record(address).set(ValueLayout.JAVA_LONG, offset(address) + 16, freeLists[sizeClass]);
+        freeLists[sizeClass] = address;
+    }
+
+    private MemorySegment record(long address) {
+        return chunks[(int) (address >>> 32)];
+    }
+
+    private static long offset(long address) {
+        return address & 0xFFFFFFFFL;
+    }
+
+    private static int capacity(int needed) {
+        return needed <= SMALL_LIMIT
+                ? Math.max(ALIGNMENT, (needed + ALIGNMENT - 1) & -ALIGNMENT)
+                : Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    private static int sizeClass(int capacity) {
+        return capacity <= SMALL_LIMIT
+                ? capacity / ALIGNMENT
+                : SMALL_CLASSES + Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private static long hash(byte[] key) {
+        // FNV-1a, followed by the murmur3 finalizer
+        var h = 0xcbf29ce484222325L;
+        for (var b : key) {
+            h = (h ^ b) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h != 0 ? h : 1;
+    }
+}
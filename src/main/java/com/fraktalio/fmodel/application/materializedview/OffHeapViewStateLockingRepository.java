@@ -0,0 +1,134 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.codec.BinaryWriter;
+import com.fraktalio.fmodel.application.codec.ICodec;
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Off-heap implementation of the {@link IViewStateLockingRepository}, for materialized views with a very large number of states.
+ * <br /><br />
+ * States are encoded by an {@link ICodec} and stored outside the Java heap, in memory segments managed by an {@link java.lang.foreign.Arena} and indexed by an open-addressing hash table.
+ * Every state is stored with its version, starting with {@code 1}, and the identifier (position) of the last applied event.
+ * A save succeeds only if the stored version is still the one the caller has fetched, otherwise {@link OptimisticLockingException} is thrown.
+ * Saving a state for an event whose identifier is not greater than the stored one is a no-op, so redelivered events are not applied twice.
+ * <br /><br />
+ * The memory is released by {@link #close()}. Keys are compared by their encoded bytes.
+ *
+ * @param <S> state
+ * @param <E> event
+ * @param <K> key / identifier of the view state
+ */
+public final class OffHeapViewStateLockingRepository<S, E, K> implements IViewStateLockingRepository<S, E, Long, Long>, AutoCloseable {
+    public OffHeapViewStateLockingRepository(final Function<? super E, ? extends K> eventKey,
+                                             final Function<? super S, ? extends K> stateKey,
+                                             final Function<? super K, byte[]> keyEncoder,
+                                             final ICodec<S> codec) {
+        this(eventKey, stateKey, keyEncoder, codec, OffHeapViewStateRepository.DEFAULT_INITIAL_CAPACITY, OffHeapViewStateRepository.DEFAULT_CHUNK_SIZE);
+    }
+
+    public OffHeapViewStateLockingRepository(final Function<? super E, ? extends K> eventKey,
+                                             final Function<? super S, ? extends K> stateKey,
+                                             final Function<? super K, byte[]> keyEncoder,
+                                             final Function<? super S, byte[]> encoder,
+                                             final Function<ByteBuffer, ? extends S> decoder) {
+        this(eventKey, stateKey, keyEncoder, ICodec.of(encoder, decoder), OffHeapViewStateRepository.DEFAULT_INITIAL_CAPACITY, OffHeapViewStateRepository.DEFAULT_CHUNK_SIZE);
+    }
+
+    public OffHeapViewStateLockingRepository(final Function<? super E, ? extends K> eventKey,
+                                             final Function<? super S, ? extends K> stateKey,
+                                             final Function<? super K, byte[]> keyEncoder,
+                                             final ICodec<S> codec,
+                                             final int initialCapacity,
+                                             final int chunkSize) {
+        this.eventKey = Objects.requireNonNull(eventKey);
+        this.stateKey = Objects.requireNonNull(stateKey);
+        this.keyEncoder = Objects.requireNonNull(keyEncoder);
+        this.codec = Objects.requireNonNull(codec);
+        this.table = new OffHeapStateTable(initialCapacity, chunkSize);
+    }
+
+    private final Function<? super E, ? extends K> eventKey;
+    private final Function<? super S, ? extends K> stateKey;
+    private final Function<? super K, byte[]> keyEncoder;
+    private final ICodec<S> codec;
+    private final OffHeapStateTable table;
+    private final ThreadLocal<BinaryWriter> writer = ThreadLocal.withInitial(BinaryWriter::new);
+
+    @Override
+    public Pair<S, Long> fetchState(E event) {
+        var stored = table.read(keyEncoder.apply(eventKey.apply(event)), (value, version, eventIdentifier) -> new Pair<S, Long>(codec.fromBytes(value), version));
+        return stored != null ? stored : new Pair<>(null, null);
+    }
+
+    @Override
+    public S save(S state, Long eventIdentifier, Long currentStateVersion) {
+        var key = keyEncoder.apply(stateKey.apply(state));
+        var expected = currentStateVersion != null ? currentStateVersion : OffHeapStateTable.NO_VERSION;
+        if (eventIdentifier != null && currentStateVersion != null) {
+            var applied = table.read(key, (value, version, lastEventIdentifier) ->
+                    version == expected && eventIdentifier <= lastEventIdentifier ? codec.fromBytes(value) : null);
+            if (applied != null) {
+                return applied;
+            }
+        }
+        var version = table.write(key, encode(state), expected, eventIdentifier != null ? eventIdentifier : Long.MIN_VALUE);
+        if (version < 0) {
+            var actual = -version - 1;
+            throw new OptimisticLockingException(stateKey.apply(state), currentStateVersion, actual != OffHeapStateTable.NO_VERSION ? actual : null);
+        }
+        return state;
+    }
+
+    /**
+     * Removes the state of the key, and reuses its memory for the next saved states
+     *
+     * @param key key / identifier of the view state
+     * @return {@code true} if there was a state for the key
+     */
+    public boolean delete(K key) {
+        return table.remove(keyEncoder.apply(key));
+    }
+
+    /**
+     * Decodes every stored state and passes it to the action, in no particular order.
+     * The states are visited under a read lock, so the action should not write to this repository.
+     *
+     * @param action the action to perform on every state and its version
+     */
+    public void forEach(Consumer<? super Pair<S, Long>> action) {
+        table.forEach((value, version, eventIdentifier) -> {
+            action.accept(new Pair<>(codec.fromBytes(value), version));
+            return null;
+        });
+    }
+
+    /**
+     * @return the number of stored states
+     */
+    public long size() {
+        return table.size();
+    }
+
+    /**
+     * Releases the off-heap memory. The repository can not be used afterwards.
+     */
+    @Override
+    public void close() {
+        table.close();
+    }
+
+    /**
+     * Encodes the state into the thread-local writer. The returned buffer shares the writer memory, and is copied off-heap right away.
+     */
+    private ByteBuffer encode(S state) {
+        var local = writer.get().reset();
+        codec.encode(state, local);
+        return local.buffer();
+    }
+}
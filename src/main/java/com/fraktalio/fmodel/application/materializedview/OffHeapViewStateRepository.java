@@ -0,0 +1,127 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import com.fraktalio.fmodel.application.codec.BinaryWriter;
+import com.fraktalio.fmodel.application.codec.ICodec;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Off-heap implementation of the {@link IViewStateRepository}, for materialized views with a very large number of states.
+ * <br /><br />
+ * States are encoded by an {@link ICodec} and stored outside the Java heap, in memory segments managed by an {@link java.lang.foreign.Arena} and indexed by an open-addressing hash table.
+ * The garbage collector only sees the states that are currently decoded, so GC pressure does not grow with the size of the view.
+ * An update reuses the memory of the previous state of the same key whenever the new state fits into it.
+ * <br /><br />
+ * The memory is released by {@link #close()}. Keys are compared by their encoded bytes.
+ *
+ * @param <S> state
+ * @param <E> event
+ * @param <K> key / identifier of the view state
+ */
+public final class OffHeapViewStateRepository<S, E, K> implements IViewStateRepository<S, E>, AutoCloseable {
+    public static final int DEFAULT_INITIAL_CAPACITY = 1 << 16;
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    public OffHeapViewStateRepository(final Function<? super E, ? extends K> eventKey,
+                                      final Function<? super S, ? extends K> stateKey,
+                                      final Function<? super K, byte[]> keyEncoder,
+                                      final ICodec<S> codec) {
+        this(eventKey, stateKey, keyEncoder, codec, DEFAULT_INITIAL_CAPACITY, DEFAULT_CHUNK_SIZE);
+    }
+
+    public OffHeapViewStateRepository(final Function<? super E, ? extends K> eventKey,
+                                      final Function<? super S, ? extends K> stateKey,
+                                      final Function<? super K, byte[]> keyEncoder,
+                                      final Function<? super S, byte[]> encoder,
+                                      final Function<ByteBuffer, ? extends S> decoder) {
+        this(eventKey, stateKey, keyEncoder, ICodec.of(encoder, decoder), DEFAULT_INITIAL_CAPACITY, DEFAULT_CHUNK_SIZE);
+    }
+
+    public OffHeapViewStateRepository(final Function<? super E, ? extends K> eventKey,
+                                      final Function<? super S, ? extends K> stateKey,
+                                      final Function<? super K, byte[]> keyEncoder,
+                                      final ICodec<S> codec,
+                                      final int initialCapacity,
+                                      final int chunkSize) {
+        this.eventKey = Objects.requireNonNull(eventKey);
+        this.stateKey = Objects.requireNonNull(stateKey);
+        this.keyEncoder = Objects.requireNonNull(keyEncoder);
+        this.codec = Objects.requireNonNull(codec);
+        this.table = new OffHeapStateTable(initialCapacity, chunkSize);
+    }
+
+    private final Function<? super E, ? extends K> eventKey;
+    private final Function<? super S, ? extends K> stateKey;
+    private final Function<? super K, byte[]> keyEncoder;
+    private final ICodec<S> codec;
+    private final OffHeapStateTable table;
+    private final ThreadLocal<BinaryWriter> writer = ThreadLocal.withInitial(BinaryWriter::new);
+
+    @Override
+    public S fetchState(E event) {
+        return table.read(keyEncoder.apply(eventKey.apply(event)), (value, version, eventIdentifier) -> codec.fromBytes(value));
+    }
+
+    @Override
+    public S save(S state) {
+        table.write(keyEncoder.apply(stateKey.apply(state)), encode(state), null, 0L);
+        return state;
+    }
+
+    /**
+     * Removes the state of the key, and reuses its memory for the next saved states
+     *
+     * @param key key / identifier of the view state
+     * @return {@code true} if there was a state for the key
+     */
+    public boolean delete(K key) {
+        return table.remove(keyEncoder.apply(key));
+    }
+
+    /**
+     * Decodes every stored state and passes it to the action, in no particular order.
+     * The states are visited under a read lock, so the action should not write to this repository.
+     *
+     * @param action the action to perform on every state
+     */
+    public void forEach(Consumer<? super S> action) {
+        table.forEach((value, version, eventIdentifier) -> {
+            action.accept(codec.fromBytes(value));
+            return null;
+        });
+    }
+
+    /**
+     * @return the number of stored states
+     */
+    public long size() {
+        return table.size();
+    }
+
+    /**
+     * @return the number of off-heap bytes reserved by this repository
+     */
+    public long reservedBytes() {
+        return table.reservedBytes();
+    }
+
+    /**
+     * Releases the off-heap memory. The repository can not be used afterwards.
+     */
+    @Override
+    public void close() {
+        table.close();
+    }
+
+    /**
+     * Encodes the state into the thread-local writer. The returned buffer shares the writer memory, and is copied off-heap right away.
+     */
+    private ByteBuffer encode(S state) {
+        var local = writer.get().reset();
+        codec.encode(state, local);
+        return local.buffer();
+    }
+}
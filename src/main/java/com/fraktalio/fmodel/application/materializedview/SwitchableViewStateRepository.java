@@ -0,0 +1,71 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * View state repository delegating to an active repository, which can be switched atomically (blue/green).
+ * <br /><br />
+ * The live {@link MaterializedView} and its queries use this repository, while a rebuild replays the events into a shadow repository
+ * (see {@link com.fraktalio.fmodel.application.materializedview.replay.ViewReplayer}).
+ * Once the shadow has caught up, {@link #switchTo} makes it the active one.
+ * The events handled after the last catch-up of the shadow and before the switch are not in the shadow,
+ * so the live view should be paused for the last catch-up.
+ *
+ * @param <S> state
+ * @param <E> event
+ */
+public final class SwitchableViewStateRepository<S, E> implements IViewStateBatchRepository<S, E> {
+    public SwitchableViewStateRepository(final IViewStateRepository<S, E> active) {
+        this.active = new AtomicReference<>(Objects.requireNonNull(active));
+    }
+
+    private final AtomicReference<IViewStateRepository<S, E>> active;
+
+    /**
+     * @param next the repository to switch to
+     * @return the previously active repository
+     */
+    public IViewStateRepository<S, E> switchTo(IViewStateRepository<S, E> next) {
+        return active.getAndSet(Objects.requireNonNull(next));
+    }
+
+    /**
+     * @return the active repository
+     */
+    public IViewStateRepository<S, E> active() {
+        return active.get();
+    }
+
+    @Override
+    public S fetchState(E event) {
+        return active.get().fetchState(event);
+    }
+
+    @Override
+    public S save(S state) {
+        return active.get().save(state);
+    }
+
+    @Override
+    public void saveAll(List<S> states) {
+        var current = active.get();
+        if (current instanceof IViewStateBatchRepository<S, E> batch) {
+            batch.saveAll(states);
+        } else {
+            states.forEach(current::save);
+        }
+    }
+
+    @Override
+    public CompletableFuture<S> fetchStateAsync(E event) {
+        return active.get().fetchStateAsync(event);
+    }
+
+    @Override
+    public CompletableFuture<S> saveAsync(S state) {
+        return active.get().saveAsync(state);
+    }
+}
@@ -0,0 +1,40 @@
+package com.fraktalio.fmodel.application.materializedview.replay;
+
+import java.util.List;
+
+/**
+ * A source of all the events, in the order they were stored, read in pages.
+ * <br /><br />
+ * A position is opaque to the reader: it starts with {@code 0}, and continues with the {@link Page#nextPosition()} of the previous page.
+ *
+ * @param <E> event
+ */
+public interface IEventSource<E> {
+    /**
+     * @param position the position to read from
+     * @param limit    the maximum number of events to read
+     * @return the events from the position, an empty page meaning that all the events have been read (so far)
+     */
+    Page<E> fetchPage(long position, int limit);
+
+    /**
+     * @param events       events of the page
+     * @param nextPosition the position to read the next page from
+     * @param <E>          event
+     */
+    record Page<E>(List<E> events, long nextPosition) {
+    }
+
+    /**
+     * @param events events, the position being the index of the event in the list
+     * @param <E>    event
+     * @return the source reading the given list
+     */
+    static <E> IEventSource<E> of(List<? extends E> events) {
+        return (position, limit) -> {
+            var from = (int) Math.min(position, events.size());
+            var to = (int) Math.min((long) from + limit, events.size());
+            return new Page<>(List.copyOf(events.subList(from, to)), to);
+        };
+    }
+}
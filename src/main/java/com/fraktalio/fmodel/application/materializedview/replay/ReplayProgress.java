@@ -0,0 +1,22 @@
+package com.fraktalio.fmodel.application.materializedview.replay;
+
+import java.time.Duration;
+
+/**
+ * Progress of a replay
+ *
+ * @param events        the number of the events read from the source
+ * @param keys          the number of the view states (keys) folded so far, counted once per checkpoint they are folded in
+ * @param statesWritten the number of the view states written to the target
+ * @param position      the position of the last checkpoint, to continue (catch up) from: the states of all the events before it are written
+ * @param elapsed       the time since the replay has started
+ */
+public record ReplayProgress(long events, long keys, long statesWritten, long position, Duration elapsed) {
+    /**
+     * @return the throughput of the replay, in events per second
+     */
+    public double eventsPerSecond() {
+        var nanos = elapsed.toNanos();
+        return nanos > 0 ? events * 1e9 / nanos : 0;
+    }
+}
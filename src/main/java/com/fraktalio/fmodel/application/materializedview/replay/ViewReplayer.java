@@ -0,0 +1,372 @@
+package com.fraktalio.fmodel.application.materializedview.replay;
+
+import com.fraktalio.fmodel.application.materializedview.IViewStateBatchRepository;
+import com.fraktalio.fmodel.application.materializedview.IViewStateRepository;
+import com.fraktalio.fmodel.domain.view.IMonoidalView;
+import com.fraktalio.fmodel.domain.view.IView;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Rebuilds (replays) a materialized view from all the events of an {@link IEventSource}, instead of handling the events one by one.
+ * <br /><br />
+ * The events are read in pages, and partitioned by the view key across the worker threads, so all the events of a key are folded by one worker, in order.
+ * Every worker folds its keys in memory, and writes the folded states to the target repository at the checkpoints, in batches
+ * ({@link IViewStateBatchRepository#saveAll} if the target supports it), and forgets them.
+ * A checkpoint is taken every `checkpointPages` pages, once a worker holds more than `maxStates` states, and at the end of the replay.
+ * Events of the types that the view does not consume ({@link IView#eventTypes()}) are skipped.
+ * The events of a key within a page are folded by {@link IMonoidalView#fold} if the view is monoidal,
+ * so the long history of a hot key is split across the fork-join pool instead of being folded by its worker alone.
+ * <br /><br />
+ * The state of a key is fetched from the target when the first event of the key after a checkpoint is read, so a replay can also continue (catch up) from
+ * the {@link ReplayProgress#position()} of a previous replay into the same target.
+ * The reported position is the position of the last checkpoint that all the workers have written: the states of all the events before it are in the target.
+ * A replay that fails while writing a checkpoint may have written some of the states past the reported position;
+ * continuing from it folds their events twice, so continue such a replay only if the view tolerates it (for example, a view that keeps the last value), or replay into a new target.
+ * For a blue/green rebuild, replay into a shadow repository and switch to it once it has caught up, see {@link com.fraktalio.fmodel.application.materializedview.SwitchableViewStateRepository}.
+ *
+ * @param <S> state
+ * @param <E> event
+ * @param <K> key / identifier of the view state
+ */
+public final class ViewReplayer<S, E, K> {
+    public static final int DEFAULT_PAGE_SIZE = 10_000;
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+    public static final int DEFAULT_CHECKPOINT_PAGES = 100;
+    public static final int DEFAULT_MAX_STATES = 100_000;
+
+    public ViewReplayer(final IView<S, E> view, final Function<? super E, ? extends K> eventKey) {
+        this(view, eventKey, Runtime.getRuntime().availableProcessors(), DEFAULT_PAGE_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    public ViewReplayer(final IView<S, E> view,
+                        final Function<? super E, ? extends K> eventKey,
+                        final int workers,
+                        final int pageSize,
+                        final int batchSize) {
+        this(view, eventKey, workers, pageSize, batchSize, DEFAULT_CHECKPOINT_PAGES, DEFAULT_MAX_STATES);
+    }
+
+    public ViewReplayer(final IView<S, E> view,
+                        final Function<? super E, ? extends K> eventKey,
+                        final int workers,
+                        final int pageSize,
+                        final int batchSize,
+                        final int checkpointPages,
+                        final int maxStates) {
+        if (workers < 1 || pageSize < 1 || batchSize < 1 || checkpointPages < 1 || maxStates < 1) {
+            throw new IllegalArgumentException("Workers, page size, batch size, checkpoint pages and max states must be positive: "
+                    + workers + ", " + pageSize + ", " + batchSize + ", " + checkpointPages + ", " + maxStates);
+        }
+        this.view = Objects.requireNonNull(view);
+        this.eventKey = Objects.requireNonNull(eventKey);
+        this.workers = workers;
+        this.pageSize = pageSize;
+        this.batchSize = batchSize;
+        this.checkpointPages = checkpointPages;
+        this.maxStates = maxStates;
+    }
+
+    private final IView<S, E> view;
+    private final Function<? super E, ? extends K> eventKey;
+    private final int workers;
+    private final int pageSize;
+    private final int batchSize;
+    private final int checkpointPages;
+    private final int maxStates;
+
+    /**
+     * A page of events for a worker, or a checkpoint (the last one ends the replay)
+     */
+    private record Work<E>(List<E> events, Checkpoint checkpoint) {
+    }
+
+    /**
+     * A position to write all the folded states at, and the number of the workers that have not written them yet
+     */
+    private record Checkpoint(long position, boolean last, AtomicInteger remaining) {
+    }
+
+    /**
+     * Replays all the events of the source into the target
+     *
+     * @param source the events
+     * @param target the view state repository to write the states to
+     * @return the final progress
+     */
+    public ReplayProgress replay(IEventSource<? extends E> source, IViewStateRepository<S, E> target) {
+        return replay(source, 0L, target, progress -> {
+        });
+    }
+
+    /**
+     * Replays the events of the source from the position into the target
+     *
+     * @param source   the events
+     * @param position the position of the source to replay from
+     * @param target   the view state repository to write the states to
+     * @param progress called (by the reading thread) after every page, and once the replay has ended (also if it fails)
+     * @return the final progress
+     */
+    public ReplayProgress replay(IEventSource<? extends E> source, long position, IViewStateRepository<S, E> target, Consumer<? super ReplayProgress> progress) {
+        var replay = new Replay(target, position);
+        var threads = new ArrayList<Thread>(workers);
+        for (var i = 0; i < workers; i++) {
+            threads.add(Thread.ofPlatform().name("fmodel-replay-" + i).start(replay.partitions.get(i)));
+        }
+        var events = 0L;
+        var pages = 0;
+        try {
+            while (replay.failure.get() == null) {
+                var page = source.fetchPage(position, pageSize);
+                if (page.events().isEmpty()) {
+                    break;
+                }
+                replay.dispatch(page.events());
+                events += page.events().size();
+                position = page.nextPosition();
+                if (++pages == checkpointPages || replay.overMaxStates()) {
+                    replay.checkpoint(position, false);
+                    pages = 0;
+                }
+                progress.accept(replay.progress(events));
+            }
+        } catch (RuntimeException e) {
+            replay.failure.compareAndSet(null, e);
+        } finally {
+            replay.checkpoint(position, true);
+            joinAll(threads);
+        }
+        // the final position, also of a failed replay, once no checkpoint is being written
+        var result = replay.progress(events);
+        progress.accept(result);
+        var failure = replay.failure.get();
+        if (failure != null) {
+            throw failure instanceof RuntimeException e ? e : new IllegalStateException("Replay has failed", failure);
+        }
+        return result;
+    }
+
+    private static void joinAll(List<Thread> threads) {
+        var interrupted = false;
+        for (var thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * State of a single replay, shared by the reading thread and the workers
+     */
+    private final class Replay {
+        private final IViewStateRepository<S, E> target;
+        private final List<Partition> partitions = new ArrayList<>(workers);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final LongAdder keys = new LongAdder();
+        private final LongAdder statesWritten = new LongAdder();
+        private final long start = System.nanoTime();
+        private volatile long position;
+
+        Replay(IViewStateRepository<S, E> target, long position) {
+            this.target = target;
+            this.position = position;
+            for (var i = 0; i < workers; i++) {
+                partitions.add(new Partition(this));
+            }
+        }
+
+        void dispatch(List<? extends E> events) {
+            var eventTypes = view.eventTypes();
+            var slices = new ArrayList<List<E>>(workers);
+            for (var i = 0; i < workers; i++) {
+                slices.add(new ArrayList<>());
+            }
+            for (E event : events) {
+                if (eventTypes.isEmpty() || eventTypes.stream().anyMatch(type -> type.isInstance(event))) {
+                    slices.get(Math.floorMod(Objects.hashCode(eventKey.apply(event)), workers)).add(event);
+                }
+            }
+            for (var i = 0; i < workers; i++) {
+                if (!slices.get(i).isEmpty()) {
+                    partitions.get(i).put(new Work<>(slices.get(i), null));
+                }
+            }
+        }
+
+        boolean overMaxStates() {
+            return partitions.stream().anyMatch(partition -> partition.held > maxStates);
+        }
+
+        /**
+         * Asks all the workers to write their states, once they have folded the events dispatched so far
+         */
+        void checkpoint(long position, boolean last) {
+            var checkpoint = new Checkpoint(position, last, new AtomicInteger(workers));
+            partitions.forEach(partition -> partition.put(new Work<>(List.of(), checkpoint)));
+        }
+
+        /**
+         * Called by a worker that has written its states; the last one makes the position resumable
+         */
+        void written(Checkpoint checkpoint) {
+            if (checkpoint.remaining().decrementAndGet() == 0) {
+                // the workers take the checkpoints in order, so the last written one is the latest
+                position = checkpoint.position();
+            }
+        }
+
+        ReplayProgress progress(long events) {
+            return new ReplayProgress(events, keys.sum(), statesWritten.sum(), position, Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * A worker, folding the events of its keys, and writing their states at the checkpoints
+     */
+    private final class Partition implements Runnable {
+        private final Replay replay;
+        private final BlockingQueue<Work<E>> queue = new ArrayBlockingQueue<>(4);
+        private final HashMap<K, S> states = new HashMap<>();
+        /**
+         * The number of the states held, read by the reading thread
+         */
+        private volatile int held;
+
+        Partition(Replay replay) {
+            this.replay = replay;
+        }
+
+        void put(Work<E> work) {
+            var interrupted = false;
+            while (true) {
+                try {
+                    queue.put(work);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                var work = take();
+                // after a failure, the events are only drained, so the reading thread is never blocked
+                if (replay.failure.get() == null) {
+                    try {
+                        if (work.checkpoint() == null) {
+                            fold(work.events());
+                            held = states.size();
+                        } else {
+                            write();
+                            replay.written(work.checkpoint());
+                        }
+                    } catch (Throwable e) {
+                        replay.failure.compareAndSet(null, e);
+                    }
+                }
+                if (work.checkpoint() != null && work.checkpoint().last()) {
+                    return;
+                }
+            }
+        }
+
+        private Work<E> take() {
+            var interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return queue.take();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void fold(List<E> events) {
+            if (view instanceof IMonoidalView<S, E> monoidal) {
+                var byKey = new LinkedHashMap<K, List<E>>();
+                for (var event : events) {
+                    byKey.computeIfAbsent(eventKey.apply(event), k -> new ArrayList<>()).add(event);
+                }
+                byKey.forEach((key, keyEvents) -> states.put(key, monoidal.fold(state(key, keyEvents.getFirst()), keyEvents.stream(), keyEvents.size())));
+                return;
+            }
+            var evolve = view.evolveView();
+            for (var event : events) {
+                var key = eventKey.apply(event);
+                states.put(key, evolve.apply(state(key, event), event));
+            }
+        }
+
+        /**
+         * @return the folded state of the key, fetched from the target (or the initial state) on the first event of the key since the last checkpoint
+         */
+        private S state(K key, E event) {
+            var state = states.get(key);
+            if (state == null && !states.containsKey(key)) {
+                state = replay.target.fetchState(event);
+                if (state == null) {
+                    state = view.initialViewState().get();
+                }
+                replay.keys.increment();
+            }
+            return state;
+        }
+
+        private void write() {
+            var batch = new ArrayList<S>(Math.min(batchSize, states.size()));
+            for (var state : states.values()) {
+                batch.add(state);
+                if (batch.size() == batchSize) {
+                    saveAll(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                saveAll(batch);
+            }
+            states.clear();
+            held = 0;
+        }
+
+        private void saveAll(List<S> batch) {
+            if (replay.target instanceof IViewStateBatchRepository<S, E> batchRepository) {
+                batchRepository.saveAll(batch);
+            } else {
+                batch.forEach(replay.target::save);
+            }
+            replay.statesWritten.add(batch.size());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.fraktalio.fmodel.application.sagamanager;
+
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
+import com.fraktalio.fmodel.domain.saga.ISaga;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Async saga manager - Stateless process orchestrator.
+ * <br /><br />
+ * {@code AsyncSagaManager} implements {@link ISaga} and {@link IAsyncActionPublisher} interfaces,
+ * clearly communicating that it is composed out of these two behaviours.
+ * <br /><br />
+ * It is the non-blocking variant of the {@link SagaManager}: the actions are computed in the calling thread (a saga is a pure function),
+ * and published by the stage of the publisher. The saga manager never schedules a task itself.
+ *
+ * @param <AR> action Result type
+ * @param <A>  action type
+ */
+public final class AsyncSagaManager<AR, A> implements ISaga<AR, A>, IAsyncActionPublisher<A> {
+    private final ISaga<AR, A> saga;
+    private final IAsyncActionPublisher<A> publisher;
+    private final IProbe probe;
+
+    public AsyncSagaManager(final ISaga<AR, A> saga, final IAsyncActionPublisher<A> publisher) {
+        this(saga, publisher, IProbe.NOOP);
+    }
+
+    public AsyncSagaManager(final ISaga<AR, A> saga, final IAsyncActionPublisher<A> publisher, final IProbe probe) {
+        this.saga = saga;
+        this.publisher = publisher;
+        this.probe = probe;
+    }
+
+    /**
+     * Handle the action result and publish new actions
+     *
+     * @param actionResult the action result to handle
+     * @return the newly published actions
+     */
+    public CompletionStage<List<A>> handleAsync(AR actionResult) {
+        var handleStart = probe.start();
+        var reactStart = probe.start();
+        List<A> actions;
+        try {
+            actions = react().apply(actionResult);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        probe.stop(Phase.REACT, reactStart);
+        return probe.stop(Phase.HANDLE, handleStart, probe.stop(Phase.PUBLISH, probe.start(), publishAsync(actions)));
+    }
+
+    @Override
+    public Function<AR, List<A>> react() {
+        return saga.react();
+    }
+
+    @Override
+    public CompletionStage<List<A>> publishAsync(List<A> actions) {
+        return publisher.publishAsync(actions);
+    }
+}
@@ -0,0 +1,21 @@
+package com.fraktalio.fmodel.application.sagamanager;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Async-first action publisher interface, for the non-blocking drivers.
+ * <br /><br />
+ * Unlike the async variant of the {@link IActionPublisher}, there is no blocking method to wrap: an implementation returns its stages directly,
+ * and no thread is blocked while waiting for the publishing.
+ * A class can implement both interfaces by returning {@link java.util.concurrent.CompletableFuture}s.
+ *
+ * @param <A> action
+ */
+public interface IAsyncActionPublisher<A> {
+    /**
+     * @param actions actions to publish
+     * @return the published actions
+     */
+    CompletionStage<List<A>> publishAsync(List<A> actions);
+}
@@ -1,5 +1,7 @@
 package com.fraktalio.fmodel.application.sagamanager;
 
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
 import com.fraktalio.fmodel.domain.saga.ISaga;
 
 import java.util.List;
@@ -21,10 +23,16 @@ import java.util.function.Function;
 public final class SagaManager<AR, A> implements ISaga<AR, A>, IActionPublisher<A> {
     private final ISaga<AR, A> saga;
     private final IActionPublisher<A> publisher;
+    private final IProbe probe;
 
     public SagaManager(final ISaga<AR, A> saga, final IActionPublisher<A> publisher) {
+        this(saga, publisher, IProbe.NOOP);
+    }
+
+    public SagaManager(final ISaga<AR, A> saga, final IActionPublisher<A> publisher, final IProbe probe) {
         this.saga = saga;
         this.publisher = publisher;
+        this.probe = probe;
     }
 
     /**
@@ -34,7 +42,13 @@ public final class SagaManager<AR, A> implements ISaga<AR, A>, IActionPublisher<
      * @return the newly published actions
      */
     public List<A> handle(AR actionResult) {
-        return publish(react().apply(actionResult));
+        var handleStart = probe.start();
+        var actions = computeNewActions(actionResult);
+        var publishStart = probe.start();
+        var publishedActions = publish(actions);
+        probe.stop(Phase.PUBLISH, publishStart);
+        probe.stop(Phase.HANDLE, handleStart);
+        return publishedActions;
     }
 
     /**
@@ -44,9 +58,25 @@ public final class SagaManager<AR, A> implements ISaga<AR, A>, IActionPublisher<
      * @return the newly published actions
      */
     public CompletableFuture<List<A>> handleAsync(AR actionResult) {
-        return CompletableFuture
-                .supplyAsync(() -> react().apply(actionResult))   // compute actions from actionResult
-                .thenCompose(this::publishAsync);         // publish them asynchronously
+        var handleStart = probe.start();
+        // read on the calling thread: the start token of the probe belongs to the thread that took it
+        var enqueued = System.nanoTime();
+        return probe.stop(Phase.HANDLE, handleStart, CompletableFuture
+                .supplyAsync(() -> {
+                    // time spent waiting for a thread of the common pool
+                    probe.record(Phase.QUEUE, System.nanoTime() - enqueued);
+                    // compute actions from actionResult
+                    return computeNewActions(actionResult);
+                })
+                // publish them asynchronously
+                .thenCompose(actions -> probe.stop(Phase.PUBLISH, probe.start(), publishAsync(actions))));
+    }
+
+    private List<A> computeNewActions(AR actionResult) {
+        var reactStart = probe.start();
+        var actions = react().apply(actionResult);
+        probe.stop(Phase.REACT, reactStart);
+        return actions;
     }
 
     @Override
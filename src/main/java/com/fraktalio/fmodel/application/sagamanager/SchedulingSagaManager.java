@@ -0,0 +1,215 @@
+package com.fraktalio.fmodel.application.sagamanager;
+
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
+import com.fraktalio.fmodel.application.sagamanager.timer.ITimerRepository;
+import com.fraktalio.fmodel.application.sagamanager.timer.TimingWheel;
+import com.fraktalio.fmodel.domain.saga.ISaga;
+import com.fraktalio.fmodel.domain.saga.TimedAction;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Scheduling saga manager - Stateless process orchestrator, with deferred actions (timeouts, reminders).
+ * <br /><br />
+ * {@code SchedulingSagaManager} implements {@link ISaga} and {@link IActionPublisher} interfaces,
+ * clearly communicating that it is composed out of these two behaviours.
+ * <br /><br />
+ * The saga reacts with {@link TimedAction}s: the immediate actions are published right away,
+ * the deferred ones are saved to the {@link ITimerRepository} and kept in a {@link TimingWheel}, and published once their deadline is reached.
+ * A cancellation removes the deferred action, if it is not published yet. The wheel is owned by a single timer thread;
+ * the handling threads hand the timers over to it through a lock-free queue, so scheduling and cancelling are O(1) for millions of pending timers.
+ * On start, the pending timers are loaded from the repository: the ones that were due while the process was down are published with the first tick.
+ * A timer whose publishing fails is retried after {@link #RETRY_DELAY}.
+ *
+ * @param <AR> action Result type
+ * @param <A>  action type
+ */
+public final class SchedulingSagaManager<AR, A> implements ISaga<AR, TimedAction<A>>, IActionPublisher<A>, AutoCloseable {
+    public static final Duration DEFAULT_TICK = Duration.ofMillis(10);
+    public static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    private final ISaga<AR, TimedAction<A>> saga;
+    private final IActionPublisher<A> publisher;
+    private final ITimerRepository<A> repository;
+    private final IProbe probe;
+    private final Clock clock;
+    private final long tickNanos;
+    private final TimingWheel<String, TimedAction.At<A>> wheel;
+    private final ConcurrentLinkedQueue<TimedAction<A>> requests = new ConcurrentLinkedQueue<>();
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Thread timer;
+    private volatile int pending;
+    private volatile boolean closed;
+
+    public SchedulingSagaManager(final ISaga<AR, TimedAction<A>> saga, final IActionPublisher<A> publisher, final ITimerRepository<A> repository) {
+        this(saga, publisher, repository, IProbe.NOOP);
+    }
+
+    public SchedulingSagaManager(final ISaga<AR, TimedAction<A>> saga, final IActionPublisher<A> publisher, final ITimerRepository<A> repository, final IProbe probe) {
+        this(saga, publisher, repository, probe, Clock.systemUTC(), DEFAULT_TICK, Thread.ofPlatform().daemon().name("fmodel-timer-", 0).factory());
+    }
+
+    public SchedulingSagaManager(final ISaga<AR, TimedAction<A>> saga,
+                                 final IActionPublisher<A> publisher,
+                                 final ITimerRepository<A> repository,
+                                 final IProbe probe,
+                                 final Clock clock,
+                                 final Duration tick,
+                                 final ThreadFactory threadFactory) {
+        this.saga = saga;
+        this.publisher = publisher;
+        this.repository = Objects.requireNonNull(repository);
+        this.probe = probe;
+        this.clock = Objects.requireNonNull(clock);
+        this.tickNanos = tick.toNanos();
+        this.wheel = new TimingWheel<>(tick.toMillis(), clock.millis());
+        for (var pendingTimer : repository.fetchAll()) {
+            wheel.schedule(pendingTimer.timerId(), pendingTimer, pendingTimer.deadline().toEpochMilli());
+        }
+        this.pending = wheel.size();
+        this.timer = threadFactory.newThread(this::run);
+        this.timer.start();
+    }
+
+    /**
+     * Handle the action result: publish the immediate actions, and schedule (or cancel) the deferred ones
+     *
+     * @param actionResult the action result to handle
+     * @return the timed actions of the saga
+     */
+    public List<TimedAction<A>> handle(AR actionResult) {
+        var handleStart = probe.start();
+        var reactStart = probe.start();
+        var actions = react().apply(actionResult);
+        probe.stop(Phase.REACT, reactStart);
+        var immediate = new ArrayList<A>(actions.size());
+        for (var action : actions) {
+            switch (action) {
+                case TimedAction.Now<A> now -> immediate.add(now.action());
+                case TimedAction.At<A> at -> {
+                    repository.save(at);
+                    requests.add(at);
+                }
+                case TimedAction.Cancel<A> cancel -> {
+                    repository.delete(cancel.timerId());
+                    requests.add(cancel);
+                }
+            }
+        }
+        if (!immediate.isEmpty()) {
+            var publishStart = probe.start();
+            publish(immediate);
+            probe.stop(Phase.PUBLISH, publishStart);
+        }
+        probe.stop(Phase.HANDLE, handleStart);
+        return actions;
+    }
+
+    @Override
+    public Function<AR, List<TimedAction<A>>> react() {
+        return saga.react();
+    }
+
+    @Override
+    public List<A> publish(List<A> actions) {
+        return publisher.publish(actions);
+    }
+
+    /**
+     * @return the number of the pending timers, as of the last tick
+     */
+    public int pending() {
+        return pending;
+    }
+
+    /**
+     * @return the number of the deferred actions published so far
+     */
+    public long fired() {
+        return fired.sum();
+    }
+
+    /**
+     * @return the number of the failed publishing attempts of the deferred actions
+     */
+    public long failures() {
+        return failures.sum();
+    }
+
+    /**
+     * Stops the timer thread. The pending timers stay in the repository.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(timer);
+        var interrupted = false;
+        while (true) {
+            try {
+                timer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        var due = new ArrayList<TimedAction.At<A>>();
+        while (!closed) {
+            TimedAction<A> request;
+            while ((request = requests.poll()) != null) {
+                switch (request) {
+                    case TimedAction.At<A> at -> wheel.schedule(at.timerId(), at, at.deadline().toEpochMilli());
+                    case TimedAction.Cancel<A> cancel -> wheel.cancel(cancel.timerId());
+                    case TimedAction.Now<A> now -> throw new IllegalStateException("Immediate actions are not scheduled: " + now);
+                }
+            }
+            var now = clock.millis();
+            wheel.advance(now, (timerId, at) -> due.add(at));
+            if (!due.isEmpty()) {
+                fire(due, now);
+                due.clear();
+            }
+            pending = wheel.size();
+            LockSupport.parkNanos(tickNanos);
+        }
+    }
+
+    private void fire(List<TimedAction.At<A>> due, long now) {
+        try {
+            var publishStart = probe.start();
+            publish(due.stream().map(TimedAction.At::action).toList());
+            probe.stop(Phase.PUBLISH, publishStart);
+        } catch (RuntimeException e) {
+            failures.increment();
+            for (var at : due) {
+                wheel.schedule(at.timerId(), at, now + RETRY_DELAY.toMillis());
+            }
+            return;
+        }
+        for (var at : due) {
+            try {
+                repository.delete(at);
+            } catch (RuntimeException e) {
+                // published already: on restart, the timer is published once again (at least once)
+                failures.increment();
+            }
+        }
+        fired.add(due.size());
+    }
+}
@@ -0,0 +1,384 @@
+package com.fraktalio.fmodel.application.sagamanager.outbox;
+
+import com.fraktalio.fmodel.application.codec.ICodec;
+import com.fraktalio.fmodel.application.groupcommit.GroupCommitter;
+import com.fraktalio.fmodel.application.groupcommit.PendingWrite;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Embedded, file-backed implementation of the {@link IOutbox}.
+ * <br /><br />
+ * Appends and acknowledgements are records of a single append-only file; the entries that are not acknowledged yet are also kept in memory.
+ * With `fsync` enabled, an append (and an acknowledgement) returns once its records are forced to the storage device.
+ * The records are written under the lock of the outbox, but forced outside of it: the concurrent appends share a single `fsync` of a {@link GroupCommitter}.
+ * An entry is fetched only once it is forced.
+ * <br /><br />
+ * A write that fails is truncated off the file; if the file can not be truncated (or forced), the outbox fails all the following appends and acknowledgements, and has to be reopened.
+ * On restart, the file is replayed record by record: the entries appended and not acknowledged are back in the outbox, and a torn tail is dropped.
+ * Once the file has grown over the compaction threshold, it is replaced by a file of the entries that are not acknowledged yet
+ * (and the threshold is raised to twice the size of the compacted file, so the live entries are not rewritten on every acknowledgement).
+ * <br /><br />
+ * Record layout:
+ * <pre>
+ * int   length  - number of bytes that follow the crc field
+ * int   crc     - CRC32C of all bytes that follow the crc field
+ * byte  kind    - append, acknowledge or base
+ * long  id      - id of the entry (base: the next id)
+ * byte[] action - encoded action (append only)
+ * </pre>
+ *
+ * @param <A> action
+ */
+public final class FileOutbox<A> implements IOutbox<A>, AutoCloseable {
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 16 * 1024 * 1024;
+
+    private static final int LENGTH_SIZE = Integer.BYTES;
+    private static final int HEADER_SIZE = LENGTH_SIZE + Integer.BYTES + Byte.BYTES + Long.BYTES;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte APPEND = 1;
+    private static final byte ACKNOWLEDGE = 2;
+    private static final byte BASE = 3;
+
+    public FileOutbox(final Path file, final ICodec<A> codec) {
+        this(file, codec, true, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public FileOutbox(final Path file, final ICodec<A> codec, final boolean fsync, final long compactionThreshold) {
+        this.file = Objects.requireNonNull(file);
+        this.codec = Objects.requireNonNull(codec);
+        this.compactionThreshold = compactionThreshold;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.compactAt = Math.max(compactionThreshold, 2 * end);
+        this.durableId = nextId;
+        this.committer = fsync ? new GroupCommitter<>(this::force) : null;
+    }
+
+    private final Path file;
+    private final ICodec<A> codec;
+    private final long compactionThreshold;
+    private final GroupCommitter<Long, Void> committer;
+    private final TreeMap<Long, A> entries = new TreeMap<>();
+    private FileChannel channel;
+    private long end;
+    private long compactAt;
+    private long nextId;
+    private long durableId;
+    private IOException failure;
+
+    @Override
+    public List<OutboxEntry<A>> append(List<A> actions) {
+        var appended = new ArrayList<OutboxEntry<A>>(actions.size());
+        var payloads = new ArrayList<byte[]>(actions.size());
+        var size = 0;
+        for (var action : actions) {
+            var payload = codec.toBytes(action);
+            payloads.add(payload);
+            size += HEADER_SIZE + payload.length;
+        }
+        long appendedId;
+        synchronized (this) {
+            var buffer = ByteBuffer.allocate(size);
+            for (var i = 0; i < actions.size(); i++) {
+                var entry = new OutboxEntry<>(nextId + i, actions.get(i));
+                putRecord(buffer, APPEND, entry.id(), payloads.get(i));
+                appended.add(entry);
+            }
+            write(buffer.flip());
+            nextId += actions.size();
+            appendedId = nextId;
+            for (var entry : appended) {
+                entries.put(entry.id(), entry.action());
+            }
+            if (committer == null) {
+                durableId = nextId;
+            }
+        }
+        try {
+            awaitForce(appendedId);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                appended.forEach(entry -> entries.remove(entry.id()));
+            }
+            throw e;
+        }
+        return appended;
+    }
+
+    @Override
+    public synchronized List<OutboxEntry<A>> fetch(int limit) {
+        return fetch(limit, Long.MIN_VALUE);
+    }
+
+    @Override
+    public synchronized List<OutboxEntry<A>> fetch(int limit, long afterId) {
+        var fetched = new ArrayList<OutboxEntry<A>>(Math.min(limit, entries.size()));
+        // the entries that are not forced yet are not fetched
+        for (var entry : entries.subMap(afterId, false, durableId, false).entrySet()) {
+            if (fetched.size() == limit) {
+                break;
+            }
+            fetched.add(new OutboxEntry<>(entry.getKey(), entry.getValue()));
+        }
+        return fetched;
+    }
+
+    @Override
+    public void acknowledge(Collection<Long> ids) {
+        long acknowledgedId;
+        synchronized (this) {
+            var buffer = ByteBuffer.allocate(ids.size() * HEADER_SIZE);
+            for (var id : ids) {
+                if (entries.containsKey(id)) {
+                    putRecord(buffer, ACKNOWLEDGE, id, null);
+                }
+            }
+            if (buffer.position() == 0) {
+                return;
+            }
+            write(buffer.flip());
+            ids.forEach(entries::remove);
+            acknowledgedId = nextId;
+            // a drained file is compacted as soon as it is over the threshold, as there is nothing to rewrite
+            if (end > compactAt || entries.isEmpty() && end > compactionThreshold) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        awaitForce(acknowledgedId);
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Forces the pending writes, and closes the file
+     */
+    @Override
+    public void close() {
+        if (committer != null) {
+            // outside of the lock: the last batch takes it to publish the forced entries
+            committer.close();
+        }
+        synchronized (this) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Waits until the records written before the given next id are forced, if `fsync` is enabled
+     */
+    private void awaitForce(long id) {
+        if (committer != null) {
+            GroupCommitter.await(committer.submit(id));
+        }
+    }
+
+    /**
+     * The batch writer of the group commit: a single `fsync` for all the writes of the batch
+     */
+    private void force(List<PendingWrite<Long, Void>> batch) {
+        FileChannel forced;
+        synchronized (this) {
+            if (failure != null) {
+                var failed = new UncheckedIOException("The outbox has failed, and has to be reopened: " + file, failure);
+                batch.forEach(write -> write.fail(failed));
+                return;
+            }
+            forced = channel;
+        }
+        try {
+            forced.force(false);
+        } catch (ClosedChannelException e) {
+            // replaced by a compaction, that forced the compacted file
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+            }
+            var failed = new UncheckedIOException(e);
+            batch.forEach(write -> write.fail(failed));
+            return;
+        }
+        synchronized (this) {
+            for (var write : batch) {
+                durableId = Math.max(durableId, write.input());
+            }
+        }
+        batch.forEach(write -> write.complete(null));
+    }
+
+    private void write(ByteBuffer buffer) {
+        if (failure != null) {
+            throw new UncheckedIOException("The outbox has failed, and has to be reopened: " + file, failure);
+        }
+        var start = end;
+        try {
+            var position = start;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            end = position;
+        } catch (IOException e) {
+            try {
+                // no torn record is left behind for the following writes
+                channel.truncate(start);
+            } catch (IOException truncation) {
+                e.addSuppressed(truncation);
+                failure = e;
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void putRecord(ByteBuffer buffer, byte kind, long id, byte[] payload) {
+        var start = buffer.position();
+        var length = HEADER_SIZE - LENGTH_SIZE - Integer.BYTES + (payload == null ? 0 : payload.length);
+        buffer.putInt(length).putInt(0).put(kind).putLong(id);
+        if (payload != null) {
+            buffer.put(payload);
+        }
+        buffer.putInt(start + LENGTH_SIZE, crc(buffer, start + HEADER_SIZE - Byte.BYTES - Long.BYTES, length));
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        var crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private void recover() throws IOException {
+        var size = channel.size();
+        var buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+        // the file is read in chunks: the buffer holds the bytes of the file from the position `valid`
+        var valid = 0L;
+        while (true) {
+            buffer = fill(buffer, valid, HEADER_SIZE);
+            if (buffer.remaining() < HEADER_SIZE) {
+                break;
+            }
+            var record = buffer.position();
+            var length = buffer.getInt(record);
+            if (length < Byte.BYTES + Long.BYTES || length > size - valid - LENGTH_SIZE - Integer.BYTES) {
+                break;
+            }
+            buffer = fill(buffer, valid, LENGTH_SIZE + Integer.BYTES + length);
+            record = buffer.position();
+            var body = record + LENGTH_SIZE + Integer.BYTES;
+            if (crc(buffer, body, length) != buffer.getInt(record + LENGTH_SIZE)) {
+                break;
+            }
+            var kind = buffer.get(body);
+            var id = buffer.getLong(body + Byte.BYTES);
+            switch (kind) {
+                case APPEND -> {
+                    entries.put(id, codec.fromBytes(buffer.slice(body + Byte.BYTES + Long.BYTES, length - Byte.BYTES - Long.BYTES)));
+                    nextId = Math.max(nextId, id + 1);
+                }
+                case ACKNOWLEDGE -> entries.remove(id);
+                case BASE -> nextId = Math.max(nextId, id);
+                default -> throw new IllegalStateException("Unknown outbox record kind " + kind + " in " + file);
+            }
+            valid += LENGTH_SIZE + Integer.BYTES + length;
+            buffer.position(body + length);
+        }
+        if (valid < size) {
+            // a torn tail of an interrupted write
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        end = valid;
+    }
+
+    /**
+     * Reads the file into the buffer, until it has at least the needed bytes (or the file ends)
+     *
+     * @param buffer   the buffer, holding the bytes of the file from the position
+     * @param position the position in the file of the remaining bytes of the buffer
+     * @param needed   the number of the bytes needed
+     * @return the buffer (a larger one, if the needed bytes do not fit), ready to be read
+     */
+    private ByteBuffer fill(ByteBuffer buffer, long position, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        if (buffer.capacity() < needed) {
+            buffer = ByteBuffer.allocate(Math.max(needed, 2 * buffer.capacity())).put(buffer);
+        } else {
+            buffer.compact();
+        }
+        var read = position + buffer.position();
+        while (buffer.hasRemaining()) {
+            var bytes = channel.read(buffer, read);
+            if (bytes < 0) {
+                break;
+            }
+            read += bytes;
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Replaces the file with a file of the entries that are not acknowledged yet
+     */
+    private void compact() throws IOException {
+        var temporary = file.resolveSibling(file.getFileName() + ".compact");
+        long size;
+        try (var compacted = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            // the ids are never reused, also after the compaction
+            putRecord(buffer, BASE, nextId, null);
+            for (var entry : entries.entrySet()) {
+                var payload = codec.toBytes(entry.getValue());
+                if (buffer.remaining() < HEADER_SIZE + payload.length) {
+                    writeFully(compacted, buffer.flip());
+                    buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, HEADER_SIZE + payload.length));
+                }
+                putRecord(buffer, APPEND, entry.getKey(), payload);
+            }
+            writeFully(compacted, buffer.flip());
+            compacted.force(true);
+            size = compacted.size();
+        }
+        channel.close();
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        end = size;
+        compactAt = Math.max(compactionThreshold, 2 * size);
+        // all the entries are in the forced, compacted file
+        durableId = nextId;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.fraktalio.fmodel.application.sagamanager.outbox;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Outbox SPI - a local, durable queue of the actions that are still to be published.
+ * <br /><br />
+ * Actions are appended in the command path ({@link OutboxActionPublisher}), and drained in the background ({@link OutboxDispatcher}).
+ * An entry stays in the outbox until it is acknowledged, so an action that failed to be published is retried, and none is lost.
+ * Delivery is `at least once`: receivers deduplicate the actions by the {@link OutboxEntry#id()}.
+ *
+ * @param <A> action
+ */
+public interface IOutbox<A> {
+    /**
+     * Appends the actions, in order. Returns once they are stored.
+     *
+     * @param actions the actions to append
+     * @return the appended entries
+     */
+    List<OutboxEntry<A>> append(List<A> actions);
+
+    /**
+     * @param limit the maximum number of the entries to fetch
+     * @return the oldest entries that are not acknowledged yet, in the order of their ids
+     */
+    List<OutboxEntry<A>> fetch(int limit);
+
+    /**
+     * Fetches the entries past the given id, to skip the entries that are held back (for example, of a key that backs off)
+     * <br /><br />
+     * The default implementation fetches all the entries, and drops the ones up to (and including) the id.
+     * Override it to read the entries past the id only.
+     *
+     * @param limit   the maximum number of the entries to fetch
+     * @param afterId the id of the last entry that is not fetched
+     * @return the oldest entries past the id that are not acknowledged yet, in the order of their ids
+     */
+    default List<OutboxEntry<A>> fetch(int limit, long afterId) {
+        return fetch(Integer.MAX_VALUE).stream().filter(entry -> entry.id() > afterId).limit(limit).toList();
+    }
+
+    /**
+     * Removes the published entries
+     *
+     * @param ids the ids of the published entries
+     */
+    void acknowledge(Collection<Long> ids);
+
+    /**
+     * @return the number of the entries that are not acknowledged yet
+     */
+    int size();
+}
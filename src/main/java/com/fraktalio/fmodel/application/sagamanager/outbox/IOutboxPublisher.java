@@ -0,0 +1,31 @@
+package com.fraktalio.fmodel.application.sagamanager.outbox;
+
+import com.fraktalio.fmodel.application.sagamanager.IActionPublisher;
+
+import java.util.List;
+
+/**
+ * Publishes the entries drained from the {@link IOutbox} by the {@link OutboxDispatcher}
+ *
+ * @param <A> action
+ */
+@FunctionalInterface
+public interface IOutboxPublisher<A> {
+    /**
+     * Publishes the entries, in order. A failure (an exception) makes the dispatcher retry all of them later.
+     *
+     * @param entries the entries of one correlation key, with their deduplication ids
+     */
+    void publish(List<OutboxEntry<A>> entries);
+
+    /**
+     * Publishes the actions of the entries with the action publisher, without their ids
+     *
+     * @param publisher the action publisher
+     * @param <A>       action
+     * @return the outbox publisher
+     */
+    static <A> IOutboxPublisher<A> of(IActionPublisher<A> publisher) {
+        return entries -> publisher.publish(entries.stream().map(OutboxEntry::action).toList());
+    }
+}
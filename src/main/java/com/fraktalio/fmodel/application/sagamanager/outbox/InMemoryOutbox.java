@@ -0,0 +1,54 @@
+package com.fraktalio.fmodel.application.sagamanager.outbox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory, thread-safe implementation of the {@link IOutbox}. Not durable: the entries are lost with the process.
+ *
+ * @param <A> action
+ */
+public final class InMemoryOutbox<A> implements IOutbox<A> {
+    private final ConcurrentSkipListMap<Long, A> entries = new ConcurrentSkipListMap<>();
+    private long nextId;
+
+    @Override
+    public synchronized List<OutboxEntry<A>> append(List<A> actions) {
+        var appended = new ArrayList<OutboxEntry<A>>(actions.size());
+        for (var action : actions) {
+            var entry = new OutboxEntry<A>(nextId++, action);
+            entries.put(entry.id(), entry.action());
+            appended.add(entry);
+        }
+        return appended;
+    }
+
+    @Override
+    public List<OutboxEntry<A>> fetch(int limit) {
+        return fetch(limit, Long.MIN_VALUE);
+    }
+
+    @Override
+    public List<OutboxEntry<A>> fetch(int limit, long afterId) {
+        var fetched = new ArrayList<OutboxEntry<A>>(Math.min(limit, 1024));
+        for (var entry : entries.tailMap(afterId, false).entrySet()) {
+            if (fetched.size() == limit) {
+                break;
+            }
+            fetched.add(new OutboxEntry<>(entry.getKey(), entry.getValue()));
+        }
+        return fetched;
+    }
+
+    @Override
+    public void acknowledge(Collection<Long> ids) {
+        ids.forEach(entries::remove);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+}
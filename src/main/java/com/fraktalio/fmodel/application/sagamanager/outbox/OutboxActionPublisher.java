@@ -0,0 +1,41 @@
+package com.fraktalio.fmodel.application.sagamanager.outbox;
+
+import com.fraktalio.fmodel.application.sagamanager.IActionPublisher;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Action publisher that appends the actions to the {@link IOutbox}, instead of publishing them.
+ * <br /><br />
+ * With it, the {@link com.fraktalio.fmodel.application.sagamanager.SagaManager} runs in the `outbox mode`:
+ * handling an action result only waits for the local append, not for the downstream publishing,
+ * which is done in the background by the {@link OutboxDispatcher}.
+ *
+ * @param <A> action
+ */
+public final class OutboxActionPublisher<A> implements IActionPublisher<A> {
+    public OutboxActionPublisher(final IOutbox<A> outbox) {
+        this.outbox = Objects.requireNonNull(outbox);
+    }
+
+    private final IOutbox<A> outbox;
+
+    @Override
+    public List<A> publish(List<A> actions) {
+        if (!actions.isEmpty()) {
+            outbox.append(actions);
+        }
+        return actions;
+    }
+
+    @Override
+    public CompletableFuture<List<A>> publishAsync(List<A> actions) {
+        try {
+            return CompletableFuture.completedFuture(publish(actions));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
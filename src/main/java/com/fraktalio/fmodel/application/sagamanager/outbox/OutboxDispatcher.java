@@ -0,0 +1,188 @@
+package com.fraktalio.fmodel.application.sagamanager.outbox;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Background dispatcher that drains the {@link IOutbox} in large batches, and publishes the entries with the {@link IOutboxPublisher}.
+ * <br /><br />
+ * The entries of a batch are grouped by their correlation key, and every group is published in the order of the ids.
+ * When the publishing of a group fails, its entries stay in the outbox and its key is retried with an exponential backoff,
+ * while the entries of other keys are published and acknowledged. A later entry of a failed key is never published before the earlier ones.
+ * The entries of the keys that back off are skipped when the outbox is drained ({@link IOutbox#fetch(int, long)}),
+ * so a failing key with more entries than a batch does not hold back the other keys.
+ * <br /><br />
+ * When the outbox is empty, the dispatcher polls it with the poll interval.
+ *
+ * @param <A> action
+ */
+public final class OutboxDispatcher<A> implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofMillis(10);
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(5);
+
+    public OutboxDispatcher(final IOutbox<A> outbox, final IOutboxPublisher<A> publisher, final Function<? super A, ?> correlationKey) {
+        this(outbox, publisher, correlationKey, DEFAULT_BATCH_SIZE, DEFAULT_POLL_INTERVAL, DEFAULT_MAX_BACKOFF, Thread.ofPlatform().daemon().name("fmodel-outbox-", 0).factory());
+    }
+
+    public OutboxDispatcher(final IOutbox<A> outbox,
+                            final IOutboxPublisher<A> publisher,
+                            final Function<? super A, ?> correlationKey,
+                            final int batchSize,
+                            final Duration pollInterval,
+                            final Duration maxBackoff,
+                            final ThreadFactory threadFactory) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.outbox = Objects.requireNonNull(outbox);
+        this.publisher = Objects.requireNonNull(publisher);
+        this.correlationKey = Objects.requireNonNull(correlationKey);
+        this.batchSize = batchSize;
+        this.pollNanos = pollInterval.toNanos();
+        this.maxBackoffNanos = Math.max(maxBackoff.toNanos(), pollNanos);
+        this.worker = threadFactory.newThread(this::run);
+        this.worker.start();
+    }
+
+    private final IOutbox<A> outbox;
+    private final IOutboxPublisher<A> publisher;
+    private final Function<? super A, ?> correlationKey;
+    private final int batchSize;
+    private final long pollNanos;
+    private final long maxBackoffNanos;
+    private final Thread worker;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    // the correlation keys that back off, used by the worker only
+    private final HashMap<Object, Backoff> backoffs = new HashMap<>();
+    private volatile boolean closed;
+
+    private record Backoff(long retryAt, long nanos) {
+    }
+
+    /**
+     * Wakes the dispatcher up, to drain the outbox without waiting for the poll interval
+     */
+    public void wakeUp() {
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * @return the number of the entries published so far
+     */
+    public long published() {
+        return published.sum();
+    }
+
+    /**
+     * @return the number of the failed publishing attempts (of one correlation key each)
+     */
+    public long failures() {
+        return failures.sum();
+    }
+
+    /**
+     * Stops the dispatcher. The entries that are not published yet stay in the outbox.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(worker);
+        var interrupted = false;
+        while (true) {
+            try {
+                worker.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        var backoffNanos = pollNanos;
+        while (!closed) {
+            boolean drained;
+            try {
+                drained = drain();
+            } catch (RuntimeException e) {
+                // the outbox itself failed: retried with a backoff
+                failures.increment();
+                LockSupport.parkNanos(backoffNanos);
+                backoffNanos = Math.min(backoffNanos * 2, maxBackoffNanos);
+                continue;
+            }
+            backoffNanos = pollNanos;
+            if (!drained) {
+                LockSupport.parkNanos(pollNanos);
+            }
+        }
+    }
+
+    /**
+     * Fetches a batch of the entries of the keys that do not back off (reading past the others), and publishes it
+     *
+     * @return whether any entry was due to be published
+     */
+    private boolean drain() {
+        var now = System.nanoTime();
+        var groups = new LinkedHashMap<Object, List<OutboxEntry<A>>>();
+        var due = 0;
+        var afterId = Long.MIN_VALUE;
+        while (due < batchSize) {
+            var page = outbox.fetch(batchSize, afterId);
+            for (var entry : page) {
+                var key = correlationKey.apply(entry.action());
+                var backoff = backoffs.get(key);
+                if (backoff != null && backoff.retryAt() - now > 0) {
+                    continue;
+                }
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+                if (++due == batchSize) {
+                    break;
+                }
+            }
+            if (page.size() < batchSize) {
+                break;
+            }
+            afterId = page.getLast().id();
+        }
+        if (groups.isEmpty()) {
+            return false;
+        }
+        dispatch(groups);
+        return true;
+    }
+
+    private void dispatch(LinkedHashMap<Object, List<OutboxEntry<A>>> groups) {
+        var acknowledged = new ArrayList<Long>();
+        for (var group : groups.entrySet()) {
+            try {
+                publisher.publish(group.getValue());
+                group.getValue().forEach(entry -> acknowledged.add(entry.id()));
+                backoffs.remove(group.getKey());
+            } catch (RuntimeException e) {
+                failures.increment();
+                var previous = backoffs.get(group.getKey());
+                var nanos = previous == null ? pollNanos : Math.min(previous.nanos() * 2, maxBackoffNanos);
+                backoffs.put(group.getKey(), new Backoff(System.nanoTime() + nanos, nanos));
+            }
+        }
+        if (!acknowledged.isEmpty()) {
+            outbox.acknowledge(acknowledged);
+            published.add(acknowledged.size());
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.fraktalio.fmodel.application.sagamanager.outbox;
+
+/**
+ * An action stored in the {@link IOutbox}
+ *
+ * @param id     the unique, increasing identifier of the entry: the order of the appends, and the deduplication id for the receivers
+ * @param action the action
+ * @param <A>    action
+ */
+public record OutboxEntry<A>(long id, A action) {
+}
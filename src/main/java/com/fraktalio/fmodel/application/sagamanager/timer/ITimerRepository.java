@@ -0,0 +1,38 @@
+package com.fraktalio.fmodel.application.sagamanager.timer;
+
+import com.fraktalio.fmodel.domain.saga.TimedAction;
+
+import java.util.List;
+
+/**
+ * Timer repository SPI - keeps the pending deferred actions, so that they survive restarts
+ *
+ * @param <A> action
+ */
+public interface ITimerRepository<A> {
+    /**
+     * Saves the timer, replacing a timer with the same id
+     *
+     * @param timer the deferred action
+     */
+    void save(TimedAction.At<A> timer);
+
+    /**
+     * Deletes the timer, if any (a cancellation)
+     *
+     * @param timerId the id of the timer
+     */
+    void delete(String timerId);
+
+    /**
+     * Deletes the timer, only if it was not replaced in the meantime (an executed timer)
+     *
+     * @param timer the executed timer
+     */
+    void delete(TimedAction.At<A> timer);
+
+    /**
+     * @return all the pending timers
+     */
+    List<TimedAction.At<A>> fetchAll();
+}
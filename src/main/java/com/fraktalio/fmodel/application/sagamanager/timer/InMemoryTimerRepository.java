@@ -0,0 +1,35 @@
+package com.fraktalio.fmodel.application.sagamanager.timer;
+
+import com.fraktalio.fmodel.domain.saga.TimedAction;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory, thread-safe implementation of the {@link ITimerRepository}. Not durable: the timers are lost with the process.
+ *
+ * @param <A> action
+ */
+public final class InMemoryTimerRepository<A> implements ITimerRepository<A> {
+    private final ConcurrentHashMap<String, TimedAction.At<A>> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public void save(TimedAction.At<A> timer) {
+        timers.put(timer.timerId(), timer);
+    }
+
+    @Override
+    public void delete(String timerId) {
+        timers.remove(timerId);
+    }
+
+    @Override
+    public void delete(TimedAction.At<A> timer) {
+        timers.remove(timer.timerId(), timer);
+    }
+
+    @Override
+    public List<TimedAction.At<A>> fetchAll() {
+        return List.copyOf(timers.values());
+    }
+}
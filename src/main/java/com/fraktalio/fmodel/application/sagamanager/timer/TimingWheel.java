@@ -0,0 +1,175 @@
+package com.fraktalio.fmodel.application.sagamanager.timer;
+
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Hierarchical hashed timing wheel - a timer store that scales to millions of pending timers.
+ * <br /><br />
+ * Time is split into ticks. The wheel has {@value #LEVELS} levels of {@value #SLOTS} slots each:
+ * the first level holds the timers due within the next {@value #SLOTS} ticks, one slot per tick,
+ * and every next level covers {@value #SLOTS} times longer spans. When the time enters the span of a higher level slot,
+ * its timers are cascaded (re-inserted) into the lower levels. A timer is a node of a doubly linked slot list, and is indexed by its key:
+ * scheduling and cancelling a timer are O(1), and advancing the time only touches the timers that are due (or cascaded).
+ * <br /><br />
+ * With the default 10 millisecond tick, the levels cover more than a year; timers beyond that are parked in the last level until they get closer.
+ * A timer never expires before its deadline, and at most one tick after it (once the wheel is advanced).
+ * <br /><br />
+ * The wheel is not thread-safe: it is owned by a single (timer) thread.
+ *
+ * @param <K> the key (id) of a timer
+ * @param <T> the payload of a timer
+ */
+public final class TimingWheel<K, T> {
+    public static final int SLOTS = 256;
+    public static final int LEVELS = 4;
+
+    private static final int SLOT_BITS = Integer.numberOfTrailingZeros(SLOTS);
+    private static final int MASK = SLOTS - 1;
+    private static final long RANGE = 1L << (SLOT_BITS * LEVELS);
+
+    /**
+     * @param tickMillis the duration of a tick, in milliseconds
+     * @param nowMillis  the current time, in milliseconds
+     */
+    public TimingWheel(final long tickMillis, final long nowMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = Math.floorDiv(nowMillis, tickMillis);
+        this.slots = new Node[LEVELS * SLOTS];
+        for (var i = 0; i < slots.length; i++) {
+            slots[i] = Node.sentinel();
+        }
+    }
+
+    private final long tickMillis;
+    private final Node[] slots;
+    private final HashMap<K, Node> timers = new HashMap<>();
+    private long currentTick;
+
+    private static final class Node {
+        private Object key;
+        private Object payload;
+        private long deadlineTick;
+        private Node previous;
+        private Node next;
+
+        private static Node sentinel() {
+            var sentinel = new Node();
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+            return sentinel;
+        }
+
+        private void unlink() {
+            previous.next = next;
+            next.previous = previous;
+            previous = null;
+            next = null;
+        }
+    }
+
+    /**
+     * Schedules the timer. A timer with the same key is replaced.
+     *
+     * @param key            the key of the timer
+     * @param payload        the payload, handed over when the timer expires
+     * @param deadlineMillis the deadline, in milliseconds. A deadline in the past expires with the next tick.
+     */
+    public void schedule(K key, T payload, long deadlineMillis) {
+        Objects.requireNonNull(key);
+        var node = timers.get(key);
+        if (node == null) {
+            node = new Node();
+            node.key = key;
+            timers.put(key, node);
+        } else {
+            node.unlink();
+        }
+        node.payload = payload;
+        node.deadlineTick = Math.ceilDiv(deadlineMillis, tickMillis);
+        place(node, Math.max(node.deadlineTick, currentTick + 1));
+    }
+
+    /**
+     * @param key the key of the timer
+     * @return whether the timer was pending
+     */
+    public boolean cancel(K key) {
+        var node = timers.remove(key);
+        if (node == null) {
+            return false;
+        }
+        node.unlink();
+        return true;
+    }
+
+    /**
+     * @return the number of the pending timers
+     */
+    public int size() {
+        return timers.size();
+    }
+
+    /**
+     * Advances the time, and expires the timers that are due
+     *
+     * @param nowMillis the current time, in milliseconds
+     * @param expired   receives the key and the payload of every expired timer, in the order of their deadlines (per tick)
+     * @return the number of the expired timers
+     */
+    @SuppressWarnings("unchecked")
+    public int advance(long nowMillis, BiConsumer<? super K, ? super T> expired) {
+        var target = Math.floorDiv(nowMillis, tickMillis);
+        var count = 0;
+        while (currentTick < target) {
+            if (timers.isEmpty()) {
+                currentTick = target;
+                break;
+            }
+            currentTick++;
+            // the higher levels first: they may cascade into a slot of a lower level that is cascaded in the same tick
+            for (var level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    var sentinel = slots[level * SLOTS + (int) ((currentTick >>> (SLOT_BITS * level)) & MASK)];
+                    while (sentinel.next != sentinel) {
+                        var node = sentinel.next;
+                        node.unlink();
+                        place(node, node.deadlineTick);
+                    }
+                }
+            }
+            // one node at a time: the consumer may schedule or cancel timers, also of this slot
+            var sentinel = slots[(int) (currentTick & MASK)];
+            while (sentinel.next != sentinel) {
+                var node = sentinel.next;
+                node.unlink();
+                timers.remove(node.key);
+                count++;
+                expired.accept((K) node.key, (T) node.payload);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Links the node into the slot of the tick. The tick is not before the current tick.
+     */
+    private void place(Node node, long tick) {
+        var delta = tick - currentTick;
+        if (delta >= RANGE) {
+            // beyond the last level: parked in its farthest slot, and cascaded again once the time gets there
+            tick = currentTick + RANGE - 1;
+            delta = RANGE - 1;
+        }
+        var level = delta < SLOTS ? 0 : (Long.SIZE - 1 - Long.numberOfLeadingZeros(delta)) / SLOT_BITS;
+        var sentinel = slots[level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & MASK)];
+        node.previous = sentinel.previous;
+        node.next = sentinel;
+        sentinel.previous.next = node;
+        sentinel.previous = node;
+    }
+}
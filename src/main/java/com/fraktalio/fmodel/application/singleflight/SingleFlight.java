@@ -0,0 +1,161 @@
+package com.fraktalio.fmodel.application.singleflight;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces the concurrent calls with the same key into a single call (`single flight`).
+ * <br /><br />
+ * The first caller of a key (the leader) makes the call. The callers arriving while the call is in flight share its result (or its failure).
+ * Once the call completes, the next caller of the key makes a new call - results are never cached.
+ * <br /><br />
+ * The calls of a key may differ in a variant (for example, the event types fetched from a stream): only the calls of the same key and variant are coalesced.
+ * {@link #invalidate(Object)} detaches the calls in flight of all the variants from their key (a single removal), so the callers arriving after the invalidation make new calls.
+ * Invalidate the key once its data changes (for example, after a save), so nobody gets the data read before the change.
+ *
+ * @param <K> key
+ * @param <R> result
+ */
+public final class SingleFlight<K, R> {
+    /**
+     * The variant of the calls that do not vary
+     */
+    private static final Object NO_VARIANT = new Object();
+
+    /**
+     * The calls in flight, by the key and the variant. A map of variants detached from its key (invalidated, or removed once empty) is never joined again.
+     */
+    private final ConcurrentHashMap<K, ConcurrentHashMap<Object, CompletableFuture<R>>> flights = new ConcurrentHashMap<>();
+    private final LongAdder shared = new LongAdder();
+
+    /**
+     * Make the call in the calling thread, or wait for the same call in flight
+     *
+     * @param key  key of the call
+     * @param call the call
+     * @return the result of the call
+     */
+    public R execute(K key, Supplier<? extends R> call) {
+        return execute(key, NO_VARIANT, call);
+    }
+
+    /**
+     * Make the call in the calling thread, or wait for the same call (of the same variant) in flight
+     *
+     * @param key     key of the call
+     * @param variant variant of the call
+     * @param call    the call
+     * @return the result of the call
+     */
+    public R execute(K key, Object variant, Supplier<? extends R> call) {
+        var flight = new CompletableFuture<R>();
+        var existing = register(key, variant, flight);
+        if (existing != null) {
+            shared.increment();
+            return await(existing);
+        }
+        try {
+            var result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            unregister(key, variant, flight);
+        }
+    }
+
+    /**
+     * Start the async call, or join the same call in flight
+     *
+     * @param key  key of the call
+     * @param call the async call
+     * @return the result of the call
+     */
+    public CompletableFuture<R> executeAsync(K key, Supplier<? extends CompletableFuture<R>> call) {
+        return executeAsync(key, NO_VARIANT, call);
+    }
+
+    /**
+     * Start the async call, or join the same call (of the same variant) in flight
+     *
+     * @param key     key of the call
+     * @param variant variant of the call
+     * @param call    the async call
+     * @return the result of the call
+     */
+    public CompletableFuture<R> executeAsync(K key, Object variant, Supplier<? extends CompletableFuture<R>> call) {
+        var flight = new CompletableFuture<R>();
+        var existing = register(key, variant, flight);
+        if (existing != null) {
+            shared.increment();
+            return existing.copy();
+        }
+        CompletableFuture<R> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((value, failure) -> {
+            unregister(key, variant, flight);
+            if (failure == null) {
+                flight.complete(value);
+            } else {
+                flight.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+            }
+        });
+        return flight.copy();
+    }
+
+    /**
+     * Detach the calls in flight of all the variants from the key, so the next callers make new calls
+     *
+     * @param key key of the calls
+     */
+    public void invalidate(K key) {
+        flights.remove(key);
+    }
+
+    /**
+     * @return the number of callers that shared the call of another caller
+     */
+    public long shared() {
+        return shared.sum();
+    }
+
+    /**
+     * @return the call in flight of the key and the variant, or {@code null} if the given flight is registered as the call
+     */
+    private CompletableFuture<R> register(K key, Object variant, CompletableFuture<R> flight) {
+        return flights.computeIfAbsent(key, k -> new ConcurrentHashMap<>(2)).putIfAbsent(variant, flight);
+    }
+
+    private void unregister(K key, Object variant, CompletableFuture<R> flight) {
+        flights.computeIfPresent(key, (k, variants) -> {
+            variants.remove(variant, flight);
+            return variants.isEmpty() ? null : variants;
+        });
+    }
+
+    private static <R> R await(CompletableFuture<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            } else if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+}
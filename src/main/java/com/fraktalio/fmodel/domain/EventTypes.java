@@ -0,0 +1,49 @@
+package com.fraktalio.fmodel.domain;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The event types consumed by the combined deciders and views
+ */
+public final class EventTypes {
+    private EventTypes() {
+    }
+
+    /**
+     * The union of the event types consumed by two combined deciders / views
+     *
+     * @param typesX  declared event types of the first one, an empty set meaning all the events
+     * @param clazzEX the type of the Event of the first one
+     * @param typesY  declared event types of the second one, an empty set meaning all the events
+     * @param clazzEY the type of the Event of the second one
+     * @return the consumed event types, or an empty set (all the events) if a type of the Event is not known
+     */
+    public static <E_SUPER, E1 extends E_SUPER, E2 extends E_SUPER> Set<Class<? extends E_SUPER>> combine(
+            Set<? extends Class<?>> typesX, Class<E1> clazzEX,
+            Set<? extends Class<?>> typesY, Class<E2> clazzEY
+    ) {
+        if (clazzEX == null || clazzEY == null) {
+            return Set.of();
+        }
+        var union = new HashSet<Class<? extends E_SUPER>>();
+        union.addAll(consumed(typesX, clazzEX));
+        union.addAll(consumed(typesY, clazzEY));
+        return union;
+    }
+
+    /**
+     * The declared types narrowed to the subtypes of {@code clazz}, as only the events of the {@code clazz} type reach the combined decider / view
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Set<Class<? extends T>> consumed(Set<? extends Class<?>> declared, Class<T> clazz) {
+        if (declared.isEmpty()) {
+            return Set.of(clazz);
+        }
+        var consumed = new HashSet<Class<? extends T>>();
+        for (var type : declared) {
+            consumed.add(clazz.isAssignableFrom(type) ? (Class<? extends T>) type : clazz);
+        }
+        return consumed;
+    }
+}
@@ -0,0 +1,591 @@
+package com.fraktalio.fmodel.domain.collections;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * {@link PersistentMap} is an immutable hash map (a hash array mapped trie), for the states of the deciders and the views.
+ * <br>
+ * {@link #with} and {@link #without} return a new map in O(log32 n), sharing all but the changed path with this map,
+ * so an `evolve` that adds an entry to a map of the state does not copy the whole map.
+ * A batch of changes is applied in place with a {@link Builder}, see {@link #toBuilder()}.
+ * <br>
+ * It is a read-only {@link Map}: the mutators of {@link Map} throw {@link UnsupportedOperationException}.
+ * The keys and the values are not nullable.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @param map the entries
+     * @return the map of the entries
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> of(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentMap<?, ?> persistent) {
+            return (PersistentMap<K, V>) persistent;
+        }
+        var builder = PersistentMap.<K, V>empty().toBuilder();
+        map.forEach(builder::put);
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return key == null ? null : (V) root.get(key, key.hashCode(), 0);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key   the key
+     * @param value the new value of the key
+     * @return the map with the key mapped to the value
+     */
+    public PersistentMap<K, V> with(K key, V value) {
+        var change = new Change();
+        var newRoot = root.put(null, Objects.requireNonNull(key), Objects.requireNonNull(value), key.hashCode(), 0, change);
+        return newRoot == root ? this : new PersistentMap<>(newRoot, change.added ? size + 1 : size);
+    }
+
+    /**
+     * @param key the key
+     * @return the map without the key
+     */
+    public PersistentMap<K, V> without(Object key) {
+        if (key == null) {
+            return this;
+        }
+        var change = new Change();
+        var newRoot = root.remove(null, key, key.hashCode(), 0, change);
+        return change.removed ? new PersistentMap<>(newRoot, size - 1) : this;
+    }
+
+    /**
+     * A builder, starting with the entries of this map. This map is not changed by the builder.
+     *
+     * @return new builder
+     */
+    public Builder<K, V> toBuilder() {
+        return new Builder<>(root, size);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Entry<?, ?> entry && entry.getValue() != null && entry.getValue().equals(get(entry.getKey()));
+            }
+        };
+    }
+
+    /**
+     * Transient version of the {@link PersistentMap}, for the batches of changes: the nodes created by the builder are changed in place.
+     * It is not thread safe, and it is not usable after {@link #build()}.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     */
+    public static final class Builder<K, V> {
+        private Object edit = new Object();
+        private Node root;
+        private int size;
+
+        private Builder(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        /**
+         * @param key   the key
+         * @param value the new value of the key
+         * @return this builder
+         */
+        public Builder<K, V> put(K key, V value) {
+            var change = new Change();
+            root = root.put(editToken(), Objects.requireNonNull(key), Objects.requireNonNull(value), key.hashCode(), 0, change);
+            if (change.added) {
+                size++;
+            }
+            return this;
+        }
+
+        /**
+         * @param key the key
+         * @return this builder
+         */
+        public Builder<K, V> remove(Object key) {
+            if (key != null) {
+                var change = new Change();
+                root = root.remove(editToken(), key, key.hashCode(), 0, change);
+                if (change.removed) {
+                    size--;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @param key the key
+         * @return the value of the key, or {@code null}
+         */
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            editToken();
+            return key == null ? null : (V) root.get(key, key.hashCode(), 0);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the map of the entries of this builder
+         */
+        public PersistentMap<K, V> build() {
+            editToken();
+            edit = null;
+            return new PersistentMap<>(root, size);
+        }
+
+        private Object editToken() {
+            if (edit == null) {
+                throw new IllegalStateException("The builder is already built");
+            }
+            return edit;
+        }
+    }
+
+    private static final class Change {
+        private boolean added;
+        private boolean removed;
+    }
+
+    /**
+     * A node of the trie. The nodes owned by an {@code edit} token (of a builder) are changed in place, the other ones are copied.
+     */
+    private abstract static sealed class Node permits BitmapNode, CollisionNode {
+        final Object edit;
+
+        Node(Object edit) {
+            this.edit = edit;
+        }
+
+        boolean isOwnedBy(Object edit) {
+            return edit != null && this.edit == edit;
+        }
+
+        abstract Object get(Object key, int hash, int shift);
+
+        abstract Node put(Object edit, Object key, Object value, int hash, int shift, Change change);
+
+        abstract Node remove(Object edit, Object key, int hash, int shift, Change change);
+
+        /**
+         * @return the number of the entries of this node, not counting the sub-nodes
+         */
+        abstract int entries();
+
+        abstract int nodes();
+
+        abstract Object key(int index);
+
+        abstract Object value(int index);
+
+        abstract Node node(int index);
+    }
+
+    /**
+     * The entries {@code [key0, value0, key1, value1, ...]}, followed by the sub-nodes.
+     * The {@code entryMap} and the {@code nodeMap} mark the hash fragments (of 5 bits) of the entries and of the sub-nodes.
+     * A sub-node always has more than one entry, so a map has a single (canonical) trie.
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(null, 0, 0, new Object[0]);
+
+        private int entryMap;
+        private int nodeMap;
+        private Object[] content;
+
+        BitmapNode(Object edit, int entryMap, int nodeMap, Object[] content) {
+            super(edit);
+            this.entryMap = entryMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            var bit = bit(hash, shift);
+            if ((entryMap & bit) != 0) {
+                var index = 2 * index(entryMap, bit);
+                return key.equals(content[index]) ? content[index + 1] : null;
+            }
+            if ((nodeMap & bit) != 0) {
+                return nodeAt(bit).get(key, hash, shift + 5);
+            }
+            return null;
+        }
+
+        @Override
+        Node put(Object edit, Object key, Object value, int hash, int shift, Change change) {
+            var bit = bit(hash, shift);
+            if ((entryMap & bit) != 0) {
+                var index = 2 * index(entryMap, bit);
+                var currentKey = content[index];
+                if (key.equals(currentKey)) {
+                    if (value == content[index + 1]) {
+                        return this;
+                    }
+                    var node = editable(edit);
+                    node.content[index + 1] = value;
+                    return node;
+                }
+                change.added = true;
+                var subNode = merge(edit, currentKey, content[index + 1], currentKey.hashCode(), key, value, hash, shift + 5);
+                return withEntryReplacedByNode(edit, bit, subNode);
+            }
+            if ((nodeMap & bit) != 0) {
+                var index = nodeIndex(bit);
+                var subNode = (Node) content[index];
+                var newSubNode = subNode.put(edit, key, value, hash, shift + 5, change);
+                if (newSubNode == subNode) {
+                    return this;
+                }
+                var node = editable(edit);
+                node.content[index] = newSubNode;
+                return node;
+            }
+            change.added = true;
+            var index = 2 * index(entryMap, bit);
+            var newContent = new Object[content.length + 2];
+            System.arraycopy(content, 0, newContent, 0, index);
+            newContent[index] = key;
+            newContent[index + 1] = value;
+            System.arraycopy(content, index, newContent, index + 2, content.length - index);
+            return update(edit, entryMap | bit, nodeMap, newContent);
+        }
+
+        @Override
+        Node remove(Object edit, Object key, int hash, int shift, Change change) {
+            var bit = bit(hash, shift);
+            if ((entryMap & bit) != 0) {
+                var index = 2 * index(entryMap, bit);
+                if (!key.equals(content[index])) {
+                    return this;
+                }
+                change.removed = true;
+                var newContent = new Object[content.length - 2];
+                System.arraycopy(content, 0, newContent, 0, index);
+                System.arraycopy(content, index + 2, newContent, index, content.length - index - 2);
+                return update(edit, entryMap ^ bit, nodeMap, newContent);
+            }
+            if ((nodeMap & bit) != 0) {
+                var index = nodeIndex(bit);
+                var subNode = (Node) content[index];
+                var newSubNode = subNode.remove(edit, key, hash, shift + 5, change);
+                if (!change.removed) {
+                    return this;
+                }
+                if (newSubNode.nodes() == 0 && newSubNode.entries() == 1) {
+                    // a single entry is kept inline
+                    return withNodeReplacedByEntry(edit, bit, newSubNode.key(0), newSubNode.value(0));
+                }
+                if (newSubNode == subNode) {
+                    // changed in place
+                    return this;
+                }
+                var node = editable(edit);
+                node.content[index] = newSubNode;
+                return node;
+            }
+            return this;
+        }
+
+        @Override
+        int entries() {
+            return Integer.bitCount(entryMap);
+        }
+
+        @Override
+        int nodes() {
+            return Integer.bitCount(nodeMap);
+        }
+
+        @Override
+        Object key(int index) {
+            return content[2 * index];
+        }
+
+        @Override
+        Object value(int index) {
+            return content[2 * index + 1];
+        }
+
+        @Override
+        Node node(int index) {
+            return (Node) content[2 * entries() + index];
+        }
+
+        private Node nodeAt(int bit) {
+            return (Node) content[nodeIndex(bit)];
+        }
+
+        private int nodeIndex(int bit) {
+            return 2 * entries() + index(nodeMap, bit);
+        }
+
+        private Node withEntryReplacedByNode(Object edit, int bit, Node subNode) {
+            var entryIndex = 2 * index(entryMap, bit);
+            var nodeIndex = 2 * entries() - 2 + index(nodeMap, bit);
+            var newContent = new Object[content.length - 1];
+            System.arraycopy(content, 0, newContent, 0, entryIndex);
+            System.arraycopy(content, entryIndex + 2, newContent, entryIndex, nodeIndex - entryIndex);
+            newContent[nodeIndex] = subNode;
+            System.arraycopy(content, nodeIndex + 2, newContent, nodeIndex + 1, content.length - nodeIndex - 2);
+            return update(edit, entryMap ^ bit, nodeMap | bit, newContent);
+        }
+
+        private Node withNodeReplacedByEntry(Object edit, int bit, Object key, Object value) {
+            var nodeIndex = nodeIndex(bit);
+            var entryIndex = 2 * index(entryMap, bit);
+            var newContent = new Object[content.length + 1];
+            System.arraycopy(content, 0, newContent, 0, entryIndex);
+            newContent[entryIndex] = key;
+            newContent[entryIndex + 1] = value;
+            System.arraycopy(content, entryIndex, newContent, entryIndex + 2, nodeIndex - entryIndex);
+            System.arraycopy(content, nodeIndex + 1, newContent, nodeIndex + 2, content.length - nodeIndex - 1);
+            return update(edit, entryMap | bit, nodeMap ^ bit, newContent);
+        }
+
+        private BitmapNode editable(Object edit) {
+            return isOwnedBy(edit) ? this : new BitmapNode(edit, entryMap, nodeMap, content.clone());
+        }
+
+        private BitmapNode update(Object edit, int entryMap, int nodeMap, Object[] content) {
+            if (!isOwnedBy(edit)) {
+                return new BitmapNode(edit, entryMap, nodeMap, content);
+            }
+            this.entryMap = entryMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+            return this;
+        }
+
+        private static Node merge(Object edit, Object key1, Object value1, int hash1, Object key2, Object value2, int hash2, int shift) {
+            if (shift > 30) {
+                return new CollisionNode(edit, hash1, new Object[]{key1, value1, key2, value2});
+            }
+            var bit1 = bit(hash1, shift);
+            var bit2 = bit(hash2, shift);
+            if (bit1 == bit2) {
+                return new BitmapNode(edit, 0, bit1, new Object[]{merge(edit, key1, value1, hash1, key2, value2, hash2, shift + 5)});
+            }
+            return Integer.compareUnsigned(bit1, bit2) < 0
+                    ? new BitmapNode(edit, bit1 | bit2, 0, new Object[]{key1, value1, key2, value2})
+                    : new BitmapNode(edit, bit1 | bit2, 0, new Object[]{key2, value2, key1, value1});
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        private static int index(int bitmap, int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+
+    /**
+     * The entries {@code [key0, value0, key1, value1, ...]} of the keys with the same hash
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private Object[] content;
+
+        CollisionNode(Object edit, int hash, Object[] content) {
+            super(edit);
+            this.hash = hash;
+            this.content = content;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            var index = indexOf(key);
+            return index < 0 ? null : content[index + 1];
+        }
+
+        @Override
+        Node put(Object edit, Object key, Object value, int hash, int shift, Change change) {
+            var index = indexOf(key);
+            if (index >= 0) {
+                if (content[index + 1] == value) {
+                    return this;
+                }
+                var newContent = isOwnedBy(edit) ? content : content.clone();
+                newContent[index + 1] = value;
+                return update(edit, newContent);
+            }
+            change.added = true;
+            var newContent = Arrays.copyOf(content, content.length + 2);
+            newContent[content.length] = key;
+            newContent[content.length + 1] = value;
+            return update(edit, newContent);
+        }
+
+        @Override
+        Node remove(Object edit, Object key, int hash, int shift, Change change) {
+            var index = indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            change.removed = true;
+            var newContent = new Object[content.length - 2];
+            System.arraycopy(content, 0, newContent, 0, index);
+            System.arraycopy(content, index + 2, newContent, index, content.length - index - 2);
+            return update(edit, newContent);
+        }
+
+        @Override
+        int entries() {
+            return content.length / 2;
+        }
+
+        @Override
+        int nodes() {
+            return 0;
+        }
+
+        @Override
+        Object key(int index) {
+            return content[2 * index];
+        }
+
+        @Override
+        Object value(int index) {
+            return content[2 * index + 1];
+        }
+
+        @Override
+        Node node(int index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        private int indexOf(Object key) {
+            for (var i = 0; i < content.length; i += 2) {
+                if (key.equals(content[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private CollisionNode update(Object edit, Object[] content) {
+            if (!isOwnedBy(edit)) {
+                return new CollisionNode(edit, hash, content);
+            }
+            this.content = content;
+            return this;
+        }
+    }
+
+    /**
+     * Depth-first iterator of the entries: the entries of a node, then the entries of its sub-nodes
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+        // 7 levels of 5 bits, plus the collision level
+        private final Node[] nodes = new Node[8];
+        private final int[] entryIndexes = new int[8];
+        private final int[] nodeIndexes = new int[8];
+        private int depth;
+
+        EntryIterator(Node root) {
+            nodes[0] = root;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth >= 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (depth < 0) {
+                throw new NoSuchElementException();
+            }
+            var node = nodes[depth];
+            var index = entryIndexes[depth]++;
+            var entry = new SimpleImmutableEntry<>((K) node.key(index), (V) node.value(index));
+            advance();
+            return entry;
+        }
+
+        /**
+         * Moves to the next node with an entry left, or to the end ({@code depth == -1})
+         */
+        private void advance() {
+            while (depth >= 0) {
+                var node = nodes[depth];
+                if (entryIndexes[depth] < node.entries()) {
+                    return;
+                }
+                if (nodeIndexes[depth] < node.nodes()) {
+                    var child = node.node(nodeIndexes[depth]++);
+                    depth++;
+                    nodes[depth] = child;
+                    entryIndexes[depth] = 0;
+                    nodeIndexes[depth] = 0;
+                } else {
+                    nodes[depth] = null;
+                    depth--;
+                }
+            }
+        }
+    }
+}
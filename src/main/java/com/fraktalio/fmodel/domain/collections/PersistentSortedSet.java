@@ -0,0 +1,408 @@
+package com.fraktalio.fmodel.domain.collections;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * {@link PersistentSortedSet} is an immutable sorted set (an AVL tree), for the states of the deciders and the views.
+ * <br>
+ * {@link #with} and {@link #without} return a new set in O(log n), sharing all but the changed path with this set,
+ * so an `evolve` that adds an element to a set of the state does not copy the whole set.
+ * A batch of changes is applied in place with a {@link Builder}, see {@link #toBuilder()}.
+ * <br>
+ * It is a read-only {@link java.util.Set}, iterated in the order of the comparator: the mutators of {@link java.util.Set} throw {@link UnsupportedOperationException}.
+ * The elements are not nullable.
+ *
+ * @param <E> Element
+ */
+public final class PersistentSortedSet<E> extends AbstractSet<E> {
+    private static final PersistentSortedSet<?> EMPTY = new PersistentSortedSet<>(null, null, 0);
+
+    private final Comparator<? super E> comparator;
+    private final Node<E> root;
+    private final int size;
+
+    private PersistentSortedSet(Comparator<? super E> comparator, Node<E> root, int size) {
+        this.comparator = comparator;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return the empty set, in the natural order of the elements
+     */
+    @SuppressWarnings("unchecked")
+    public static <E extends Comparable<? super E>> PersistentSortedSet<E> empty() {
+        return (PersistentSortedSet<E>) EMPTY;
+    }
+
+    /**
+     * @param comparator the order of the elements
+     * @return the empty set, in the order of the comparator
+     */
+    public static <E> PersistentSortedSet<E> empty(Comparator<? super E> comparator) {
+        return new PersistentSortedSet<>(Objects.requireNonNull(comparator), null, 0);
+    }
+
+    /**
+     * @param elements the elements
+     * @return the set of the elements, in the natural order
+     */
+    public static <E extends Comparable<? super E>> PersistentSortedSet<E> of(Collection<? extends E> elements) {
+        return PersistentSortedSet.<E>empty().toBuilder().addAll(elements).build();
+    }
+
+    /**
+     * @return the comparator of the elements, {@code null} for the natural order
+     */
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+        var node = root;
+        while (node != null) {
+            var c = compare((E) o, node.element);
+            if (c == 0) {
+                return true;
+            }
+            node = c < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * @return the lowest element
+     * @throws NoSuchElementException if the set is empty
+     */
+    public E first() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        var node = root;
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.element;
+    }
+
+    /**
+     * @return the highest element
+     * @throws NoSuchElementException if the set is empty
+     */
+    public E last() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        var node = root;
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.element;
+    }
+
+    /**
+     * @param element the element
+     * @return the set with the element
+     */
+    public PersistentSortedSet<E> with(E element) {
+        var change = new Change();
+        var newRoot = insert(null, root, Objects.requireNonNull(element), change);
+        return change.changed ? new PersistentSortedSet<>(comparator, newRoot, size + 1) : this;
+    }
+
+    /**
+     * @param element the element
+     * @return the set without the element
+     */
+    @SuppressWarnings("unchecked")
+    public PersistentSortedSet<E> without(Object element) {
+        if (element == null) {
+            return this;
+        }
+        var change = new Change();
+        var newRoot = delete(null, root, (E) element, change);
+        return change.changed ? new PersistentSortedSet<>(comparator, newRoot, size - 1) : this;
+    }
+
+    /**
+     * A builder, starting with the elements of this set. This set is not changed by the builder.
+     *
+     * @return new builder
+     */
+    public Builder<E> toBuilder() {
+        return new Builder<>(this);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private final ArrayDeque<Node<E>> path = new ArrayDeque<>();
+
+            {
+                pushLeft(root);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public E next() {
+                var node = path.poll();
+                if (node == null) {
+                    throw new NoSuchElementException();
+                }
+                pushLeft(node.right);
+                return node.element;
+            }
+
+            private void pushLeft(Node<E> node) {
+                for (; node != null; node = node.left) {
+                    path.push(node);
+                }
+            }
+        };
+    }
+
+    /**
+     * Transient version of the {@link PersistentSortedSet}, for the batches of changes: the nodes created by the builder are changed in place.
+     * It is not thread safe, and it is not usable after {@link #build()}.
+     *
+     * @param <E> Element
+     */
+    public static final class Builder<E> {
+        private final PersistentSortedSet<E> origin;
+        private Object edit = new Object();
+        private Node<E> root;
+        private int size;
+
+        private Builder(PersistentSortedSet<E> origin) {
+            this.origin = origin;
+            this.root = origin.root;
+            this.size = origin.size;
+        }
+
+        /**
+         * @param element the element
+         * @return this builder
+         */
+        public Builder<E> add(E element) {
+            var change = new Change();
+            root = origin.insert(editToken(), root, Objects.requireNonNull(element), change);
+            if (change.changed) {
+                size++;
+            }
+            return this;
+        }
+
+        /**
+         * @param elements the elements
+         * @return this builder
+         */
+        public Builder<E> addAll(Iterable<? extends E> elements) {
+            for (var element : elements) {
+                add(element);
+            }
+            return this;
+        }
+
+        /**
+         * @param element the element
+         * @return this builder
+         */
+        @SuppressWarnings("unchecked")
+        public Builder<E> remove(Object element) {
+            if (element != null) {
+                var change = new Change();
+                root = origin.delete(editToken(), root, (E) element, change);
+                if (change.changed) {
+                    size--;
+                }
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the set of the elements of this builder
+         */
+        public PersistentSortedSet<E> build() {
+            editToken();
+            edit = null;
+            return new PersistentSortedSet<>(origin.comparator, root, size);
+        }
+
+        private Object editToken() {
+            if (edit == null) {
+                throw new IllegalStateException("The builder is already built");
+            }
+            return edit;
+        }
+    }
+
+    private static final class Change {
+        private boolean changed;
+    }
+
+    /**
+     * A node of the tree. The nodes owned by an {@code edit} token (of a builder) are changed in place, the other ones are copied.
+     */
+    private static final class Node<E> {
+        private final Object edit;
+        private E element;
+        private Node<E> left;
+        private Node<E> right;
+        private int height;
+
+        Node(Object edit, E element, Node<E> left, Node<E> right) {
+            this.edit = edit;
+            this.element = element;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+        }
+
+        Node<E> editable(Object edit) {
+            return edit != null && this.edit == edit ? this : new Node<>(edit, element, left, right);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E e1, E e2) {
+        return comparator == null ? ((Comparable<? super E>) e1).compareTo(e2) : comparator.compare(e1, e2);
+    }
+
+    private Node<E> insert(Object edit, Node<E> node, E element, Change change) {
+        if (node == null) {
+            change.changed = true;
+            return new Node<>(edit, element, null, null);
+        }
+        var c = compare(element, node.element);
+        if (c == 0) {
+            return node;
+        }
+        if (c < 0) {
+            var left = insert(edit, node.left, element, change);
+            if (!change.changed) {
+                return node;
+            }
+            var newNode = node.editable(edit);
+            newNode.left = left;
+            return balance(edit, newNode);
+        }
+        var right = insert(edit, node.right, element, change);
+        if (!change.changed) {
+            return node;
+        }
+        var newNode = node.editable(edit);
+        newNode.right = right;
+        return balance(edit, newNode);
+    }
+
+    private Node<E> delete(Object edit, Node<E> node, E element, Change change) {
+        if (node == null) {
+            return null;
+        }
+        var c = compare(element, node.element);
+        if (c < 0) {
+            var left = delete(edit, node.left, element, change);
+            if (!change.changed) {
+                return node;
+            }
+            var newNode = node.editable(edit);
+            newNode.left = left;
+            return balance(edit, newNode);
+        }
+        if (c > 0) {
+            var right = delete(edit, node.right, element, change);
+            if (!change.changed) {
+                return node;
+            }
+            var newNode = node.editable(edit);
+            newNode.right = right;
+            return balance(edit, newNode);
+        }
+        change.changed = true;
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        var successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        var newNode = node.editable(edit);
+        newNode.element = successor.element;
+        newNode.right = delete(edit, node.right, successor.element, new Change());
+        return balance(edit, newNode);
+    }
+
+    /**
+     * Restores the AVL invariant of an (editable) node, whose sub-trees differ in height by 2 at most
+     */
+    private static <E> Node<E> balance(Object edit, Node<E> node) {
+        var difference = height(node.left) - height(node.right);
+        if (difference > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(edit, node.left.editable(edit));
+            }
+            return rotateRight(edit, node);
+        }
+        if (difference < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(edit, node.right.editable(edit));
+            }
+            return rotateLeft(edit, node);
+        }
+        updateHeight(node);
+        return node;
+    }
+
+    private static <E> Node<E> rotateRight(Object edit, Node<E> node) {
+        var left = node.left.editable(edit);
+        node.left = left.right;
+        left.right = node;
+        updateHeight(node);
+        updateHeight(left);
+        return left;
+    }
+
+    private static <E> Node<E> rotateLeft(Object edit, Node<E> node) {
+        var right = node.right.editable(edit);
+        node.right = right.left;
+        right.left = node;
+        updateHeight(node);
+        updateHeight(right);
+        return right;
+    }
+
+    private static void updateHeight(Node<?> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+}
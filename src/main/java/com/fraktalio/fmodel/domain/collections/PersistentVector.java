@@ -0,0 +1,351 @@
+package com.fraktalio.fmodel.domain.collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * {@link PersistentVector} is an immutable list (a bit-partitioned trie of 32-wide nodes, with the last elements kept in a tail), for the states of the deciders and the views.
+ * <br>
+ * {@link #append}, {@link #with} and {@link #dropLast} return a new vector in O(log32 n) (the appends are mostly O(1), as they change the tail only),
+ * sharing all but the changed path with this vector, so an `evolve` that adds a line to a list of the state does not copy the whole list.
+ * A batch of changes is applied in place with a {@link Builder}, see {@link #toBuilder()}.
+ * <br>
+ * It is a read-only {@link java.util.List}: the mutators of {@link java.util.List} throw {@link UnsupportedOperationException}.
+ *
+ * @param <E> Element
+ */
+public final class PersistentVector<E> extends AbstractList<E> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Node EMPTY_NODE = new Node(null, new Object[WIDTH]);
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, EMPTY_NODE, new Object[0]);
+
+    private final int size;
+    private final int shift;
+    private final Node root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Node root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * @return the empty vector
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * @param elements the elements
+     * @return the vector of the elements
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> of(Collection<? extends E> elements) {
+        if (elements instanceof PersistentVector<?> persistent) {
+            return (PersistentVector<E>) persistent;
+        }
+        return PersistentVector.<E>empty().toBuilder().addAll(elements).build();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        return (E) arrayFor(index, size, shift, root, tail)[index & MASK];
+    }
+
+    /**
+     * @param element the element
+     * @return the vector with the element appended
+     */
+    public PersistentVector<E> append(E element) {
+        if (size - tailOffset(size) < WIDTH) {
+            var newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = element;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+        var tailNode = new Node(null, tail);
+        if ((size >>> BITS) > (1 << shift)) {
+            // the root is full
+            var newRoot = new Node(null, new Object[WIDTH]);
+            newRoot.array[0] = root;
+            newRoot.array[1] = newPath(null, shift, tailNode);
+            return new PersistentVector<>(size + 1, shift + BITS, newRoot, new Object[]{element});
+        }
+        return new PersistentVector<>(size + 1, shift, pushTail(null, size, shift, root, tailNode), new Object[]{element});
+    }
+
+    /**
+     * @param index   the index, from 0 to {@link #size()} (appending)
+     * @param element the new element at the index
+     * @return the vector with the element at the index
+     */
+    public PersistentVector<E> with(int index, E element) {
+        if (index == size) {
+            return append(element);
+        }
+        Objects.checkIndex(index, size);
+        if (index >= tailOffset(size)) {
+            var newTail = tail.clone();
+            newTail[index & MASK] = element;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, assoc(null, shift, root, index, element), tail);
+    }
+
+    /**
+     * @return the vector without the last element
+     * @throws IllegalStateException if the vector is empty
+     */
+    public PersistentVector<E> dropLast() {
+        if (size == 0) {
+            throw new IllegalStateException("The vector is empty");
+        }
+        if (size == 1) {
+            return empty();
+        }
+        if (size - tailOffset(size) > 1) {
+            return new PersistentVector<>(size - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+        }
+        var newTail = arrayFor(size - 2, size, shift, root, tail);
+        var newRoot = popTail(null, size, shift, root);
+        var newShift = shift;
+        if (newRoot == null) {
+            newRoot = EMPTY_NODE;
+        }
+        if (shift > BITS && newRoot.array[1] == null) {
+            newRoot = (Node) newRoot.array[0];
+            newShift -= BITS;
+        }
+        return new PersistentVector<>(size - 1, newShift, newRoot, newTail);
+    }
+
+    /**
+     * A builder, starting with the elements of this vector. This vector is not changed by the builder.
+     *
+     * @return new builder
+     */
+    public Builder<E> toBuilder() {
+        return new Builder<>(this);
+    }
+
+    /**
+     * Transient version of the {@link PersistentVector}, for the batches of changes: the nodes created by the builder are changed in place.
+     * It is not thread safe, and it is not usable after {@link #build()}.
+     *
+     * @param <E> Element
+     */
+    public static final class Builder<E> {
+        private Object edit = new Object();
+        private int size;
+        private int shift;
+        private Node root;
+        private Object[] tail;
+
+        private Builder(PersistentVector<E> vector) {
+            this.size = vector.size;
+            this.shift = vector.shift;
+            this.root = new Node(edit, vector.root.array.clone());
+            this.tail = Arrays.copyOf(vector.tail, WIDTH);
+        }
+
+        /**
+         * @param element the element to append
+         * @return this builder
+         */
+        public Builder<E> add(E element) {
+            var edit = editToken();
+            if (size - tailOffset(size) < WIDTH) {
+                tail[size & MASK] = element;
+                size++;
+                return this;
+            }
+            var tailNode = new Node(edit, tail);
+            tail = new Object[WIDTH];
+            tail[0] = element;
+            if ((size >>> BITS) > (1 << shift)) {
+                var newRoot = new Node(edit, new Object[WIDTH]);
+                newRoot.array[0] = root;
+                newRoot.array[1] = newPath(edit, shift, tailNode);
+                root = newRoot;
+                shift += BITS;
+            } else {
+                root = pushTail(edit, size, shift, root, tailNode);
+            }
+            size++;
+            return this;
+        }
+
+        /**
+         * @param elements the elements to append
+         * @return this builder
+         */
+        public Builder<E> addAll(Iterable<? extends E> elements) {
+            for (var element : elements) {
+                add(element);
+            }
+            return this;
+        }
+
+        /**
+         * @param index   the index, from 0 to {@link #size()} (appending)
+         * @param element the new element at the index
+         * @return this builder
+         */
+        public Builder<E> set(int index, E element) {
+            var edit = editToken();
+            if (index == size) {
+                return add(element);
+            }
+            Objects.checkIndex(index, size);
+            if (index >= tailOffset(size)) {
+                tail[index & MASK] = element;
+            } else {
+                root = assoc(edit, shift, root, index, element);
+            }
+            return this;
+        }
+
+        /**
+         * @param index the index
+         * @return the element at the index
+         */
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            editToken();
+            Objects.checkIndex(index, size);
+            return (E) arrayFor(index, size, shift, root, tail)[index & MASK];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the vector of the elements of this builder
+         */
+        public PersistentVector<E> build() {
+            editToken();
+            edit = null;
+            if (size == 0) {
+                return empty();
+            }
+            return new PersistentVector<>(size, shift, root, Arrays.copyOf(tail, size - tailOffset(size)));
+        }
+
+        private Object editToken() {
+            if (edit == null) {
+                throw new IllegalStateException("The builder is already built");
+            }
+            return edit;
+        }
+    }
+
+    /**
+     * A node of the trie: the sub-nodes, or the elements at the bottom level.
+     * The nodes owned by an {@code edit} token (of a builder) are changed in place, the other ones are copied.
+     */
+    private static final class Node {
+        private final Object edit;
+        private final Object[] array;
+
+        Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+
+        Node editable(Object edit) {
+            return edit != null && this.edit == edit ? this : new Node(edit, array.clone());
+        }
+    }
+
+    /**
+     * @return the index of the first element of the tail
+     */
+    private static int tailOffset(int size) {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private static Object[] arrayFor(int index, int size, int shift, Node root, Object[] tail) {
+        if (index >= tailOffset(size)) {
+            return tail;
+        }
+        var node = root;
+        for (var level = shift; level > 0; level -= BITS) {
+            node = (Node) node.array[(index >>> level) & MASK];
+        }
+        return node.array;
+    }
+
+    /**
+     * @param size the size before the tail is pushed
+     */
+    private static Node pushTail(Object edit, int size, int level, Node parent, Node tailNode) {
+        var node = parent.editable(edit);
+        var index = ((size - 1) >>> level) & MASK;
+        if (level == BITS) {
+            node.array[index] = tailNode;
+        } else {
+            var child = (Node) parent.array[index];
+            node.array[index] = child != null ? pushTail(edit, size, level - BITS, child, tailNode) : newPath(edit, level - BITS, tailNode);
+        }
+        return node;
+    }
+
+    private static Node newPath(Object edit, int level, Node node) {
+        if (level == 0) {
+            return node;
+        }
+        var path = new Node(edit, new Object[WIDTH]);
+        path.array[0] = newPath(edit, level - BITS, node);
+        return path;
+    }
+
+    private static Node assoc(Object edit, int level, Node parent, int index, Object element) {
+        var node = parent.editable(edit);
+        if (level == 0) {
+            node.array[index & MASK] = element;
+        } else {
+            var subIndex = (index >>> level) & MASK;
+            node.array[subIndex] = assoc(edit, level - BITS, (Node) parent.array[subIndex], index, element);
+        }
+        return node;
+    }
+
+    /**
+     * @param size the size before the last element is dropped
+     * @return the node without the last leaf, or {@code null} if it is empty
+     */
+    private static Node popTail(Object edit, int size, int level, Node parent) {
+        var index = ((size - 2) >>> level) & MASK;
+        if (level > BITS) {
+            var newChild = popTail(edit, size, level - BITS, (Node) parent.array[index]);
+            if (newChild == null && index == 0) {
+                return null;
+            }
+            var node = parent.editable(edit);
+            node.array[index] = newChild;
+            return node;
+        }
+        if (index == 0) {
+            return null;
+        }
+        var node = parent.editable(edit);
+        node.array[index] = null;
+        return node;
+    }
+}
@@ -0,0 +1,190 @@
+package com.fraktalio.fmodel.domain.collections;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * {@link Rope} is an immutable list made of other lists, without copying them: a concatenation of two lists, or a mapped view of a list.
+ * <br>
+ * The decide and react pipeline (the combined deciders and sagas, the orchestrating aggregates) concatenates and maps the lists of the events and of the actions on every call.
+ * With the ropes, {@link #concat} is O(1), and {@link #map} maps the elements once, on the first read, so the events are copied once only, when they are saved.
+ * <br>
+ * The concatenated lists must not be changed afterwards (the lists of the deciders and the sagas are not).
+ * A rope deeper than {@link #MAX_DEPTH} is flattened on concatenation, which bounds {@link #get(int)} to {@code MAX_DEPTH} steps.
+ *
+ * @param <E> Element
+ */
+public abstract sealed class Rope<E> extends AbstractList<E> permits Rope.Concat, Rope.Mapped {
+    static final int MAX_DEPTH = 32;
+
+    private Rope() {
+    }
+
+    /**
+     * @param left  the first list
+     * @param right the second list
+     * @return the elements of the first list, followed by the elements of the second list
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> List<E> concat(List<? extends E> left, List<? extends E> right) {
+        if (right.isEmpty()) {
+            return (List<E>) left;
+        }
+        if (left.isEmpty()) {
+            return (List<E>) right;
+        }
+        var depth = 1 + Math.max(depth(left), depth(right));
+        if (depth > MAX_DEPTH) {
+            return new Concat<>(flatten(left), flatten(right), 1);
+        }
+        return new Concat<>(left, right, depth);
+    }
+
+    /**
+     * @param source the list
+     * @param f      the mapping of the elements
+     * @return the elements of the list, mapped by {@code f} (the list itself, for the {@link Function#identity()})
+     */
+    @SuppressWarnings("unchecked")
+    public static <E, R> List<R> map(List<? extends E> source, Function<? super E, ? extends R> f) {
+        if (f == Function.identity()) {
+            return (List<R>) source;
+        }
+        return source.isEmpty() ? List.of() : new Mapped<>(source, f);
+    }
+
+    private static int depth(List<?> list) {
+        return list instanceof Concat<?> concat ? concat.depth : 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> List<? extends E> flatten(List<? extends E> list) {
+        return list instanceof Concat<?> ? (List<E>) Collections.unmodifiableList(Arrays.asList(list.toArray())) : list;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new RopeIterator<>(this);
+    }
+
+    static final class Concat<E> extends Rope<E> {
+        private final List<? extends E> left;
+        private final List<? extends E> right;
+        private final int size;
+        private final int depth;
+
+        private Concat(List<? extends E> left, List<? extends E> right, int depth) {
+            this.left = left;
+            this.right = right;
+            this.size = left.size() + right.size();
+            this.depth = depth;
+        }
+
+        @Override
+        public E get(int index) {
+            Objects.checkIndex(index, size);
+            List<? extends E> list = this;
+            while (list instanceof Concat<? extends E> concat) {
+                var leftSize = concat.left.size();
+                if (index < leftSize) {
+                    list = concat.left;
+                } else {
+                    index -= leftSize;
+                    list = concat.right;
+                }
+            }
+            return list.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    static final class Mapped<E, R> extends Rope<R> {
+        private final List<? extends E> source;
+        private final Function<? super E, ? extends R> f;
+        private volatile List<R> mapped;
+
+        private Mapped(List<? extends E> source, Function<? super E, ? extends R> f) {
+            this.source = source;
+            this.f = f;
+        }
+
+        @Override
+        public R get(int index) {
+            return mapped().get(index);
+        }
+
+        @Override
+        public int size() {
+            return source.size();
+        }
+
+        /**
+         * The mapped elements, mapped on the first read. A concurrent first read maps them twice, as {@code f} is a pure function.
+         */
+        private List<R> mapped() {
+            var result = mapped;
+            if (result == null) {
+                var elements = new Object[source.size()];
+                var i = 0;
+                for (var element : source) {
+                    elements[i++] = f.apply(element);
+                }
+                @SuppressWarnings("unchecked")
+                var list = (List<R>) Collections.unmodifiableList(Arrays.asList(elements));
+                result = list;
+                mapped = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Iterates the leaves of the rope from left to right, without recursion
+     */
+    private static final class RopeIterator<E> implements Iterator<E> {
+        private final ArrayDeque<List<? extends E>> pending = new ArrayDeque<>();
+        private Iterator<? extends E> current = Collections.emptyIterator();
+
+        RopeIterator(Rope<E> rope) {
+            pending.push(rope);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                var next = pending.poll();
+                if (next == null) {
+                    return false;
+                }
+                if (next instanceof Concat<? extends E> concat) {
+                    pending.push(concat.right);
+                    pending.push(concat.left);
+                } else if (next instanceof Mapped<?, ? extends E> mapped) {
+                    current = mapped.mapped().iterator();
+                } else {
+                    current = next.iterator();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
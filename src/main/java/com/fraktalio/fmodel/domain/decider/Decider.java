@@ -1,8 +1,10 @@
 package com.fraktalio.fmodel.domain.decider;
 
+import com.fraktalio.fmodel.domain.EventTypes;
 import com.fraktalio.fmodel.domain.Pair;
 
 import java.util.List;
+import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -16,16 +18,33 @@ import java.util.function.Supplier;
  * @param decide       A function/lambda that takes command of type C and input state of type S as parameters, and returns the list of output events {@code Stream<E>}
  * @param evolve       A function/lambda that takes input state of type S and input event of type E as parameters, and returns the output/new state S
  * @param initialState A starting point / An initial state of type S
+ * @param eventTypes   The types of the events that this decider consumes in `evolve`, an empty set meaning all the events
  * @param <C>          Command
  * @param <S>          State
  * @param <E>          Event
  */
 public record Decider<C, S, E>(BiFunction<C, S, List<E>> decide,
                                BiFunction<S, E, S> evolve,
-                               Supplier<S> initialState
+                               Supplier<S> initialState,
+                               Set<Class<? extends E>> eventTypes
 
 ) implements IDecider<C, S, E> {
 
+    public Decider {
+        eventTypes = Set.copyOf(eventTypes);
+    }
+
+    /**
+     * Decider consuming all the events
+     *
+     * @param decide       A function/lambda that takes command of type C and input state of type S as parameters, and returns the list of output events {@code Stream<E>}
+     * @param evolve       A function/lambda that takes input state of type S and input event of type E as parameters, and returns the output/new state S
+     * @param initialState A starting point / An initial state of type S
+     */
+    public Decider(BiFunction<C, S, List<E>> decide, BiFunction<S, E, S> evolve, Supplier<S> initialState) {
+        this(decide, evolve, initialState, Set.of());
+    }
+
     /**
      * Contra map on Command parameter
      *
@@ -34,11 +53,12 @@ public record Decider<C, S, E>(BiFunction<C, S, List<E>> decide,
      * @return new Decider of type {@code Decider<Cn, S, E>}
      */
     public <Cn> Decider<Cn, S, E> contraMapCommand(Function<? super Cn, ? extends C> f) {
-        return Decider.of(new _Decider<>(this.decide, this.evolve, this.initialState).contraMapCommand(f));
+        return Decider.of(new _Decider<>(this.decide, this.evolve, this.initialState).contraMapCommand(f), this.eventTypes);
     }
 
     /**
-     * Dimap on E/Event parameter
+     * Dimap on E/Event parameter.
+     * The new decider consumes all the events, as the types of the mapped events are not known.
      *
      * @param fl   Contra Map over {@code E} type parameter in contravariant/input/left position
      * @param fr   Map over {@code E} type parameter in covariant/output/right position
@@ -58,11 +78,24 @@ public record Decider<C, S, E>(BiFunction<C, S, List<E>> decide,
      * @return new Decider of type {@code Decider<C, Sn, E>}
      */
     public <Sn> Decider<C, Sn, E> dimapState(Function<? super Sn, ? extends S> fl, Function<? super S, ? extends Sn> fr) {
-        return Decider.of(new _Decider<>(this.decide, this.evolve, this.initialState).dimapState(fl, fr));
+        return Decider.of(new _Decider<>(this.decide, this.evolve, this.initialState).dimapState(fl, fr), this.eventTypes);
     }
 
     /**
-     * Combine Deciders into one Decider
+     * Fuses the chains of the mappings ({@link #contraMapCommand}, {@link #dimapEvent}, {@link #dimapState} and {@link #combine}) into a single mapping per function,
+     * and drops the identity mappings (the ones of {@link Function#identity()}).
+     * A decider mapped many times otherwise runs a deep chain of the wrapping lambdas on every {@code decide} and {@code evolve}.
+     * Call it once, on the fully composed decider.
+     *
+     * @return new Decider, behaving the same as this one
+     */
+    public Decider<C, S, E> optimize() {
+        return Decider.of(new _Decider<>(this.decide, this.evolve, this.initialState).optimize(), this.eventTypes);
+    }
+
+    /**
+     * Combine Deciders into one Decider.
+     * The combined decider consumes the union of the event types of both deciders (the {@code clazzEX} / {@code clazzEY} types if a decider does not declare them).
      *
      * @param x         decider 1/X
      * @param clazzCX   the type of the Command of the first decider
@@ -86,11 +119,18 @@ public record Decider<C, S, E>(BiFunction<C, S, List<E>> decide,
             Decider<? super C2, S2, E2> y,
             Class<C2> clazzCY, Class<E2> clazzEY
     ) {
-        return Decider.of(_Decider.combine(new _Decider<>(x.decide, x.evolve, x.initialState), clazzCX, clazzEX, new _Decider<>(y.decide, y.evolve, y.initialState), clazzCY, clazzEY));
+        return Decider.of(
+                _Decider.combine(new _Decider<>(x.decide, x.evolve, x.initialState), clazzCX, clazzEX, new _Decider<>(y.decide, y.evolve, y.initialState), clazzCY, clazzEY),
+                EventTypes.combine(x.eventTypes, clazzEX, y.eventTypes, clazzEY)
+        );
     }
 
     static <C, S, E> Decider<C, S, E> of(_Decider<C, S, S, E, E> decider) {
         return new Decider<>(decider.decide(), decider.evolve(), decider.initialState());
     }
+
+    static <C, S, E> Decider<C, S, E> of(_Decider<C, S, S, E, E> decider, Set<Class<? extends E>> eventTypes) {
+        return new Decider<>(decider.decide(), decider.evolve(), decider.initialState(), eventTypes);
+    }
 }
 
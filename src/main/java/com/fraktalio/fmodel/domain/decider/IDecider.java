@@ -1,6 +1,7 @@
 package com.fraktalio.fmodel.domain.decider;
 
 import java.util.List;
+import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
 
@@ -28,4 +29,14 @@ public interface IDecider<C, S, E> {
      * A starting point / An initial state of type S
      */
     Supplier<S> initialState();
+
+    /**
+     * The types of the events that this decider consumes in `evolve`. An empty set means all the events.
+     * <br><br>
+     * Declaring the types is a promise that `evolve` ignores (returns the state unchanged) any other event,
+     * so the repositories can skip fetching (and decoding) them.
+     */
+    default Set<Class<? extends E>> eventTypes() {
+        return Set.of();
+    }
 }
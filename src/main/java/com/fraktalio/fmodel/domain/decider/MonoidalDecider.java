@@ -0,0 +1,103 @@
+package com.fraktalio.fmodel.domain.decider;
+
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * {@link MonoidalDecider} is a {@link Decider} whose state forms a monoid, with the `identity` state and the associative `merge` function.
+ * <br><br>
+ * Long histories of a monoidal decider are folded in parallel, see {@link IMonoidalDecider#fold}.
+ * It is an opt-in: the laws of {@link IMonoidalDecider} are not (and cannot be) checked.
+ *
+ * @param decider  the decider
+ * @param identity The identity state of the `merge` function
+ * @param merge    An associative function/lambda that merges two (partial) states into one
+ * @param <C>      Command
+ * @param <S>      State
+ * @param <E>      Event
+ */
+public record MonoidalDecider<C, S, E>(Decider<C, S, E> decider,
+                                       Supplier<S> identity,
+                                       BinaryOperator<S> merge
+
+) implements IMonoidalDecider<C, S, E> {
+
+    @Override
+    public BiFunction<C, S, List<E>> decide() {
+        return decider.decide();
+    }
+
+    @Override
+    public BiFunction<S, E, S> evolve() {
+        return decider.evolve();
+    }
+
+    @Override
+    public Supplier<S> initialState() {
+        return decider.initialState();
+    }
+
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return decider.eventTypes();
+    }
+
+    /**
+     * Contra map on Command parameter
+     *
+     * @param f    function that maps command of type {@code Cn} to command of type {@code C}
+     * @param <Cn> New Command type
+     * @return new MonoidalDecider of type {@code MonoidalDecider<Cn, S, E>}
+     */
+    public <Cn> MonoidalDecider<Cn, S, E> contraMapCommand(Function<? super Cn, ? extends C> f) {
+        return new MonoidalDecider<>(decider.contraMapCommand(f), identity, merge);
+    }
+
+    /**
+     * Fuses the chains of the mappings of the decider, see {@link Decider#optimize()}
+     *
+     * @return new MonoidalDecider, behaving the same as this one
+     */
+    public MonoidalDecider<C, S, E> optimize() {
+        return new MonoidalDecider<>(decider.optimize(), identity, merge);
+    }
+
+    /**
+     * Combine MonoidalDeciders into one MonoidalDecider.
+     * The states are merged pairwise, so the combined decider is monoidal too.
+     *
+     * @param x         decider 1/X
+     * @param clazzCX   the type of the Command of the first decider
+     * @param clazzEX   the type of the Event of the first decider
+     * @param y         decider 2/Y
+     * @param clazzCY   the type of the Command of the second decider
+     * @param clazzEY   the type of the Event of the second decider
+     * @param <C_SUPER> a common super class of the clazzCX and clazzCY
+     * @param <E_SUPER> a common super class of the clazzEX and clazzEY
+     * @param <S1>      state of the first decider
+     * @param <S2>      state of the second decider
+     * @param <C1>      command of the first decider
+     * @param <C2>      command of the second decider
+     * @param <E1>      event of the first decider
+     * @param <E2>      event of the first decider
+     * @return new MonoidalDecider that is aggregating the behaviour of both
+     */
+    public static <C_SUPER, E_SUPER, S1, S2, C1 extends C_SUPER, C2 extends C_SUPER, E1 extends E_SUPER, E2 extends E_SUPER> MonoidalDecider<C_SUPER, Pair<S1, S2>, E_SUPER> combine(
+            MonoidalDecider<? super C1, S1, E1> x,
+            Class<C1> clazzCX, Class<E1> clazzEX,
+            MonoidalDecider<? super C2, S2, E2> y,
+            Class<C2> clazzCY, Class<E2> clazzEY
+    ) {
+        return new MonoidalDecider<>(
+                Decider.combine(x.decider(), clazzCX, clazzEX, y.decider(), clazzCY, clazzEY),
+                () -> new Pair<>(x.identity().get(), y.identity().get()),
+                (s1, s2) -> new Pair<>(x.merge().apply(s1.first(), s2.first()), y.merge().apply(s1.second(), s2.second()))
+        );
+    }
+}
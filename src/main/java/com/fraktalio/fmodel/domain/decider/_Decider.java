@@ -2,13 +2,13 @@ package com.fraktalio.fmodel.domain.decider;
 
 
 import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.collections.Rope;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static java.util.function.Function.identity;
 
@@ -20,7 +20,7 @@ record _Decider<C, Si, So, Ei, Eo>(
 
     <Cn> _Decider<Cn, Si, So, Ei, Eo> contraMapCommand(Function<? super Cn, ? extends C> f) {
         return new _Decider<>(
-                (cn, si) -> decide.apply(f.apply(cn), si),
+                unchecked(new MappedDecide(unchecked(decide), unchecked(f), null, null)),
                 evolve,
                 initialState
         );
@@ -28,28 +28,35 @@ record _Decider<C, Si, So, Ei, Eo>(
 
     <Ein, Eon> _Decider<C, Si, So, Ein, Eon> dimapEvent(Function<? super Ein, ? extends Ei> fl, Function<? super Eo, ? extends Eon> fr) {
         return new _Decider<>(
-                (c, si) -> decide.apply(c, si).stream().map(fr).collect(Collectors.toUnmodifiableList()),
-                (si, ein) -> evolve.apply(si, fl.apply(ein)),
+                unchecked(new MappedDecide(unchecked(decide), null, null, unchecked(fr))),
+                unchecked(new MappedEvolve(unchecked(evolve), null, unchecked(fl), null)),
                 initialState
         );
     }
 
     <Sin, Son> _Decider<C, Sin, Son, Ei, Eo> dimapState(Function<? super Sin, ? extends Si> fl, Function<? super So, ? extends Son> fr) {
         return new _Decider<>(
-                (c, sin) -> decide.apply(c, fl.apply(sin)),
-                (sin, ei) -> fr.apply(evolve.apply(fl.apply(sin), ei)),
-                () -> fr.apply(initialState.get())
+                unchecked(new MappedDecide(unchecked(decide), null, unchecked(fl), null)),
+                unchecked(new MappedEvolve(unchecked(evolve), unchecked(fl), null, unchecked(fr))),
+                unchecked(new MappedInitialState(unchecked(initialState), unchecked(fr)))
         );
     }
 
     <Son> _Decider<C, Si, Son, Ei, Eo> applyState(_Decider<? super C, ? super Si, ? extends Function<? super So, ? extends Son>, ? super Ei, ? extends Eo> decider2) {
         return new _Decider<>(
-                (c, si) -> Stream.concat(decide.apply(c, si).stream(), decider2.decide.apply(c, si).stream()).toList(),
-                (si, ei) -> decider2.evolve.apply(si, ei).apply(evolve.apply(si, ei)),
-                () -> decider2.initialState.get().apply(initialState.get())
+                unchecked(new ConcatDecide(unchecked(decide), unchecked(decider2.decide))),
+                unchecked(new ApplyEvolve(unchecked(evolve), unchecked(decider2.evolve))),
+                unchecked(new ApplyInitialState(unchecked(initialState), unchecked(decider2.initialState)))
         );
     }
 
+    /**
+     * The same decider, with every chain of the mappings fused into a single mapping per function, and the identity mappings dropped
+     */
+    _Decider<C, Si, So, Ei, Eo> optimize() {
+        return new _Decider<>(unchecked(fuseDecide(unchecked(decide))), unchecked(fuseEvolve(unchecked(evolve))), unchecked(fuseInitialState(unchecked(initialState))));
+    }
+
     <Son> _Decider<C, Si, Pair<So, Son>, Ei, Eo> productState(_Decider<? super C, ? super Si, ? extends Son, ? super Ei, ? extends Eo> decider2) {
         return this.applyState(decider2.dimapState(identity(), (b) -> ((a) -> new Pair<>(a, b))));
     }
@@ -64,11 +71,11 @@ record _Decider<C, Si, So, Ei, Eo>(
 
         var deciderX = x
                 .<C_SUPER>contraMapCommand((it) -> safeCast(it, clazzC1))
-                .<Pair<Si1, Si2>, So1>dimapState(Pair::first, identity()).<Ei_SUPER, Eo_SUPER>dimapEvent((it) -> safeCast(it, clazzE1), (it) -> it);
+                .<Pair<Si1, Si2>, So1>dimapState(Pair::first, identity()).<Ei_SUPER, Eo_SUPER>dimapEvent((it) -> safeCast(it, clazzE1), identity());
 
         var deciderY = y
                 .<C_SUPER>contraMapCommand((it) -> safeCast(it, clazzC2))
-                .<Pair<Si1, Si2>, So2>dimapState(Pair::second, identity()).<Ei_SUPER, Eo_SUPER>dimapEvent((it) -> safeCast(it, clazzE2), (it) -> it);
+                .<Pair<Si1, Si2>, So2>dimapState(Pair::second, identity()).<Ei_SUPER, Eo_SUPER>dimapEvent((it) -> safeCast(it, clazzE2), identity());
 
         return deciderX.productState(deciderY);
     }
@@ -77,5 +84,174 @@ record _Decider<C, Si, So, Ei, Eo>(
         return clazz != null && clazz.isInstance(o) ? clazz.cast(o) : null;
     }
 
+    // The functions of the mapped deciders are kept as data (instead of lambdas), so that `optimize` can fuse them.
+    // A `null` mapping stands for no mapping at all.
+
+    /**
+     * {@code (c, s) -> event(decide(command(c), state(s)))}
+     */
+    record MappedDecide(BiFunction<Object, Object, List<Object>> decide,
+                        Function<Object, Object> command,
+                        Function<Object, Object> state,
+                        Function<Object, Object> event) implements BiFunction<Object, Object, List<Object>> {
+        @Override
+        public List<Object> apply(Object c, Object s) {
+            var events = decide.apply(command == null ? c : command.apply(c), state == null ? s : state.apply(s));
+            return event == null ? events : Rope.map(events, event);
+        }
+    }
+
+    /**
+     * {@code (s, e) -> newState(evolve(state(s), event(e)))}
+     */
+    private record MappedEvolve(BiFunction<Object, Object, Object> evolve,
+                                Function<Object, Object> state,
+                                Function<Object, Object> event,
+                                Function<Object, Object> newState) implements BiFunction<Object, Object, Object> {
+        @Override
+        public Object apply(Object s, Object e) {
+            var evolved = evolve.apply(state == null ? s : state.apply(s), event == null ? e : event.apply(e));
+            return newState == null ? evolved : newState.apply(evolved);
+        }
+    }
+
+    /**
+     * {@code () -> state(initialState())}
+     */
+    private record MappedInitialState(Supplier<Object> initialState,
+                                      Function<Object, Object> state) implements Supplier<Object> {
+        @Override
+        public Object get() {
+            return state.apply(initialState.get());
+        }
+    }
+
+    private record ConcatDecide(BiFunction<Object, Object, List<Object>> first,
+                                BiFunction<Object, Object, List<Object>> second) implements BiFunction<Object, Object, List<Object>> {
+        @Override
+        public List<Object> apply(Object c, Object s) {
+            return Rope.concat(first.apply(c, s), second.apply(c, s));
+        }
+    }
+
+    private record ApplyEvolve(BiFunction<Object, Object, Object> first,
+                               BiFunction<Object, Object, Function<Object, Object>> second) implements BiFunction<Object, Object, Object> {
+        @Override
+        public Object apply(Object s, Object e) {
+            return second.apply(s, e).apply(first.apply(s, e));
+        }
+    }
+
+    private record ApplyInitialState(Supplier<Object> first,
+                                     Supplier<Function<Object, Object>> second) implements Supplier<Object> {
+        @Override
+        public Object get() {
+            return second.get().apply(first.get());
+        }
+    }
+
+    private static BiFunction<Object, Object, List<Object>> fuseDecide(BiFunction<Object, Object, List<Object>> decide) {
+        return switch (decide) {
+            case MappedDecide mapped -> {
+                var inner = fuseDecide(mapped.decide());
+                var command = withoutIdentity(mapped.command());
+                var state = withoutIdentity(mapped.state());
+                var event = withoutIdentity(mapped.event());
+                // the inner decide is fused already: at most one mapping over the original function
+                if (inner instanceof MappedDecide innerMapped) {
+                    command = andThen(command, innerMapped.command());
+                    state = andThen(state, innerMapped.state());
+                    event = andThen(innerMapped.event(), event);
+                    inner = innerMapped.decide();
+                }
+                yield command == null && state == null && event == null ? inner : new MappedDecide(inner, command, state, event);
+            }
+            case ConcatDecide concat -> new ConcatDecide(fuseDecide(concat.first()), fuseDecide(concat.second()));
+            default -> decide;
+        };
+    }
+
+    private static BiFunction<Object, Object, Object> fuseEvolve(BiFunction<Object, Object, Object> evolve) {
+        return switch (evolve) {
+            case MappedEvolve mapped -> {
+                var inner = fuseEvolve(mapped.evolve());
+                var state = withoutIdentity(mapped.state());
+                var event = withoutIdentity(mapped.event());
+                var newState = withoutIdentity(mapped.newState());
+                if (inner instanceof MappedEvolve innerMapped) {
+                    state = andThen(state, innerMapped.state());
+                    event = andThen(event, innerMapped.event());
+                    newState = andThen(innerMapped.newState(), newState);
+                    inner = innerMapped.evolve();
+                }
+                yield state == null && event == null && newState == null ? inner : new MappedEvolve(inner, state, event, newState);
+            }
+            case ApplyEvolve apply -> new ApplyEvolve(fuseEvolve(apply.first()), unchecked(fuseEvolve(unchecked(apply.second()))));
+            default -> evolve;
+        };
+    }
+
+    private static Supplier<Object> fuseInitialState(Supplier<Object> initialState) {
+        return switch (initialState) {
+            case MappedInitialState mapped -> {
+                var inner = fuseInitialState(mapped.initialState());
+                var state = withoutIdentity(mapped.state());
+                if (inner instanceof MappedInitialState innerMapped) {
+                    state = andThen(innerMapped.state(), state);
+                    inner = innerMapped.initialState();
+                }
+                yield state == null ? inner : new MappedInitialState(inner, state);
+            }
+            case ApplyInitialState apply -> new ApplyInitialState(fuseInitialState(apply.first()), unchecked(fuseInitialState(unchecked(apply.second()))));
+            default -> initialState;
+        };
+    }
+
+    /**
+     * {@code null} for the {@link Function#identity()}, which is a single (cached) instance
+     */
+    private static Function<Object, Object> withoutIdentity(Function<Object, Object> f) {
+        return f == identity() ? null : f;
+    }
+
+    /**
+     * {@code x -> steps[n](...steps[1](steps[0](x)))}, applied by a single loop: a fused chain of any length costs one call, not one nested call per mapping
+     */
+    record Chain(List<Function<Object, Object>> steps) implements Function<Object, Object> {
+        @Override
+        public Object apply(Object x) {
+            for (var i = 0; i < steps.size(); i++) {
+                x = steps.get(i).apply(x);
+            }
+            return x;
+        }
+    }
+
+    /**
+     * The flat {@link Chain} of the two mappings, either of them possibly {@code null} (no mapping) or a chain itself
+     */
+    private static Function<Object, Object> andThen(Function<Object, Object> first, Function<Object, Object> second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        var steps = new ArrayList<Function<Object, Object>>();
+        for (var f : List.of(first, second)) {
+            if (f instanceof Chain chain) {
+                steps.addAll(chain.steps());
+            } else {
+                steps.add(f);
+            }
+        }
+        return new Chain(List.copyOf(steps));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unchecked(Object o) {
+        return (T) o;
+    }
+
 }
 
@@ -1,8 +1,9 @@
 package com.fraktalio.fmodel.domain.saga;
 
+import com.fraktalio.fmodel.domain.collections.Rope;
+
 import java.util.List;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.function.Function.identity;
@@ -35,7 +36,7 @@ public record Saga<AR, A>(Function<AR, List<A>> react) implements ISaga<AR, A> {
      * @return new Saga of type {@code Saga<AR, An>}
      */
     public <An> Saga<AR, An> mapAction(Function<? super A, ? extends An> f) {
-        return new Saga<>((ar) -> react.apply(ar).stream().map(f).collect(Collectors.toUnmodifiableList()));
+        return new Saga<>((ar) -> Rope.map(react.apply(ar), f));
     }
 
     /**
@@ -66,7 +67,7 @@ public record Saga<AR, A>(Function<AR, List<A>> react) implements ISaga<AR, A> {
         var sagaY = y
                 .<AR_SUPER>contraMapActionResult((it) -> safeCast(it, clazzARY))
                 .<A_SUPER>mapAction(identity());
-        return new Saga<>(it -> Stream.concat(sagaX.react.apply(it).stream(), sagaY.react.apply(it).stream()).toList());
+        return new Saga<>(it -> Rope.concat(sagaX.react.apply(it), sagaY.react.apply(it)));
     }
 
     private static <T> T safeCast(Object o, Class<T> clazz) {
@@ -0,0 +1,87 @@
+package com.fraktalio.fmodel.domain.saga;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * {@link TimedAction} is an Action/A together with the moment it should be executed at.
+ * A {@link Saga} of type {@code Saga<AR, TimedAction<A>>} can react with immediate actions, with actions deferred until a deadline
+ * (timeouts, reminders), and with cancellations of the previously deferred actions.
+ * <br><br>
+ * Deferred actions are identified by a timer id, chosen by the saga (for example {@code "payment-timeout-" + orderId}),
+ * so that a later reaction can cancel them, or replace them with a new deadline.
+ * An immediate saga is lifted with {@code saga.mapAction(TimedAction::now)}.
+ *
+ * @param <A> Action / Command
+ */
+public sealed interface TimedAction<A> {
+
+    /**
+     * @param action the action to execute right away
+     * @param <A>    Action / Command
+     * @return new immediate action
+     */
+    static <A> TimedAction<A> now(A action) {
+        return new Now<>(action);
+    }
+
+    /**
+     * @param timerId  the id of the timer, to cancel or to replace it
+     * @param action   the action to execute at the deadline
+     * @param deadline the moment to execute the action at
+     * @param <A>      Action / Command
+     * @return new deferred action
+     */
+    static <A> TimedAction<A> at(String timerId, A action, Instant deadline) {
+        return new At<>(timerId, action, deadline);
+    }
+
+    /**
+     * @param timerId the id of the timer to cancel
+     * @param <A>     Action / Command
+     * @return new cancellation
+     */
+    static <A> TimedAction<A> cancel(String timerId) {
+        return new Cancel<>(timerId);
+    }
+
+    /**
+     * An action to execute right away
+     *
+     * @param action the action
+     * @param <A>    Action / Command
+     */
+    record Now<A>(A action) implements TimedAction<A> {
+        public Now {
+            Objects.requireNonNull(action);
+        }
+    }
+
+    /**
+     * An action deferred until the deadline
+     *
+     * @param timerId  the id of the timer
+     * @param action   the action
+     * @param deadline the moment to execute the action at
+     * @param <A>      Action / Command
+     */
+    record At<A>(String timerId, A action, Instant deadline) implements TimedAction<A> {
+        public At {
+            Objects.requireNonNull(timerId);
+            Objects.requireNonNull(action);
+            Objects.requireNonNull(deadline);
+        }
+    }
+
+    /**
+     * A cancellation of the deferred action, if it is not executed yet
+     *
+     * @param timerId the id of the timer
+     * @param <A>     Action / Command
+     */
+    record Cancel<A>(String timerId) implements TimedAction<A> {
+        public Cancel {
+            Objects.requireNonNull(timerId);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.fraktalio.fmodel.domain.view;
+
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * An Interface for the {@link MonoidalView}
+ * <br><br>
+ * A view whose state forms a monoid (counters, sets, maxima, ...): a history of events can be split into ranges,
+ * every range folded independently (starting from the `identity` state), and the partial states merged into the same result as a sequential fold.
+ * <br><br>
+ * The laws, for any state `s` and event `e`:
+ * <pre>
+ * merge(identity, s) == merge(s, identity) == s
+ * merge(merge(s1, s2), s3) == merge(s1, merge(s2, s3))
+ * evolveView(s, e) == merge(s, evolveView(identity, e))
+ * </pre>
+ *
+ * @param <S> State
+ * @param <E> Event
+ */
+public interface IMonoidalView<S, E> extends IView<S, E> {
+    /**
+     * Histories shorter than this are folded sequentially, as splitting them costs more than it saves
+     */
+    int PARALLEL_FOLD_THRESHOLD = 8192;
+
+    /**
+     * The identity state of the `merge` function
+     */
+    Supplier<S> identity();
+
+    /**
+     * An associative function/lambda that merges two (partial) states into one
+     */
+    BinaryOperator<S> merge();
+
+    /**
+     * Folds the events into the given state.
+     * Histories of at least {@link #PARALLEL_FOLD_THRESHOLD} events are split across the fork-join pool, and the partial states are merged.
+     *
+     * @param state  the state to start from, the initial state if {@code null}
+     * @param events events to fold
+     * @param count  the number of the events
+     * @return the new state
+     */
+    default S fold(S state, Stream<E> events, int count) {
+        var stream = count >= PARALLEL_FOLD_THRESHOLD ? events.parallel() : events.sequential();
+        return merge().apply(state != null ? state : initialViewState().get(), stream.reduce(identity().get(), evolveView(), merge()));
+    }
+}
@@ -1,5 +1,6 @@
 package com.fraktalio.fmodel.domain.view;
 
+import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
 
@@ -21,4 +22,14 @@ public interface IView<S, E> {
      * A starting point / An initial state of type S
      */
     Supplier<S> initialViewState();
+
+    /**
+     * The types of the events that this view consumes in `evolveView`. An empty set means all the events.
+     * <br><br>
+     * Declaring the types is a promise that `evolveView` ignores (returns the state unchanged) any other event,
+     * so the repositories can skip fetching (and decoding) them.
+     */
+    default Set<Class<? extends E>> eventTypes() {
+        return Set.of();
+    }
 }
@@ -0,0 +1,79 @@
+package com.fraktalio.fmodel.domain.view;
+
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * {@link MonoidalView} is a {@link View} whose state forms a monoid, with the `identity` state and the associative `merge` function.
+ * <br><br>
+ * Long histories of a monoidal view are folded in parallel, see {@link IMonoidalView#fold}.
+ * It is an opt-in: the laws of {@link IMonoidalView} are not (and cannot be) checked.
+ *
+ * @param view     the view
+ * @param identity The identity state of the `merge` function
+ * @param merge    An associative function/lambda that merges two (partial) states into one
+ * @param <S>      State
+ * @param <E>      Event
+ */
+public record MonoidalView<S, E>(View<S, E> view,
+                                 Supplier<S> identity,
+                                 BinaryOperator<S> merge
+
+) implements IMonoidalView<S, E> {
+
+    @Override
+    public BiFunction<S, E, S> evolveView() {
+        return view.evolveView();
+    }
+
+    @Override
+    public Supplier<S> initialViewState() {
+        return view.initialViewState();
+    }
+
+    @Override
+    public Set<Class<? extends E>> eventTypes() {
+        return view.eventTypes();
+    }
+
+    /**
+     * Fuses the chains of the mappings of the view, see {@link View#optimize()}
+     *
+     * @return new MonoidalView, behaving the same as this one
+     */
+    public MonoidalView<S, E> optimize() {
+        return new MonoidalView<>(view.optimize(), identity, merge);
+    }
+
+    /**
+     * Combine MonoidalViews into one MonoidalView.
+     * The states are merged pairwise, so the combined view is monoidal too.
+     *
+     * @param x         view 1/X
+     * @param clazzEX   the type of the Event of the first view
+     * @param y         view 2/Y
+     * @param clazzEY   the type of the Event of the second view
+     * @param <E_SUPER> a common super class of the clazzEX and clazzEY
+     * @param <S1>      state of the first view
+     * @param <S2>      state of the second view
+     * @param <E1>      event of the first view
+     * @param <E2>      event of the first view
+     * @return new MonoidalView that is aggregating the behaviour of both
+     */
+    public static <E_SUPER, S1, S2, E1 extends E_SUPER, E2 extends E_SUPER> MonoidalView<Pair<S1, S2>, E_SUPER> combine(
+            MonoidalView<S1, ? super E1> x,
+            Class<E1> clazzEX,
+            MonoidalView<S2, ? super E2> y,
+            Class<E2> clazzEY
+    ) {
+        return new MonoidalView<>(
+                View.combine(x.view(), clazzEX, y.view(), clazzEY),
+                () -> new Pair<>(x.identity().get(), y.identity().get()),
+                (s1, s2) -> new Pair<>(x.merge().apply(s1.first(), s2.first()), y.merge().apply(s1.second(), s2.second()))
+        );
+    }
+}
@@ -1,7 +1,9 @@
 package com.fraktalio.fmodel.domain.view;
 
+import com.fraktalio.fmodel.domain.EventTypes;
 import com.fraktalio.fmodel.domain.Pair;
 
+import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -18,16 +20,33 @@ import java.util.function.Supplier;
  *
  * @param evolveView       A function/lambda that takes input state of type S and input event of type E as parameters, and returns the output/new state S
  * @param initialViewState A starting point / An initial state of type S
+ * @param eventTypes       The types of the events that this view consumes in `evolveView`, an empty set meaning all the events
  * @param <S>              State
  * @param <E>              Event
  */
 public record View<S, E>(BiFunction<S, E, S> evolveView,
-                         Supplier<S> initialViewState
+                         Supplier<S> initialViewState,
+                         Set<Class<? extends E>> eventTypes
 
 ) implements IView<S, E> {
 
+    public View {
+        eventTypes = Set.copyOf(eventTypes);
+    }
+
+    /**
+     * View consuming all the events
+     *
+     * @param evolveView       A function/lambda that takes input state of type S and input event of type E as parameters, and returns the output/new state S
+     * @param initialViewState A starting point / An initial state of type S
+     */
+    public View(BiFunction<S, E, S> evolveView, Supplier<S> initialViewState) {
+        this(evolveView, initialViewState, Set.of());
+    }
+
     /**
-     * Contra map on Event parameter
+     * Contra map on Event parameter.
+     * The new view consumes all the events, as the types of the mapped events are not known.
      *
      * @param f    function that maps event of type {@code En} to event of type {@code E}
      * @param <En> New Event type
@@ -47,12 +66,25 @@ public record View<S, E>(BiFunction<S, E, S> evolveView,
      * @return new View of type {@code View<Sn, E>}
      */
     public <Sn> View<Sn, E> dimapState(Function<? super Sn, ? extends S> fl, Function<? super S, ? extends Sn> fr) {
-        return View.of(new _View<>(this.evolveView, this.initialViewState).dimapState(fl, fr));
+        return View.of(new _View<>(this.evolveView, this.initialViewState).dimapState(fl, fr), this.eventTypes);
     }
 
 
     /**
-     * Combine Views into one View
+     * Fuses the chains of the mappings ({@link #contraMapEvent}, {@link #dimapState} and {@link #combine}) into a single mapping per function,
+     * and drops the identity mappings (the ones of {@link Function#identity()}).
+     * A view mapped many times otherwise runs a deep chain of the wrapping lambdas on every {@code evolveView}.
+     * Call it once, on the fully composed view.
+     *
+     * @return new View, behaving the same as this one
+     */
+    public View<S, E> optimize() {
+        return View.of(new _View<>(this.evolveView, this.initialViewState).optimize(), this.eventTypes);
+    }
+
+    /**
+     * Combine Views into one View.
+     * The combined view consumes the union of the event types of both views (the {@code clazzEX} / {@code clazzEY} types if a view does not declare them).
      *
      * @param x         view 1/X
      * @param clazzEX   the type of the Event of the first view
@@ -71,11 +103,18 @@ public record View<S, E>(BiFunction<S, E, S> evolveView,
             View<S2, ? super E2> y,
             Class<E2> clazzEY
     ) {
-        return View.of(_View.combine(new _View<>(x.evolveView, x.initialViewState), clazzEX, new _View<>(y.evolveView, y.initialViewState), clazzEY));
+        return View.of(
+                _View.combine(new _View<>(x.evolveView, x.initialViewState), clazzEX, new _View<>(y.evolveView, y.initialViewState), clazzEY),
+                EventTypes.combine(x.eventTypes, clazzEX, y.eventTypes, clazzEY)
+        );
     }
 
     static <S, E> View<S, E> of(_View<S, S, E> view) {
         return new View<>(view.evolve(), view.initialState());
     }
+
+    static <S, E> View<S, E> of(_View<S, S, E> view, Set<Class<? extends E>> eventTypes) {
+        return new View<>(view.evolve(), view.initialState(), eventTypes);
+    }
 }
 
@@ -3,6 +3,8 @@ package com.fraktalio.fmodel.domain.view;
 
 import com.fraktalio.fmodel.domain.Pair;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -16,25 +18,32 @@ record _View<Si, So, E>(
 
     <En> _View<Si, So, En> contraMapEvent(Function<? super En, ? extends E> f) {
         return new _View<>(
-                (si, en) -> evolve.apply(si, f.apply(en)),
+                unchecked(new MappedEvolve(unchecked(evolve), null, unchecked(f), null)),
                 initialState
         );
     }
 
     <Sin, Son> _View<Sin, Son, E> dimapState(Function<? super Sin, ? extends Si> fl, Function<? super So, ? extends Son> fr) {
         return new _View<>(
-                (sin, ei) -> fr.apply(evolve.apply(fl.apply(sin), ei)),
-                () -> fr.apply(initialState.get())
+                unchecked(new MappedEvolve(unchecked(evolve), unchecked(fl), null, unchecked(fr))),
+                unchecked(new MappedInitialState(unchecked(initialState), unchecked(fr)))
         );
     }
 
     <Son> _View<Si, Son, E> applyState(_View<? super Si, ? extends Function<? super So, ? extends Son>, ? super E> decider2) {
         return new _View<>(
-                (si, ei) -> decider2.evolve.apply(si, ei).apply(evolve.apply(si, ei)),
-                () -> decider2.initialState.get().apply(initialState.get())
+                unchecked(new ApplyEvolve(unchecked(evolve), unchecked(decider2.evolve))),
+                unchecked(new ApplyInitialState(unchecked(initialState), unchecked(decider2.initialState)))
         );
     }
 
+    /**
+     * The same view, with every chain of the mappings fused into a single mapping per function, and the identity mappings dropped
+     */
+    _View<Si, So, E> optimize() {
+        return new _View<>(unchecked(fuseEvolve(unchecked(evolve))), unchecked(fuseInitialState(unchecked(initialState))));
+    }
+
     <Son> _View<Si, Pair<So, Son>, E> productState(_View<? super Si, ? extends Son, ? super E> decider2) {
         return this.applyState(decider2.dimapState(identity(), (b) -> ((a) -> new Pair<>(a, b))));
     }
@@ -61,5 +70,132 @@ record _View<Si, So, E>(
         return clazz != null && clazz.isInstance(o) ? clazz.cast(o) : null;
     }
 
+    // The functions of the mapped views are kept as data (instead of lambdas), so that `optimize` can fuse them.
+    // A `null` mapping stands for no mapping at all.
+
+    /**
+     * {@code (s, e) -> newState(evolve(state(s), event(e)))}
+     */
+    private record MappedEvolve(BiFunction<Object, Object, Object> evolve,
+                                Function<Object, Object> state,
+                                Function<Object, Object> event,
+                                Function<Object, Object> newState) implements BiFunction<Object, Object, Object> {
+        @Override
+        public Object apply(Object s, Object e) {
+            var evolved = evolve.apply(state == null ? s : state.apply(s), event == null ? e : event.apply(e));
+            return newState == null ? evolved : newState.apply(evolved);
+        }
+    }
+
+    /**
+     * {@code () -> state(initialState())}
+     */
+    private record MappedInitialState(Supplier<Object> initialState,
+                                      Function<Object, Object> state) implements Supplier<Object> {
+        @Override
+        public Object get() {
+            return state.apply(initialState.get());
+        }
+    }
+
+    private record ApplyEvolve(BiFunction<Object, Object, Object> first,
+                               BiFunction<Object, Object, Function<Object, Object>> second) implements BiFunction<Object, Object, Object> {
+        @Override
+        public Object apply(Object s, Object e) {
+            return second.apply(s, e).apply(first.apply(s, e));
+        }
+    }
+
+    private record ApplyInitialState(Supplier<Object> first,
+                                     Supplier<Function<Object, Object>> second) implements Supplier<Object> {
+        @Override
+        public Object get() {
+            return second.get().apply(first.get());
+        }
+    }
+
+    private static BiFunction<Object, Object, Object> fuseEvolve(BiFunction<Object, Object, Object> evolve) {
+        return switch (evolve) {
+            case MappedEvolve mapped -> {
+                var inner = fuseEvolve(mapped.evolve());
+                var state = withoutIdentity(mapped.state());
+                var event = withoutIdentity(mapped.event());
+                var newState = withoutIdentity(mapped.newState());
+                // the inner evolve is fused already: at most one mapping over the original function
+                if (inner instanceof MappedEvolve innerMapped) {
+                    state = andThen(state, innerMapped.state());
+                    event = andThen(event, innerMapped.event());
+                    newState = andThen(innerMapped.newState(), newState);
+                    inner = innerMapped.evolve();
+                }
+                yield state == null && event == null && newState == null ? inner : new MappedEvolve(inner, state, event, newState);
+            }
+            case ApplyEvolve apply -> new ApplyEvolve(fuseEvolve(apply.first()), unchecked(fuseEvolve(unchecked(apply.second()))));
+            default -> evolve;
+        };
+    }
+
+    private static Supplier<Object> fuseInitialState(Supplier<Object> initialState) {
+        return switch (initialState) {
+            case MappedInitialState mapped -> {
+                var inner = fuseInitialState(mapped.initialState());
+                var state = withoutIdentity(mapped.state());
+                if (inner instanceof MappedInitialState innerMapped) {
+                    state = andThen(innerMapped.state(), state);
+                    inner = innerMapped.initialState();
+                }
+                yield state == null ? inner : new MappedInitialState(inner, state);
+            }
+            case ApplyInitialState apply -> new ApplyInitialState(fuseInitialState(apply.first()), unchecked(fuseInitialState(unchecked(apply.second()))));
+            default -> initialState;
+        };
+    }
+
+    /**
+     * {@code null} for the {@link Function#identity()}, which is a single (cached) instance
+     */
+    private static Function<Object, Object> withoutIdentity(Function<Object, Object> f) {
+        return f == identity() ? null : f;
+    }
+
+    /**
+     * {@code x -> steps[n](...steps[1](steps[0](x)))}, applied by a single loop: a fused chain of any length costs one call, not one nested call per mapping
+     */
+    private record Chain(List<Function<Object, Object>> steps) implements Function<Object, Object> {
+        @Override
+        public Object apply(Object x) {
+            for (var i = 0; i < steps.size(); i++) {
+                x = steps.get(i).apply(x);
+            }
+            return x;
+        }
+    }
+
+    /**
+     * The flat {@link Chain} of the two mappings, either of them possibly {@code null} (no mapping) or a chain itself
+     */
+    private static Function<Object, Object> andThen(Function<Object, Object> first, Function<Object, Object> second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        var steps = new ArrayList<Function<Object, Object>>();
+        for (var f : List.of(first, second)) {
+            if (f instanceof Chain chain) {
+                steps.addAll(chain.steps());
+            } else {
+                steps.add(f);
+            }
+        }
+        return new Chain(List.copyOf(steps));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unchecked(Object o) {
+        return (T) o;
+    }
+
 }
 
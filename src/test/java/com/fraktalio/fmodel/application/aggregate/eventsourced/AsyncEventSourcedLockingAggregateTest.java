@@ -0,0 +1,77 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.decider.Decider;
+import com.fraktalio.fmodel.domain.example.api.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncEventSourcedLockingAggregateTest {
+
+    @Test
+    void asyncEventSourcedLockingAggregateTest() {
+        Decider<EvenCommand, EvenNumberState, EvenEvent> evenDecider = new Decider<>(
+                (c, s) -> switch (c) {
+                    case AddEvenNumberCommand cmd -> List.of(new EvenNumberAddedEvent(s.value() + cmd.value()));
+                    case MultiplyEvenNumberCommand cmd -> List.of(new EvenNumberMultipliedEvent(s.value() * cmd.value()));
+                    case null -> List.of();
+                },
+                (s, e) -> switch (e) {
+                    case EvenNumberAddedEvent evt -> new EvenNumberState(evt.value());
+                    case EvenNumberMultipliedEvent evt -> new EvenNumberState(evt.value());
+                    case null -> s;
+                },
+                () -> new EvenNumberState(0)
+        );
+
+        // A "driver" that completes its stages later, from its own (here: the test) thread
+        var fetches = new ArrayList<CompletableFuture<List<Pair<EvenEvent, Long>>>>();
+        var saves = new ArrayList<CompletableFuture<List<Pair<EvenEvent, Long>>>>();
+        var savedWith = new ArrayList<Long>();
+        var savingThreads = new ArrayList<Thread>();
+        var repository = new IAsyncEventLockingRepository<EvenCommand, EvenEvent, Long>() {
+            @Override
+            public CompletionStage<List<Pair<EvenEvent, Long>>> fetchEventsAsync(EvenCommand command) {
+                var fetch = new CompletableFuture<List<Pair<EvenEvent, Long>>>();
+                fetches.add(fetch);
+                return fetch;
+            }
+
+            @Override
+            public CompletionStage<List<Pair<EvenEvent, Long>>> saveAsync(List<EvenEvent> events, Long version) {
+                savedWith.add(version);
+                savingThreads.add(Thread.currentThread());
+                var save = new CompletableFuture<List<Pair<EvenEvent, Long>>>();
+                saves.add(save);
+                return save;
+            }
+        };
+        var aggregate = new AsyncEventSourcedLockingAggregate<>(evenDecider, repository);
+
+        // A new stream: saved with no version, by the thread that completed the fetch
+        var handled = aggregate.handleAsync(new AddEvenNumberCommand(2)).toCompletableFuture();
+        assertFalse(handled.isDone());
+        fetches.get(0).complete(List.of());
+        assertNull(savedWith.get(0));
+        assertEquals(Thread.currentThread(), savingThreads.get(0));
+        saves.get(0).complete(List.of(new Pair<>(new EvenNumberAddedEvent(2), 1L)));
+        assertEquals(List.of(new Pair<>(new EvenNumberAddedEvent(2), 1L)), handled.join());
+
+        // An existing stream: saved with the version of its last event
+        handled = aggregate.handleAsync(new MultiplyEvenNumberCommand(3)).toCompletableFuture();
+        fetches.get(1).complete(List.of(new Pair<>(new EvenNumberAddedEvent(2), 1L)));
+        assertEquals(Long.valueOf(1L), savedWith.get(1));
+        saves.get(1).completeExceptionally(new OptimisticLockingException("even", 1L, 2L));
+        assertTrue(handled.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,122 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.domain.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SingleFlightEventRepositoryTest {
+
+    @Test
+    void fetchAfterSaveSeesTheSavedEvents() {
+        // The backend holds the next async fetch in flight, with the events read before the save
+        var stream = new CopyOnWriteArrayList<String>();
+        var held = new AtomicReference<CompletableFuture<List<String>>>();
+        var backend = new IEventRepository<String, String>() {
+            @Override
+            public List<String> fetchEvents(String command) {
+                return List.copyOf(stream);
+            }
+
+            @Override
+            public List<String> save(List<String> events) {
+                stream.addAll(events);
+                return events;
+            }
+
+            @Override
+            public CompletableFuture<List<String>> fetchEventsAsync(String command) {
+                var inFlight = held.getAndSet(null);
+                return inFlight != null ? inFlight : CompletableFuture.completedFuture(fetchEvents(command));
+            }
+
+            @Override
+            public CompletableFuture<List<String>> fetchEventsAsync(String command, Set<Class<? extends String>> eventTypes) {
+                return fetchEventsAsync(command);
+            }
+        };
+        var repository = new SingleFlightEventRepository<String, String, String>(backend, command -> command, event -> event.substring(0, 1));
+
+        var stale = new CompletableFuture<List<String>>();
+        held.set(stale);
+        var beforeSave = repository.fetchEventsAsync("a");
+        repository.save(List.of("a1"));
+        assertEquals(List.of("a1"), repository.fetchEventsAsync("a").join());
+        assertEquals(List.of("a1"), repository.fetchEvents("a"));
+
+        // the fetches of all the event types of the stream are invalidated
+        var staleTyped = new CompletableFuture<List<String>>();
+        held.set(staleTyped);
+        var typedBeforeSave = repository.fetchEventsAsync("a", Set.of(String.class));
+        repository.saveAsync(List.of("a2")).join();
+        assertEquals(List.of("a1", "a2"), repository.fetchEventsAsync("a", Set.of(String.class)).join());
+
+        stale.complete(List.of());
+        staleTyped.complete(List.of("a1"));
+        assertEquals(List.of(), beforeSave.join());
+        assertEquals(List.of("a1"), typedBeforeSave.join());
+        assertEquals(0, repository.sharedFetches());
+    }
+
+    @Test
+    void fetchAfterLockingSaveSeesTheSavedEvents() {
+        var stream = new CopyOnWriteArrayList<Pair<String, Long>>();
+        var held = new AtomicReference<CompletableFuture<List<Pair<String, Long>>>>();
+        var backend = new IEventLockingRepository<String, String, Long>() {
+            @Override
+            public List<Pair<String, Long>> fetchEvents(String command) {
+                return List.copyOf(stream);
+            }
+
+            @Override
+            public List<Pair<String, Long>> save(List<String> events, Function<String, Long> versionProvider) {
+                return save(events, stream.isEmpty() ? null : stream.getLast().second());
+            }
+
+            @Override
+            public List<Pair<String, Long>> save(List<String> events, Long version) {
+                var saved = events.stream().map(event -> new Pair<>(event, (long) stream.size() + 1)).toList();
+                stream.addAll(saved);
+                return saved;
+            }
+
+            @Override
+            public Function<String, Long> versionProvider() {
+                return event -> stream.isEmpty() ? null : stream.getLast().second();
+            }
+
+            @Override
+            public CompletableFuture<List<Pair<String, Long>>> fetchEventsAsync(String command) {
+                var inFlight = held.getAndSet(null);
+                return inFlight != null ? inFlight : CompletableFuture.completedFuture(fetchEvents(command));
+            }
+        };
+        var repository = new SingleFlightEventLockingRepository<String, String, Long, String>(backend, command -> command, event -> event.substring(0, 1));
+
+        var stale = new CompletableFuture<List<Pair<String, Long>>>();
+        held.set(stale);
+        var beforeSave = repository.fetchEventsAsync("a");
+        repository.save(List.of("a1"), (Long) null);
+        assertEquals(List.of(new Pair<>("a1", 1L)), repository.fetchEventsAsync("a").join());
+
+        var staleAsync = new CompletableFuture<List<Pair<String, Long>>>();
+        held.set(staleAsync);
+        var beforeAsyncSave = repository.fetchEventsAsync("a");
+        repository.saveAsync(List.of("a2"), 1L).join();
+        // the version of the saved events, to save against
+        assertEquals(List.of(new Pair<>("a1", 1L), new Pair<>("a2", 2L)), repository.fetchEventsAsync("a").join());
+
+        stale.complete(List.of());
+        staleAsync.complete(List.of(new Pair<>("a1", 1L)));
+        assertEquals(List.of(), beforeSave.join());
+        assertEquals(List.of(new Pair<>("a1", 1L)), beforeAsyncSave.join());
+        assertEquals(0, repository.sharedFetches());
+    }
+}
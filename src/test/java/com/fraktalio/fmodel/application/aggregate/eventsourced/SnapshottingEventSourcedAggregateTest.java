@@ -0,0 +1,299 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.log.MappedEventLockingRepository;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.BackgroundSnapshotRepository;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.ISnapshotPolicy;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.ISnapshotRepository;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.InMemorySnapshotRepository;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.Snapshot;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.snapshot.SnapshotCandidate;
+import com.fraktalio.fmodel.application.codec.Codecs;
+import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.decider.Decider;
+import com.fraktalio.fmodel.domain.decider.MonoidalDecider;
+import com.fraktalio.fmodel.domain.example.api.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshottingEventSourcedAggregateTest {
+
+    @Test
+    void snapshottingEventSourcedAggregateTest() {
+        Decider<EvenCommand, EvenNumberState, EvenEvent> evenDecider = new Decider<>(
+                (c, s) -> switch (c) {
+                    case AddEvenNumberCommand cmd -> List.of(new EvenNumberAddedEvent(s.value() + cmd.value()));
+                    case MultiplyEvenNumberCommand cmd -> List.of(new EvenNumberMultipliedEvent(s.value() * cmd.value()));
+                    case null -> List.of();
+                },
+                (s, e) -> switch (e) {
+                    case EvenNumberAddedEvent evt -> new EvenNumberState(evt.value());
+                    case EvenNumberMultipliedEvent evt -> new EvenNumberState(evt.value());
+                    case null -> s;
+                },
+                () -> new EvenNumberState(0)
+        );
+        // A single stream, counting the events it returns
+        var stream = new ArrayList<Pair<EvenEvent, Long>>();
+        var fetched = new AtomicInteger();
+        var repository = new IEventLockingRepository<EvenCommand, EvenEvent, Long>() {
+            @Override
+            public List<Pair<EvenEvent, Long>> fetchEvents(EvenCommand command) {
+                fetched.addAndGet(stream.size());
+                return List.copyOf(stream);
+            }
+
+            @Override
+            public List<Pair<EvenEvent, Long>> fetchEventsAfter(EvenCommand command, Long version) {
+                var tail = List.copyOf(stream.subList(version.intValue(), stream.size()));
+                fetched.addAndGet(tail.size());
+                return tail;
+            }
+
+            @Override
+            public List<Pair<EvenEvent, Long>> save(List<EvenEvent> events, Function<EvenEvent, Long> versionProvider) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<Pair<EvenEvent, Long>> save(List<EvenEvent> events, Long version) {
+                var actual = stream.isEmpty() ? null : stream.getLast().second();
+                if (!Objects.equals(actual, version)) {
+                    throw new OptimisticLockingException("even", version, actual);
+                }
+                var saved = events.stream().map(event -> new Pair<>(event, (long) stream.size() + 1)).toList();
+                stream.addAll(saved);
+                return saved;
+            }
+
+            @Override
+            public Function<EvenEvent, Long> versionProvider() {
+                return event -> stream.isEmpty() ? null : stream.getLast().second();
+            }
+        };
+        var snapshots = new InMemorySnapshotRepository<String, EvenNumberState, Long>();
+        var aggregate = new SnapshottingEventSourcedAggregate<>(evenDecider, repository, snapshots, command -> "even", ISnapshotPolicy.everyEvents(3));
+
+        for (var i = 0; i < 10; i++) {
+            aggregate.handle(new AddEvenNumberCommand(2));
+        }
+        assertEquals(new Pair<EvenEvent, Long>(new EvenNumberAddedEvent(20), 10L), stream.getLast());
+        // snapshots of the versions 3, 6 and 9: only the first three commands fold the stream from the start
+        assertEquals(3, aggregate.misses());
+        assertEquals(7, aggregate.hits());
+        assertEquals(3, aggregate.taken());
+        assertEquals(new Snapshot<>(new EvenNumberState(18), 9L, snapshots.fetchSnapshot("even").takenAt()), snapshots.fetchSnapshot("even"));
+        assertEquals(2, aggregate.staleness().max());
+        // 0 + 1 + 2 events folded from the start, then 0 + 1 + 2 events on top of each of the snapshots, and none on top of the last one
+        assertEquals(3 + 3 + 3 + 0, fetched.get());
+
+        // A snapshot of a version the stream does not have is not used
+        snapshots.saveSnapshot("even", new Snapshot<>(new EvenNumberState(1000), 42L, Instant.now()));
+        var repositoryFallback = new IEventLockingRepository<EvenCommand, EvenEvent, Long>() {
+            @Override
+            public List<Pair<EvenEvent, Long>> fetchEvents(EvenCommand command) {
+                return repository.fetchEvents(command);
+            }
+
+            @Override
+            public List<Pair<EvenEvent, Long>> save(List<EvenEvent> events, Function<EvenEvent, Long> versionProvider) {
+                return repository.save(events, versionProvider);
+            }
+
+            @Override
+            public List<Pair<EvenEvent, Long>> save(List<EvenEvent> events, Long version) {
+                return repository.save(events, version);
+            }
+
+            @Override
+            public Function<EvenEvent, Long> versionProvider() {
+                return repository.versionProvider();
+            }
+        };
+        var fallbackAggregate = new SnapshottingEventSourcedAggregate<>(evenDecider, repositoryFallback, snapshots, command -> "even", ISnapshotPolicy.never());
+        assertEquals(List.of(new Pair<EvenEvent, Long>(new EvenNumberAddedEvent(22), 11L)), fallbackAggregate.handle(new AddEvenNumberCommand(2)));
+        assertEquals(1, fallbackAggregate.misses());
+    }
+
+    @Test
+    void snapshotPointerTest() throws Exception {
+        Decider<EvenCommand, EvenNumberState, EvenEvent> evenDecider = new Decider<>(
+                (c, s) -> c instanceof AddEvenNumberCommand cmd ? List.of(new EvenNumberAddedEvent(s.value() + cmd.value())) : List.of(),
+                (s, e) -> e instanceof EvenNumberAddedEvent evt ? new EvenNumberState(evt.value()) : s,
+                () -> new EvenNumberState(0)
+        );
+        // The snapshots count the reads of their states
+        var delegate = new InMemorySnapshotRepository<String, EvenNumberState, Long>();
+        var reads = new AtomicInteger();
+        ISnapshotRepository<String, EvenNumberState, Long> snapshots = new ISnapshotRepository<>() {
+            @Override
+            public Snapshot<EvenNumberState, Long> fetchSnapshot(String key) {
+                reads.incrementAndGet();
+                return delegate.fetchSnapshot(key);
+            }
+
+            @Override
+            public Long fetchSnapshotVersion(String key) {
+                var snapshot = delegate.fetchSnapshot(key);
+                return snapshot != null ? snapshot.version() : null;
+            }
+
+            @Override
+            public void saveSnapshot(String key, Snapshot<EvenNumberState, Long> snapshot) {
+                delegate.saveSnapshot(key, snapshot);
+            }
+        };
+        try (var repository = new MappedEventLockingRepository<EvenCommand, EvenEvent>(Files.createTempDirectory("fmodel-snapshots"), c -> "even", e -> "even", Codecs.forClass(EvenEvent.class), 4096, false)) {
+            var aggregate = new SnapshottingEventSourcedAggregate<>(evenDecider, repository, snapshots, command -> "even", ISnapshotPolicy.everyEvents(3));
+
+            // Neither a new stream, nor a stream without a snapshot, reads a snapshot
+            aggregate.handle(new AddEvenNumberCommand(2));
+            aggregate.handle(new AddEvenNumberCommand(2));
+            assertEquals(Optional.of(new StreamMetadata<Long>(2L, 2, null)), aggregate.fetchStreamMetadata(new AddEvenNumberCommand(2)));
+            aggregate.handle(new AddEvenNumberCommand(2));
+            assertEquals(0, reads.get());
+
+            // The metadata points to the snapshot of the version 3: its state is read, and the events after it
+            assertEquals(Optional.of(new StreamMetadata<>(3L, 3, 3L)), aggregate.fetchStreamMetadata(new AddEvenNumberCommand(2)));
+            assertEquals(List.of(new Pair<EvenEvent, Long>(new EvenNumberAddedEvent(8), 4L)), aggregate.handle(new AddEvenNumberCommand(2)));
+            assertEquals(1, reads.get());
+            assertEquals(1, aggregate.hits());
+            assertEquals(2, aggregate.misses());
+        }
+    }
+
+    @Test
+    void handleAsyncTest() {
+        // A counter: a monoidal decider, counting the merges of its folds
+        var merges = new AtomicInteger();
+        var counter = new MonoidalDecider<Integer, Integer, Integer>(
+                new Decider<>((c, s) -> List.of(c), Integer::sum, () -> 0),
+                () -> 0,
+                (s1, s2) -> {
+                    merges.incrementAndGet();
+                    return s1 + s2;
+                });
+        var stream = new ArrayList<Pair<Integer, Long>>();
+        var repository = new IEventLockingRepository<Integer, Integer, Long>() {
+            @Override
+            public List<Pair<Integer, Long>> fetchEvents(Integer command) {
+                return List.copyOf(stream);
+            }
+
+            @Override
+            public List<Pair<Integer, Long>> fetchEventsAfter(Integer command, Long version) {
+                return List.copyOf(stream.subList(version.intValue(), stream.size()));
+            }
+
+            @Override
+            public List<Pair<Integer, Long>> save(List<Integer> events, Function<Integer, Long> versionProvider) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public synchronized List<Pair<Integer, Long>> save(List<Integer> events, Long version) {
+                var actual = stream.isEmpty() ? null : stream.getLast().second();
+                if (!Objects.equals(actual, version)) {
+                    throw new OptimisticLockingException("counter", version, actual);
+                }
+                var saved = events.stream().map(event -> new Pair<>(event, (long) stream.size() + 1)).toList();
+                stream.addAll(saved);
+                return saved;
+            }
+
+            @Override
+            public Function<Integer, Long> versionProvider() {
+                return event -> stream.isEmpty() ? null : stream.getLast().second();
+            }
+        };
+        var snapshots = new InMemorySnapshotRepository<String, Integer, Long>();
+        var aggregate = new SnapshottingEventSourcedAggregate<>(counter, repository, snapshots, command -> "counter", ISnapshotPolicy.everyEvents(3));
+
+        for (var i = 1; i <= 10; i++) {
+            assertEquals(List.of(new Pair<>(i, (long) i)), aggregate.handleAsync(i).join());
+        }
+        // the same reads as the synchronous handle: snapshots of the versions 3, 6 and 9
+        assertEquals(3, aggregate.misses());
+        assertEquals(7, aggregate.hits());
+        assertEquals(3, aggregate.taken());
+        assertEquals(Integer.valueOf(45), snapshots.fetchSnapshot("counter").state());
+        // every fold, on top of a snapshot or not, is a monoidal one
+        assertEquals(10, merges.get());
+        assertEquals(List.of(new Pair<>(11, 11L)), aggregate.handle(11));
+        assertEquals(11, merges.get());
+    }
+
+    @Test
+    void snapshotPolicyTest() {
+        var state = new EvenNumberState(2);
+        ISnapshotPolicy<EvenNumberState> adaptive = ISnapshotPolicy.adaptive(100);
+        assertTrue(adaptive.shouldSnapshot(new SnapshotCandidate<>(state, 10, 10, Duration.ZERO, Duration.ZERO)));
+        assertFalse(adaptive.shouldSnapshot(new SnapshotCandidate<>(state, 10, 9, Duration.ZERO, Duration.ZERO)));
+
+        ISnapshotPolicy<EvenNumberState> policy = ISnapshotPolicy.<EvenNumberState>every(Duration.ofMinutes(1))
+                .or(ISnapshotPolicy.foldTimeAbove(Duration.ofMillis(5)))
+                .and(ISnapshotPolicy.stateSizeAbove(1, s -> s.value()));
+        assertTrue(policy.shouldSnapshot(new SnapshotCandidate<>(state, 1, 1, Duration.ofMinutes(2), Duration.ZERO)));
+        assertTrue(policy.shouldSnapshot(new SnapshotCandidate<>(state, 1, 1, Duration.ZERO, Duration.ofMillis(6))));
+        assertFalse(policy.shouldSnapshot(new SnapshotCandidate<>(state, 1, 1, Duration.ZERO, Duration.ZERO)));
+        assertFalse(policy.shouldSnapshot(new SnapshotCandidate<>(new EvenNumberState(0), 1, 1, Duration.ofMinutes(2), Duration.ZERO)));
+    }
+
+    @Test
+    void backgroundSnapshotRepositoryTest() throws Exception {
+        var delegate = new InMemorySnapshotRepository<String, Integer, Long>();
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        ISnapshotRepository<String, Integer, Long> blocking = new ISnapshotRepository<>() {
+            @Override
+            public Snapshot<Integer, Long> fetchSnapshot(String key) {
+                return delegate.fetchSnapshot(key);
+            }
+
+            @Override
+            public void saveSnapshot(String key, Snapshot<Integer, Long> snapshot) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                delegate.saveSnapshot(key, snapshot);
+            }
+        };
+        var now = Instant.now();
+        var background = new BackgroundSnapshotRepository<>(blocking, 1, Thread.ofPlatform().daemon().factory());
+        background.saveSnapshot("a", new Snapshot<>(1, 1L, now));
+        // the writer is busy with the first snapshot
+        entered.await();
+        background.saveSnapshot("a", new Snapshot<>(2, 2L, now));
+        background.saveSnapshot("a", new Snapshot<>(3, 3L, now));
+        // the queue (of one stream) is full
+        background.saveSnapshot("b", new Snapshot<>(1, 1L, now));
+        assertEquals(new Snapshot<>(3, 3L, now), background.fetchSnapshot("a"));
+        assertEquals(1, background.coalesced());
+        assertEquals(1, background.dropped());
+
+        release.countDown();
+        background.close();
+        assertEquals(2, background.written());
+        assertEquals(0, background.pending());
+        assertEquals(new Snapshot<>(3, 3L, now), delegate.fetchSnapshot("a"));
+        assertNull(delegate.fetchSnapshot("b"));
+    }
+}
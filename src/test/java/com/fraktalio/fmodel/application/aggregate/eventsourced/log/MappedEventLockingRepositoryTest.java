@@ -0,0 +1,228 @@
+package com.fraktalio.fmodel.application.aggregate.eventsourced.log;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.EventSourcedAggregate;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.EventSourcedLockingAggregate;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.IEventLockingRepository;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.IEventRepository;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.StreamMetadata;
+import com.fraktalio.fmodel.application.codec.Codecs;
+import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.decider.Decider;
+import com.fraktalio.fmodel.domain.example.api.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedEventLockingRepositoryTest {
+
+    @Test
+    void newStreamVersioningTest() throws Exception {
+        var directory = Files.createTempDirectory("fmodel-log");
+        try (var repository = new MappedEventLockingRepository<Command, Event>(directory, c -> "numbers", e -> "numbers", Codecs.forClass(Event.class), 64 * 1024, false)) {
+            // Both savers have seen the stream as new: only the first one wins
+            assertEquals(List.of(new Pair<>(new EvenNumberAddedEvent(2), 1L), new Pair<>(new EvenNumberAddedEvent(4), 2L)),
+                    repository.save(List.of(new EvenNumberAddedEvent(2), new EvenNumberAddedEvent(4)), e -> null));
+            assertThrows(OptimisticLockingException.class, () -> repository.save(List.of(new EvenNumberAddedEvent(6)), e -> null));
+            assertThrows(OptimisticLockingException.class, () -> repository.save(List.of(new EvenNumberAddedEvent(6)), (Long) null));
+
+            assertEquals(List.of(new Pair<>(new EvenNumberAddedEvent(6), 3L)), repository.save(List.of(new EvenNumberAddedEvent(6)), repository.versionProvider()));
+            assertEquals(Optional.of(new StreamMetadata<>(3L, 3, null)), repository.fetchStreamMetadata(new AddEvenNumberCommand(0)));
+        }
+    }
+
+    @Test
+    void segmentRollingAndRecoveryTest() throws Exception {
+        var directory = Files.createTempDirectory("fmodel-log");
+        var codec = Codecs.forClass(Event.class);
+        var expected = IntStream.rangeClosed(1, 200).mapToObj(i -> new Pair<Event, Long>(new EvenNumberAddedEvent(2 * i), (long) i)).toList();
+
+        // Segments of 1 KiB roll many times
+        try (var repository = new MappedEventLockingRepository<Command, Event>(directory, c -> "numbers", e -> "numbers", codec, 1024, true)) {
+            for (var event : expected) {
+                repository.save(List.of(event.first()), repository.versionProvider());
+            }
+            assertEquals(expected, repository.fetchEvents(new AddEvenNumberCommand(0)));
+        }
+        try (var files = Files.list(directory)) {
+            assertTrue(files.count() > 1);
+        }
+
+        // A torn record at the tail of the last segment
+        var segments = new ArrayList<Path>();
+        try (var files = Files.list(directory)) {
+            files.sorted().forEach(segments::add);
+        }
+        try (var channel = FileChannel.open(segments.getLast(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            var offset = 0;
+            while (buffer.getInt(offset) != 0) {
+                offset += Integer.BYTES + buffer.getInt(offset);
+            }
+            buffer.put(offset, ByteBuffer.allocate(64).putInt(0, 60).putLong(8, 201L).array());
+            buffer.force();
+        }
+
+        // After a restart, the torn record is dropped, and the stream goes on from the last complete batch
+        try (var repository = new MappedEventLockingRepository<Command, Event>(directory, c -> "numbers", e -> "numbers", codec, 1024, true)) {
+            assertEquals(expected, repository.fetchEvents(new AddEvenNumberCommand(0)));
+            assertEquals(List.of(new Pair<>(new EvenNumberAddedEvent(402), 201L)), repository.save(List.of(new EvenNumberAddedEvent(402)), 200L));
+            assertEquals(expected.subList(0, 100).stream().map(Pair::first).toList(), repository.fetchPage(0, 100).events());
+        }
+        try (var repository = new MappedEventLockingRepository<Command, Event>(directory, c -> "numbers", e -> "numbers", codec, 1024, true)) {
+            assertEquals(201, repository.fetchEvents(new AddEvenNumberCommand(0)).size());
+            assertEquals(Optional.of(new StreamMetadata<>(201L, 201, null)), repository.fetchStreamMetadata(new AddEvenNumberCommand(0)));
+        }
+    }
+
+    @Test
+    void typeFilteredFetchTest() throws Exception {
+        var directory = Files.createTempDirectory("fmodel-log");
+        var codec = Codecs.forClass(Event.class);
+
+        // A single `numbers` stream, so every command and event share the same stream
+        try (var repository = new MappedEventLockingRepository<Command, Event>(directory, c -> "numbers", e -> "numbers", codec, 64 * 1024, false)) {
+            repository.save(List.of(new EvenNumberAddedEvent(2), new OddNumberAddedEvent(1), new EvenNumberMultipliedEvent(4)), (Long) null);
+            repository.save(List.of(new OddNumberMultipliedEvent(3)), 3L);
+
+            assertEquals(4, repository.fetchEvents(new AddEvenNumberCommand(0)).size());
+            assertEquals(4, repository.fetchEvents(new AddEvenNumberCommand(0), Set.of()).size());
+            assertEquals(List.of(new Pair<>(new EvenNumberAddedEvent(2), 1L), new Pair<>(new EvenNumberMultipliedEvent(4), 3L)),
+                    repository.fetchEvents(new AddEvenNumberCommand(0), Set.of(EvenEvent.class)));
+            assertEquals(List.of(new Pair<>(new OddNumberMultipliedEvent(3), 4L)),
+                    repository.fetchEvents(new AddEvenNumberCommand(0), Set.of(OddNumberMultipliedEvent.class)));
+        }
+
+        // After a restart, the type tags are resolved from the log itself
+        try (var repository = new MappedEventLockingRepository<Command, Event>(directory, c -> "numbers", e -> "numbers", codec, 64 * 1024, false)) {
+            assertEquals(List.of(new Pair<>(new OddNumberAddedEvent(1), 2L), new Pair<>(new OddNumberMultipliedEvent(3), 4L)),
+                    repository.fetchEvents(new AddOddNumberCommand(0), Set.of(OddEvent.class)));
+        }
+    }
+
+    @Test
+    void streamMetadataTest() throws Exception {
+        var directory = Files.createTempDirectory("fmodel-log");
+        Decider<EvenCommand, EvenNumberState, EvenEvent> evenDecider = new Decider<>(
+                (c, s) -> switch (c) {
+                    case AddEvenNumberCommand cmd -> List.of(new EvenNumberAddedEvent(s.value() + cmd.value()));
+                    case MultiplyEvenNumberCommand cmd -> List.of(new EvenNumberMultipliedEvent(s.value() * cmd.value()));
+                    case null -> List.of();
+                },
+                (s, e) -> switch (e) {
+                    case EvenNumberAddedEvent evt -> new EvenNumberState(evt.value());
+                    case EvenNumberMultipliedEvent evt -> new EvenNumberState(evt.value());
+                    case null -> s;
+                },
+                () -> new EvenNumberState(0)
+        );
+
+        try (var repository = new MappedEventLockingRepository<EvenCommand, EvenEvent>(directory, c -> "even", e -> "even", Codecs.forClass(EvenEvent.class), 64 * 1024, false)) {
+            assertEquals(Optional.of(StreamMetadata.<Long>empty()), repository.fetchStreamMetadata(new AddEvenNumberCommand(2)));
+
+            // Full reads are counted: a new stream is not read at all
+            var fullReads = new AtomicInteger();
+            var aggregate = new EventSourcedLockingAggregate<>(evenDecider, new IEventLockingRepository<EvenCommand, EvenEvent, Long>() {
+                @Override
+                public List<Pair<EvenEvent, Long>> fetchEvents(EvenCommand command) {
+                    fullReads.incrementAndGet();
+                    return repository.fetchEvents(command);
+                }
+
+                @Override
+                public Optional<StreamMetadata<Long>> fetchStreamMetadata(EvenCommand command) {
+                    return repository.fetchStreamMetadata(command);
+                }
+
+                @Override
+                public List<Pair<EvenEvent, Long>> save(List<EvenEvent> events, Function<EvenEvent, Long> versionProvider) {
+                    return repository.save(events, versionProvider);
+                }
+
+                @Override
+                public List<Pair<EvenEvent, Long>> save(List<EvenEvent> events, Long version) {
+                    return repository.save(events, version);
+                }
+
+                @Override
+                public Function<EvenEvent, Long> versionProvider() {
+                    return repository.versionProvider();
+                }
+            });
+            assertEquals(List.of(new Pair<EvenEvent, Long>(new EvenNumberAddedEvent(2), 1L)), aggregate.handle(new AddEvenNumberCommand(2)));
+            assertEquals(0, fullReads.get());
+            assertEquals(List.of(new Pair<EvenEvent, Long>(new EvenNumberMultipliedEvent(8), 2L)), aggregate.handle(new MultiplyEvenNumberCommand(4)));
+            assertEquals(1, fullReads.get());
+            assertEquals(List.of(new Pair<EvenEvent, Long>(new EvenNumberAddedEvent(10), 3L)), aggregate.handleAsync(new AddEvenNumberCommand(2)).join());
+
+            assertEquals(Optional.of(new StreamMetadata<>(3L, 3, null)), repository.fetchStreamMetadata(new AddEvenNumberCommand(2)));
+            assertEquals(List.of(new Pair<>(new EvenNumberMultipliedEvent(8), 2L), new Pair<>(new EvenNumberAddedEvent(10), 3L)),
+                    repository.fetchEventsAfter(new AddEvenNumberCommand(2), 1L));
+            assertEquals(List.of(), repository.fetchEventsAfter(new AddEvenNumberCommand(2), 3L));
+            assertNull(repository.fetchEventsAfter(new AddEvenNumberCommand(2), 4L));
+        }
+    }
+
+    @Test
+    void deciderEventTypesTest() {
+        Decider<EvenCommand, EvenNumberState, EvenEvent> evenDecider = new Decider<>(
+                (c, s) -> switch (c) {
+                    case AddEvenNumberCommand cmd -> List.of(new EvenNumberAddedEvent(s.value() + cmd.value()));
+                    case MultiplyEvenNumberCommand cmd -> List.of(new EvenNumberMultipliedEvent(s.value() * cmd.value()));
+                    case null -> List.of();
+                },
+                (s, e) -> e instanceof EvenNumberAddedEvent evt ? new EvenNumberState(evt.value()) : s,
+                () -> new EvenNumberState(0),
+                Set.of(EvenNumberAddedEvent.class)
+        );
+        Decider<OddCommand, OddNumberState, OddEvent> oddDecider = new Decider<>(
+                (c, s) -> List.of(),
+                (s, e) -> s,
+                () -> new OddNumberState(0)
+        );
+
+        // The combined decider consumes the declared types of the first decider, and all the events of the second one
+        var decider = Decider.combine(
+                evenDecider, EvenCommand.class, EvenEvent.class,
+                oddDecider, OddCommand.class, OddEvent.class);
+        assertEquals(Set.of(EvenNumberAddedEvent.class, OddEvent.class), decider.eventTypes());
+
+        // The aggregate fetches the events of the declared types only
+        var fetched = new ArrayList<Set<Class<? extends Event>>>();
+        var aggregate = new EventSourcedAggregate<Command, Pair<EvenNumberState, OddNumberState>, Event>(decider, new IEventRepository<>() {
+            @Override
+            public List<Event> fetchEvents(Command command) {
+                return List.of(new EvenNumberAddedEvent(2), new EvenNumberMultipliedEvent(10));
+            }
+
+            @Override
+            public List<Event> fetchEvents(Command command, Set<Class<? extends Event>> eventTypes) {
+                fetched.add(eventTypes);
+                return IEventRepository.super.fetchEvents(command, eventTypes);
+            }
+
+            @Override
+            public List<Event> save(List<Event> events) {
+                return events;
+            }
+        });
+        assertEquals(List.of(new EvenNumberAddedEvent(4)), aggregate.handle(new AddEvenNumberCommand(2)));
+        assertEquals(List.of(decider.eventTypes()), fetched);
+    }
+}
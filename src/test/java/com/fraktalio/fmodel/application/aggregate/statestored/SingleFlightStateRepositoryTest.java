@@ -0,0 +1,102 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import com.fraktalio.fmodel.domain.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SingleFlightStateRepositoryTest {
+
+    @Test
+    void fetchAfterSaveSeesTheSavedState() {
+        // The backend holds the next async fetch in flight, with the state read before the save
+        var state = new AtomicReference<>("a0");
+        var held = new AtomicReference<CompletableFuture<String>>();
+        var backend = new IStateRepository<String, String>() {
+            @Override
+            public String fetchState(String command) {
+                return state.get();
+            }
+
+            @Override
+            public String save(String newState) {
+                state.set(newState);
+                return newState;
+            }
+
+            @Override
+            public CompletableFuture<String> fetchStateAsync(String command) {
+                var inFlight = held.getAndSet(null);
+                return inFlight != null ? inFlight : CompletableFuture.completedFuture(fetchState(command));
+            }
+        };
+        var repository = new SingleFlightStateRepository<String, String, String>(backend, command -> command, newState -> newState.substring(0, 1));
+
+        var stale = new CompletableFuture<String>();
+        held.set(stale);
+        var beforeSave = repository.fetchStateAsync("a");
+        repository.save("a1");
+        assertEquals("a1", repository.fetchStateAsync("a").join());
+
+        var staleAsync = new CompletableFuture<String>();
+        held.set(staleAsync);
+        var beforeAsyncSave = repository.fetchStateAsync("a");
+        repository.saveAsync("a2").join();
+        assertEquals("a2", repository.fetchStateAsync("a").join());
+        assertEquals("a2", repository.fetchState("a"));
+
+        stale.complete("a0");
+        staleAsync.complete("a1");
+        assertEquals("a0", beforeSave.join());
+        assertEquals("a1", beforeAsyncSave.join());
+        assertEquals(0, repository.sharedFetches());
+    }
+
+    @Test
+    void fetchAfterLockingSaveSeesTheSavedState() {
+        var state = new AtomicReference<>(new Pair<>("a0", 0L));
+        var held = new AtomicReference<CompletableFuture<Pair<String, Long>>>();
+        var backend = new IStateLockingRepository<String, String, Long>() {
+            @Override
+            public Pair<String, Long> fetchState(String command) {
+                return state.get();
+            }
+
+            @Override
+            public Pair<String, Long> save(Long currentStateVersion, String newState) {
+                var saved = new Pair<>(newState, currentStateVersion + 1);
+                state.set(saved);
+                return saved;
+            }
+
+            @Override
+            public CompletableFuture<Pair<String, Long>> fetchStateAsync(String command) {
+                var inFlight = held.getAndSet(null);
+                return inFlight != null ? inFlight : CompletableFuture.completedFuture(fetchState(command));
+            }
+        };
+        var repository = new SingleFlightStateLockingRepository<String, String, Long, String>(backend, command -> command, newState -> newState.substring(0, 1));
+
+        var stale = new CompletableFuture<Pair<String, Long>>();
+        held.set(stale);
+        var beforeSave = repository.fetchStateAsync("a");
+        repository.save(0L, "a1");
+        // the new version, to save against
+        assertEquals(new Pair<>("a1", 1L), repository.fetchStateAsync("a").join());
+
+        var staleAsync = new CompletableFuture<Pair<String, Long>>();
+        held.set(staleAsync);
+        var beforeAsyncSave = repository.fetchStateAsync("a");
+        repository.saveAsync(1L, "a2").join();
+        assertEquals(new Pair<>("a2", 2L), repository.fetchStateAsync("a").join());
+
+        stale.complete(new Pair<>("a0", 0L));
+        staleAsync.complete(new Pair<>("a1", 1L));
+        assertEquals(new Pair<>("a0", 0L), beforeSave.join());
+        assertEquals(new Pair<>("a1", 1L), beforeAsyncSave.join());
+        assertEquals(0, repository.sharedFetches());
+    }
+}
@@ -0,0 +1,45 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.decider.Decider;
+import com.fraktalio.fmodel.domain.example.api.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StateStoredLockingAggregateTest {
+
+    @Test
+    void stateStoredLockingAggregateTest() {
+        Decider<EvenCommand, EvenNumberState, EvenEvent> evenDecider = new Decider<>(
+                (c, s) -> switch (c) {
+                    case AddEvenNumberCommand cmd -> List.of(new EvenNumberAddedEvent(s.value() + cmd.value()));
+                    case MultiplyEvenNumberCommand cmd ->
+                            List.of(new EvenNumberMultipliedEvent(s.value() * cmd.value()));
+                    case null -> List.of();
+                },
+                (s, e) -> switch (e) {
+                    case EvenNumberAddedEvent evt -> new EvenNumberState(evt.value());
+                    case EvenNumberMultipliedEvent evt -> new EvenNumberState(evt.value());
+                    case null -> s;
+                },
+                () -> new EvenNumberState(0)
+        );
+
+        // A single `even` state, so every command and state share the same key
+        var repository = new InMemoryStateLockingRepository<EvenCommand, EvenNumberState, String>(c -> "even", s -> "even");
+        var aggregate = new StateStoredLockingAggregate<>(evenDecider, repository);
+
+        assertEquals(new Pair<>(new EvenNumberState(2), 1L), aggregate.handle(new AddEvenNumberCommand(2)));
+        assertEquals(new Pair<>(new EvenNumberState(6), 2L), aggregate.handle(new MultiplyEvenNumberCommand(3)));
+        assertEquals(new Pair<>(new EvenNumberState(10), 3L), aggregate.handleAsync(new AddEvenNumberCommand(4)).join());
+
+        // Saving with a stale version is rejected
+        assertThrows(OptimisticLockingException.class, () -> repository.save(2L, new EvenNumberState(100)));
+        assertEquals(new Pair<>(new EvenNumberState(10), 3L), repository.fetchState(new AddEvenNumberCommand(0)));
+    }
+}
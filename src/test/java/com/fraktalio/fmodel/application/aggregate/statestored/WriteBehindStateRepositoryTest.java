@@ -0,0 +1,87 @@
+package com.fraktalio.fmodel.application.aggregate.statestored;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindStateRepositoryTest {
+
+    record Counter(String id, long value) {
+    }
+
+    @Test
+    void savesOfTheSameKeyAreCoalescedUntilFlushed() {
+        var writes = new AtomicInteger();
+        var backend = new InMemoryStateRepository<String, Counter, String>(command -> command, Counter::id);
+        IStateRepository<String, Counter> counting = new IStateRepository<>() {
+            @Override
+            public Counter fetchState(String command) {
+                return backend.fetchState(command);
+            }
+
+            @Override
+            public Counter save(Counter newState) {
+                writes.incrementAndGet();
+                return backend.save(newState);
+            }
+        };
+        var repository = new WriteBehindStateRepository<String, Counter, String>(counting, command -> command, Counter::id, 2, Duration.ofHours(1));
+        for (var i = 1; i <= 100; i++) {
+            repository.save(new Counter("a", i));
+        }
+        assertEquals(new Counter("a", 100), repository.fetchState("a"));
+        assertNull(backend.fetchState("a"));
+        assertEquals(99, repository.coalesced());
+        assertEquals(1, repository.dirtyCount());
+
+        repository.save(new Counter("b", 1));
+        // a third key is over the limit of two dirty keys, and flushes the dirty set
+        repository.save(new Counter("c", 1));
+        assertEquals(2, writes.get());
+        assertEquals(new Counter("a", 100), backend.fetchState("a"));
+
+        repository.close();
+        assertEquals(3, writes.get());
+        assertEquals(0, repository.dirtyCount());
+        assertEquals(Duration.ZERO, repository.lag());
+        assertEquals(new Counter("c", 1), backend.fetchState("c"));
+    }
+
+    @Test
+    void saveOfANewKeyTimesOutWhileTheBackendFails() {
+        var failing = new AtomicBoolean(true);
+        var backend = new InMemoryStateRepository<String, Counter, String>(command -> command, Counter::id);
+        IStateRepository<String, Counter> flaky = new IStateRepository<>() {
+            @Override
+            public Counter fetchState(String command) {
+                return backend.fetchState(command);
+            }
+
+            @Override
+            public Counter save(Counter newState) {
+                if (failing.get()) {
+                    throw new IllegalStateException("backend is not available");
+                }
+                return backend.save(newState);
+            }
+        };
+        var repository = new WriteBehindStateRepository<String, Counter, String>(flaky, command -> command, Counter::id, 1, Duration.ofHours(1), Duration.ofMillis(50));
+        repository.save(new Counter("a", 1));
+
+        // the dirty set is full, and can not be flushed: a new key fails, a dirty key is still saved
+        assertThrows(IllegalStateException.class, () -> repository.save(new Counter("b", 1)));
+        assertEquals(new Counter("a", 2), repository.save(new Counter("a", 2)));
+        assertTrue(repository.flushFailures() >= 1);
+
+        // once the backend is back, the dirty state is written
+        failing.set(false);
+        repository.save(new Counter("b", 1));
+        assertEquals(new Counter("a", 2), backend.fetchState("a"));
+        repository.close();
+        assertEquals(new Counter("b", 1), backend.fetchState("b"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.fraktalio.fmodel.application.codec;
+
+import com.fraktalio.fmodel.domain.example.api.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CodecsTest {
+
+    enum Status {OPEN, CLOSED}
+
+    record Line(String sku, int quantity, double price) {
+    }
+
+    record Reading(long at, boolean valid, byte channel, short gain, char unit, float raw, int count, double value, Reading previous) {
+    }
+
+    record Order(UUID id, Status status, List<Line> lines, Map<String, Long> totals, Optional<String> note, Instant placedAt, String nullable) {
+    }
+
+    @Test
+    void codecsTest() {
+        // Sealed hierarchy of records
+        var eventCodec = Codecs.forClass(Event.class);
+        List<Event> events = List.of(new OddNumberAddedEvent(1), new EvenNumberMultipliedEvent(-300), new EvenNumberAddedEvent(null));
+        for (var event : events) {
+            assertEquals(event, eventCodec.fromBytes(ByteBuffer.wrap(eventCodec.toBytes(event))));
+        }
+
+        // Nested records, collections, enums and nulls, encoded one after another into a reused writer
+        var orderCodec = Codecs.forClass(Order.class);
+        var order = new Order(UUID.randomUUID(), Status.OPEN, List.of(new Line("sku-ü", 2, 9.99), new Line("sku-2", 1, 0.5)),
+                Map.of("net", 1049L), Optional.of("fragile"), Instant.ofEpochSecond(1_700_000_000L, 42), null);
+        var writer = new BinaryWriter();
+        orderCodec.encode(order, writer);
+        orderCodec.encode(order, writer);
+        var reader = new BinaryReader(writer.buffer());
+        assertEquals(order, orderCodec.decode(reader));
+        assertEquals(order, orderCodec.decode(reader));
+        assertEquals(0, reader.remaining());
+
+        // Schema versions: the old version is decoded (upcasted) by its own codec
+        var v1 = Codecs.versioned(1, Codecs.INT);
+        var v2 = Codecs.versioned(2, Codecs.forClass(Line.class))
+                .orDecode(1, new ICodec<Line>() {
+                    @Override
+                    public void encode(Line value, BinaryWriter writer) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public Line decode(BinaryReader reader) {
+                        return new Line("unknown", Codecs.INT.decode(reader), 0);
+                    }
+                });
+        assertEquals(new Line("unknown", 7, 0), v2.fromBytes(ByteBuffer.wrap(v1.toBytes(7))));
+        assertThrows(IllegalStateException.class, () -> v1.fromBytes(ByteBuffer.wrap(v2.toBytes(new Line("a", 1, 1)))));
+    }
+
+    @Test
+    void primitiveComponentsTest() {
+        // All the primitives, read in declaration order into the constructor, and a recursive component
+        var codec = Codecs.forClass(Reading.class);
+        var first = new Reading(-1L, true, (byte) -2, (short) 300, 'µ', 1.5f, Integer.MIN_VALUE, -0.25, null);
+        var second = new Reading(Long.MAX_VALUE, false, Byte.MAX_VALUE, Short.MIN_VALUE, 'a', Float.NaN, 42, Double.MAX_VALUE, first);
+        assertEquals(second, codec.fromBytes(ByteBuffer.wrap(codec.toBytes(second))));
+    }
+}
@@ -0,0 +1,164 @@
+package com.fraktalio.fmodel.application.commandbus;
+
+import com.fraktalio.fmodel.application.aggregate.statestored.InMemoryStateRepository;
+import com.fraktalio.fmodel.application.aggregate.statestored.StateStoredAggregate;
+import com.fraktalio.fmodel.domain.decider.Decider;
+import com.fraktalio.fmodel.domain.example.api.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandBusTest {
+
+    @Test
+    void commandBusTest() throws Exception {
+        Decider<EvenCommand, EvenNumberState, EvenEvent> evenDecider = new Decider<>(
+                (c, s) -> switch (c) {
+                    case AddEvenNumberCommand cmd -> List.of(new EvenNumberAddedEvent(s.value() + cmd.value()));
+                    case MultiplyEvenNumberCommand cmd -> List.of(new EvenNumberMultipliedEvent(s.value() * cmd.value()));
+                    case null -> List.of();
+                },
+                (s, e) -> switch (e) {
+                    case EvenNumberAddedEvent evt -> new EvenNumberState(evt.value());
+                    case EvenNumberMultipliedEvent evt -> new EvenNumberState(evt.value());
+                    case null -> s;
+                },
+                () -> new EvenNumberState(0)
+        );
+        // A plain (not locking) aggregate: concurrent commands of one key would lose updates, if they were not serialized by the bus
+        var aggregate = new StateStoredAggregate<>(evenDecider, new InMemoryStateRepository<EvenCommand, EvenNumberState, String>(c -> "even", s -> "even"));
+
+        try (var bus = new CommandBus<Command, Object>(4, 16, OverflowPolicy.BLOCK, Thread.ofVirtual().factory())) {
+            bus.register(EvenCommand.class, c -> "even", aggregate::handle);
+
+            var threads = new ArrayList<Thread>();
+            var results = new ArrayList<CompletableFuture<Object>>();
+            for (var t = 0; t < 8; t++) {
+                threads.add(Thread.ofPlatform().start(() -> {
+                    for (var i = 0; i < 100; i++) {
+                        var result = bus.dispatch(new AddEvenNumberCommand(2));
+                        synchronized (results) {
+                            results.add(result);
+                        }
+                    }
+                }));
+            }
+            for (var thread : threads) {
+                thread.join();
+            }
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+            assertEquals(new EvenNumberState(1600), bus.dispatch(new MultiplyEvenNumberCommand(1)).join());
+            assertEquals(801, bus.serviceTime().count());
+            assertEquals(801, bus.dispatched());
+
+            // No handler of the odd commands
+            var unrouted = bus.dispatch(new AddOddNumberCommand(1));
+            assertTrue(assertThrows(CompletionException.class, unrouted::join).getCause() instanceof IllegalArgumentException);
+        }
+
+        // A single shard with a single slot: a third command is rejected while the first one is handled and the second one waits
+        var release = new CountDownLatch(1);
+        try (var bus = new CommandBus<Command, Object>(1, 1, OverflowPolicy.REJECT, Thread.ofPlatform().daemon().factory())) {
+            bus.register(EvenCommand.class, c -> "even", c -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return aggregate.handle(c);
+            });
+            var first = bus.dispatch(new AddEvenNumberCommand(2));
+            while (bus.queueDepth() > 0) {
+                Thread.onSpinWait();
+            }
+            var second = bus.dispatch(new AddEvenNumberCommand(2));
+            var third = bus.dispatch(new AddEvenNumberCommand(2));
+            assertEquals(1, bus.queueDepth(0));
+            assertTrue(assertThrows(CompletionException.class, third::join).getCause() instanceof RejectedExecutionException);
+            assertEquals(1, bus.rejected());
+
+            release.countDown();
+            assertEquals(new EvenNumberState(1602), first.join());
+            assertEquals(new EvenNumberState(1604), second.join());
+        }
+    }
+
+    interface Urgent {
+    }
+
+    interface Audited {
+    }
+
+    record UrgentAuditedCommand(Integer value) implements Urgent, Audited {
+    }
+
+    @Test
+    void commandBusRoutingTest() {
+        try (var bus = new CommandBus<Object, String>(2, 16, OverflowPolicy.BLOCK, Thread.ofVirtual().factory())) {
+            bus.register(Command.class, c -> "command", c -> "command");
+            bus.register(EvenCommand.class, c -> "even", c -> "even");
+            bus.register(Object.class, c -> "object", c -> "object");
+
+            // The most specific registered super type wins, whatever the order of the registrations
+            assertEquals("even", bus.dispatch(new AddEvenNumberCommand(2)).join());
+            assertEquals("command", bus.dispatch(new AddOddNumberCommand(1)).join());
+            assertEquals("object", bus.dispatch("text").join());
+
+            bus.register(AddEvenNumberCommand.class, c -> "add", c -> "add");
+            assertEquals("add", bus.dispatch(new AddEvenNumberCommand(2)).join());
+            assertEquals("even", bus.dispatch(new MultiplyEvenNumberCommand(2)).join());
+
+            // Two unrelated registered interfaces of the command are ambiguous
+            bus.register(Urgent.class, c -> "urgent", c -> "urgent");
+            bus.register(Audited.class, c -> "audited", c -> "audited");
+            var ambiguous = bus.dispatch(new UrgentAuditedCommand(1));
+            assertTrue(assertThrows(CompletionException.class, ambiguous::join).getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    void commandBusCloseRaceTest() throws Exception {
+        // Commands dispatched while the bus is closed are either handled or rejected, never left pending
+        for (var round = 0; round < 50; round++) {
+            var bus = new CommandBus<Command, Integer>(2, 4, OverflowPolicy.BLOCK, Thread.ofPlatform().daemon().factory());
+            bus.register(Command.class, c -> c, c -> 1);
+            var results = new ArrayList<CompletableFuture<Integer>>();
+            var started = new CountDownLatch(4);
+            var threads = new ArrayList<Thread>();
+            for (var t = 0; t < 4; t++) {
+                threads.add(Thread.ofPlatform().start(() -> {
+                    started.countDown();
+                    for (var i = 0; i < 200; i++) {
+                        var result = bus.dispatch(new AddEvenNumberCommand(i));
+                        synchronized (results) {
+                            results.add(result);
+                        }
+                    }
+                }));
+            }
+            started.await();
+            bus.close();
+            for (var thread : threads) {
+                thread.join();
+            }
+            for (var result : results) {
+                try {
+                    assertEquals(Integer.valueOf(1), result.get(5, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                }
+            }
+        }
+    }
+}
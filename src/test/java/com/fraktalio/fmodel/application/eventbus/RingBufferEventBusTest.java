@@ -0,0 +1,122 @@
+package com.fraktalio.fmodel.application.eventbus;
+
+import com.fraktalio.fmodel.application.materializedview.InMemoryViewStateRepository;
+import com.fraktalio.fmodel.application.materializedview.MaterializedView;
+import com.fraktalio.fmodel.domain.example.api.EvenEvent;
+import com.fraktalio.fmodel.domain.example.api.EvenNumberAddedEvent;
+import com.fraktalio.fmodel.domain.example.api.EvenNumberMultipliedEvent;
+import com.fraktalio.fmodel.domain.example.api.EvenNumberState;
+import com.fraktalio.fmodel.domain.view.View;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferEventBusTest {
+
+    @Test
+    void ringBufferEventBusTest() throws Exception {
+        View<EvenNumberState, EvenEvent> evenView = new View<>(
+                (s, e) -> switch (e) {
+                    case EvenNumberAddedEvent evt -> new EvenNumberState(s.value() + evt.value());
+                    case EvenNumberMultipliedEvent evt -> new EvenNumberState(s.value() * evt.value());
+                    case null -> s;
+                },
+                () -> new EvenNumberState(0)
+        );
+        var repository = new InMemoryViewStateRepository<EvenNumberState, EvenEvent, String>(e -> "even", s -> "even");
+        var materializedView = new MaterializedView<>(evenView, repository);
+
+        // A small ring: the publishers lap it many times, and have to wait for the slowest consumer
+        var bus = new RingBufferEventBus<EvenEvent>(8, WaitStrategy.YIELD, Thread.ofPlatform().daemon().factory());
+        var views = bus.subscribe(IEventBatchHandler.forEach(materializedView::handle));
+        // The "saga" depends on the view: the view state already includes every event the saga sees
+        var sagaEvents = new AtomicInteger();
+        var behindView = new AtomicInteger();
+        var saga = bus.subscribe((events, sequence, endOfBatch) -> {
+            for (var ignored : events) {
+                sagaEvents.incrementAndGet();
+            }
+            if (repository.fetchState(events.get(0)).value() < sagaEvents.get()) {
+                behindView.incrementAndGet();
+            }
+        }, views);
+        var failing = bus.subscribe((events, sequence, endOfBatch) -> {
+            throw new IllegalStateException("failing consumer");
+        });
+        bus.start();
+
+        var producers = new ArrayList<Thread>();
+        for (var p = 0; p < 4; p++) {
+            producers.add(Thread.ofPlatform().start(() -> {
+                for (var i = 0; i < 250; i++) {
+                    bus.publish(List.of(new EvenNumberAddedEvent(1), new EvenNumberAddedEvent(1)));
+                }
+            }));
+        }
+        for (var producer : producers) {
+            producer.join();
+        }
+        bus.close();
+
+        assertEquals(999L, bus.cursor());
+        assertEquals(999L, views.sequence());
+        assertEquals(0L, saga.lag());
+        assertEquals(new EvenNumberState(2000), repository.fetchState(new EvenNumberAddedEvent(0)));
+        assertEquals(2000, sagaEvents.get());
+        assertEquals(0, behindView.get());
+        assertEquals(1000L, failing.failures());
+    }
+
+    @Test
+    void closeWithBlockedPublisherTest() throws Exception {
+        // A full ring of two slots, held by a gated consumer
+        var gate = new CountDownLatch(1);
+        var handled = new AtomicInteger();
+        var bus = new RingBufferEventBus<EvenEvent>(2, WaitStrategy.PARK, Thread.ofPlatform().daemon().factory());
+        var consumer = bus.subscribe((events, sequence, endOfBatch) -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.addAndGet(events.size());
+        });
+        bus.start();
+        bus.publish(List.of(new EvenNumberAddedEvent(2)));
+        bus.publish(List.of(new EvenNumberAddedEvent(4)));
+
+        // A third publisher waits for a free slot, while the bus is closed
+        var failure = new AtomicReference<Throwable>();
+        var publisher = Thread.ofPlatform().start(() -> {
+            try {
+                bus.publish(List.of(new EvenNumberAddedEvent(6)));
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        while (bus.cursor() < 2) {
+            Thread.onSpinWait();
+        }
+        var closing = Thread.ofPlatform().start(bus::close);
+        Thread.sleep(100);
+        assertTrue(closing.isAlive());
+        gate.countDown();
+
+        // The published batches are handled, the claimed one is not, and neither the publisher nor the close hang
+        publisher.join(10_000);
+        closing.join(10_000);
+        assertFalse(publisher.isAlive());
+        assertFalse(closing.isAlive());
+        assertTrue(failure.get() instanceof IllegalStateException);
+        assertEquals(2, handled.get());
+        assertEquals(2L, consumer.sequence());
+    }
+}
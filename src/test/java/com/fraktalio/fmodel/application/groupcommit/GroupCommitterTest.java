@@ -0,0 +1,70 @@
+package com.fraktalio.fmodel.application.groupcommit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitterTest {
+
+    @Test
+    void concurrentWritesAreGroupedAndCompletedIndividually() throws Exception {
+        var gate = new CountDownLatch(1);
+        var batchSizes = new ArrayList<Integer>();
+        try (var committer = new GroupCommitter<Integer, Integer>(writes -> {
+            awaitQuietly(gate);
+            batchSizes.add(writes.size());
+            for (var write : writes) {
+                if (write.input() < 0) {
+                    write.fail(new IllegalArgumentException("negative"));
+                } else {
+                    write.complete(write.input() * 2);
+                }
+            }
+        }, 64, Duration.ofMillis(1), Thread.ofPlatform().daemon().factory())) {
+            var first = committer.submit(0);
+            var futures = new ArrayList<CompletableFuture<Integer>>();
+            for (var i = 1; i <= 10; i++) {
+                futures.add(committer.submit(i));
+            }
+            var failed = committer.submit(-1);
+            gate.countDown();
+
+            assertEquals(Integer.valueOf(0), GroupCommitter.await(first));
+            for (var i = 0; i < futures.size(); i++) {
+                assertEquals(Integer.valueOf((i + 1) * 2), GroupCommitter.await(futures.get(i)));
+            }
+            assertThrows(IllegalArgumentException.class, () -> GroupCommitter.await(failed));
+            assertEquals(12, committer.writes());
+            assertTrue(committer.batches() < 12);
+        }
+        assertEquals(12, batchSizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void writesNotCompletedByTheBatchWriterFail() {
+        try (var committer = new GroupCommitter<String, String>(writes -> {
+        }, 8, Duration.ZERO, Thread.ofPlatform().daemon().factory())) {
+            assertThrows(IllegalStateException.class, () -> GroupCommitter.await(committer.submit("lost")));
+        }
+    }
+
+    @Test
+    void closedCommitterRejectsWrites() {
+        var committer = new GroupCommitter<String, String>(writes -> writes.forEach(w -> w.complete(w.input())));
+        committer.close();
+        assertThrows(IllegalStateException.class, () -> GroupCommitter.await(committer.submit("late")));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
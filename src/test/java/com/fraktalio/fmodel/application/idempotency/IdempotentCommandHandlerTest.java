@@ -0,0 +1,95 @@
+package com.fraktalio.fmodel.application.idempotency;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotentCommandHandlerTest {
+
+    record Deposit(String commandId, int amount) {
+    }
+
+    @Test
+    void duplicatesAreServedFromTheCacheAndFailuresAreNotCached() {
+        var handled = new AtomicInteger();
+        var handler = new IdempotentCommandHandler<Deposit, Integer, String>(
+                Deposit::commandId,
+                command -> {
+                    if (command.amount() < 0) {
+                        handled.incrementAndGet();
+                        throw new IllegalArgumentException("negative amount");
+                    }
+                    return handled.incrementAndGet() * 100 + command.amount();
+                },
+                command -> CompletableFuture.failedFuture(new UnsupportedOperationException()));
+
+        assertEquals(Integer.valueOf(110), handler.handle(new Deposit("a", 10)));
+        assertEquals(Integer.valueOf(110), handler.handle(new Deposit("a", 10)));
+        assertEquals(Integer.valueOf(220), handler.handle(new Deposit("b", 20)));
+        assertEquals(1, handler.duplicates());
+
+        assertThrows(IllegalArgumentException.class, () -> handler.handle(new Deposit("c", -1)));
+        assertThrows(IllegalArgumentException.class, () -> handler.handle(new Deposit("c", -1)));
+        assertEquals(4, handled.get());
+
+        // commands without an identifier are always handled
+        handler.handle(new Deposit(null, 1));
+        handler.handle(new Deposit(null, 1));
+        assertEquals(6, handled.get());
+    }
+
+    @Test
+    void concurrentDuplicatesShareTheCommandInFlight() {
+        var handled = new AtomicInteger();
+        var inFlight = new CompletableFuture<Integer>();
+        var handler = new IdempotentCommandHandler<Deposit, Integer, String>(
+                Deposit::commandId,
+                command -> handled.incrementAndGet(),
+                command -> {
+                    handled.incrementAndGet();
+                    return inFlight;
+                });
+
+        var first = handler.handleAsync(new Deposit("a", 10));
+        var second = handler.handleAsync(new Deposit("a", 10));
+        assertFalse(second.isDone());
+        inFlight.complete(42);
+
+        assertEquals(Integer.valueOf(42), first.join());
+        assertEquals(Integer.valueOf(42), second.join());
+        assertEquals(1, handled.get());
+    }
+
+    @Test
+    void resultsAreLookedUpInTheRepositoryBeyondTheCache() {
+        var stored = new ConcurrentHashMap<String, Integer>();
+        var repository = new IIdempotencyRepository<String, Integer>() {
+            @Override
+            public Integer fetchResult(String commandId) {
+                return stored.get(commandId);
+            }
+
+            @Override
+            public Integer save(String commandId, Integer result) {
+                stored.put(commandId, result);
+                return result;
+            }
+        };
+        var handled = new AtomicInteger();
+        var handler = new IdempotentCommandHandler<Deposit, Integer, String>(
+                Deposit::commandId, command -> handled.incrementAndGet(), command -> CompletableFuture.completedFuture(handled.incrementAndGet()),
+                repository, 1, Duration.ofMinutes(1));
+
+        assertEquals(Integer.valueOf(1), handler.handle(new Deposit("a", 10)));
+        assertEquals(Integer.valueOf(2), handler.handle(new Deposit("b", 10)));
+        // `a` is evicted from the cache of a single entry, but found in the repository
+        assertEquals(Integer.valueOf(1), handler.handleAsync(new Deposit("a", 10)).join());
+        assertEquals(2, handled.get());
+        assertEquals(1, handler.size());
+    }
+}
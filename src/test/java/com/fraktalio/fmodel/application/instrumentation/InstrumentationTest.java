@@ -0,0 +1,104 @@
+package com.fraktalio.fmodel.application.instrumentation;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.aggregate.statestored.IStateLockingRepository;
+import com.fraktalio.fmodel.application.aggregate.statestored.InMemoryStateLockingRepository;
+import com.fraktalio.fmodel.application.aggregate.statestored.StateStoredLockingAggregate;
+import com.fraktalio.fmodel.application.sagamanager.SagaManager;
+import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.decider.Decider;
+import com.fraktalio.fmodel.domain.example.api.*;
+import com.fraktalio.fmodel.domain.saga.Saga;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentationTest {
+
+    private final Decider<EvenCommand, EvenNumberState, EvenEvent> evenDecider = new Decider<>(
+            (c, s) -> switch (c) {
+                case AddEvenNumberCommand cmd -> List.of(new EvenNumberAddedEvent(s.value() + cmd.value()));
+                case MultiplyEvenNumberCommand cmd -> List.of(new EvenNumberMultipliedEvent(s.value() * cmd.value()));
+                case null -> List.of();
+            },
+            (s, e) -> switch (e) {
+                case EvenNumberAddedEvent evt -> new EvenNumberState(evt.value());
+                case EvenNumberMultipliedEvent evt -> new EvenNumberState(evt.value());
+                case null -> s;
+            },
+            () -> new EvenNumberState(0)
+    );
+
+    @Test
+    void histogramPercentilesAreWithinTheBucketPrecision() {
+        var histogram = new LatencyHistogram();
+        for (var i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100_000, histogram.count());
+        assertEquals(100_000, histogram.max());
+        assertEquals(50_000.5, histogram.mean(), 0.001);
+        assertTrue(Math.abs(histogram.valueAtPercentile(50) - 50_000) <= 50_000 * 0.04);
+        assertTrue(Math.abs(histogram.valueAtPercentile(99) - 99_000) <= 99_000 * 0.04);
+        assertEquals(100_000, histogram.valueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.valueAtPercentile(99));
+    }
+
+    @Test
+    void aggregatePhasesAndConflictsAreRecorded() {
+        var instrumentation = new Instrumentation();
+        var repository = new InMemoryStateLockingRepository<EvenCommand, EvenNumberState, String>(c -> "even", s -> "even");
+        var aggregate = new StateStoredLockingAggregate<>(evenDecider, repository, instrumentation.probe("even"));
+
+        aggregate.handle(new AddEvenNumberCommand(2));
+        aggregate.handleAsync(new MultiplyEvenNumberCommand(3)).join();
+
+        var staleRepository = new IStateLockingRepository<EvenCommand, EvenNumberState, Long>() {
+            @Override
+            public Pair<EvenNumberState, Long> fetchState(EvenCommand command) {
+                return new Pair<>(new EvenNumberState(0), 0L);
+            }
+
+            @Override
+            public Pair<EvenNumberState, Long> save(Long currentStateVersion, EvenNumberState newState) {
+                throw new OptimisticLockingException("even", currentStateVersion, 1L);
+            }
+        };
+        var conflicting = new StateStoredLockingAggregate<>(evenDecider, staleRepository, instrumentation.probe("even"));
+        assertThrows(OptimisticLockingException.class, () -> conflicting.handle(new AddEvenNumberCommand(2)));
+
+        var probe = instrumentation.probe("even");
+        assertEquals(3, probe.histogram(Phase.FETCH).count());
+        assertEquals(3, probe.histogram(Phase.DECIDE).count());
+        assertEquals(2, probe.histogram(Phase.SAVE).count());
+        assertEquals(2, probe.histogram(Phase.HANDLE).count());
+        assertEquals(1, probe.conflicts());
+
+        var exported = new ArrayList<String>();
+        instrumentation.export(p -> exported.add(p.name() + ":" + p.histogram(Phase.HANDLE).snapshot().count()));
+        assertIterableEquals(List.of("even:2"), exported);
+    }
+
+    @Test
+    void sagaManagerPhasesAreRecordedOnce() {
+        var instrumentation = new Instrumentation();
+        var sagaManager = new SagaManager<EvenEvent, OddCommand>(
+                new Saga<>(e -> List.of(new AddOddNumberCommand(1))),
+                actions -> actions,
+                instrumentation.probe("saga"));
+
+        assertEquals(List.of(new AddOddNumberCommand(1)), sagaManager.handleAsync(new EvenNumberAddedEvent(2)).join());
+
+        var probe = instrumentation.probe("saga");
+        assertEquals(1, probe.histogram(Phase.QUEUE).count());
+        assertEquals(1, probe.histogram(Phase.REACT).count());
+        assertEquals(1, probe.histogram(Phase.PUBLISH).count());
+        assertEquals(1, probe.histogram(Phase.HANDLE).count());
+    }
+}
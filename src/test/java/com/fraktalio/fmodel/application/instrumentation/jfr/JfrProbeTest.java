@@ -0,0 +1,79 @@
+package com.fraktalio.fmodel.application.instrumentation.jfr;
+
+import com.fraktalio.fmodel.application.instrumentation.CompositeProbe;
+import com.fraktalio.fmodel.application.instrumentation.HistogramProbe;
+import com.fraktalio.fmodel.application.instrumentation.Phase;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JfrProbeTest {
+
+    @Test
+    void jfrEventsCarryTheDurationOfTheirPhase() throws Exception {
+        var recorded = new CopyOnWriteArrayList<RecordedEvent>();
+        var expected = new CountDownLatch(3);
+        var histograms = new HistogramProbe("even");
+        var probe = new CompositeProbe(JfrProbe.aggregate("even"), histograms);
+        // loads the event classes
+        probe.stop(Phase.SAVE, probe.start());
+        try (var stream = new RecordingStream()) {
+            stream.enable("fmodel.StateSaved").withThreshold(Duration.ofMillis(20));
+            stream.enable("fmodel.CommandHandled").withThreshold(Duration.ofMillis(20));
+            stream.enable("fmodel.StreamRehydrated").withThreshold(Duration.ZERO);
+            stream.onEvent(event -> {
+                recorded.add(event);
+                expected.countDown();
+            });
+            stream.startAsync();
+
+            // a fast save, below the threshold
+            probe.stop(Phase.SAVE, probe.start());
+            // a slow save, in between a fold
+            var handleStart = probe.start();
+            var foldStart = probe.start();
+            probe.stopFold(42, foldStart);
+            var saveStart = probe.start();
+            Thread.sleep(50);
+            probe.stop(Phase.SAVE, saveStart);
+            // an async handle, completed on another thread
+            probe.stop(Phase.HANDLE, handleStart, CompletableFuture.runAsync(() -> sleep(20))).join();
+
+            assertTrue(expected.await(10, TimeUnit.SECONDS));
+            assertEquals(3, histograms.histogram(Phase.SAVE).count());
+        }
+
+        var saved = eventsOf(recorded, "fmodel.StateSaved");
+        assertEquals(1, saved.size());
+        assertTrue(saved.getFirst().getDuration().compareTo(Duration.ofMillis(50)) >= 0);
+        assertEquals("even", saved.getFirst().getString("component"));
+        var handled = eventsOf(recorded, "fmodel.CommandHandled");
+        assertEquals(1, handled.size());
+        assertTrue(handled.getFirst().getDuration().compareTo(Duration.ofMillis(70)) >= 0);
+        var rehydrated = eventsOf(recorded, "fmodel.StreamRehydrated");
+        assertEquals(1, rehydrated.size());
+        assertEquals(42, rehydrated.getFirst().getInt("eventCount"));
+    }
+
+    private static List<RecordedEvent> eventsOf(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name)).toList();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.fraktalio.fmodel.application.loadgen;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Distribution of the keys (aggregate ids) the commands of the {@link LoadGenerator} are sent to
+ */
+interface KeyDistribution {
+    /**
+     * @param random the random generator of the calling thread
+     * @return the next key, from {@code 0} (the hottest one, for skewed distributions) to the number of keys (exclusive)
+     */
+    int next(SplittableRandom random);
+
+    /**
+     * Every key is equally likely
+     */
+    static KeyDistribution uniform(int keys) {
+        return random -> random.nextInt(keys);
+    }
+
+    /**
+     * The probability of the key {@code k} is proportional to {@code 1 / (k + 1)^exponent}: a few hot keys take most of the commands.
+     * Sampled by a binary search over the precomputed cumulative distribution.
+     */
+    static KeyDistribution zipf(int keys, double exponent) {
+        var cumulative = new double[keys];
+        var sum = 0.0;
+        for (var k = 0; k < keys; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        var total = sum;
+        return random -> {
+            var index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            return Math.min(index >= 0 ? index : -index - 1, keys - 1);
+        };
+    }
+
+    /**
+     * @param specification {@code uniform} or {@code zipf:<exponent>}, for example {@code zipf:1.1}
+     * @param keys          the number of the keys
+     */
+    static KeyDistribution parse(String specification, int keys) {
+        if (specification.equals("uniform")) {
+            return uniform(keys);
+        }
+        if (specification.startsWith("zipf")) {
+            return zipf(keys, specification.contains(":") ? Double.parseDouble(specification.substring(specification.indexOf(':') + 1)) : 1.0);
+        }
+        throw new IllegalArgumentException("Unknown key distribution: " + specification);
+    }
+}
@@ -0,0 +1,236 @@
+package com.fraktalio.fmodel.application.loadgen;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.EventSourcedAggregate;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.EventSourcedLockingAggregate;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.EventSourcedLockingOrchestratingAggregate;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.EventSourcedOrchestratingAggregate;
+import com.fraktalio.fmodel.application.aggregate.statestored.StateStoredAggregate;
+import com.fraktalio.fmodel.application.aggregate.statestored.StateStoredLockingAggregate;
+import com.fraktalio.fmodel.application.aggregate.statestored.StateStoredLockingOrchestratingAggregate;
+import com.fraktalio.fmodel.application.aggregate.statestored.StateStoredOrchestratingAggregate;
+import com.fraktalio.fmodel.application.instrumentation.LatencyHistogram;
+import com.fraktalio.fmodel.domain.decider.Decider;
+import com.fraktalio.fmodel.domain.saga.Saga;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * End-to-end load generator of the aggregates - a tool, not a test.
+ * <br /><br />
+ * Drives every kind of aggregate with a command mix over a key distribution (uniform or Zipf), at several concurrency levels,
+ * against in-memory repositories with a simulated storage latency. Optimistic locking conflicts are retried up to a limit.
+ * Every run reports its throughput, latency percentiles (including the retries) and the conflict rate, as a JSON array,
+ * to find the concurrency and the key skew at which optimistic locking collapses.
+ * <br /><br />
+ * Options, as {@code name=value} arguments (defaults in brackets):
+ * <pre>
+ * aggregates    comma-separated kinds, or all     [all]: es, es-locking, ss, ss-locking,
+ *               es-orchestrating, es-locking-orchestrating, ss-orchestrating, ss-locking-orchestrating
+ * keys          number of the aggregates          [10000]
+ * distribution  uniform or zipf:&lt;exponent&gt;        [zipf:1.0]
+ * threads       comma-separated concurrency levels [1,4,16,64]
+ * duration      measured duration of a run         [PT5S]
+ * warmup        unmeasured duration before a run   [PT1S]
+ * mix           command weights                    [add:90,multiply:10]
+ * fetchLatency  simulated fetch latency            [PT0.0001S]
+ * saveLatency   simulated save latency             [PT0.0002S]
+ * retries       retries of a conflicting command   [3]
+ * output        file to write the JSON to          [standard output]
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    // A counter per key: the domain of the load
+    sealed interface CounterCommand permits Add, Multiply {
+        String key();
+    }
+
+    record Add(String key, long amount) implements CounterCommand {
+    }
+
+    record Multiply(String key, long factor) implements CounterCommand {
+    }
+
+    sealed interface CounterEvent permits Added, Multiplied {
+        String key();
+    }
+
+    record Added(String key, long total) implements CounterEvent {
+    }
+
+    record Multiplied(String key, long total) implements CounterEvent {
+    }
+
+    record Counter(String key, long total) {
+    }
+
+    record Result(String aggregate, String distribution, int keys, int threads, double seconds,
+                  long commands, long attempts, long conflicts, long failed, long errors, LatencyHistogram.Snapshot latency) {
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"aggregate\":\"%s\",\"distribution\":\"%s\",\"keys\":%d,\"threads\":%d,\"seconds\":%.3f,"
+                            + "\"commands\":%d,\"throughput\":%.1f,\"attempts\":%d,\"conflicts\":%d,\"conflictRate\":%.5f,\"failed\":%d,\"errors\":%d,"
+                            + "\"latencyMicros\":{\"mean\":%.1f,\"p50\":%.1f,\"p90\":%.1f,\"p99\":%.1f,\"p999\":%.1f,\"max\":%.1f}}",
+                    aggregate, distribution, keys, threads, seconds,
+                    commands, commands / seconds, attempts, conflicts, attempts == 0 ? 0.0 : (double) conflicts / attempts, failed, errors,
+                    latency.mean() / 1e3, latency.p50() / 1e3, latency.p90() / 1e3, latency.p99() / 1e3, latency.p999() / 1e3, latency.max() / 1e3);
+        }
+    }
+
+    static final List<String> AGGREGATES = List.of(
+            "es", "es-locking", "ss", "ss-locking",
+            "es-orchestrating", "es-locking-orchestrating", "ss-orchestrating", "ss-locking-orchestrating");
+
+    public static void main(String[] args) throws Exception {
+        var options = new HashMap<String, String>();
+        for (var arg : args) {
+            var separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        var aggregates = options.getOrDefault("aggregates", "all").equals("all") ? AGGREGATES : List.of(options.get("aggregates").split(","));
+        var keys = Integer.parseInt(options.getOrDefault("keys", "10000"));
+        var distribution = options.getOrDefault("distribution", "zipf:1.0");
+        var threads = Arrays.stream(options.getOrDefault("threads", "1,4,16,64").split(",")).mapToInt(Integer::parseInt).toArray();
+        var duration = Duration.parse(options.getOrDefault("duration", "PT5S"));
+        var warmup = Duration.parse(options.getOrDefault("warmup", "PT1S"));
+        var mix = parseMix(options.getOrDefault("mix", "add:90,multiply:10"));
+        var latency = new SimulatedRepositories.Latency(
+                Duration.parse(options.getOrDefault("fetchLatency", "PT0.0001S")).toNanos(),
+                Duration.parse(options.getOrDefault("saveLatency", "PT0.0002S")).toNanos());
+        var retries = Integer.parseInt(options.getOrDefault("retries", "3"));
+
+        var results = new ArrayList<Result>();
+        for (var aggregate : aggregates) {
+            for (var concurrency : threads) {
+                // a fresh aggregate (and storage) per run
+                var handler = aggregate(aggregate, latency);
+                var keyDistribution = KeyDistribution.parse(distribution, keys);
+                run(handler, keyDistribution, mix, concurrency, warmup, retries, new LatencyHistogram());
+                var histogram = new LatencyHistogram();
+                var counters = run(handler, keyDistribution, mix, concurrency, duration, retries, histogram);
+                results.add(new Result(aggregate, distribution, keys, concurrency, counters[3] / 1e9,
+                        counters[0], counters[1], counters[2], counters[4], counters[5], histogram.snapshot()));
+                System.err.println(results.getLast().toJson());
+            }
+        }
+        var json = results.stream().map(Result::toJson).collect(Collectors.joining(",\n  ", "[\n  ", "\n]\n"));
+        if (options.containsKey("output")) {
+            Files.writeString(Path.of(options.get("output")), json);
+        } else {
+            System.out.print(json);
+        }
+    }
+
+    /**
+     * @return the counters of the run: succeeded commands, attempts, conflicts, elapsed nanoseconds, failed commands (too many conflicts), errors
+     */
+    static long[] run(Function<CounterCommand, ?> handler, KeyDistribution keys, Function<SplittableRandom, Function<String, CounterCommand>> mix,
+                      int concurrency, Duration duration, int retries, LatencyHistogram histogram) throws InterruptedException {
+        var succeeded = new LongAdder();
+        var attempts = new LongAdder();
+        var conflicts = new LongAdder();
+        var failed = new LongAdder();
+        var errors = new LongAdder();
+        var seeds = new SplittableRandom(concurrency);
+        var start = System.nanoTime();
+        var deadline = start + duration.toNanos();
+        var workers = new ArrayList<Thread>(concurrency);
+        for (var i = 0; i < concurrency; i++) {
+            var random = seeds.split();
+            workers.add(Thread.ofPlatform().name("fmodel-load-" + i).start(() -> {
+                while (System.nanoTime() < deadline) {
+                    var command = mix.apply(random).apply("counter-" + keys.next(random));
+                    var commandStart = System.nanoTime();
+                    for (var attempt = 0; ; attempt++) {
+                        attempts.increment();
+                        try {
+                            handler.apply(command);
+                            succeeded.increment();
+                            histogram.record(System.nanoTime() - commandStart);
+                            break;
+                        } catch (OptimisticLockingException e) {
+                            conflicts.increment();
+                            if (attempt == retries) {
+                                failed.increment();
+                                break;
+                            }
+                        } catch (RuntimeException e) {
+                            errors.increment();
+                            break;
+                        }
+                    }
+                }
+            }));
+        }
+        for (var worker : workers) {
+            worker.join();
+        }
+        return new long[]{succeeded.sum(), attempts.sum(), conflicts.sum(), System.nanoTime() - start, failed.sum(), errors.sum()};
+    }
+
+    static Function<CounterCommand, ?> aggregate(String kind, SimulatedRepositories.Latency latency) {
+        var decider = new Decider<CounterCommand, Counter, CounterEvent>(
+                (c, s) -> switch (c) {
+                    case Add add -> List.of(new Added(add.key(), s.total() + add.amount()));
+                    case Multiply multiply -> List.of(new Multiplied(multiply.key(), s.total() * multiply.factor() % 1_000_000_007L));
+                },
+                (s, e) -> switch (e) {
+                    case Added added -> new Counter(added.key(), added.total());
+                    case Multiplied multiplied -> new Counter(multiplied.key(), multiplied.total());
+                },
+                () -> new Counter(null, 0L)
+        );
+        // every multiplication is followed by an addition, within the same handling
+        var saga = new Saga<CounterEvent, CounterCommand>(e -> e instanceof Multiplied multiplied ? List.of(new Add(multiplied.key(), 1L)) : List.of());
+        return switch (kind) {
+            case "es" -> new EventSourcedAggregate<>(decider, SimulatedRepositories.events(CounterCommand::key, CounterEvent::key, latency))::handle;
+            case "es-locking" -> new EventSourcedLockingAggregate<>(decider, SimulatedRepositories.lockingEvents(CounterCommand::key, CounterEvent::key, latency))::handle;
+            case "ss" -> new StateStoredAggregate<>(decider, SimulatedRepositories.states(CounterCommand::key, Counter::key, latency))::handle;
+            case "ss-locking" -> new StateStoredLockingAggregate<>(decider, SimulatedRepositories.lockingStates(CounterCommand::key, Counter::key, latency))::handle;
+            case "es-orchestrating" -> new EventSourcedOrchestratingAggregate<>(decider, saga, SimulatedRepositories.events(CounterCommand::key, CounterEvent::key, latency))::handle;
+            case "es-locking-orchestrating" -> new EventSourcedLockingOrchestratingAggregate<>(decider, saga, SimulatedRepositories.lockingEvents(CounterCommand::key, CounterEvent::key, latency))::handle;
+            case "ss-orchestrating" -> new StateStoredOrchestratingAggregate<>(decider, saga, SimulatedRepositories.states(CounterCommand::key, Counter::key, latency))::handle;
+            case "ss-locking-orchestrating" -> new StateStoredLockingOrchestratingAggregate<>(decider, saga, SimulatedRepositories.lockingStates(CounterCommand::key, Counter::key, latency))::handle;
+            default -> throw new IllegalArgumentException("Unknown aggregate: " + kind + ", expected one of " + AGGREGATES);
+        };
+    }
+
+    /**
+     * @param specification weighted command kinds, for example {@code add:90,multiply:10}
+     * @return picks a command kind by its weight, and creates the command for a key
+     */
+    static Function<SplittableRandom, Function<String, CounterCommand>> parseMix(String specification) {
+        var weights = new HashMap<String, Integer>();
+        for (var part : specification.split(",")) {
+            var pair = part.split(":");
+            weights.put(pair[0], Integer.parseInt(pair[1]));
+        }
+        var add = weights.getOrDefault("add", 0);
+        var total = add + weights.getOrDefault("multiply", 0);
+        if (total <= 0 || weights.keySet().stream().anyMatch(kind -> !kind.equals("add") && !kind.equals("multiply"))) {
+            throw new IllegalArgumentException("Expected positive weights of add and multiply, got: " + specification);
+        }
+        return random -> random.nextInt(total) < add
+                ? key -> new Add(key, 2L)
+                : key -> new Multiply(key, 3L);
+    }
+
+    private LoadGenerator() {
+    }
+}
@@ -0,0 +1,162 @@
+package com.fraktalio.fmodel.application.loadgen;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.IEventLockingRepository;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.IEventRepository;
+import com.fraktalio.fmodel.application.aggregate.statestored.IStateLockingRepository;
+import com.fraktalio.fmodel.application.aggregate.statestored.IStateRepository;
+import com.fraktalio.fmodel.application.aggregate.statestored.InMemoryStateLockingRepository;
+import com.fraktalio.fmodel.application.aggregate.statestored.InMemoryStateRepository;
+import com.fraktalio.fmodel.domain.Pair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * In-memory repositories of the {@link LoadGenerator}, with a simulated storage latency of every fetch and save
+ */
+final class SimulatedRepositories {
+    private SimulatedRepositories() {
+    }
+
+    /**
+     * The simulated round trip to the storage, in nanoseconds
+     */
+    record Latency(long fetchNanos, long saveNanos) {
+        void fetch() {
+            pause(fetchNanos);
+        }
+
+        void save() {
+            pause(saveNanos);
+        }
+
+        private static void pause(long nanos) {
+            if (nanos > 0) {
+                LockSupport.parkNanos(nanos);
+            }
+        }
+    }
+
+    static <C, E> IEventRepository<C, E> events(Function<? super C, String> commandKey, Function<? super E, String> eventKey, Latency latency) {
+        var streams = new ConcurrentHashMap<String, List<E>>();
+        return new IEventRepository<>() {
+            @Override
+            public List<E> fetchEvents(C command) {
+                latency.fetch();
+                return streams.getOrDefault(commandKey.apply(command), List.of());
+            }
+
+            @Override
+            public List<E> save(List<E> events) {
+                latency.save();
+                for (var event : events) {
+                    streams.compute(eventKey.apply(event), (key, stream) -> append(stream, event));
+                }
+                return events;
+            }
+        };
+    }
+
+    static <C, E> IEventLockingRepository<C, E, Long> lockingEvents(Function<? super C, String> commandKey, Function<? super E, String> eventKey, Latency latency) {
+        var streams = new ConcurrentHashMap<String, List<Pair<E, Long>>>();
+        return new IEventLockingRepository<>() {
+            @Override
+            public List<Pair<E, Long>> fetchEvents(C command) {
+                latency.fetch();
+                return streams.getOrDefault(commandKey.apply(command), List.of());
+            }
+
+            @Override
+            public List<Pair<E, Long>> save(List<E> events, Function<E, Long> versionProvider) {
+                latency.save();
+                var saved = new ArrayList<Pair<E, Long>>(events.size());
+                for (var event : events) {
+                    saved.addAll(append(event, versionProvider.apply(event)));
+                }
+                return saved;
+            }
+
+            @Override
+            public List<Pair<E, Long>> save(List<E> events, Long version) {
+                latency.save();
+                var saved = new ArrayList<Pair<E, Long>>(events.size());
+                var expected = version;
+                for (var event : events) {
+                    var appended = append(event, expected);
+                    saved.addAll(appended);
+                    expected = appended.getLast().second();
+                }
+                return saved;
+            }
+
+            @Override
+            public Function<E, Long> versionProvider() {
+                return event -> {
+                    var stream = streams.get(eventKey.apply(event));
+                    return stream == null || stream.isEmpty() ? null : stream.getLast().second();
+                };
+            }
+
+            private List<Pair<E, Long>> append(E event, Long expected) {
+                var key = eventKey.apply(event);
+                var stream = streams.compute(key, (k, current) -> {
+                    var actual = current == null || current.isEmpty() ? null : current.getLast().second();
+                    if (!Objects.equals(actual, expected)) {
+                        throw new OptimisticLockingException(k, expected, actual);
+                    }
+                    return SimulatedRepositories.append(current, new Pair<>(event, actual == null ? 1L : actual + 1));
+                });
+                return List.of(stream.getLast());
+            }
+        };
+    }
+
+    static <C, S> IStateRepository<C, S> states(Function<? super C, String> commandKey, Function<? super S, String> stateKey, Latency latency) {
+        var delegate = new InMemoryStateRepository<C, S, String>(commandKey, stateKey);
+        return new IStateRepository<>() {
+            @Override
+            public S fetchState(C command) {
+                latency.fetch();
+                return delegate.fetchState(command);
+            }
+
+            @Override
+            public S save(S newState) {
+                latency.save();
+                return delegate.save(newState);
+            }
+        };
+    }
+
+    static <C, S> IStateLockingRepository<C, S, Long> lockingStates(Function<? super C, String> commandKey, Function<? super S, String> stateKey, Latency latency) {
+        var delegate = new InMemoryStateLockingRepository<C, S, String>(commandKey, stateKey);
+        return new IStateLockingRepository<>() {
+            @Override
+            public Pair<S, Long> fetchState(C command) {
+                latency.fetch();
+                return delegate.fetchState(command);
+            }
+
+            @Override
+            public Pair<S, Long> save(Long currentStateVersion, S newState) {
+                latency.save();
+                return delegate.save(currentStateVersion, newState);
+            }
+        };
+    }
+
+    private static <T> List<T> append(List<T> stream, T element) {
+        var appended = new ArrayList<T>(stream == null ? 1 : stream.size() + 1);
+        if (stream != null) {
+            appended.addAll(stream);
+        }
+        appended.add(element);
+        return Collections.unmodifiableList(appended);
+    }
+}
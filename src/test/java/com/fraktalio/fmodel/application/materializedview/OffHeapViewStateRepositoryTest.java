@@ -0,0 +1,113 @@
+package com.fraktalio.fmodel.application.materializedview;
+
+import com.fraktalio.fmodel.application.OptimisticLockingException;
+import com.fraktalio.fmodel.application.codec.Codecs;
+import com.fraktalio.fmodel.domain.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapViewStateRepositoryTest {
+
+    record Counter(String id, long value, String note) {
+    }
+
+    @Test
+    void offHeapViewStateRepositoryTest() {
+        // The events are the keys of the states. A tiny initial capacity, and a chunk per (small) record
+        var repository = new OffHeapViewStateRepository<Counter, String, String>(
+                event -> event, Counter::id, key -> key.getBytes(StandardCharsets.UTF_8), Codecs.forClass(Counter.class), 4, 64);
+        var expected = new HashMap<String, Counter>();
+
+        // Growth past the initial capacity
+        for (var i = 0; i < 1_000; i++) {
+            var counter = new Counter("k" + i, i, "");
+            repository.save(counter);
+            expected.put(counter.id(), counter);
+        }
+        assertEquals(1_000, repository.size());
+        expected.forEach((key, counter) -> assertEquals(counter, repository.fetchState(key)));
+        assertNull(repository.fetchState("missing"));
+
+        // An update that fits is done in place
+        var reserved = repository.reservedBytes();
+        repository.save(new Counter("k1", 2, ""));
+        assertEquals(new Counter("k1", 2, ""), repository.fetchState("k1"));
+        assertEquals(reserved, repository.reservedBytes());
+
+        // An update that does not fit moves the record, and the old one is reused by the next small record
+        repository.save(new Counter("k0", 0, "x".repeat(200)));
+        reserved = repository.reservedBytes();
+        repository.save(new Counter("n0", 0, ""));
+        assertEquals(reserved, repository.reservedBytes());
+        assertEquals(new Counter("k0", 0, "x".repeat(200)), repository.fetchState("k0"));
+        assertTrue(repository.delete("n0"));
+
+        // Deletes keep the other keys of the probe sequences reachable, and free the records for reuse
+        IntStream.range(1, 500).forEach(i -> assertTrue(repository.delete("k" + (2 * i))));
+        assertFalse(repository.delete("k2"));
+        assertEquals(501, repository.size());
+        for (var i = 1; i < 1_000; i++) {
+            assertEquals(i % 2 == 0 ? null : new Counter("k" + i, i == 1 ? 2 : i, ""), repository.fetchState("k" + i));
+        }
+        reserved = repository.reservedBytes();
+        IntStream.range(1, 500).forEach(i -> repository.save(new Counter("n" + (2 * i), i, "")));
+        assertEquals(reserved, repository.reservedBytes());
+        assertEquals(1_000, repository.size());
+        assertEquals(new Counter("n998", 499, ""), repository.fetchState("n998"));
+
+        var visited = new HashMap<String, Counter>();
+        repository.forEach(counter -> visited.put(counter.id(), counter));
+        assertEquals(1_000, visited.size());
+
+        repository.close();
+        repository.close();
+        assertThrows(IllegalStateException.class, () -> repository.fetchState("k1"));
+        assertThrows(IllegalStateException.class, () -> repository.save(new Counter("k1", 3, "")));
+    }
+
+    @Test
+    void offHeapViewStateLockingRepositoryTest() {
+        var repository = new OffHeapViewStateLockingRepository<Counter, String, String>(
+                event -> event, Counter::id, key -> key.getBytes(StandardCharsets.UTF_8), Codecs.forClass(Counter.class), 4, 1024);
+
+        assertEquals(new Pair<Counter, Long>(null, null), repository.fetchState("a"));
+        repository.save(new Counter("a", 1, ""), 1L, null);
+        assertEquals(new Pair<>(new Counter("a", 1, ""), 1L), repository.fetchState("a"));
+        repository.save(new Counter("a", 2, ""), 2L, 1L);
+        assertEquals(new Pair<>(new Counter("a", 2, ""), 2L), repository.fetchState("a"));
+
+        // A stale version, and a new state of an existing key, conflict
+        var conflict = assertThrows(OptimisticLockingException.class, () -> repository.save(new Counter("a", 3, ""), 3L, 1L));
+        assertEquals(2L, conflict.actualVersion());
+        assertThrows(OptimisticLockingException.class, () -> repository.save(new Counter("a", 3, ""), 3L, null));
+
+        // A redelivered event is not applied again
+        assertEquals(new Counter("a", 2, ""), repository.save(new Counter("a", 99, ""), 2L, 2L));
+        assertEquals(new Pair<>(new Counter("a", 2, ""), 2L), repository.fetchState("a"));
+
+        // Growth past the initial capacity keeps the versions
+        IntStream.range(0, 100).forEach(i -> repository.save(new Counter("b" + i, i, "y".repeat(i)), 1L, null));
+        assertEquals(101, repository.size());
+        assertEquals(new Pair<>(new Counter("b99", 99, "y".repeat(99)), 1L), repository.fetchState("b99"));
+        assertEquals(new Pair<>(new Counter("a", 2, ""), 2L), repository.fetchState("a"));
+
+        // A deleted state starts over, with the version 1
+        assertTrue(repository.delete("a"));
+        assertEquals(new Pair<Counter, Long>(null, null), repository.fetchState("a"));
+        assertThrows(OptimisticLockingException.class, () -> repository.save(new Counter("a", 3, ""), 3L, 2L));
+        repository.save(new Counter("a", 3, ""), 3L, null);
+        assertEquals(new Pair<>(new Counter("a", 3, ""), 1L), repository.fetchState("a"));
+
+        repository.close();
+        assertThrows(IllegalStateException.class, () -> repository.fetchState("a"));
+    }
+}
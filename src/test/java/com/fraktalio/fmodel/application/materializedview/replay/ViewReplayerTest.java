@@ -0,0 +1,156 @@
+package com.fraktalio.fmodel.application.materializedview.replay;
+
+import com.fraktalio.fmodel.application.aggregate.eventsourced.log.MappedEventLockingRepository;
+import com.fraktalio.fmodel.application.codec.Codecs;
+import com.fraktalio.fmodel.application.materializedview.InMemoryViewStateRepository;
+import com.fraktalio.fmodel.application.materializedview.SwitchableViewStateRepository;
+import com.fraktalio.fmodel.domain.example.api.*;
+import com.fraktalio.fmodel.domain.view.IMonoidalView;
+import com.fraktalio.fmodel.domain.view.MonoidalView;
+import com.fraktalio.fmodel.domain.view.View;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static com.fraktalio.fmodel.application.materializedview.replay.ViewReplayer.DEFAULT_CHECKPOINT_PAGES;
+import static com.fraktalio.fmodel.application.materializedview.replay.ViewReplayer.DEFAULT_MAX_STATES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ViewReplayerTest {
+
+    record Total(Integer key, Integer sum) {
+    }
+
+    @Test
+    void viewReplayerTest() throws Exception {
+        // The sum of the added even numbers, per last digit
+        var view = new View<Total, Event>(
+                (s, e) -> e instanceof EvenNumberAddedEvent evt ? new Total(evt.value() % 10, s.sum() + evt.value()) : s,
+                () -> new Total(null, 0),
+                Set.of(EvenNumberAddedEvent.class)
+        );
+        var replayer = new ViewReplayer<Total, Event, Integer>(view, e -> ((EvenNumberAddedEvent) e).value() % 10, 4, 100, 2);
+
+        // Small segments, so the pages span many of them
+        try (var log = new MappedEventLockingRepository<Command, Event>(Files.createTempDirectory("fmodel-replay"), c -> "numbers", e -> "numbers", Codecs.forClass(Event.class), 4096, false)) {
+            for (var i = 0; i < 50; i++) {
+                List<Event> events = IntStream.range(i * 20, i * 20 + 20)
+                        .mapToObj(n -> n % 4 == 0 ? (Event) new OddNumberAddedEvent(n + 1) : new EvenNumberAddedEvent(2 * n))
+                        .toList();
+                log.save(events, log.versionProvider());
+            }
+
+            var live = new InMemoryViewStateRepository<Total, Event, Integer>(e -> ((EvenNumberAddedEvent) e).value() % 10, Total::key);
+            var active = new SwitchableViewStateRepository<>(live);
+
+            // Blue/green: rebuild into a shadow repository
+            var shadow = new InMemoryViewStateRepository<Total, Event, Integer>(e -> ((EvenNumberAddedEvent) e).value() % 10, Total::key);
+            var reported = new ArrayList<ReplayProgress>();
+            var progress = replayer.replay(log, 0L, shadow, reported::add);
+            assertEquals(1000, progress.events());
+            assertEquals(5, progress.keys());
+            assertEquals(5, progress.statesWritten());
+            assertEquals(11, reported.size());
+            assertTrue(progress.eventsPerSecond() > 0);
+            assertEquals(Integer.valueOf(expectedSum(0, 1000, 4)), shadow.fetchState(new EvenNumberAddedEvent(4)).sum());
+            assertEquals(Integer.valueOf(4), shadow.fetchState(new EvenNumberAddedEvent(4)).key());
+
+            // Catch up with the events appended after the rebuild, and switch
+            log.save(List.of(new EvenNumberAddedEvent(14), new OddNumberAddedEvent(1)), log.versionProvider());
+            var caughtUp = replayer.replay(log, progress.position(), shadow, p -> {
+            });
+            assertEquals(2, caughtUp.events());
+            assertEquals(Integer.valueOf(expectedSum(0, 1000, 4) + 14), shadow.fetchState(new EvenNumberAddedEvent(4)).sum());
+            assertEquals(0, replayer.replay(log, caughtUp.position(), shadow, p -> {
+            }).events());
+
+            assertSame(live, active.switchTo(shadow));
+            assertEquals(Integer.valueOf(expectedSum(0, 1000, 4) + 14), active.fetchState(new EvenNumberAddedEvent(4)).sum());
+        }
+    }
+
+    @Test
+    void checkpointTest() {
+        var view = new View<Total, Event>(
+                (s, e) -> e instanceof EvenNumberAddedEvent evt ? new Total(evt.value() % 10, s.sum() + evt.value()) : s,
+                () -> new Total(null, 0),
+                Set.of(EvenNumberAddedEvent.class)
+        );
+        Function<Event, Integer> key = e -> ((EvenNumberAddedEvent) e).value() % 10;
+        // The position of an event is its index
+        var source = IEventSource.<Event>of(IntStream.range(0, 1000)
+                .mapToObj(n -> n % 4 == 0 ? (Event) new OddNumberAddedEvent(n + 1) : new EvenNumberAddedEvent(2 * n))
+                .toList());
+
+        // A checkpoint every three pages: the reported position moves only once the states of the events before it are written
+        var target = new InMemoryViewStateRepository<Total, Event, Integer>(key, Total::key);
+        var positions = new ArrayList<Long>();
+        var progress = new ViewReplayer<Total, Event, Integer>(view, key, 4, 100, 2, 3, DEFAULT_MAX_STATES).replay(source, 0L, target, p -> {
+            positions.add(p.position());
+            for (var digit = 0; digit < 10; digit += 2) {
+                var state = target.fetchState(new EvenNumberAddedEvent(digit));
+                assertTrue((state != null ? state.sum() : 0) >= expectedSum(0, (int) p.position(), digit));
+            }
+        });
+        assertEquals(1000L, progress.position());
+        assertTrue(positions.stream().allMatch(position -> position % 300 == 0 || position == 1000));
+        assertTrue(progress.statesWritten() > 5);
+        assertEquals(Integer.valueOf(expectedSum(0, 1000, 4)), target.fetchState(new EvenNumberAddedEvent(4)).sum());
+
+        // A worker holding more than the max states takes a checkpoint, whatever the number of the pages (at the latest once the queue of the worker is full)
+        var bounded = new InMemoryViewStateRepository<Total, Event, Integer>(key, Total::key);
+        var boundedProgress = new ViewReplayer<Total, Event, Integer>(view, key, 1, 100, 2, DEFAULT_CHECKPOINT_PAGES, 1).replay(source, 0L, bounded, p -> {
+        });
+        assertTrue(boundedProgress.statesWritten() > 5);
+        assertEquals(Integer.valueOf(expectedSum(0, 1000, 4)), bounded.fetchState(new EvenNumberAddedEvent(4)).sum());
+    }
+
+    @Test
+    void monoidalViewReplayTest() throws Exception {
+        // The sum of the added even numbers, per last digit, merged by the parallel fold of the hot key
+        var merges = new LongAdder();
+        var view = new MonoidalView<Total, Event>(
+                new View<>(
+                        (s, e) -> e instanceof EvenNumberAddedEvent evt ? new Total(evt.value() % 10, s.sum() + evt.value()) : s,
+                        () -> new Total(null, 0),
+                        Set.of(EvenNumberAddedEvent.class)),
+                () -> new Total(null, 0),
+                (a, b) -> {
+                    merges.increment();
+                    return new Total(b.key() != null ? b.key() : a.key(), a.sum() + b.sum());
+                });
+        var replayer = new ViewReplayer<Total, Event, Integer>(view, e -> ((EvenNumberAddedEvent) e).value() % 10, 2, 2 * IMonoidalView.PARALLEL_FOLD_THRESHOLD, 2);
+
+        try (var log = new MappedEventLockingRepository<Command, Event>(Files.createTempDirectory("fmodel-replay"), c -> "numbers", e -> "numbers", Codecs.forClass(Event.class), 1 << 20, false)) {
+            // A hot key (the digit 0) with more events in a page than the parallel fold threshold, and a cold key (the digit 2)
+            for (var i = 0; i < 10; i++) {
+                List<Event> events = IntStream.range(i * 1_000, i * 1_000 + 1_000)
+                        .mapToObj(n -> (Event) new EvenNumberAddedEvent(n % 100 == 0 ? 2 : 10 * n))
+                        .toList();
+                log.save(events, log.versionProvider());
+            }
+
+            var target = new InMemoryViewStateRepository<Total, Event, Integer>(e -> ((EvenNumberAddedEvent) e).value() % 10, Total::key);
+            var progress = replayer.replay(log, 0L, target, p -> {
+            });
+            assertEquals(10_000, progress.events());
+            assertEquals(2, progress.keys());
+            assertTrue(merges.sum() > 0);
+            var hot = IntStream.range(0, 10_000).filter(n -> n % 100 != 0).map(n -> 10 * n).sum();
+            assertEquals(new Total(0, hot), target.fetchState(new EvenNumberAddedEvent(10)));
+            assertEquals(new Total(2, 200), target.fetchState(new EvenNumberAddedEvent(2)));
+        }
+    }
+
+    private static int expectedSum(int from, int to, int digit) {
+        return IntStream.range(from, to).filter(n -> n % 4 != 0).map(n -> 2 * n).filter(v -> v % 10 == digit).sum();
+    }
+}
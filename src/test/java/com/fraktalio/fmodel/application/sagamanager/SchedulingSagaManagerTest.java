@@ -0,0 +1,130 @@
+package com.fraktalio.fmodel.application.sagamanager;
+
+import com.fraktalio.fmodel.application.instrumentation.IProbe;
+import com.fraktalio.fmodel.application.sagamanager.timer.InMemoryTimerRepository;
+import com.fraktalio.fmodel.application.sagamanager.timer.TimingWheel;
+import com.fraktalio.fmodel.domain.example.api.*;
+import com.fraktalio.fmodel.domain.saga.Saga;
+import com.fraktalio.fmodel.domain.saga.TimedAction;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchedulingSagaManagerTest {
+
+    @Test
+    void timingWheelTest() {
+        var wheel = new TimingWheel<Integer, Long>(1, 0);
+        var random = new Random(42);
+        for (var i = 0; i < 100_000; i++) {
+            // spread over all the levels
+            wheel.schedule(i, (long) random.nextInt(1 << 24), 0);
+        }
+        for (var i = 0; i < 100_000; i++) {
+            var deadline = (long) random.nextInt(1 << 24);
+            wheel.schedule(i, deadline, deadline);
+        }
+        assertTrue(wheel.cancel(7));
+        assertFalse(wheel.cancel(7));
+
+        var now = new long[1];
+        var expired = new AtomicLong();
+        var last = new long[]{-1};
+        while (wheel.size() > 0) {
+            now[0] += 1 + random.nextInt(100_000);
+            wheel.advance(now[0], (key, deadline) -> {
+                // never early, and at most one advance late
+                assertTrue(deadline <= now[0]);
+                assertTrue(deadline >= last[0]);
+                expired.incrementAndGet();
+            });
+            last[0] = now[0];
+        }
+        assertEquals(99_999L, expired.get());
+    }
+
+    @Test
+    void schedulingSagaManagerTest() throws Exception {
+        var start = Instant.parse("2024-01-01T00:00:00Z");
+        // Payment timeouts: scheduled when a number is added, cancelled when it is multiplied
+        Saga<EvenEvent, TimedAction<OddCommand>> evenSaga = new Saga<>(
+                (ar) -> switch (ar) {
+                    case EvenNumberAddedEvent evt -> List.of(
+                            TimedAction.now(new AddOddNumberCommand(evt.value() + 1)),
+                            TimedAction.at("timeout-" + evt.value(), new MultiplyOddNumberCommand(evt.value() + 1), start.plus(Duration.ofMinutes(evt.value())))
+                    );
+                    case EvenNumberMultipliedEvent evt -> List.of(TimedAction.cancel("timeout-" + evt.value()));
+                    case null -> List.of();
+                }
+        );
+        var millis = new AtomicLong(start.toEpochMilli());
+        var clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(millis.get());
+            }
+        };
+        var published = new ArrayList<OddCommand>();
+        IActionPublisher<OddCommand> publisher = actions -> {
+            synchronized (published) {
+                published.addAll(actions);
+            }
+            return actions;
+        };
+        var repository = new InMemoryTimerRepository<OddCommand>();
+
+        try (var sagaManager = new SchedulingSagaManager<>(evenSaga, publisher, repository, IProbe.NOOP, clock, Duration.ofMillis(1), Thread.ofPlatform().daemon().factory())) {
+            sagaManager.handle(new EvenNumberAddedEvent(2));
+            sagaManager.handle(new EvenNumberAddedEvent(4));
+            sagaManager.handle(new EvenNumberMultipliedEvent(4));
+            synchronized (published) {
+                assertEquals(List.of(new AddOddNumberCommand(3), new AddOddNumberCommand(5)), published);
+            }
+            assertEquals(1, repository.fetchAll().size());
+
+            millis.addAndGet(Duration.ofMinutes(3).toMillis());
+            while (sagaManager.fired() < 1) {
+                Thread.sleep(1);
+            }
+            synchronized (published) {
+                assertEquals(new MultiplyOddNumberCommand(3), published.get(2));
+            }
+            assertEquals(0, repository.fetchAll().size());
+
+            // Survives a restart: scheduled, and the process goes down before the deadline
+            sagaManager.handle(new EvenNumberAddedEvent(6));
+        }
+        try (var sagaManager = new SchedulingSagaManager<>(evenSaga, publisher, repository, IProbe.NOOP, clock, Duration.ofMillis(1), Thread.ofPlatform().daemon().factory())) {
+            assertEquals(1, sagaManager.pending());
+            millis.addAndGet(Duration.ofMinutes(3).toMillis());
+            while (sagaManager.fired() < 1) {
+                Thread.sleep(1);
+            }
+            synchronized (published) {
+                assertEquals(new MultiplyOddNumberCommand(7), published.getLast());
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.fraktalio.fmodel.application.sagamanager.outbox;
+
+import com.fraktalio.fmodel.application.codec.ICodec;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileOutboxTest {
+
+    private static final ICodec<String> CODEC = ICodec.of(s -> s.getBytes(StandardCharsets.UTF_8), buffer -> StandardCharsets.UTF_8.decode(buffer).toString());
+
+    @Test
+    void compactionTest() throws Exception {
+        var file = Files.createTempDirectory("fmodel-outbox").resolve("outbox.log");
+        var large = "x".repeat(200_000);
+        try (var outbox = new FileOutbox<>(file, CODEC, true, 4096)) {
+            // concurrent appends share the fsyncs
+            var appends = IntStream.range(0, 8)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(() -> outbox.append(IntStream.range(0, 50).mapToObj(j -> "action-" + j).toList())))
+                    .toList();
+            appends.forEach(CompletableFuture::join);
+            assertEquals(400, outbox.fetch(1000).size());
+            // a record larger than the recovery buffer
+            outbox.append(List.of(large));
+
+            // the file is over the threshold with live entries: it is rewritten without the acknowledged ones
+            var acknowledged = new ArrayList<Long>();
+            for (var entry : outbox.fetch(390)) {
+                acknowledged.add(entry.id());
+            }
+            outbox.acknowledge(acknowledged);
+            assertEquals(11, outbox.size());
+            assertTrue(Files.size(file) < 4096 + large.length());
+        }
+
+        // a torn tail is dropped, the rest is recovered
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 1}));
+        }
+        try (var outbox = new FileOutbox<>(file, CODEC, true, 4096)) {
+            var entries = outbox.fetch(100);
+            assertEquals(11, entries.size());
+            assertEquals(390L, entries.get(0).id());
+            assertEquals(large, entries.getLast().action());
+            assertEquals(401L, outbox.append(List.of("next")).get(0).id());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.fraktalio.fmodel.application.sagamanager.outbox;
+
+import com.fraktalio.fmodel.application.codec.Codecs;
+import com.fraktalio.fmodel.application.sagamanager.SagaManager;
+import com.fraktalio.fmodel.domain.example.api.*;
+import com.fraktalio.fmodel.domain.saga.Saga;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxDispatcherTest {
+
+    @Test
+    void outboxDispatcherTest() throws Exception {
+        Saga<EvenEvent, OddCommand> evenSaga = new Saga<>(
+                (ar) -> switch (ar) {
+                    case EvenNumberAddedEvent evt -> List.of(new AddOddNumberCommand(evt.value() + 1));
+                    case EvenNumberMultipliedEvent evt -> List.of(new MultiplyOddNumberCommand(evt.value() + 1));
+                    case null -> List.of();
+                }
+        );
+        var file = Files.createTempDirectory("fmodel-outbox").resolve("outbox.log");
+        var codec = Codecs.forClass(OddCommand.class);
+
+        // Outbox mode: handling only appends the actions to the outbox
+        try (var outbox = new FileOutbox<>(file, codec, true, 0)) {
+            var sagaManager = new SagaManager<>(evenSaga, new OutboxActionPublisher<>(outbox));
+            assertEquals(List.of(new AddOddNumberCommand(3)), sagaManager.handle(new EvenNumberAddedEvent(2)));
+            sagaManager.handle(new EvenNumberMultipliedEvent(4));
+            sagaManager.handle(new EvenNumberAddedEvent(6));
+            sagaManager.handle(new EvenNumberMultipliedEvent(8));
+            assertEquals(4, outbox.size());
+        }
+
+        // Recovered from the file; the first publishing of the multiplications fails and is retried, the additions are not held back
+        var published = new ArrayList<OutboxEntry<OddCommand>>();
+        var failMultiplication = new AtomicBoolean(true);
+        IOutboxPublisher<OddCommand> publisher = entries -> {
+            if (entries.get(0).action() instanceof MultiplyOddNumberCommand && failMultiplication.getAndSet(false)) {
+                throw new IllegalStateException("downstream is not available");
+            }
+            synchronized (published) {
+                published.addAll(entries);
+            }
+        };
+        try (var outbox = new FileOutbox<>(file, codec, true, 0)) {
+            assertEquals(4, outbox.size());
+            try (var dispatcher = new OutboxDispatcher<>(outbox, publisher, action -> action.getClass(), 100, Duration.ofMillis(1), Duration.ofMillis(10), Thread.ofPlatform().daemon().factory())) {
+                while (dispatcher.published() < 4) {
+                    Thread.sleep(1);
+                }
+                assertEquals(1L, dispatcher.failures());
+            }
+            assertEquals(0, outbox.size());
+            synchronized (published) {
+                assertEquals(List.of(
+                        new OutboxEntry<OddCommand>(0, new AddOddNumberCommand(3)),
+                        new OutboxEntry<OddCommand>(2, new AddOddNumberCommand(7)),
+                        new OutboxEntry<OddCommand>(1, new MultiplyOddNumberCommand(5)),
+                        new OutboxEntry<OddCommand>(3, new MultiplyOddNumberCommand(9))
+                ), published);
+            }
+        }
+
+        // Compacted once drained: the ids are not reused
+        try (var outbox = new FileOutbox<>(file, codec, true, 0)) {
+            assertEquals(0, outbox.size());
+            assertTrue(Files.size(file) < 64);
+            assertEquals(4L, outbox.append(List.of(new AddOddNumberCommand(11))).get(0).id());
+        }
+    }
+
+    @Test
+    void poisonedKeyTest() throws Exception {
+        // A key that always fails, with more entries than a batch, ahead of the entries of the other keys
+        var outbox = new InMemoryOutbox<OddCommand>();
+        outbox.append(IntStream.range(0, 25).mapToObj(i -> (OddCommand) new MultiplyOddNumberCommand(i)).toList());
+        outbox.append(IntStream.range(0, 5).mapToObj(i -> (OddCommand) new AddOddNumberCommand(i)).toList());
+        var published = new ArrayList<OutboxEntry<OddCommand>>();
+        IOutboxPublisher<OddCommand> publisher = entries -> {
+            if (entries.get(0).action() instanceof MultiplyOddNumberCommand) {
+                throw new IllegalStateException("poisoned");
+            }
+            synchronized (published) {
+                published.addAll(entries);
+            }
+        };
+
+        try (var dispatcher = new OutboxDispatcher<>(outbox, publisher, action -> action.getClass(), 10, Duration.ofMillis(1), Duration.ofMillis(50), Thread.ofPlatform().daemon().factory())) {
+            var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (dispatcher.published() < 5 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(5L, dispatcher.published());
+            assertTrue(dispatcher.failures() >= 1);
+        }
+        assertEquals(25, outbox.size());
+        synchronized (published) {
+            assertEquals(IntStream.range(0, 5).mapToObj(i -> new OutboxEntry<OddCommand>(25 + i, new AddOddNumberCommand(i))).toList(), published);
+        }
+        assertEquals(List.of(new OutboxEntry<OddCommand>(24, new MultiplyOddNumberCommand(24))), outbox.fetch(2, 23));
+    }
+}
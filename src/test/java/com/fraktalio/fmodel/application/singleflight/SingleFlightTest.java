@@ -0,0 +1,78 @@
+package com.fraktalio.fmodel.application.singleflight;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallsOfTheSameKeyShareOneCall() {
+        var singleFlight = new SingleFlight<String, Integer>();
+        var calls = new AtomicInteger();
+        var backend = new CompletableFuture<Integer>();
+
+        var first = singleFlight.executeAsync("a", () -> {
+            calls.incrementAndGet();
+            return backend;
+        });
+        var second = singleFlight.executeAsync("a", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(-1);
+        });
+        var other = singleFlight.executeAsync("b", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(2);
+        });
+        backend.complete(1);
+
+        assertEquals(Integer.valueOf(1), first.join());
+        assertEquals(Integer.valueOf(1), second.join());
+        assertEquals(Integer.valueOf(2), other.join());
+        assertEquals(2, calls.get());
+        assertEquals(1, singleFlight.shared());
+
+        // a completed call is not cached
+        assertEquals(Integer.valueOf(3), singleFlight.execute("a", () -> 3));
+    }
+
+    @Test
+    void invalidatedCallIsNotShared() {
+        var singleFlight = new SingleFlight<String, Integer>();
+        var stale = new CompletableFuture<Integer>();
+
+        var beforeSave = singleFlight.executeAsync("a", () -> stale);
+        singleFlight.invalidate("a");
+        var afterSave = singleFlight.executeAsync("a", () -> CompletableFuture.completedFuture(2));
+        stale.complete(1);
+
+        assertEquals(Integer.valueOf(1), beforeSave.join());
+        assertEquals(Integer.valueOf(2), afterSave.join());
+        assertEquals(0, singleFlight.shared());
+    }
+
+    @Test
+    void invalidationDetachesAllTheVariantsOfTheKey() {
+        var singleFlight = new SingleFlight<String, Integer>();
+        var stale = new CompletableFuture<Integer>();
+        var staleVariant = new CompletableFuture<Integer>();
+
+        var beforeSave = singleFlight.executeAsync("a", "all", () -> stale);
+        var variantBeforeSave = singleFlight.executeAsync("a", "some", () -> staleVariant);
+        assertEquals(0, singleFlight.shared());
+        singleFlight.invalidate("a");
+        var afterSave = singleFlight.executeAsync("a", "all", () -> CompletableFuture.completedFuture(2));
+        var variantAfterSave = singleFlight.executeAsync("a", "some", () -> CompletableFuture.completedFuture(3));
+        stale.complete(1);
+        staleVariant.complete(1);
+
+        assertEquals(Integer.valueOf(1), beforeSave.join());
+        assertEquals(Integer.valueOf(1), variantBeforeSave.join());
+        assertEquals(Integer.valueOf(2), afterSave.join());
+        assertEquals(Integer.valueOf(3), variantAfterSave.join());
+        assertEquals(0, singleFlight.shared());
+    }
+}
@@ -0,0 +1,177 @@
+package com.fraktalio.fmodel.domain.collections;
+
+import com.fraktalio.fmodel.domain.view.View;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.fraktalio.fmodel.dsl.ViewDSL.givenEvents;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentCollectionsTest {
+
+    /**
+     * A key with a few hash codes only, so that the keys collide all the way down the trie
+     */
+    record Sku(int id) {
+        @Override
+        public int hashCode() {
+            return id % 3;
+        }
+    }
+
+    @Test
+    void persistentMapTest() {
+        var random = new Random(42);
+        var expected = new HashMap<Object, Integer>();
+        var map = PersistentMap.<Object, Integer>empty();
+        var versions = new ArrayList<PersistentMap<Object, Integer>>();
+        var snapshots = new ArrayList<HashMap<Object, Integer>>();
+        for (var i = 0; i < 50_000; i++) {
+            Object key = random.nextInt(10) == 0 ? new Sku(random.nextInt(30)) : random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                map = map.without(key);
+                expected.remove(key);
+            } else {
+                map = map.with(key, i);
+                expected.put(key, i);
+            }
+            if (i % 5_000 == 0) {
+                versions.add(map);
+                snapshots.add(new HashMap<>(expected));
+            }
+        }
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        // the old versions are not changed
+        for (var i = 0; i < versions.size(); i++) {
+            assertEquals(snapshots.get(i), versions.get(i));
+        }
+
+        var builder = map.toBuilder();
+        expected.keySet().stream().filter(key -> key instanceof Integer).toList().forEach(builder::remove);
+        builder.put(new Sku(1), -1).put(-1, -1);
+        var built = builder.build();
+        assertThrows(IllegalStateException.class, () -> builder.put(1, 1));
+        assertEquals(expected, map);
+        var remaining = new HashMap<>(expected);
+        remaining.keySet().removeIf(key -> key instanceof Integer);
+        remaining.put(new Sku(1), -1);
+        remaining.put(-1, -1);
+        assertEquals(remaining, built);
+        assertEquals(PersistentMap.empty(), built.keySet().stream().reduce(built, PersistentMap::without, (m1, m2) -> m1));
+    }
+
+    @Test
+    void persistentVectorTest() {
+        var random = new Random(42);
+        var expected = new ArrayList<Integer>();
+        var vector = PersistentVector.<Integer>empty();
+        for (var i = 0; i < 40_000; i++) {
+            vector = vector.append(i);
+            expected.add(i);
+        }
+        var full = vector;
+        for (var i = 0; i < 10_000; i++) {
+            var index = random.nextInt(expected.size());
+            vector = vector.with(index, -i);
+            expected.set(index, -i);
+        }
+        for (var i = 0; i < 39_000; i++) {
+            vector = vector.dropLast();
+            expected.removeLast();
+        }
+        assertEquals(expected, vector);
+        assertEquals(IntStream.range(0, 40_000).boxed().toList(), full);
+
+        var built = vector.toBuilder().addAll(IntStream.range(0, 70_000).boxed().toList()).set(0, 7).build();
+        expected.addAll(IntStream.range(0, 70_000).boxed().toList());
+        expected.set(0, 7);
+        assertEquals(expected, built);
+        assertEquals(expected.size(), built.size());
+        assertEquals(List.of(), PersistentVector.of(List.of(1)).dropLast());
+        assertThrows(IllegalStateException.class, () -> PersistentVector.empty().dropLast());
+    }
+
+    @Test
+    void persistentSortedSetTest() {
+        var random = new Random(42);
+        var expected = new TreeSet<Integer>(Comparator.reverseOrder());
+        var set = PersistentSortedSet.<Integer>empty(Comparator.reverseOrder());
+        for (var i = 0; i < 50_000; i++) {
+            var element = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                set = set.without(element);
+                expected.remove(element);
+            } else {
+                set = set.with(element);
+                expected.add(element);
+            }
+        }
+        assertEquals(expected, set);
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        assertEquals(expected.first(), set.first());
+        assertEquals(expected.last(), set.last());
+        assertTrue(set.contains(expected.first()));
+
+        var builder = set.toBuilder();
+        expected.stream().filter(element -> element % 2 == 0).toList().forEach(builder::remove);
+        var built = builder.add(-2).build();
+        assertEquals(expected, set);
+        assertEquals(expected.stream().filter(element -> element % 2 != 0).count() + 1, built.size());
+        assertEquals(Integer.valueOf(-2), built.last());
+        assertEquals(List.of(1, 2, 3), new ArrayList<>(PersistentSortedSet.of(List.of(3, 1, 2, 1))));
+    }
+
+    @Test
+    void ropeTest() {
+        var expected = new ArrayList<Integer>();
+        List<Integer> rope = List.of();
+        for (var i = 0; i < 10_000; i++) {
+            // deeper than MAX_DEPTH, as the orchestrating aggregates append
+            rope = Rope.concat(rope, List.of(i, -i));
+            expected.addAll(List.of(i, -i));
+        }
+        assertEquals(expected, rope);
+        assertEquals(expected.get(7_777), rope.get(7_777));
+        assertThrows(UnsupportedOperationException.class, () -> Rope.concat(List.of(1), List.of(2)).add(3));
+
+        var mappings = new AtomicInteger();
+        var mapped = Rope.map(Rope.concat(List.of(1, 2), List.of(3)), element -> {
+            mappings.incrementAndGet();
+            return element * 10;
+        });
+        assertEquals(0, mappings.get());
+        assertEquals(List.of(10, 20, 30), mapped);
+        assertEquals(Integer.valueOf(30), mapped.get(2));
+        // mapped once, on the first read
+        assertEquals(3, mappings.get());
+        assertEquals(List.of(10, 20, 30, 4), Rope.concat(mapped, List.of(4)));
+    }
+
+    @Test
+    void inventoryViewTest() {
+        record Restocked(String sku, int quantity) {
+        }
+        View<PersistentMap<String, Integer>, Restocked> inventoryView = new View<>(
+                (s, e) -> s.with(e.sku(), s.getOrDefault(e.sku(), 0) + e.quantity()),
+                PersistentMap::empty
+        );
+        var events = IntStream.range(0, 40_000).mapToObj(i -> new Restocked("sku-" + i % 20_000, 1)).toList();
+        var expected = PersistentMap.<String, Integer>empty().toBuilder();
+        IntStream.range(0, 20_000).forEach(i -> expected.put("sku-" + i, 2));
+
+        givenEvents(inventoryView, events)
+                .thenState(expected.build());
+    }
+}
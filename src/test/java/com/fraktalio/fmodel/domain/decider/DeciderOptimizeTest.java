@@ -0,0 +1,43 @@
+package com.fraktalio.fmodel.domain.decider;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DeciderOptimizeTest {
+
+    @Test
+    void optimizeFlattensTheMappingsTest() {
+        BiFunction<Integer, Integer, List<Integer>> decide = (c, s) -> List.of(s + c, s * c);
+        var decider = new Decider<Integer, Integer, Integer>(decide, Integer::sum, () -> 1);
+        // Mapped several times: every mapping wraps the previous decide
+        var mapped = decider;
+        for (var i = 0; i < 5; i++) {
+            mapped = mapped
+                    .<Integer>contraMapCommand(c -> c + 1)
+                    .<Integer>dimapState(s -> s * 2, s -> s - 1)
+                    .<Integer>dimapEvent(e -> e + 3, e -> e * 10);
+        }
+
+        // A single mapping over the original decide, with a flat chain of the mappings per slot
+        var optimized = mapped.optimize();
+        var fused = assertInstanceOf(_Decider.MappedDecide.class, optimized.decide());
+        assertSame(decide, fused.decide());
+        assertEquals(5, assertInstanceOf(_Decider.Chain.class, fused.command()).steps().size());
+        assertEquals(5, assertInstanceOf(_Decider.Chain.class, fused.state()).steps().size());
+        assertEquals(5, assertInstanceOf(_Decider.Chain.class, fused.event()).steps().size());
+
+        for (var command = -3; command <= 3; command++) {
+            for (var state = -3; state <= 3; state++) {
+                assertEquals(mapped.decide().apply(command, state), optimized.decide().apply(command, state));
+                assertEquals(mapped.evolve().apply(state, command), optimized.evolve().apply(state, command));
+            }
+        }
+        assertEquals(mapped.initialState().get(), optimized.initialState().get());
+    }
+}
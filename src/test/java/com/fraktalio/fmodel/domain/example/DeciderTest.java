@@ -5,10 +5,13 @@ import com.fraktalio.fmodel.domain.decider.Decider;
 import com.fraktalio.fmodel.domain.example.api.*;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.List;
 
 import static com.fraktalio.fmodel.dsl.DeciderDSL.givenEvents;
 import static com.fraktalio.fmodel.dsl.DeciderDSL.givenState;
+import static java.util.function.Function.identity;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class DeciderTest {
 
@@ -39,20 +42,7 @@ class DeciderTest {
                 () -> oddState
         );
 
-        Decider<? super EvenCommand, EvenNumberState, EvenEvent> evenDecider = new Decider<>(
-                (c, s) -> switch (c) {
-                    case AddEvenNumberCommand cmd -> List.of(new EvenNumberAddedEvent(s.value() + cmd.value()));
-                    case MultiplyEvenNumberCommand cmd ->
-                            List.of(new EvenNumberMultipliedEvent(s.value() * cmd.value()));
-                    case null -> List.of();
-                },
-                (s, e) -> switch (e) {
-                    case EvenNumberAddedEvent evt -> new EvenNumberState(evt.value());
-                    case EvenNumberMultipliedEvent evt -> new EvenNumberState(evt.value());
-                    case null -> s;
-                },
-                () -> evenState
-        );
+        var evenDecider = evenDecider();
 
         // Combining two deciders into one
         Decider<Command, Pair<EvenNumberState, OddNumberState>, Event> _decider = Decider.combine(
@@ -81,7 +71,8 @@ class DeciderTest {
         // Even decider: given evenState + addEvenNumberCommand -> then evenNumberAddedEvent
         givenState(evenDecider, evenState)
                 .whenCommand(addEvenNumberCommand)
-                .thenState(new EvenNumberState(2));
+                .thenState(new EvenNumberState(2))
+                .thenAllocatesAtMost(4 * 1024);
 
         givenEvents(evenDecider, List.of())
                 .whenCommand(addEvenNumberCommand)
@@ -101,5 +92,45 @@ class DeciderTest {
         givenState(decider, state)
                 .whenCommand(addEvenNumberCommand)
                 .thenState(new NumberState(new EvenNumberState(2), new OddNumberState(0)));
+
+        // Optimized (fused) combined decider behaves the same
+        var optimizedDecider = decider.optimize();
+        givenEvents(optimizedDecider, List.of(oddNumberAddedEvent))
+                .whenCommand(addOddNumberCommand)
+                .thenEvents(List.of(new OddNumberAddedEvent(2)));
+
+        givenState(optimizedDecider, state)
+                .whenCommand(addEvenNumberCommand)
+                .thenState(new NumberState(new EvenNumberState(2), new OddNumberState(0)));
+
+        // Identity mappings are dropped
+        assertSame(evenDecider.evolve(), evenDecider.dimapState(identity(), identity()).optimize().evolve());
+        assertSame(evenDecider.decide(), evenDecider.contraMapCommand(identity()).dimapState(identity(), identity()).optimize().decide());
+    }
+
+    @Test
+    void deciderTimeBudgetTest() {
+        // A wall-clock budget, generous enough for a loaded machine: it catches the regressions of an order of magnitude only
+        givenState(evenDecider(), new EvenNumberState(0))
+                .whenCommand(new AddEvenNumberCommand(2))
+                .thenState(new EvenNumberState(2))
+                .thenTakesAtMost(Duration.ofMillis(100));
+    }
+
+    private static Decider<? super EvenCommand, EvenNumberState, EvenEvent> evenDecider() {
+        return new Decider<>(
+                (c, s) -> switch (c) {
+                    case AddEvenNumberCommand cmd -> List.of(new EvenNumberAddedEvent(s.value() + cmd.value()));
+                    case MultiplyEvenNumberCommand cmd ->
+                            List.of(new EvenNumberMultipliedEvent(s.value() * cmd.value()));
+                    case null -> List.of();
+                },
+                (s, e) -> switch (e) {
+                    case EvenNumberAddedEvent evt -> new EvenNumberState(evt.value());
+                    case EvenNumberMultipliedEvent evt -> new EvenNumberState(evt.value());
+                    case null -> s;
+                },
+                () -> new EvenNumberState(0)
+        );
     }
 }
@@ -0,0 +1,95 @@
+package com.fraktalio.fmodel.domain.example;
+
+import com.fraktalio.fmodel.application.aggregate.eventsourced.EventSourcedAggregate;
+import com.fraktalio.fmodel.application.aggregate.eventsourced.IEventRepository;
+import com.fraktalio.fmodel.domain.Pair;
+import com.fraktalio.fmodel.domain.decider.Decider;
+import com.fraktalio.fmodel.domain.decider.MonoidalDecider;
+import com.fraktalio.fmodel.domain.example.api.*;
+import com.fraktalio.fmodel.domain.view.MonoidalView;
+import com.fraktalio.fmodel.domain.view.View;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MonoidalDeciderTest {
+
+    @Test
+    void monoidalDeciderTest() {
+        // A counter: the sum of all the added even numbers
+        MonoidalDecider<EvenCommand, EvenNumberState, EvenEvent> evenCounter = new MonoidalDecider<>(
+                new Decider<>(
+                        (c, s) -> switch (c) {
+                            case AddEvenNumberCommand cmd -> List.of(new EvenNumberAddedEvent(cmd.value()));
+                            case MultiplyEvenNumberCommand cmd -> List.of(new EvenNumberMultipliedEvent(s.value() * cmd.value()));
+                            case null -> List.of();
+                        },
+                        (s, e) -> e instanceof EvenNumberAddedEvent evt ? new EvenNumberState(s.value() + evt.value()) : s,
+                        () -> new EvenNumberState(100)
+                ),
+                () -> new EvenNumberState(0),
+                (s1, s2) -> new EvenNumberState(s1.value() + s2.value())
+        );
+        // A maximum of all the added odd numbers
+        MonoidalDecider<OddCommand, OddNumberState, OddEvent> oddMaximum = new MonoidalDecider<>(
+                new Decider<>(
+                        (c, s) -> List.of(),
+                        (s, e) -> e instanceof OddNumberAddedEvent evt ? new OddNumberState(Math.max(s.value(), evt.value())) : s,
+                        () -> new OddNumberState(Integer.MIN_VALUE)
+                ),
+                () -> new OddNumberState(Integer.MIN_VALUE),
+                (s1, s2) -> new OddNumberState(Math.max(s1.value(), s2.value()))
+        );
+        var decider = MonoidalDecider.combine(
+                evenCounter, EvenCommand.class, EvenEvent.class,
+                oddMaximum, OddCommand.class, OddEvent.class);
+
+        List<Event> history = IntStream.range(0, 100_000)
+                .mapToObj(i -> i % 2 == 0 ? (Event) new EvenNumberAddedEvent(2) : new OddNumberAddedEvent(i))
+                .toList();
+
+        // The parallel fold gives the same state as the sequential one
+        var sequential = history.stream().reduce(decider.initialState().get(), (s, e) -> decider.evolve().apply(s, e), (s, s2) -> s);
+        assertEquals(new Pair<>(new EvenNumberState(100_100), new OddNumberState(99_999)), sequential);
+        assertEquals(sequential, decider.fold(history.stream(), history.size()));
+        assertEquals(new Pair<>(new EvenNumberState(110), new OddNumberState(9)), decider.fold(history.subList(0, 10).stream(), 10));
+
+        // The aggregate folds the history of a monoidal decider in parallel
+        var aggregate = new EventSourcedAggregate<>(decider, new IEventRepository<Command, Event>() {
+            @Override
+            public List<Event> fetchEvents(Command command) {
+                return history;
+            }
+
+            @Override
+            public List<Event> save(List<Event> events) {
+                return events;
+            }
+        });
+        assertEquals(List.of(new EvenNumberMultipliedEvent(200_200)), aggregate.handle(new MultiplyEvenNumberCommand(2)));
+
+        // A monoidal view: the set of all the odd numbers below 10
+        var oddNumbers = new MonoidalView<List<Integer>, OddEvent>(
+                new View<>(
+                        (s, e) -> e instanceof OddNumberAddedEvent evt && evt.value() < 10 ? union(s, List.of(evt.value())) : s,
+                        List::of
+                ),
+                List::of,
+                MonoidalDeciderTest::union
+        );
+        var oddHistory = history.stream().filter(OddEvent.class::isInstance).map(OddEvent.class::cast).toList();
+        assertEquals(List.of(1, 3, 5, 7, 9), oddNumbers.fold(null, oddHistory.stream(), oddHistory.size()));
+        assertEquals(List.of(0, 1, 3, 5, 7, 9), oddNumbers.fold(List.of(0), oddHistory.stream(), oddHistory.size()));
+    }
+
+    private static List<Integer> union(List<Integer> first, List<Integer> second) {
+        var union = new ArrayList<>(first);
+        second.stream().filter(it -> !union.contains(it)).forEach(union::add);
+        union.sort(Integer::compare);
+        return List.copyOf(union);
+    }
+}
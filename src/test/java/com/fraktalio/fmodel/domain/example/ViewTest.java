@@ -5,9 +5,13 @@ import com.fraktalio.fmodel.domain.example.api.*;
 import com.fraktalio.fmodel.domain.view.View;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static com.fraktalio.fmodel.dsl.ViewDSL.givenEvents;
+import static java.util.function.Function.identity;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class ViewTest {
     @Test
@@ -29,14 +33,7 @@ class ViewTest {
                 () -> oddState
         );
 
-        View<EvenNumberState, ? super EvenEvent> evenView = new View<>(
-                (s, e) -> switch (e) {
-                    case EvenNumberAddedEvent evt -> new EvenNumberState(evt.value());
-                    case EvenNumberMultipliedEvent evt -> new EvenNumberState(evt.value());
-                    case null -> s;
-                },
-                () -> evenState
-        );
+        var evenView = evenView();
 
         // Combining two views into one
         View<Pair<EvenNumberState, OddNumberState>, ? super Event> _view = View.combine(
@@ -63,6 +60,40 @@ class ViewTest {
 
         givenEvents(view, List.of(evenNumberAddedEvent))
                 .thenState(new NumberState(new EvenNumberState(2), new OddNumberState(0)));
+
+        // Folding 10k events, within the allocation budget
+        givenEvents(evenView, List.copyOf(evenEvents(10_000)))
+                .thenState(new EvenNumberState(20_000))
+                .thenAllocatesAtMost(1024 * 1024);
+
+        // Optimized (fused) combined view behaves the same
+        givenEvents(view.optimize(), List.of(evenNumberAddedEvent, oddNumberAddedEvent))
+                .thenState(new NumberState(new EvenNumberState(2), new OddNumberState(1)));
+
+        // Identity mappings are dropped
+        assertSame(evenView.evolveView(), evenView.dimapState(identity(), identity()).optimize().evolveView());
     }
-}
 
+    @Test
+    void viewTimeBudgetTest() {
+        // A wall-clock budget, generous enough for a loaded machine: it catches the regressions of an order of magnitude only
+        givenEvents(evenView(), List.copyOf(evenEvents(10_000)))
+                .thenState(new EvenNumberState(20_000))
+                .thenTakesAtMost(Duration.ofMillis(500));
+    }
+
+    private static View<EvenNumberState, ? super EvenEvent> evenView() {
+        return new View<>(
+                (s, e) -> switch (e) {
+                    case EvenNumberAddedEvent evt -> new EvenNumberState(evt.value());
+                    case EvenNumberMultipliedEvent evt -> new EvenNumberState(evt.value());
+                    case null -> s;
+                },
+                () -> new EvenNumberState(0)
+        );
+    }
+
+    private static List<EvenNumberAddedEvent> evenEvents(int count) {
+        return IntStream.rangeClosed(1, count).mapToObj(i -> new EvenNumberAddedEvent(2 * i)).toList();
+    }
+}
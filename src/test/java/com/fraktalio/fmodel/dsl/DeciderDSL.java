@@ -3,9 +3,11 @@ package com.fraktalio.fmodel.dsl;
 
 import com.fraktalio.fmodel.domain.decider.IDecider;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
@@ -50,22 +52,50 @@ public final class DeciderDSL {
         }
 
         public WhenEventsBuilder<C, S, E> whenCommand(C command) {
-            var currentState = priorEvents.stream().reduce(decider.initialState().get(), (s, e) -> decider.evolve().apply(s, e), (s, s2) -> s);
-
-            List<E> decided = decider.decide().apply(command, currentState);
-            return new WhenEventsBuilder<>(decided);
+            Supplier<List<E>> handling = () -> {
+                var currentState = priorEvents.stream().reduce(decider.initialState().get(), (s, e) -> decider.evolve().apply(s, e), (s, s2) -> s);
+                return decider.decide().apply(command, currentState);
+            };
+            return new WhenEventsBuilder<>(handling);
         }
     }
 
     public static class WhenEventsBuilder<C, S, E> {
         private final List<E> actualEvents;
+        private final Supplier<List<E>> handling;
+        private Measurement measurement;
 
-        WhenEventsBuilder(List<E> actualEvents) {
-            this.actualEvents = new ArrayList<>(actualEvents);
+        WhenEventsBuilder(Supplier<List<E>> handling) {
+            this.actualEvents = new ArrayList<>(handling.get());
+            this.handling = handling;
         }
 
-        public void thenEvents(List<E> expected) {
+        public WhenEventsBuilder<C, S, E> thenEvents(List<E> expected) {
             assertIterableEquals(expected, actualEvents);
+            return this;
+        }
+
+        /**
+         * Handling the command (folding the given events, and deciding) allocates at most the given number of bytes
+         */
+        public WhenEventsBuilder<C, S, E> thenAllocatesAtMost(long bytes) {
+            measurement().assertAllocatesAtMost(bytes, "Handling the command");
+            return this;
+        }
+
+        /**
+         * Handling the command (folding the given events, and deciding) takes at most the given (wall) time
+         */
+        public WhenEventsBuilder<C, S, E> thenTakesAtMost(Duration duration) {
+            measurement().assertTakesAtMost(duration, "Handling the command");
+            return this;
+        }
+
+        private Measurement measurement() {
+            if (measurement == null) {
+                measurement = Measurement.of(handling::get);
+            }
+            return measurement;
         }
     }
 
@@ -79,24 +109,52 @@ public final class DeciderDSL {
         }
 
         public WhenStateBuilder<C, S, E> whenCommand(C command) {
-            S currentState = (priorState != null) ? priorState : decider.initialState().get();
-            List<E> decidedEvents = decider.decide().apply(command, currentState);
+            Supplier<S> handling = () -> {
+                S currentState = (priorState != null) ? priorState : decider.initialState().get();
+                List<E> decidedEvents = decider.decide().apply(command, currentState);
 
-            S newState = decidedEvents.stream().reduce(currentState, (s, e) -> decider.evolve().apply(s, e), (s, s2) -> s);
-
-            return new WhenStateBuilder<>(newState);
+                return decidedEvents.stream().reduce(currentState, (s, e) -> decider.evolve().apply(s, e), (s, s2) -> s);
+            };
+            return new WhenStateBuilder<>(handling);
         }
     }
 
     public static class WhenStateBuilder<C, S, E> {
         private final S actualState;
+        private final Supplier<S> handling;
+        private Measurement measurement;
 
-        WhenStateBuilder(S actualState) {
-            this.actualState = actualState;
+        WhenStateBuilder(Supplier<S> handling) {
+            this.actualState = handling.get();
+            this.handling = handling;
         }
 
-        public void thenState(S expected) {
+        public WhenStateBuilder<C, S, E> thenState(S expected) {
             assertEquals(expected, actualState);
+            return this;
+        }
+
+        /**
+         * Handling the command (deciding, and evolving the given state) allocates at most the given number of bytes
+         */
+        public WhenStateBuilder<C, S, E> thenAllocatesAtMost(long bytes) {
+            measurement().assertAllocatesAtMost(bytes, "Handling the command");
+            return this;
+        }
+
+        /**
+         * Handling the command (deciding, and evolving the given state) takes at most the given (wall) time
+         */
+        public WhenStateBuilder<C, S, E> thenTakesAtMost(Duration duration) {
+            measurement().assertTakesAtMost(duration, "Handling the command");
+            return this;
+        }
+
+        private Measurement measurement() {
+            if (measurement == null) {
+                measurement = Measurement.of(handling::get);
+            }
+            return measurement;
         }
     }
 }
@@ -0,0 +1,78 @@
+package com.fraktalio.fmodel.dsl;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Bytes allocated and wall time of a single call, as measured by the performance-aware mode of the {@link DeciderDSL} and the {@link ViewDSL}.
+ * <br /><br />
+ * The call is warmed up first (so that it is JIT compiled, and escape analysis removes the allocations it can),
+ * and then measured a few times; the lowest values are kept, which filters out the noise of GC pauses and of the other threads.
+ * Allocations are counted by the {@link com.sun.management.ThreadMXBean} of the calling thread.
+ *
+ * @param allocatedBytes bytes allocated by the call
+ * @param elapsed        wall time of the call
+ */
+public record Measurement(long allocatedBytes, Duration elapsed) {
+    private static final int MAX_WARMUPS = 1_000;
+    private static final long MAX_WARMUP_NANOS = Duration.ofMillis(200).toNanos();
+    private static final int REPETITIONS = 5;
+    private static final Runnable EMPTY_CALL = () -> {
+    };
+
+    /**
+     * @param call the call to measure
+     * @return the measurement of the call
+     */
+    public static Measurement of(Runnable call) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var warmupStart = System.nanoTime();
+        for (var i = 0; i < MAX_WARMUPS && System.nanoTime() - warmupStart < MAX_WARMUP_NANOS; i++) {
+            call.run();
+        }
+        // the allocations of the counter itself, if any, measured around an empty call
+        var baseline = Long.MAX_VALUE;
+        for (var i = 0; i < REPETITIONS; i++) {
+            var bytesBefore = threads.getCurrentThreadAllocatedBytes();
+            EMPTY_CALL.run();
+            baseline = Math.min(baseline, threads.getCurrentThreadAllocatedBytes() - bytesBefore);
+        }
+        var allocatedBytes = Long.MAX_VALUE;
+        var elapsedNanos = Long.MAX_VALUE;
+        for (var i = 0; i < REPETITIONS; i++) {
+            var bytesBefore = threads.getCurrentThreadAllocatedBytes();
+            var start = System.nanoTime();
+            call.run();
+            var elapsed = System.nanoTime() - start;
+            var bytesAfter = threads.getCurrentThreadAllocatedBytes();
+            allocatedBytes = Math.min(allocatedBytes, Math.max(0, bytesAfter - bytesBefore - baseline));
+            elapsedNanos = Math.min(elapsedNanos, elapsed);
+        }
+        return new Measurement(allocatedBytes, Duration.ofNanos(elapsedNanos));
+    }
+
+    /**
+     * Fails, if the call allocated more than the budget. Skipped (as an assumption), if the JVM does not count the allocations.
+     *
+     * @param bytes the allocation budget
+     * @param what  the description of the call, for the failure message
+     */
+    void assertAllocatesAtMost(long bytes, String what) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(), "Thread allocation counters are not available");
+        assertTrue(allocatedBytes <= bytes, what + " allocated " + allocatedBytes + " bytes, over the budget of " + bytes + " bytes");
+    }
+
+    /**
+     * Fails, if the call took longer than the budget
+     *
+     * @param duration the time budget
+     * @param what     the description of the call, for the failure message
+     */
+    void assertTakesAtMost(Duration duration, String what) {
+        assertTrue(elapsed.compareTo(duration) <= 0, what + " took " + elapsed + ", over the budget of " + duration);
+    }
+}
@@ -3,6 +3,7 @@ package com.fraktalio.fmodel.dsl;
 
 import com.fraktalio.fmodel.domain.view.IView;
 
+import java.time.Duration;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -16,18 +17,46 @@ public class ViewDSL {
     public static class GivenEventsBuilder<S, E> {
         private final IView<S, E> view;
         private final List<E> events;
+        private Measurement measurement;
 
         GivenEventsBuilder(IView<S, E> view, List<E> events) {
             this.view = view;
             this.events = events;
         }
 
-        public void thenState(S expected) {
-            S result = events.stream()
+        public GivenEventsBuilder<S, E> thenState(S expected) {
+            assertEquals(expected, fold());
+            return this;
+        }
+
+        /**
+         * Folding the given events allocates at most the given number of bytes
+         */
+        public GivenEventsBuilder<S, E> thenAllocatesAtMost(long bytes) {
+            measurement().assertAllocatesAtMost(bytes, "Folding " + events.size() + " events");
+            return this;
+        }
+
+        /**
+         * Folding the given events takes at most the given (wall) time
+         */
+        public GivenEventsBuilder<S, E> thenTakesAtMost(Duration duration) {
+            measurement().assertTakesAtMost(duration, "Folding " + events.size() + " events");
+            return this;
+        }
+
+        private S fold() {
+            return events.stream()
                     .reduce(view.initialViewState().get(),
                             view.evolveView(),
                             (s1, s2) -> s2);
-            assertEquals(expected, result);
+        }
+
+        private Measurement measurement() {
+            if (measurement == null) {
+                measurement = Measurement.of(this::fold);
+            }
+            return measurement;
         }
     }
 }